@@ -0,0 +1,124 @@
+package hr.fer.zemris.java.webserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Pomoćni razred koji stvara realistične ulaze za mjerenja performansi
+ * poslužitelja {@link SmartHttpServer}: zaglavlje zahtjeva kakvo šalje
+ * preglednik (uz 2-4 KB cookija raznih usluga trećih strana) te dugački niz
+ * parametara kakav nose analitički URL-ovi. Svi ulazi generiraju se sa
+ * fiksnim sjemenom, pa su ista mjerenja usporediva između dvaju pokretanja.
+ *
+ * @author Davor Češljaš
+ */
+final class BenchmarkInputs {
+
+	/** Konstanta koja predstavlja sjeme generatora slučajnih brojeva */
+	private static final long SEED = 0x5EED_CAFEL;
+
+	/** Konstanta koja predstavlja znakove od kojih se grade vrijednosti */
+	private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_.";
+
+	/** Konstanta koja predstavlja session ID koji se šalje u cookiju */
+	static final String SID = "QWERTYUIOPASDFGHJKLZ";
+
+	/** Konstanta koja predstavlja broj cookija u zaglavlju zahtjeva */
+	static final int COOKIE_COUNT = 40;
+
+	/** Konstanta koja predstavlja broj parametara u nizu parametara */
+	static final int PARAMETER_COUNT = 40;
+
+	/**
+	 * Privatni konstruktor koji onemogućuje stvaranje primjeraka ovog razreda
+	 */
+	private BenchmarkInputs() {
+	}
+
+	/**
+	 * Metoda koja gradi redak "Cookie: " s {@value #COOKIE_COUNT} cookija, od
+	 * kojih je jedan cookie sesije
+	 *
+	 * @return redak zaglavlja s cookijima
+	 */
+	static String cookieLine() {
+		Random random = new Random(SEED);
+		StringBuilder sb = new StringBuilder("Cookie: ");
+		for (int i = 0; i < COOKIE_COUNT; i++) {
+			if (i > 0) {
+				sb.append("; ");
+			}
+			if (i == COOKIE_COUNT / 2) {
+				sb.append("sid=\"").append(SID).append('"');
+				continue;
+			}
+			sb.append(i % 3 == 0 ? "_ga_" : i % 3 == 1 ? "_fbp_" : "__utm").append(i).append('=');
+			sb.append(randomValue(random, 20 + random.nextInt(100)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Metoda koja gradi niz parametara (dio putanje nakon znaka '?') s
+	 * {@value #PARAMETER_COUNT} parametara
+	 *
+	 * @return niz parametara
+	 */
+	static String queryString() {
+		Random random = new Random(SEED + 1);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < PARAMETER_COUNT; i++) {
+			if (i > 0) {
+				sb.append('&');
+			}
+			sb.append(i % 4 == 0 ? "utm_" : i % 4 == 1 ? "ev_" : i % 4 == 2 ? "cd" : "p").append(i).append('=');
+			sb.append(randomValue(random, 8 + random.nextInt(40)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Metoda koja gradi čitavo zaglavlje zahtjeva kakvo šalje preglednik,
+	 * uključujući i završni prazni redak
+	 *
+	 * @return zaglavlje zahtjeva kao polje okteta
+	 */
+	static byte[] requestHeader() {
+		String[] lines = { "GET /scripts/osnovni.smscr?" + queryString() + " HTTP/1.1", "Host: 127.0.0.1:5721",
+				"Connection: keep-alive", "Cache-Control: max-age=0",
+				"sec-ch-ua: \"Chromium\";v=\"118\", \"Google Chrome\";v=\"118\", \"Not=A?Brand\";v=\"99\"",
+				"sec-ch-ua-mobile: ?0", "sec-ch-ua-platform: \"Linux\"", "Upgrade-Insecure-Requests: 1",
+				"User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) "
+						+ "Chrome/118.0.0.0 Safari/537.36",
+				"Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,"
+						+ "image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7",
+				"Sec-Fetch-Site: same-origin", "Sec-Fetch-Mode: navigate", "Sec-Fetch-User: ?1",
+				"Sec-Fetch-Dest: document", "Referer: http://127.0.0.1:5721/index.html",
+				"Accept-Encoding: gzip, deflate, br", "Accept-Language: hr-HR,hr;q=0.9,en-US;q=0.8,en;q=0.7",
+				cookieLine() };
+
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append("\r\n");
+		}
+		sb.append("\r\n");
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Pomoćna metoda koja gradi slučajnu vrijednost duljine <b>length</b>
+	 *
+	 * @param random
+	 *            generator slučajnih brojeva
+	 * @param length
+	 *            duljina vrijednosti
+	 * @return slučajna vrijednost
+	 */
+	private static String randomValue(Random random, int length) {
+		char[] value = new char[length];
+		for (int i = 0; i < length; i++) {
+			value[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		}
+		return new String(value);
+	}
+}
@@ -0,0 +1,52 @@
+package hr.fer.zemris.java.webserver;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Razred od kojeg započinje izvođenje svih mjerenja performansi poslužitelja.
+ * Razred prihvaća sve standardne argumente alata JMH (npr. regularni izraz
+ * koji odabire mjerenja ili "-f 1"), a uz njih uvijek uključuje i
+ * {@link GCProfiler}, pa se uz propusnost ispisuje i količina zauzete memorije
+ * po operaciji (<code>gc.alloc.rate.norm</code>). Argumenti koji ne pokreću
+ * mjerenja (npr. "-h", "-l" ili "-lprof") te neispravni argumenti predaju se
+ * izravno razredu {@link Main}.
+ * <p>
+ * Mjerenja se pokreću iz korijenskog direktorija projekta:
+ * <code>mvn -Pjmh package &amp;&amp; java -jar target/benchmarks.jar</code>
+ * </p>
+ *
+ * @author Davor Češljaš
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Metoda od koje započinje rad ovog programa
+	 *
+	 * @param args
+	 *            argumenti naredbenog retka koji se prosljeđuju alatu JMH
+	 * @throws Exception
+	 *             ukoliko argumenti nisu ispravni ili mjerenje nije uspjelo
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine;
+		try {
+			commandLine = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			Main.main(args);
+			return;
+		}
+
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+				|| commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+
+		new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+	}
+}
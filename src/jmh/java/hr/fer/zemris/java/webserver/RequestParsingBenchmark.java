@@ -0,0 +1,133 @@
+package hr.fer.zemris.java.webserver;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+
+/**
+ * Mjerenja performansi parsiranja zahtjeva: traženje kraja zaglavlja i
+ * rastavljanje na retke metodama
+ * {@link ServerUtil#findHeaderEnd(ByteBuffer, int)} i
+ * {@link ServerUtil#parseRequestLines(ByteBuffer, int)}, parsiranje cookija,
+ * dohvat cookija sesije, parsiranje retka "Host: " te parsiranje i dohvat
+ * parametara iz putanje. Ulazi se stvaraju razredom {@link BenchmarkInputs}.
+ *
+ * @author Davor Češljaš
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestParsingBenchmark {
+
+	/**
+	 * Članska varijabla koja predstavlja izravni spremnik u koji je pročitano
+	 * zaglavlje, jednako kao spremnik veze iz bazena spremnika
+	 */
+	private ByteBuffer requestBuffer;
+
+	/** Članska varijabla koja predstavlja redak s cookijima */
+	private String cookieLine;
+
+	/** Članska varijabla koja predstavlja redak "Host: " */
+	private String hostLine;
+
+	/** Članska varijabla koja predstavlja zatraženu putanju s nizom upita */
+	private String requestedPath;
+
+	/** Članska varijabla koja predstavlja indeks prvog znaka niza upita */
+	private int queryStart;
+
+	/**
+	 * Metoda koja priprema ulaze mjerenja
+	 */
+	@Setup
+	public void setup() {
+		requestBuffer = ByteBuffer.allocateDirect(ServerUtil.MAX_HEADER_SIZE);
+		requestBuffer.put(BenchmarkInputs.requestHeader());
+		cookieLine = BenchmarkInputs.cookieLine();
+		hostLine = "Host: 127.0.0.1:5721";
+		requestedPath = "/scripts/zbrajanje.smscr?" + BenchmarkInputs.queryString();
+		queryStart = requestedPath.indexOf('?') + 1;
+	}
+
+	/**
+	 * Mjerenje traženja kraja zaglavlja i rastavljanja zaglavlja na retke
+	 * (metode koje koristi <code>ClientWorker.readRequest</code>)
+	 *
+	 * @return retci zaglavlja
+	 */
+	@Benchmark
+	public List<String> readRequest() {
+		int end = ServerUtil.findHeaderEnd(requestBuffer, requestBuffer.position());
+		return ServerUtil.parseRequestLines(requestBuffer, end);
+	}
+
+	/**
+	 * Mjerenje parsiranja retka s cookijima
+	 *
+	 * @return parsirani cookiji
+	 */
+	@Benchmark
+	public List<RCCookie> parseCookies() {
+		return ServerUtil.parseCookies(cookieLine);
+	}
+
+	/**
+	 * Mjerenje dohvata cookija sesije bez parsiranja ostalih cookija (metoda
+	 * koju koristi <code>ClientWorker.processRequest</code>)
+	 *
+	 * @return vrijednost cookija sesije
+	 */
+	@Benchmark
+	public String findSessionCookie() {
+		return CookieCodec.find(cookieLine, "sid");
+	}
+
+	/**
+	 * Mjerenje parsiranja retka "Host: "
+	 *
+	 * @return parsirana adresa
+	 */
+	@Benchmark
+	public String parseHost() {
+		return ServerUtil.parseHost(hostLine);
+	}
+
+	/**
+	 * Mjerenje parsiranja parametara iz putanje metodom
+	 * {@link QueryParameters#parse(String, int, int)} (metoda koju koristi
+	 * <code>ClientWorker.parseParameters</code>) i dohvata parametara kakav
+	 * izvodi skripta "zbrajanje.smscr": svaki od dva parametra dohvaća se dva
+	 * puta, a uz postojeće parametre traži se i jedan koji ne postoji
+	 *
+	 * @param blackhole
+	 *            primjerak razreda {@link Blackhole} kojem se predaju
+	 *            dohvaćene vrijednosti
+	 */
+	@Benchmark
+	public void parseParameters(Blackhole blackhole) {
+		QueryParameters params = QueryParameters.parse(requestedPath, queryStart, requestedPath.length());
+		blackhole.consume(params.get("p3"));
+		blackhole.consume(params.get("cd38"));
+		blackhole.consume(params.get("p3"));
+		blackhole.consume(params.get("cd38"));
+		blackhole.consume(params.get("a"));
+	}
+}
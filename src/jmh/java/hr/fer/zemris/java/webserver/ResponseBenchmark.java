@@ -0,0 +1,146 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+
+/**
+ * Mjerenja performansi stvaranja odgovora: generiranje zaglavlja i pisanje
+ * tijela odgovora kroz {@link RequestContext#write(byte[])} i
+ * {@link RequestContext#write(String)} te ispis cookija metodom
+ * {@link RCCookie#toString()}. Odgovor se piše u izlazni tok koji odbacuje
+ * sve oktete, pa se mjeri isključivo rad poslužitelja.
+ *
+ * @author Davor Češljaš
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+
+	/** Članska varijabla koja predstavlja tijelo odgovora kao oktete */
+	private byte[] body;
+
+	/** Članska varijabla koja predstavlja tijelo odgovora kao tekst */
+	private String textBody;
+
+	/** Članska varijabla koja predstavlja cookie sesije */
+	private RCCookie sidCookie;
+
+	/** Članska varijabla koja predstavlja cookie s maksimalnom starošću */
+	private RCCookie userCookie;
+
+	/** Članska varijabla koja predstavlja parametre zahtjeva */
+	private Map<String, String> parameters;
+
+	/** Članska varijabla koja predstavlja stalne parametre zahtjeva */
+	private Map<String, String> persistentParameters;
+
+	/** Članska varijabla koja predstavlja izlazni tok koji odbacuje oktete */
+	private OutputStream sink;
+
+	/**
+	 * Metoda koja priprema ulaze mjerenja
+	 *
+	 * @param blackhole
+	 *            primjerak razreda {@link Blackhole} kojem se predaju svi
+	 *            zapisani okteti
+	 */
+	@Setup
+	public void setup(Blackhole blackhole) {
+		StringBuilder sb = new StringBuilder("<html><body><table>");
+		for (int i = 0; i < 60; i++) {
+			sb.append("<tr><td>Redak ").append(i).append("</td><td>Čevapčići</td></tr>");
+		}
+		textBody = sb.append("</table></body></html>").toString();
+		body = textBody.getBytes(StandardCharsets.UTF_8);
+
+		sidCookie = new RCCookie("sid", BenchmarkInputs.SID, null, "127.0.0.1", "/");
+		sidCookie.setHttpOnly(true);
+		userCookie = new RCCookie("korisnik", "perica", 3600, "127.0.0.1", "/");
+
+		parameters = new HashMap<>();
+		persistentParameters = new HashMap<>();
+		sink = new OutputStream() {
+			@Override
+			public void write(int b) {
+				blackhole.consume(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				blackhole.consume(b);
+			}
+		};
+	}
+
+	/**
+	 * Mjerenje generiranja zaglavlja (s dva cookija) i pisanja tijela
+	 * odgovora zadanog kao polje okteta
+	 *
+	 * @return korišteni kontekst zahtjeva
+	 * @throws IOException
+	 *             ukoliko pisanje nije uspjelo
+	 */
+	@Benchmark
+	public RequestContext writeBytes() throws IOException {
+		return newContext().write(body);
+	}
+
+	/**
+	 * Mjerenje generiranja zaglavlja (s dva cookija) i pisanja tijela
+	 * odgovora zadanog kao tekst
+	 *
+	 * @return korišteni kontekst zahtjeva
+	 * @throws IOException
+	 *             ukoliko pisanje nije uspjelo
+	 */
+	@Benchmark
+	public RequestContext writeString() throws IOException {
+		return newContext().write(textBody);
+	}
+
+	/**
+	 * Mjerenje ispisa cookija sesije
+	 *
+	 * @return tekstualni zapis cookija
+	 */
+	@Benchmark
+	public String cookieToString() {
+		return sidCookie.toString();
+	}
+
+	/**
+	 * Pomoćna metoda koja stvara novi kontekst zahtjeva s dva izlazna cookija
+	 *
+	 * @return novi kontekst zahtjeva
+	 */
+	private RequestContext newContext() {
+		List<RCCookie> cookies = new ArrayList<>(2);
+		cookies.add(sidCookie);
+		cookies.add(userCookie);
+		return new RequestContext(sink, parameters, persistentParameters, cookies);
+	}
+}
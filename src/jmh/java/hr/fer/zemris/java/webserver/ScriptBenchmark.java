@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hr.fer.zemris.java.custom.scripting.compiler.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.compiler.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.exec.CompiledTemplate;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Mjerenja performansi izvođenja skripti iz direktorija
+ * <code>webroot/scripts</code>: interpretiranje primjerkom razreda
+ * {@link CompiledTemplate} i izvođenje skripte prevedene u bajtni kod
+ * prevoditeljem {@link SmartScriptCompiler}. Rezultat se piše u izlazni tok
+ * koji odbacuje sve oktete, pa se mjeri isključivo izvođenje skripte.
+ *
+ * @author Davor Češljaš
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScriptBenchmark {
+
+	/** Članska varijabla koja predstavlja ime skripte koja se izvodi */
+	@Param({ "fibonacci", "osnovni" })
+	public String script;
+
+	/** Članska varijabla koja predstavlja isparsiranu skriptu */
+	private CompiledTemplate template;
+
+	/** Članska varijabla koja predstavlja prevedenu skriptu */
+	private CompiledScript compiled;
+
+	/** Članska varijabla koja predstavlja parametre zahtjeva */
+	private Map<String, String> parameters;
+
+	/** Članska varijabla koja predstavlja stalne parametre zahtjeva */
+	private Map<String, String> persistentParameters;
+
+	/** Članska varijabla koja predstavlja izlazni tok koji odbacuje oktete */
+	private OutputStream sink;
+
+	/**
+	 * Metoda koja priprema ulaze mjerenja
+	 *
+	 * @param blackhole
+	 *            primjerak razreda {@link Blackhole} kojem se predaju svi
+	 *            zapisani okteti
+	 * @throws IOException
+	 *             ukoliko se skripta ne može pročitati
+	 */
+	@Setup
+	public void setup(Blackhole blackhole) throws IOException {
+		String body = new String(Files.readAllBytes(Paths.get("webroot/scripts", script + ".smscr")),
+				StandardCharsets.UTF_8);
+		DocumentNode document = new SmartScriptParser(body).getDocumentNode();
+		template = new CompiledTemplate(document);
+		compiled = new SmartScriptCompiler().compile(document);
+
+		parameters = new HashMap<>();
+		parameters.put("a", "4");
+		parameters.put("b", "2");
+		persistentParameters = new HashMap<>();
+		sink = new OutputStream() {
+			@Override
+			public void write(int b) {
+				blackhole.consume(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				blackhole.consume(b);
+			}
+		};
+	}
+
+	/**
+	 * Mjerenje interpretiranja skripte
+	 *
+	 * @return korišteni kontekst zahtjeva
+	 */
+	@Benchmark
+	public RequestContext interpreted() {
+		RequestContext context = newContext();
+		template.render(context);
+		return context;
+	}
+
+	/**
+	 * Mjerenje izvođenja skripte prevedene u bajtni kod
+	 *
+	 * @return korišteni kontekst zahtjeva
+	 */
+	@Benchmark
+	public RequestContext compiled() {
+		RequestContext context = newContext();
+		compiled.execute(context);
+		return context;
+	}
+
+	/**
+	 * Pomoćna metoda koja stvara kontekst zahtjeva koji piše u
+	 * {@link #sink}
+	 *
+	 * @return novi kontekst zahtjeva
+	 */
+	private RequestContext newContext() {
+		return new RequestContext(sink, parameters, persistentParameters, new ArrayList<>());
+	}
+}
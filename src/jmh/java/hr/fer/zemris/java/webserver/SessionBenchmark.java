@@ -0,0 +1,117 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer.SessionMapEntry;
+
+/**
+ * Mjerenja performansi dohvata i stvaranja sesija poslužitelja
+ * {@link SmartHttpServer}. Poslužitelj se stvara iz konfiguracijske datoteke
+ * zadane svojstvom sustava {@value #CONFIG_PROPERTY} (pretpostavljeno
+ * {@value #DEFAULT_CONFIG}), ali se ne pokreće. Mjerenja se izvode s više
+ * dretvi kako bi se vidio utjecaj istovremenog pristupa tablici sesija.
+ *
+ * @author Davor Češljaš
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SessionBenchmark {
+
+	/** Konstanta koja predstavlja svojstvo sustava s putanjom konfiguracije */
+	static final String CONFIG_PROPERTY = "smarthttp.config";
+
+	/** Konstanta koja predstavlja pretpostavljenu putanju konfiguracije */
+	static final String DEFAULT_CONFIG = "config/server.properties";
+
+	/** Konstanta koja predstavlja broj unaprijed stvorenih sesija */
+	private static final int SESSION_COUNT = 10_000;
+
+	/** Članska varijabla koja predstavlja poslužitelj čije se sesije koriste */
+	private SmartHttpServer server;
+
+	/** Članska varijabla koja predstavlja session ID-eve postojećih sesija */
+	private String[] sids;
+
+	/**
+	 * Metoda koja stvara poslužitelj i {@value #SESSION_COUNT} sesija
+	 *
+	 * @throws IOException
+	 *             ukoliko se konfiguracija poslužitelja ne može pročitati
+	 */
+	@Setup
+	public void setup() throws IOException {
+		server = new SmartHttpServer(System.getProperty(CONFIG_PROPERTY, DEFAULT_CONFIG));
+		sids = new String[SESSION_COUNT];
+		for (int i = 0; i < SESSION_COUNT; i++) {
+			sids[i] = server.createSession().getSid();
+		}
+	}
+
+	/**
+	 * Razred koji predstavlja stanje pojedine dretve mjerenja
+	 *
+	 * @author Davor Češljaš
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		/** Članska varijabla koja predstavlja indeks iduće sesije */
+		private int index;
+	}
+
+	/**
+	 * Mjerenje dohvata postojeće sesije
+	 *
+	 * @param cursor
+	 *            stanje dretve mjerenja
+	 * @return pronađena sesija
+	 */
+	@Benchmark
+	public SessionMapEntry lookupExisting(Cursor cursor) {
+		String sid = sids[cursor.index];
+		cursor.index = (cursor.index + 1) % SESSION_COUNT;
+		return server.findSession(sid);
+	}
+
+	/**
+	 * Mjerenje dohvata nepostojeće sesije (cookie s nepoznatim session
+	 * ID-em)
+	 *
+	 * @return <code>null</code> budući da sesija ne postoji
+	 */
+	@Benchmark
+	public SessionMapEntry lookupMissing() {
+		return server.findSession("ZZZZZZZZZZZZZZZZZZZZ");
+	}
+
+	/**
+	 * Mjerenje stvaranja nove sesije. Sesija se odmah i poništava kako bi
+	 * tablica sesija ostala iste veličine
+	 *
+	 * @return stvorena sesija
+	 */
+	@Benchmark
+	public SessionMapEntry createSession() {
+		SessionMapEntry entry = server.createSession();
+		server.invalidateSession(entry.getSid());
+		return entry;
+	}
+}
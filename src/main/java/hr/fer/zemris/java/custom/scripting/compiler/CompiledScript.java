@@ -0,0 +1,121 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.util.Objects;
+
+import hr.fer.zemris.java.custom.scripting.exec.EchoExpression;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptOutput;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Apstraktni razred koji predstavlja skriptu prevedenu u bajtni kod
+ * prevoditeljem {@link SmartScriptCompiler}. Izvedeni razredi nastaju
+ * prevođenjem i u metodi {@link #render(RequestContext, ScriptOutput)}
+ * izvode isto što bi za isti dokument izveo {@link SmartScriptEngine}: tekst
+ * se piše iz konstanti, petlje su prave petlje Jave, a operacije se pozivaju
+ * izravno, bez mape operacija i stoga.
+ * <p>
+ * Primjerak razreda nema stanja osim konstanti, pa ga istovremeno smije
+ * izvoditi više dretvi.
+ * </p>
+ *
+ * @see SmartScriptCompiler
+ *
+ * @author Davor Češljaš
+ */
+public abstract class CompiledScript {
+
+	/**
+	 * Članska varijabla koja predstavlja konstante skripte (tekst kao okteti
+	 * UTF-8 te brojevi i nizovi znakova iz izraza)
+	 */
+	protected final Object[] constants;
+
+	/**
+	 * Članska varijabla koja indicira mijenja li skripta zaglavlje odgovora,
+	 * pa se njen rezultat uvijek šalje odjednom (vidi
+	 * {@link hr.fer.zemris.java.custom.scripting.nodes.DocumentNode#isBufferedOutput()})
+	 */
+	private final boolean bufferedOutput;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param constants
+	 *            konstante skripte kojima se služi izvedeni razred
+	 * @param bufferedOutput
+	 *            <code>true</code> ukoliko skripta mijenja zaglavlje odgovora
+	 */
+	protected CompiledScript(Object[] constants, boolean bufferedOutput) {
+		this.constants = Objects.requireNonNull(constants, "Konstante skripte ne smiju biti null");
+		this.bufferedOutput = bufferedOutput;
+	}
+
+	/**
+	 * Metoda koja izvodi skriptu i čitav rezultat odjednom piše u predani
+	 * primjerak razreda {@link RequestContext} <b>requestContext</b>
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva u koji se piše rezultat
+	 */
+	public final void execute(RequestContext requestContext) {
+		execute(requestContext, ScriptOutput.BUFFERED);
+	}
+
+	/**
+	 * Metoda koja izvodi skriptu i rezultat piše u predani primjerak razreda
+	 * {@link RequestContext} <b>requestContext</b>, u dijelovima čim ga se
+	 * nakupi barem <b>streamThreshold</b> okteta (vidi {@link ScriptOutput})
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva u koji se piše rezultat
+	 * @param streamThreshold
+	 *            veličina spremnika nakon koje se rezultat šalje klijentu ili
+	 *            {@link ScriptOutput#BUFFERED} ukoliko se rezultat šalje
+	 *            odjednom
+	 */
+	public final void execute(RequestContext requestContext, int streamThreshold) {
+		ScriptOutput out = new ScriptOutput(requestContext, bufferedOutput ? ScriptOutput.BUFFERED : streamThreshold);
+		boolean completed = false;
+		try {
+			render(requestContext, out);
+			completed = true;
+		} finally {
+			if (completed) {
+				out.finish();
+			} else {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja izvodi skriptu i rezultat piše u pomoćni spremnik
+	 * <b>out</b>
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva iz kojeg se čitaju i u koji se pišu
+	 *            parametri
+	 * @param out
+	 *            izlazni tok u koji se piše rezultat skripte (nakon svakog
+	 *            čvora poziva se {@link ScriptOutput#checkpoint()})
+	 */
+	protected abstract void render(RequestContext requestContext, ScriptOutput out);
+
+	/**
+	 * Pomoćna metoda koja provjerava je li varijabla skripte postavljena prije
+	 * čitanja (jednako kao {@link EchoExpression#variable(ValueWrapper, String)})
+	 *
+	 * @param slot
+	 *            trenutna vrijednost varijable ili <code>null</code>
+	 * @param name
+	 *            ime varijable
+	 * @return <b>slot</b>
+	 * @throws IllegalArgumentException
+	 *             ukoliko varijabla još nije postavljena
+	 */
+	protected static ValueWrapper variable(ValueWrapper slot, String name) {
+		return EchoExpression.variable(slot, name);
+	}
+}
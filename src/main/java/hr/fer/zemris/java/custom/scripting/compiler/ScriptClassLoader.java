@@ -0,0 +1,42 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.util.Map;
+
+/**
+ * Razred koji učitava razrede jedne prevedene skripte. Svaka skripta dobiva
+ * vlastiti primjerak učitavača, pa se razred skripte (zajedno s učitavačem)
+ * oslobađa čim se skripta više ne koristi, npr. nakon izmjene datoteke
+ * skripte.
+ *
+ * @author Davor Češljaš
+ */
+class ScriptClassLoader extends ClassLoader {
+
+	/**
+	 * Članska varijabla koja predstavlja bajtni kod razreda, a ključ je puno
+	 * ime razreda
+	 */
+	private final Map<String, byte[]> classes;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param parent
+	 *            učitavač kojemu se prepušta učitavanje svih ostalih razreda
+	 * @param classes
+	 *            bajtni kod razreda skripte, a ključ je puno ime razreda
+	 */
+	ScriptClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+		super(parent);
+		this.classes = classes;
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] bytes = classes.get(name);
+		if (bytes == null) {
+			throw new ClassNotFoundException(name);
+		}
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+}
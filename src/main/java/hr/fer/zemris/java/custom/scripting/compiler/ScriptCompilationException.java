@@ -0,0 +1,63 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+/**
+ * Razred koji nasljeđuje {@link RuntimeException}. Razred se koristi u
+ * implementaciji prevoditelja {@link SmartScriptCompiler}. Ovaj razred je
+ * neprovjeravana iznimka i koristi se kako bi korisnika obavijestio da se
+ * skripta ne može prevesti u bajtni kod (pa se i dalje interpretira)
+ * 
+ * @author Davor Češljaš
+ */
+public class ScriptCompilationException extends RuntimeException {
+
+	/** Konstanta serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Korištenjem ovog
+	 * konstruktora korisniku će prilikom pojave iznimke biti ispisan trag stoga
+	 * bez ikakve dodatne poruke
+	 */
+	public ScriptCompilationException() {
+		super();
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Korištenjem ovog
+	 * konstruktora korisniku će prilikom pojave iznimke biti ispisan trag stoga
+	 * uz dodatnu poruku
+	 *
+	 * @param message
+	 *            poruka koju treba ispisati korisniku prilikom bacanja iznimke
+	 */
+	public ScriptCompilationException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Korištenjem ovog
+	 * konstruktora korisniku će prilikom pojave iznimke biti ispisan trag stoga
+	 * uz dodatan uzrok
+	 *
+	 * @param cause
+	 *            Uzrok bacanja iznimke
+	 */
+	public ScriptCompilationException(Throwable cause) {
+		super(cause);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Korištenjem ovog
+	 * konstruktora korisniku će prilikom pojave iznimke biti ispisan trag stoga
+	 * uz dodatan uzrok i poruku
+	 *
+	 * @param message
+	 *            poruka koju treba ispisati korisniku prilikom bacanja iznimke
+	 * @param cause
+	 *            Uzrok bacanja iznimke
+	 */
+	public ScriptCompilationException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,675 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.EchoExpression;
+import hr.fer.zemris.java.custom.scripting.exec.StackOperationProvider;
+import hr.fer.zemris.java.custom.scripting.exec.ValueStack;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Razred koji predstavlja optimizator isparsiranih skripti. Optimizator od
+ * stabla dokumenta stvara novo stablo koje daje isti rezultat, a u kojem je
+ * unaprijed izračunato sve što ne ovisi o zahtjevu:
+ * <ul>
+ * <li>u izrazima čvorova {@link EchoNode} nizovi konstanti i čistih operacija
+ * (vidi {@link StackOperationProvider#isPure(String)}) zamjenjuju se
+ * rezultatom. Izraz koji se u potpunosti izračuna postaje tekst</li>
+ * <li>petlje ({@link ForLoopNode}) čije tijelo sadrži samo tekst i čiste
+ * izraze nad varijablama petlji iz tog tijela izvode se unaprijed i postaju
+ * tekst, ukoliko se njihove varijable nakon petlje ne čitaju, a broj
+ * ponavljanja i duljina teksta ne prelaze zadana ograničenja</li>
+ * </ul>
+ * Operacije koje čitaju ili mijenjaju kontekst zahtjeva (npr. "@pparamSet" ili
+ * "@setMimeType") nikad se ne izračunavaju unaprijed. Izračun koji bi pri
+ * izvođenju bacio iznimku (npr. dijeljenje nulom) također se ne izračunava
+ * unaprijed, pa se pogreška i dalje javlja pri izvođenju.
+ * <p>
+ * Izvorno stablo se ne mijenja, a primjerak razreda nema stanja, pa ga smije
+ * istovremeno koristiti više dretvi.
+ * </p>
+ *
+ * @see SmartScriptCompiler
+ *
+ * @author Davor Češljaš
+ */
+public class ScriptOptimizer {
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljeni najveći broj ponavljanja
+	 * (zbrojeno za sve ugniježđene petlje) petlje koja se izvodi unaprijed
+	 */
+	public static final int DEFAULT_MAX_UNROLLED_ITERATIONS = 1000;
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljenu najveću duljinu (u znakovima)
+	 * teksta petlje koja se izvodi unaprijed
+	 */
+	public static final int DEFAULT_MAX_UNROLLED_LENGTH = 64 * 1024;
+
+	/**
+	 * Konstanta koja predstavlja broj argumenata koje čiste operacije uzimaju
+	 * sa stoga, a ključ je naziv operacije
+	 */
+	private static final Map<String, Integer> ARGUMENTS;
+
+	static {
+		Map<String, Integer> arguments = new HashMap<>();
+		arguments.put("+", 2);
+		arguments.put("-", 2);
+		arguments.put("*", 2);
+		arguments.put("/", 2);
+		arguments.put("@sin", 1);
+		arguments.put("@decfmt", 2);
+		arguments.put("@dup", 1);
+		arguments.put("@swap", 2);
+		ARGUMENTS = Collections.unmodifiableMap(arguments);
+	}
+
+	/** Članska varijabla koja predstavlja pružatelja operacija */
+	private final StackOperationProvider opProvider = StackOperationProvider.getInstance();
+
+	/**
+	 * Članska varijabla koja predstavlja najveći broj ponavljanja petlje koja
+	 * se izvodi unaprijed
+	 */
+	private final int maxIterations;
+
+	/**
+	 * Članska varijabla koja predstavlja najveću duljinu teksta petlje koja se
+	 * izvodi unaprijed
+	 */
+	private final int maxLength;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda s pretpostavljenim
+	 * ograničenjima {@value #DEFAULT_MAX_UNROLLED_ITERATIONS} i
+	 * {@value #DEFAULT_MAX_UNROLLED_LENGTH}
+	 */
+	public ScriptOptimizer() {
+		this(DEFAULT_MAX_UNROLLED_ITERATIONS, DEFAULT_MAX_UNROLLED_LENGTH);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param maxIterations
+	 *            najveći broj ponavljanja (zbrojeno za sve ugniježđene
+	 *            petlje) petlje koja se izvodi unaprijed (0 isključuje
+	 *            izvođenje petlji unaprijed)
+	 * @param maxLength
+	 *            najveća duljina (u znakovima) teksta petlje koja se izvodi
+	 *            unaprijed
+	 * @throws IllegalArgumentException
+	 *             ukoliko je neko od ograničenja negativno
+	 */
+	public ScriptOptimizer(int maxIterations, int maxLength) {
+		if (maxIterations < 0 || maxLength < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Ograničenja optimizatora ne smiju biti negativna, a predano je %d i %d", maxIterations,
+					maxLength));
+		}
+		this.maxIterations = maxIterations;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Metoda koja stvara optimizirano stablo dokumenta <b>document</b>
+	 *
+	 * @param document
+	 *            vršni čvor stabla dokumenta
+	 * @return vršni čvor novog, optimiziranog stabla
+	 * @throws NullPointerException
+	 *             ukoliko je <b>document</b> <code>null</code>
+	 */
+	public DocumentNode optimize(DocumentNode document) {
+		Objects.requireNonNull(document, "Dokument ne smije biti null");
+
+		DocumentNode optimized = new DocumentNode();
+		optimized.setVariableCount(document.getVariableCount());
+		optimized.setBufferedOutput(document.isBufferedOutput());
+		new Pass(document.getVariableCount()).optimizeChildren(document, optimized);
+		return optimized;
+	}
+
+	/**
+	 * Metoda koja izračunava unaprijed sve što se može izračunati u izrazu
+	 * čvora <b>node</b>. Vrijednosti se izračunavaju kao na stogu: konstante
+	 * se čuvaju dok ih ne uzme čista operacija, a prije varijable ili
+	 * operacije koja se ne može izračunati zapisuju se u novi izraz
+	 *
+	 * @param node
+	 *            čvor čiji se izraz izračunava
+	 * @return primjerak razreda {@link TextNode} ukoliko je izraz izračunat u
+	 *         potpunosti, novi čvor {@link EchoNode} ukoliko je izračunat
+	 *         dio izraza ili <b>node</b> ukoliko se ništa ne može izračunati
+	 */
+	public Node fold(EchoNode node) {
+		List<Element> residual = new ArrayList<>();
+		List<ValueWrapper> pending = new ArrayList<>();
+		boolean changed = false;
+
+		for (Element element : node.getElements()) {
+			ValueWrapper constant = constantValue(element);
+			if (constant != null) {
+				pending.add(constant);
+				continue;
+			}
+
+			List<ValueWrapper> results = null;
+			if (element instanceof ElementFunction || element instanceof ElementOperator) {
+				results = calculate(element.asText(), pending);
+			}
+			if (results != null) {
+				pending.addAll(results);
+				changed = true;
+			} else {
+				flush(pending, residual);
+				residual.add(element);
+			}
+		}
+
+		if (residual.isEmpty()) {
+			return new TextNode(join(pending));
+		}
+		flush(pending, residual);
+		return changed ? new EchoNode(residual.toArray(new Element[residual.size()])) : node;
+	}
+
+	/**
+	 * Pomoćna metoda koja izračunava čistu operaciju <b>opName</b> nad
+	 * posljednjim konstantama iz <b>pending</b>. Ukoliko uspije, uzete
+	 * konstante miču se iz <b>pending</b>
+	 *
+	 * @param opName
+	 *            naziv operacije
+	 * @param pending
+	 *            konstante koje su na vrhu stoga
+	 * @return rezultate operacije (od dna prema vrhu) ili <code>null</code>
+	 *         ukoliko operacija nije čista, nema dovoljno konstanti ili bi
+	 *         izračun bacio iznimku
+	 */
+	private List<ValueWrapper> calculate(String opName, List<ValueWrapper> pending) {
+		Integer arguments = ARGUMENTS.get(opName);
+		if (!opProvider.isPure(opName) || arguments == null || pending.size() < arguments) {
+			return null;
+		}
+
+		ValueStack stack = new ValueStack();
+		for (int i = pending.size() - arguments; i < pending.size(); i++) {
+			stack.push(new ValueWrapper(pending.get(i)));
+		}
+		try {
+			// čiste operacije ne koriste kontekst zahtjeva
+			opProvider.getOperation(opName).calculate(null, stack);
+		} catch (RuntimeException e) {
+			return null;
+		}
+
+		List<ValueWrapper> results = new ArrayList<>(Collections.nCopies(stack.size(), (ValueWrapper) null));
+		for (int i = results.size() - 1; i >= 0; i--) {
+			ValueWrapper result = stack.pop();
+			if (toElement(result) == null) {
+				return null;
+			}
+			results.set(i, result);
+		}
+		pending.subList(pending.size() - arguments, pending.size()).clear();
+		return results;
+	}
+
+	/**
+	 * Pomoćna metoda koja sve konstante iz <b>pending</b> zapisuje u izraz
+	 * <b>residual</b> i prazni <b>pending</b>
+	 *
+	 * @param pending
+	 *            konstante koje se zapisuju
+	 * @param residual
+	 *            elementi novog izraza
+	 */
+	private static void flush(List<ValueWrapper> pending, List<Element> residual) {
+		for (ValueWrapper value : pending) {
+			residual.add(toElement(value));
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Pomoćna metoda koja tekst <b>text</b>, ukoliko nije prazan, dodaje kao
+	 * čvor {@link TextNode} čvoru <b>target</b> i prazni <b>text</b>
+	 *
+	 * @param text
+	 *            nakupljeni tekst
+	 * @param target
+	 *            čvor kojem se dodaje tekst
+	 */
+	private static void flushText(StringBuilder text, Node target) {
+		if (text.length() > 0) {
+			target.addChildNode(new TextNode(text.toString()));
+			text.setLength(0);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja vrijednosti <b>values</b> spaja razmakom, jednako
+	 * kao što se ispisuje stog nakon izvođenja izraza
+	 *
+	 * @param values
+	 *            vrijednosti od dna prema vrhu stoga
+	 * @return tekst vrijednosti
+	 */
+	private static String join(List<ValueWrapper> values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0, n = values.size(); i < n; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(values.get(i).toString());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća vrijednost konstante <b>element</b>
+	 *
+	 * @param element
+	 *            element izraza
+	 * @return novi omotač vrijednosti konstante ili <code>null</code> ukoliko
+	 *         element nije konstanta
+	 */
+	private static ValueWrapper constantValue(Element element) {
+		if (element instanceof ElementConstantInteger) {
+			return new ValueWrapper(((ElementConstantInteger) element).getValue());
+		} else if (element instanceof ElementConstantDouble) {
+			return new ValueWrapper(((ElementConstantDouble) element).getValue());
+		} else if (element instanceof ElementString) {
+			return new ValueWrapper(((ElementString) element).getValue());
+		}
+		return null;
+	}
+
+	/**
+	 * Pomoćna metoda koja stvara konstantu s vrijednošću omotača <b>value</b>
+	 *
+	 * @param value
+	 *            omotač vrijednosti
+	 * @return konstantu ili <code>null</code> ukoliko vrijednost nije
+	 *         {@link Integer}, {@link Double} niti {@link String}
+	 */
+	private static Element toElement(ValueWrapper value) {
+		Object object = value.getValue();
+		if (object instanceof Integer) {
+			return new ElementConstantInteger((Integer) object);
+		} else if (object instanceof Double) {
+			return new ElementConstantDouble((Double) object);
+		} else if (object instanceof String) {
+			return new ElementString((String) object);
+		}
+		return null;
+	}
+
+	/**
+	 * Razred koji predstavlja jedan prolaz optimizatora kroz stablo. Prolaz
+	 * pamti put od vršnog čvora do čvora koji se trenutno optimizira, kako bi
+	 * se moglo odrediti čita li se varijabla nakon petlje.
+	 *
+	 * @author Davor Češljaš
+	 */
+	private class Pass {
+
+		/** Članska varijabla koja predstavlja broj varijabli dokumenta */
+		private final int variableCount;
+
+		/**
+		 * Članska varijabla koja predstavlja čvorove od vršnog do čvora čija
+		 * se djeca trenutno optimiziraju
+		 */
+		private final List<Node> path = new ArrayList<>();
+
+		/**
+		 * Članska varijabla koja predstavlja indekse čvorova iz {@link #path}
+		 * (osim vršnog) među djecom njihovih roditelja
+		 */
+		private final List<Integer> indices = new ArrayList<>();
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param variableCount
+		 *            broj varijabli dokumenta
+		 */
+		public Pass(int variableCount) {
+			this.variableCount = variableCount;
+		}
+
+		/**
+		 * Metoda koja optimizirana djeca čvora <b>source</b> dodaje čvoru
+		 * <b>target</b>. Susjedni tekst spaja se u jedan čvor
+		 * {@link TextNode}
+		 *
+		 * @param source
+		 *            čvor izvornog stabla
+		 * @param target
+		 *            odgovarajući čvor novog stabla
+		 */
+		public void optimizeChildren(Node source, Node target) {
+			path.add(source);
+			StringBuilder text = new StringBuilder();
+			for (int i = 0, n = source.numberOfChildren(); i < n; i++) {
+				Node child = source.getChild(i);
+				Node optimized = child;
+				if (child instanceof EchoNode) {
+					optimized = fold((EchoNode) child);
+				} else if (child instanceof ForLoopNode) {
+					String unrolled = unroll((ForLoopNode) child, i);
+					optimized = unrolled == null ? null : new TextNode(unrolled);
+				}
+
+				if (optimized instanceof TextNode) {
+					text.append(((TextNode) optimized).getText());
+					continue;
+				}
+
+				flushText(text, target);
+				if (optimized == null) {
+					ForLoopNode loop = (ForLoopNode) child;
+					ForLoopNode copy = new ForLoopNode(loopElements(loop));
+					target.addChildNode(copy);
+					indices.add(i);
+					optimizeChildren(loop, copy);
+					indices.remove(indices.size() - 1);
+				} else {
+					target.addChildNode(optimized);
+				}
+			}
+			flushText(text, target);
+			path.remove(path.size() - 1);
+		}
+
+		/**
+		 * Pomoćna metoda koja petlju <b>loop</b> (dijete s indeksom
+		 * <b>index</b> posljednjeg čvora iz {@link #path}) izvodi unaprijed
+		 *
+		 * @param loop
+		 *            petlja koja se izvodi
+		 * @param index
+		 *            indeks petlje među djecom roditelja
+		 * @return tekst koji petlja ispisuje ili <code>null</code> ukoliko se
+		 *         petlja ne smije ili ne može izvesti unaprijed
+		 */
+		private String unroll(ForLoopNode loop, int index) {
+			if (maxIterations == 0 || !isPure(loop)) {
+				return null;
+			}
+
+			Set<Integer> defined = new HashSet<>();
+			collectDefined(loop, defined);
+			for (int slot : defined) {
+				if (isReadAfter(index, slot)) {
+					return null;
+				}
+			}
+
+			Evaluation evaluation = new Evaluation(variableCount);
+			try {
+				evaluation.run(loop);
+			} catch (RuntimeException e) {
+				// nepostavljena varijabla, neispravna vrijednost ili prekoračeno ograničenje
+				return null;
+			}
+			return evaluation.text.toString();
+		}
+
+		/**
+		 * Pomoćna metoda koja ispituje čita li se varijabla s mjestom
+		 * <b>slot</b> nakon djeteta s indeksom <b>index</b> posljednjeg čvora
+		 * iz {@link #path}, prije nego što je neka petlja ponovno postavi.
+		 * Nakon djeteta izvode se njegova braća, a ukoliko je roditelj petlja
+		 * i ponovno cijelo tijelo roditelja, pa sve to i za sve pretke
+		 *
+		 * @param index
+		 *            indeks djeteta među djecom roditelja
+		 * @param slot
+		 *            mjesto varijable
+		 * @return <code>true</code> ukoliko se varijabla čita, inače
+		 *         <code>false</code>
+		 */
+		private boolean isReadAfter(int index, int slot) {
+			int childIndex = index;
+			for (int level = path.size() - 1; level >= 0; level--) {
+				Node parent = path.get(level);
+				Liveness liveness = scan(parent, childIndex + 1, slot);
+				if (liveness != Liveness.UNDECIDED) {
+					return liveness == Liveness.READ;
+				}
+				if (parent instanceof ForLoopNode && scan(parent, 0, slot) == Liveness.READ) {
+					return true;
+				}
+				if (level > 0) {
+					childIndex = indices.get(level - 1);
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Enumeracija koja predstavlja ishod pretraživanja čvorova za čitanjem
+	 * varijable (vidi {@link ScriptOptimizer#scan(Node, int, int)})
+	 */
+	private enum Liveness {
+		/** Varijabla se čita prije nego što je neka petlja postavi */
+		READ,
+		/** Petlja postavlja varijablu prije nego što se ona pročita */
+		WRITTEN,
+		/** Čvorovi niti čitaju niti sigurno postavljaju varijablu */
+		UNDECIDED
+	}
+
+	/**
+	 * Pomoćna metoda koja redom pretražuje djecu čvora <b>parent</b> od
+	 * indeksa <b>from</b> i ispituje čita li se varijabla s mjestom
+	 * <b>slot</b> prije nego što je neka petlja postavi. Petlja uvijek
+	 * postavlja svoju varijablu, a njeno tijelo se ne mora izvesti
+	 *
+	 * @param parent
+	 *            čvor čija se djeca pretražuju
+	 * @param from
+	 *            indeks prvog djeteta koje se pretražuje
+	 * @param slot
+	 *            mjesto varijable
+	 * @return ishod pretraživanja
+	 */
+	private static Liveness scan(Node parent, int from, int slot) {
+		for (int i = from, n = parent.numberOfChildren(); i < n; i++) {
+			Node child = parent.getChild(i);
+			if (child instanceof EchoNode) {
+				for (Element element : ((EchoNode) child).getElements()) {
+					if (element instanceof ElementVariable && ((ElementVariable) element).getSlot() == slot) {
+						return Liveness.READ;
+					}
+				}
+			} else if (child instanceof ForLoopNode) {
+				if (((ForLoopNode) child).getVariable().getSlot() == slot) {
+					return Liveness.WRITTEN;
+				}
+				if (scan(child, 0, slot) == Liveness.READ) {
+					return Liveness.READ;
+				}
+			}
+		}
+		return Liveness.UNDECIDED;
+	}
+
+	/**
+	 * Pomoćna metoda koja ispituje sadrži li čvor <b>node</b> i njegova
+	 * djeca samo tekst, petlje i izraze sa čistim operacijama
+	 *
+	 * @param node
+	 *            čvor koji se ispituje
+	 * @return <code>true</code> ukoliko je čvor čist, inače
+	 *         <code>false</code>
+	 */
+	private boolean isPure(Node node) {
+		if (node instanceof EchoNode) {
+			for (Element element : ((EchoNode) node).getElements()) {
+				if ((element instanceof ElementFunction || element instanceof ElementOperator)
+						&& !opProvider.isPure(element.asText())) {
+					return false;
+				}
+			}
+			return true;
+		} else if (node instanceof TextNode) {
+			return true;
+		} else if (!(node instanceof ForLoopNode)) {
+			return false;
+		}
+
+		for (int i = 0, n = node.numberOfChildren(); i < n; i++) {
+			if (!isPure(node.getChild(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pomoćna metoda koja u <b>defined</b> dodaje mjesta varijabli svih
+	 * petlji unutar čvora <b>node</b> (uključujući i njega)
+	 *
+	 * @param node
+	 *            čvor koji se pretražuje
+	 * @param defined
+	 *            skup u koji se dodaju mjesta varijabli
+	 */
+	private static void collectDefined(Node node, Set<Integer> defined) {
+		if (node instanceof ForLoopNode) {
+			defined.add(((ForLoopNode) node).getVariable().getSlot());
+		}
+		for (int i = 0, n = node.numberOfChildren(); i < n; i++) {
+			collectDefined(node.getChild(i), defined);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća elemente od kojih je nastala petlja
+	 * <b>loop</b>
+	 *
+	 * @param loop
+	 *            petlja
+	 * @return elemente petlje (varijabla, početak, kraj i korak ukoliko je
+	 *         zadan)
+	 */
+	private static Element[] loopElements(ForLoopNode loop) {
+		if (loop.getStepExpression() == null) {
+			return new Element[] { loop.getVariable(), loop.getStartExpression(), loop.getEndExpression() };
+		}
+		return new Element[] { loop.getVariable(), loop.getStartExpression(), loop.getEndExpression(),
+				loop.getStepExpression() };
+	}
+
+	/**
+	 * Razred koji predstavlja izvođenje petlje unaprijed. Petlja se izvodi
+	 * jednako kao u {@link hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine},
+	 * a ispis se sprema u {@link #text}.
+	 *
+	 * @author Davor Češljaš
+	 */
+	private class Evaluation {
+
+		/** Članska varijabla koja predstavlja vrijednosti varijabli */
+		private final ValueWrapper[] frame;
+
+		/** Članska varijabla koja predstavlja stog izraza */
+		private final ValueStack stack = new ValueStack();
+
+		/** Članska varijabla koja predstavlja ispis petlje */
+		private final StringBuilder text = new StringBuilder();
+
+		/** Članska varijabla koja predstavlja broj izvedenih ponavljanja */
+		private int iterations;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param variableCount
+		 *            broj varijabli dokumenta
+		 */
+		public Evaluation(int variableCount) {
+			frame = new ValueWrapper[variableCount];
+		}
+
+		/**
+		 * Metoda koja izvodi petlju <b>loop</b>
+		 *
+		 * @param loop
+		 *            petlja koja se izvodi
+		 * @throws IllegalStateException
+		 *             ukoliko se prekorači neko od ograničenja
+		 * @throws RuntimeException
+		 *             ukoliko izvođenje nije uspjelo
+		 */
+		public void run(ForLoopNode loop) {
+			ValueWrapper variable = constantValue(loop.getStartExpression());
+			frame[loop.getVariable().getSlot()] = variable;
+
+			ValueWrapper step = loop.getStepExpression() == null ? new ValueWrapper(0)
+					: constantValue(loop.getStepExpression());
+			ValueWrapper end = constantValue(loop.getEndExpression());
+			for (; variable.numCompare(end) <= 0; variable.add(step)) {
+				if (++iterations > maxIterations) {
+					throw new IllegalStateException("Prekoračen najveći broj ponavljanja");
+				}
+				for (int i = 0, n = loop.numberOfChildren(); i < n; i++) {
+					Node child = loop.getChild(i);
+					if (child instanceof TextNode) {
+						text.append(((TextNode) child).getText());
+					} else if (child instanceof EchoNode) {
+						echo(((EchoNode) child).getExpression());
+					} else {
+						run((ForLoopNode) child);
+					}
+					if (text.length() > maxLength) {
+						throw new IllegalStateException("Prekoračena najveća duljina teksta");
+					}
+				}
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja izvodi izraz <b>expression</b> i ispisuje stog
+		 *
+		 * @param expression
+		 *            izraz koji se izvodi
+		 */
+		private void echo(EchoExpression expression) {
+			// izraz sadrži samo čiste operacije, pa kontekst zahtjeva nije potreban
+			expression.evaluate(null, frame, stack);
+
+			List<ValueWrapper> values = new ArrayList<>(Collections.nCopies(stack.size(), (ValueWrapper) null));
+			for (int i = values.size() - 1; i >= 0; i--) {
+				values.set(i, stack.pop());
+			}
+			text.append(join(values));
+		}
+	}
+}
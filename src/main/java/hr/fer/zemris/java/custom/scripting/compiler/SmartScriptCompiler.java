@@ -0,0 +1,626 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptOutput;
+import hr.fer.zemris.java.custom.scripting.exec.StackOperationProvider;
+import hr.fer.zemris.java.custom.scripting.exec.ThreadLocalDecimalFormat;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Razred koji generativno stablo dokumenta prevodi u razred izveden iz
+ * {@link CompiledScript}. Iz stabla se generira izvorni kod razreda koji
+ * prevoditelj Jave (iz {@link ToolProvider#getSystemJavaCompiler()}) prevodi u
+ * memoriji, a bajtni kod učitava se vlastitim učitavačem razreda
+ * {@link ScriptClassLoader}.
+ * <p>
+ * Prevedena skripta ponaša se jednako kao {@link SmartScriptEngine}:
+ * <ul>
+ * <li>tekst se piše iz konstante s unaprijed kodiranim oktetima UTF-8</li>
+ * <li>svaka varijabla dobiva lokalnu varijablu metode (stog varijabli
+ * interpretera se nikad ne skida, pa je vrh stoga uvijek posljednja
+ * pridružena vrijednost)</li>
+ * <li>petlja je prava petlja Jave nad primjerkom razreda
+ * {@link ValueWrapper}</li>
+ * <li>dubina stoga izraza poznata je pri prevođenju, pa su elementi stoga
+ * omotači u lokalnim varijablama (stvaraju se jednom po izvođenju, a
+ * vrijednosti se u njih kopiraju), a operacije iz
+ * {@link StackOperationProvider} pozivaju se izravno</li>
+ * </ul>
+ * Sve konstante predaju se konstruktoru razreda kao polje, pa generirani kod
+ * ne sadrži niti jedan znakovni literal iz skripte. Skripta koju nije moguće
+ * prevesti (nepodržana operacija, premalo elemenata na stogu, nedostupan
+ * prevoditelj, prevelika metoda) uzrokuje iznimku
+ * {@link ScriptCompilationException} i nastavlja se interpretirati.
+ * </p>
+ *
+ * @see CompiledScript
+ * @see TieredScript
+ *
+ * @author Davor Češljaš
+ */
+public class SmartScriptCompiler {
+
+	/** Konstanta koja predstavlja paket generiranih razreda */
+	private static final String GENERATED_PACKAGE = "hr.fer.zemris.java.custom.scripting.compiler.generated";
+
+	/** Konstanta koja predstavlja prefiks imena generiranih razreda */
+	private static final String CLASS_PREFIX = "Script";
+
+	/** Konstanta koja predstavlja brojač generiranih razreda */
+	private static final AtomicInteger CLASS_INDEX = new AtomicInteger();
+
+	/**
+	 * Članska varijabla koja predstavlja prevoditelj Jave ili
+	 * <code>null</code> ukoliko se poslužitelj ne izvodi na JDK-u
+	 */
+	private final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+
+	/**
+	 * Metoda koja prevodi dokument <b>document</b> u bajtni kod
+	 *
+	 * @param document
+	 *            vršni čvor generativnog stabla skripte
+	 * @return prevedenu skriptu
+	 * @throws ScriptCompilationException
+	 *             ukoliko se skripta ne može prevesti
+	 */
+	public CompiledScript compile(DocumentNode document) {
+		if (javac == null) {
+			throw new ScriptCompilationException("Prevoditelj Jave nije dostupan");
+		}
+
+		String className = CLASS_PREFIX + CLASS_INDEX.incrementAndGet();
+		SourceGenerator generator = new SourceGenerator(className);
+		document.accept(generator);
+
+		Map<String, byte[]> classes = compileSource(GENERATED_PACKAGE + "." + className, generator.toSource());
+		ClassLoader loader = new ScriptClassLoader(CompiledScript.class.getClassLoader(), classes);
+		try {
+			return (CompiledScript) loader.loadClass(GENERATED_PACKAGE + "." + className)
+					.getConstructor(Object[].class, boolean.class)
+					.newInstance(generator.constants.toArray(), document.isBufferedOutput());
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new ScriptCompilationException("Prevedena skripta se ne može učitati", e);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja izvorni kod <b>source</b> razreda <b>className</b>
+	 * prevodi u memoriji
+	 *
+	 * @param className
+	 *            puno ime razreda
+	 * @param source
+	 *            izvorni kod razreda
+	 * @return bajtni kod svih nastalih razreda, a ključ je puno ime razreda
+	 * @throws ScriptCompilationException
+	 *             ukoliko prevođenje nije uspjelo
+	 */
+	private Map<String, byte[]> compileSource(String className, String source) {
+		Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (StandardJavaFileManager standard = javac.getStandardFileManager(diagnostics, null,
+				StandardCharsets.UTF_8)) {
+			JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+				@Override
+				public JavaFileObject getJavaFileForOutput(Location location, String name, Kind kind,
+						FileObject sibling) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					outputs.put(name, bytes);
+					return new SimpleJavaFileObject(
+							URI.create("bytes:///" + name.replace('.', '/') + kind.extension), kind) {
+						@Override
+						public OutputStream openOutputStream() {
+							return bytes;
+						}
+					};
+				}
+			};
+
+			JavaFileObject sourceFile = new SimpleJavaFileObject(
+					URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE) {
+				@Override
+				public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+					return source;
+				}
+			};
+
+			List<String> options = Arrays.asList("-classpath", classPath(), "-g:none", "-proc:none", "-nowarn");
+			boolean success = javac
+					.getTask(null, fileManager, diagnostics, options, null, Collections.singletonList(sourceFile))
+					.call();
+			if (!success) {
+				StringBuilder sb = new StringBuilder("Generirani kod skripte se ne može prevesti");
+				for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+					sb.append(System.lineSeparator()).append(diagnostic.getMessage(null));
+				}
+				throw new ScriptCompilationException(sb.toString());
+			}
+		} catch (IOException e) {
+			throw new ScriptCompilationException("Upravitelj datoteka prevoditelja se ne može zatvoriti", e);
+		}
+
+		Map<String, byte[]> classes = new HashMap<>();
+		outputs.forEach((name, bytes) -> classes.put(name, bytes.toByteArray()));
+		return classes;
+	}
+
+	/**
+	 * Pomoćna metoda koja stvara putanju razreda za prevođenje generiranog
+	 * koda: putanju kojom je pokrenut poslužitelj i lokaciju s koje je učitan
+	 * razred {@link CompiledScript}
+	 *
+	 * @return putanju razreda
+	 */
+	private static String classPath() {
+		String classPath = System.getProperty("java.class.path", "");
+		CodeSource codeSource = CompiledScript.class.getProtectionDomain().getCodeSource();
+		if (codeSource != null && codeSource.getLocation() != null) {
+			try {
+				classPath = Paths.get(codeSource.getLocation().toURI()) + File.pathSeparator + classPath;
+			} catch (Exception ignorable) {
+				// lokacija nije datoteka, ostaje putanja poslužitelja
+			}
+		}
+		return classPath;
+	}
+
+	/**
+	 * Razred posjetitelj koji iz generativnog stabla generira izvorni kod
+	 * razreda skripte. Konstante se skupljaju u listu
+	 * {@link SourceGenerator#constants} koja se predaje konstruktoru
+	 * generiranog razreda
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class SourceGenerator implements INodeVisitor {
+
+		/** Članska varijabla koja predstavlja ime generiranog razreda */
+		private final String className;
+
+		/** Članska varijabla koja predstavlja konstante skripte */
+		private final List<Object> constants = new ArrayList<>();
+
+		/**
+		 * Članska varijabla koja predstavlja tipove konstanti u generiranom
+		 * kodu
+		 */
+		private final List<String> constantTypes = new ArrayList<>();
+
+		/**
+		 * Članska varijabla koja predstavlja broj varijabli skripte (svaka
+		 * dobiva lokalnu varijablu prema mjestu koje joj je dodijelio parser)
+		 */
+		private int variableCount;
+
+		/** Članska varijabla koja predstavlja tijelo metode render */
+		private final StringBuilder body = new StringBuilder();
+
+		/** Članska varijabla koja predstavlja trenutnu uvučenost koda */
+		private String indent = "\t\t";
+
+		/** Članska varijabla koja predstavlja broj generiranih petlji */
+		private int loops;
+
+		/**
+		 * Članska varijabla koja predstavlja najveću dubinu stoga nekog izraza
+		 * (svako mjesto stoga dobiva jedan omotač za cijelo izvođenje)
+		 */
+		private int stackDepth;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param className
+		 *            ime generiranog razreda
+		 */
+		public SourceGenerator(String className) {
+			this.className = className;
+		}
+
+		@Override
+		public void visitTextNode(TextNode node) {
+			String constant = constant(node.getBytes(), "byte[]");
+			line("out.write(" + constant + ", 0, " + constant + ".length);");
+		}
+
+		@Override
+		public void visitForLoopNode(ForLoopNode node) {
+			int loop = loops++;
+			String variable = "l" + loop;
+			String end = "n" + loop;
+			String step = "s" + loop;
+
+			line("ValueWrapper " + variable + " = new ValueWrapper(" + value(node.getStartExpression()) + ");");
+			line(slot(node.getVariable()) + " = " + variable + ";");
+			Element stepElement = node.getStepExpression();
+			line("ValueWrapper " + step + " = new ValueWrapper(" + (stepElement == null ? "0" : value(stepElement)) + ");");
+			line("ValueWrapper " + end + " = new ValueWrapper(" + value(node.getEndExpression()) + ");");
+			line("for (; " + variable + ".numCompare(" + end + ") <= 0; " + variable + ".add(" + step + ")) {");
+			indent += "\t";
+			line("context.checkCancelled();");
+			visitChildren(node);
+			indent = indent.substring(1);
+			line("}");
+		}
+
+		@Override
+		public void visitEchoNode(EchoNode node) {
+			StringBuilder code = new StringBuilder();
+			int depth = 0;
+			int maxDepth = 0;
+			Element previous = null;
+			int previousStart = 0;
+
+			for (Element element : node.getElements()) {
+				String top = "e" + (depth - 1);
+				String below = "e" + (depth - 2);
+				if (element instanceof ElementFunction || element instanceof ElementOperator) {
+					String name = element.asText();
+					switch (name) {
+					case "+":
+					case "-":
+					case "*":
+					case "/":
+						require(depth, 2, name);
+						code.append(top).append('.').append(arithmetic(name)).append('(').append(below).append("); ")
+								.append(below).append(".set(").append(top).append("); ");
+						depth--;
+						break;
+					case "@sin":
+						require(depth, 1, name);
+						code.append(top).append(".setValue(Math.sin(Double.parseDouble(").append(top)
+								.append(".toString()))); ");
+						break;
+					case "@decfmt":
+						require(depth, 2, name);
+						ThreadLocalDecimalFormat format = boundFormat(previous);
+						if (format != null) {
+							// konstantni uzorak se ne stavlja na stog, već se format veže uz konstantu
+							code.setLength(previousStart);
+							code.append(below).append(".setValue(")
+									.append(constant(format, ThreadLocalDecimalFormat.class.getName()))
+									.append(".format(").append(below).append(".getValue())); ");
+							depth--;
+							break;
+						}
+						code.append(below).append(".setValue(").append(ThreadLocalDecimalFormat.class.getName())
+								.append(".format(").append(top).append(".toString(), ").append(below)
+								.append(".getValue())); ");
+						depth--;
+						break;
+					case "@dup":
+						require(depth, 1, name);
+						code.append('e').append(depth).append(".set(").append(top).append("); ");
+						depth++;
+						break;
+					case "@swap":
+						require(depth, 2, name);
+						code.append("{ ValueWrapper swap = ").append(top).append("; ").append(top).append(" = ")
+								.append(below).append("; ").append(below).append(" = swap; } ");
+						break;
+					case "@setMimeType":
+						require(depth, 1, name);
+						code.append("context.setMimeType((String) ").append(top).append(".getValue()); ");
+						depth--;
+						break;
+					case "@paramGet":
+					case "@pparamGet":
+					case "@tparamGet":
+						require(depth, 2, name);
+						code.append("{ Object defaultValue = ").append(top).append(".getValue(); String value = ")
+								.append("context.").append(accessor(name)).append("((String) ").append(below)
+								.append(".getValue()); ").append(below)
+								.append(".setValue(value == null ? defaultValue : value); } ");
+						depth--;
+						break;
+					case "@pparamSet":
+					case "@tparamSet":
+						require(depth, 2, name);
+						code.append("context.").append(accessor(name)).append("((String) ").append(top)
+								.append(".getValue(), ").append(below).append(".getValue().toString()); ");
+						depth -= 2;
+						break;
+					case "@pparamDel":
+					case "@tparamDel":
+						require(depth, 1, name);
+						code.append("context.").append(accessor(name)).append("((String) ").append(top)
+								.append(".getValue()); ");
+						depth--;
+						break;
+					default:
+						throw new ScriptCompilationException(String.format("Operacija '%s' nije podržana", name));
+					}
+				} else {
+					previousStart = code.length();
+					code.append('e').append(depth).append(".set(").append(value(element)).append("); ");
+					depth++;
+				}
+				maxDepth = Math.max(maxDepth, depth);
+				previous = element;
+			}
+
+			if (depth == 0 && code.length() == 0) {
+				return;
+			}
+
+			stackDepth = Math.max(stackDepth, maxDepth);
+			line("{");
+			indent += "\t";
+			line(code.toString().trim());
+			if (depth > 0) {
+				StringBuilder output = new StringBuilder();
+				for (int i = 0; i < depth; i++) {
+					if (i > 0) {
+						output.append("out.write(' '); ");
+					}
+					output.append('e').append(i).append(".writeTo(out); ");
+				}
+				line(output.toString().trim());
+			}
+			indent = indent.substring(1);
+			line("}");
+		}
+
+		@Override
+		public void visitDocumentNode(DocumentNode node) {
+			variableCount = node.getVariableCount();
+			visitChildren(node);
+		}
+
+		/**
+		 * Metoda koja stvara izvorni kod cijelog razreda skripte
+		 *
+		 * @return izvorni kod razreda
+		 */
+		public String toSource() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("package ").append(GENERATED_PACKAGE).append(";\n\n");
+			sb.append("import ").append(CompiledScript.class.getName()).append(";\n");
+			sb.append("import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;\n");
+			sb.append("import ").append(RequestContext.class.getName()).append(";\n");
+			sb.append("import ").append(ScriptOutput.class.getName()).append(";\n\n");
+			sb.append("public final class ").append(className).append(" extends CompiledScript {\n\n");
+			for (int i = 0; i < constants.size(); i++) {
+				sb.append("\tprivate final ").append(constantTypes.get(i)).append(" c").append(i).append(";\n");
+			}
+			sb.append("\n\tpublic ").append(className).append("(Object[] constants, boolean bufferedOutput) {\n");
+			sb.append("\t\tsuper(constants, bufferedOutput);\n");
+			for (int i = 0; i < constants.size(); i++) {
+				sb.append("\t\tc").append(i).append(" = (").append(constantTypes.get(i)).append(") constants[")
+						.append(i).append("];\n");
+			}
+			sb.append("\t}\n\n");
+			sb.append("\t@Override\n");
+			sb.append("\tprotected void render(RequestContext context, ScriptOutput out) {\n");
+			for (int i = 0; i < variableCount; i++) {
+				sb.append("\t\tValueWrapper v").append(i).append(" = null;\n");
+			}
+			// operacije mijenjaju omotače stoga i kopiraju vrijednosti, pa se omotači nikad ne dijele
+			for (int i = 0; i < stackDepth; i++) {
+				sb.append("\t\tValueWrapper e").append(i).append(" = new ValueWrapper((Object) null);\n");
+			}
+			sb.append(body);
+			sb.append("\t}\n}\n");
+			return sb.toString();
+		}
+
+		/**
+		 * Pomoćna metoda koja generira kod svih čvorova djece čvora
+		 * <b>node</b>. Prije svakog čvora provjerava se je li zahtjev otkazan,
+		 * a nakon svakog čvora šalje se pun spremnik, jednako kao u
+		 * {@link SmartScriptEngine}
+		 *
+		 * @param node
+		 *            čvor čija se djeca obilaze
+		 */
+		private void visitChildren(Node node) {
+			for (Object obj : node) {
+				line("context.checkCancelled();");
+				((Node) obj).accept(this);
+				line("out.checkpoint();");
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja generira izraz koji daje omotač s vrijednošću
+		 * elementa <b>element</b>. Omotač se uvijek kopira prije stavljanja na
+		 * stog, pa se brojevi nikad ne omataju u {@link Integer} ili
+		 * {@link Double}
+		 *
+		 * @param element
+		 *            varijabla ili konstanta skripte
+		 * @return izraz omotača vrijednosti elementa
+		 * @throws ScriptCompilationException
+		 *             ukoliko element nema vrijednost
+		 */
+		private String value(Element element) {
+			if (element instanceof ElementVariable) {
+				ElementVariable variable = (ElementVariable) element;
+				return "variable(" + slot(variable) + ", " + constant(variable.getName(), "String") + ")";
+			} else if (element instanceof ElementConstantInteger) {
+				return constant(new ValueWrapper(((ElementConstantInteger) element).getValue()), "ValueWrapper");
+			} else if (element instanceof ElementConstantDouble) {
+				return constant(new ValueWrapper(((ElementConstantDouble) element).getValue()), "ValueWrapper");
+			} else if (element instanceof ElementString) {
+				return constant(new ValueWrapper(((ElementString) element).getValue()), "ValueWrapper");
+			}
+
+			throw new ScriptCompilationException(String.format("Ne mogu izvaditi vrijednost iz '%s'", element));
+		}
+
+		/**
+		 * Pomoćna metoda koja dohvaća lokalnu varijablu varijable skripte
+		 * <b>variable</b>
+		 *
+		 * @param variable
+		 *            varijabla skripte
+		 * @return ime lokalne varijable
+		 * @throws ScriptCompilationException
+		 *             ukoliko parser varijabli nije dodijelio mjesto
+		 */
+		private String slot(ElementVariable variable) {
+			if (variable.getSlot() < 0 || variable.getSlot() >= variableCount) {
+				throw new ScriptCompilationException(
+						String.format("Varijabla '%s' nema mjesto u okviru izvođenja", variable.getName()));
+			}
+			return "v" + variable.getSlot();
+		}
+
+		/**
+		 * Pomoćna metoda koja dodaje konstantu <b>value</b> tipa <b>type</b>
+		 *
+		 * @param value
+		 *            vrijednost konstante
+		 * @param type
+		 *            tip konstante u generiranom kodu
+		 * @return ime polja konstante
+		 */
+		private String constant(Object value, String type) {
+			constants.add(value);
+			constantTypes.add(type);
+			return "c" + (constants.size() - 1);
+		}
+
+		/**
+		 * Pomoćna metoda koja stvara format za operaciju "@decfmt" kojoj
+		 * neposredno prethodi konstantni uzorak <b>previous</b>
+		 *
+		 * @param previous
+		 *            element izraza koji prethodi operaciji
+		 * @return format vezan uz uzorak ili <code>null</code> ukoliko
+		 *         <b>previous</b> nije konstantni uzorak ili uzorak nije
+		 *         ispravan (pa se pogreška javlja tek pri izvođenju)
+		 */
+		private static ThreadLocalDecimalFormat boundFormat(Element previous) {
+			if (!(previous instanceof ElementString)) {
+				return null;
+			}
+			try {
+				return new ThreadLocalDecimalFormat(((ElementString) previous).getValue());
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja dodaje jednu liniju u tijelo metode render
+		 *
+		 * @param code
+		 *            kod koji se dodaje
+		 */
+		private void line(String code) {
+			body.append(indent).append(code).append('\n');
+		}
+
+		/**
+		 * Pomoćna metoda koja provjerava ima li na stogu dovoljno elemenata
+		 * za operaciju <b>name</b>
+		 *
+		 * @param depth
+		 *            broj elemenata na stogu
+		 * @param required
+		 *            broj elemenata koje operacija skida sa stoga
+		 * @param name
+		 *            ime operacije
+		 * @throws ScriptCompilationException
+		 *             ukoliko elemenata nema dovoljno
+		 */
+		private static void require(int depth, int required, String name) {
+			if (depth < required) {
+				throw new ScriptCompilationException(
+						String.format("Operacija '%s' traži %d elementa na stogu, a ima ih %d", name, required, depth));
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja dohvaća metodu razreda {@link ValueWrapper} koja
+		 * izvodi aritmetičku operaciju <b>operator</b>
+		 *
+		 * @param operator
+		 *            aritmetički operator
+		 * @return ime metode
+		 */
+		private static String arithmetic(String operator) {
+			switch (operator) {
+			case "+":
+				return "add";
+			case "-":
+				return "subtract";
+			case "*":
+				return "multiply";
+			default:
+				return "divide";
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja dohvaća metodu razreda {@link RequestContext}
+		 * kojom se izvodi funkcija parametara <b>function</b>
+		 *
+		 * @param function
+		 *            funkcija parametara (npr. "@pparamSet")
+		 * @return ime metode
+		 */
+		private static String accessor(String function) {
+			switch (function) {
+			case "@paramGet":
+				return "getParameter";
+			case "@pparamGet":
+				return "getPersistentParameter";
+			case "@tparamGet":
+				return "getTemporaryParameter";
+			case "@pparamSet":
+				return "setPersistentParameter";
+			case "@tparamSet":
+				return "setTemporaryParameter";
+			case "@pparamDel":
+				return "removePersistentParameter";
+			default:
+				return "removeTemporaryParameter";
+			}
+		}
+	}
+}
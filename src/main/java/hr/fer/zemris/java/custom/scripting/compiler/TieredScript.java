@@ -0,0 +1,133 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledTemplate;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.metrics.Counter;
+
+/**
+ * Razred koji predstavlja skriptu koja se izvodi u dvije razine. Skripta se
+ * isprva interpretira primjerkom razreda {@link CompiledTemplate}, a nakon
+ * zadanog broja izvođenja prevodi se u pozadini prevoditeljem
+ * {@link SmartScriptCompiler}. Od trenutka kada je prevođenje gotovo sva
+ * izvođenja koriste prevedenu skriptu. Skripta koja se ne može prevesti
+ * nastavlja se interpretirati, a neuspjeh se bilježi u predanom brojaču.
+ * <p>
+ * Primjerak razreda smije istovremeno izvoditi više dretvi.
+ * </p>
+ *
+ * @see SmartScriptCompiler
+ * @see CompiledScript
+ *
+ * @author Davor Češljaš
+ */
+public class TieredScript {
+
+	/** Članska varijabla koja predstavlja predložak koji interpretira skriptu */
+	private final CompiledTemplate template;
+
+	/**
+	 * Članska varijabla koja predstavlja broj izvođenja nakon kojeg se
+	 * skripta prevodi (0 ukoliko se skripta nikad ne prevodi)
+	 */
+	private final int compileThreshold;
+
+	/** Članska varijabla koja predstavlja prevoditelj skripti */
+	private final SmartScriptCompiler compiler;
+
+	/** Članska varijabla koja predstavlja izvršitelja prevođenja */
+	private final Executor executor;
+
+	/**
+	 * Članska varijabla koja predstavlja brojač skripti koje se nisu mogle
+	 * prevesti
+	 */
+	private final Counter compileFailures;
+
+	/** Članska varijabla koja predstavlja broj interpretiranih izvođenja */
+	private final AtomicInteger executions = new AtomicInteger();
+
+	/**
+	 * Članska varijabla koja predstavlja prevedenu skriptu ili
+	 * <code>null</code> dok skripta nije prevedena
+	 */
+	private volatile CompiledScript compiled;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param template
+	 *            predložak koji interpretira skriptu (prevedena skripta
+	 *            rezultat šalje jednako kao on, vidi
+	 *            {@link CompiledTemplate#getStreamThreshold()})
+	 * @param compileThreshold
+	 *            broj izvođenja nakon kojeg se skripta prevodi (0 ukoliko se
+	 *            skripta nikad ne prevodi)
+	 * @param compiler
+	 *            prevoditelj skripti
+	 * @param executor
+	 *            izvršitelj u kojem se skripta prevodi
+	 * @param compileFailures
+	 *            brojač koji se uvećava ukoliko se skripta ne može prevesti
+	 * @throws NullPointerException
+	 *             ukoliko je neki od predanih parametara <code>null</code>
+	 */
+	public TieredScript(CompiledTemplate template, int compileThreshold, SmartScriptCompiler compiler,
+			Executor executor, Counter compileFailures) {
+		this.template = Objects.requireNonNull(template, "Predložak ne smije biti null");
+		this.compileThreshold = compileThreshold;
+		this.compiler = Objects.requireNonNull(compiler, "Prevoditelj ne smije biti null");
+		this.executor = Objects.requireNonNull(executor, "Izvršitelj ne smije biti null");
+		this.compileFailures = Objects.requireNonNull(compileFailures, "Brojač ne smije biti null");
+	}
+
+	/**
+	 * Metoda koja izvodi skriptu i rezultat piše u predani primjerak razreda
+	 * {@link RequestContext} <b>requestContext</b>
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva u koji se piše rezultat
+	 */
+	public void execute(RequestContext requestContext) {
+		CompiledScript compiled = this.compiled;
+		if (compiled != null) {
+			compiled.execute(requestContext, template.getStreamThreshold());
+			return;
+		}
+
+		if (compileThreshold > 0 && executions.incrementAndGet() == compileThreshold) {
+			try {
+				executor.execute(this::compile);
+			} catch (RejectedExecutionException e) {
+				// poslužitelj se zaustavlja, skripta ostaje interpretirana
+			}
+		}
+		template.render(requestContext);
+	}
+
+	/**
+	 * Metoda koja ispituje je li skripta prevedena
+	 *
+	 * @return <code>true</code> ukoliko je skripta prevedena, inače
+	 *         <code>false</code>
+	 */
+	public boolean isCompiled() {
+		return compiled != null;
+	}
+
+	/**
+	 * Pomoćna metoda koja prevodi skriptu. Neuspjeh se bilježi brojačem
+	 * {@link #compileFailures}, a skripta ostaje interpretirana
+	 */
+	private void compile() {
+		try {
+			compiled = compiler.compile(template.getDocument());
+		} catch (RuntimeException e) {
+			compileFailures.increment();
+		}
+	}
+}
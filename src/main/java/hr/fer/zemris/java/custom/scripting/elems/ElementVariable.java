@@ -13,6 +13,12 @@ public class ElementVariable  extends Element{
 	
 	/** Naziv varijable */
 	private String name;
+
+	/**
+	 * Redni broj mjesta varijable u okviru izvođenja skripte (ili -1 dok ga
+	 * parser ne postavi)
+	 */
+	private int slot = -1;
 	
 	/**
 	 * Konstruktor koji inicijalizira naziv varijable
@@ -33,6 +39,28 @@ public class ElementVariable  extends Element{
 		return name;
 	}
 
+	/**
+	 * Dohvaća redni broj mjesta varijable u okviru izvođenja skripte. Sve
+	 * pojave iste varijable u dokumentu imaju isto mjesto
+	 *
+	 * @return redni broj mjesta varijable ili -1 ukoliko mjesto nije
+	 *         postavljeno
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Postavlja redni broj mjesta varijable u okviru izvođenja skripte. Mjesto
+	 * postavlja parser prilikom izgradnje stabla
+	 *
+	 * @param slot
+	 *            redni broj mjesta varijable
+	 */
+	public void setSlot(int slot) {
+		this.slot = slot;
+	}
+
 	@Override
 	public String asText() {
 		return name;
@@ -0,0 +1,162 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Objects;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Razred koji predstavlja isparsiranu skriptu spremnu za izvođenje. Primjerak
+ * razreda je nepromjenjiv: sadrži samo stablo dokumenta (nastalo parsiranjem
+ * primjerkom razreda {@link SmartScriptParser}) i veličinu spremnika nakon
+ * koje se rezultat šalje u dijelovima. Zato ga smije istovremeno izvoditi
+ * više dretvi nad različitim primjercima razreda {@link RequestContext}, a
+ * jedan primjerak po skripti dovoljno je čuvati u priručnoj memoriji.
+ * <p>
+ * Sve promjenjivo stanje jednog izvođenja (vrijednosti varijabli, stog izraza
+ * i izlazni tok) nalazi se u okviru izvođenja. Svaka dretva za svoja
+ * izvođenja ponovno koristi isti okvir, pa izvođenje ne stvara nove okvire.
+ * </p>
+ *
+ * @see SmartScriptEngine
+ * @see ScriptOutput
+ *
+ * @author Davor Češljaš
+ */
+public final class CompiledTemplate {
+
+	/** Članska varijabla koja predstavlja vršni čvor stabla dokumenta */
+	private final DocumentNode document;
+
+	/**
+	 * Članska varijabla koja predstavlja veličinu spremnika nakon koje se
+	 * rezultat šalje klijentu u dijelovima (vidi {@link ScriptOutput})
+	 */
+	private final int streamThreshold;
+
+	/**
+	 * Članska varijabla koja predstavlja okvir izvođenja svake dretve. Okvir
+	 * ne pripada stanju predloška, već samo ubrzava iduće izvođenje iste
+	 * dretve
+	 */
+	private final ThreadLocal<ScriptFrame> frames;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda koji rezultat
+	 * šalje odjednom
+	 *
+	 * @param document
+	 *            vršni čvor stabla dokumenta
+	 * @throws NullPointerException
+	 *             ukoliko je <b>document</b> <code>null</code>
+	 */
+	public CompiledTemplate(DocumentNode document) {
+		this(document, ScriptOutput.BUFFERED);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda koji rezultat
+	 * šalje u dijelovima čim ga se nakupi barem <b>streamThreshold</b> okteta.
+	 * Dokument koji mijenja zaglavlje odgovora (vidi
+	 * {@link DocumentNode#isBufferedOutput()}) uvijek se šalje odjednom
+	 *
+	 * @param document
+	 *            vršni čvor stabla dokumenta
+	 * @param streamThreshold
+	 *            veličina spremnika nakon koje se rezultat šalje klijentu ili
+	 *            {@link ScriptOutput#BUFFERED} ukoliko se rezultat šalje
+	 *            odjednom
+	 * @throws NullPointerException
+	 *             ukoliko je <b>document</b> <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             ukoliko je <b>streamThreshold</b> negativan
+	 */
+	public CompiledTemplate(DocumentNode document, int streamThreshold) {
+		this.document = Objects.requireNonNull(document, "Dokument ne smije biti null");
+		if (streamThreshold < 0) {
+			throw new IllegalArgumentException("Veličina spremnika ne smije biti negativna: " + streamThreshold);
+		}
+		this.streamThreshold = document.isBufferedOutput() ? ScriptOutput.BUFFERED : streamThreshold;
+
+		this.frames = ThreadLocal.withInitial(this::newFrame);
+	}
+
+	/**
+	 * Metoda koja izvodi skriptu i rezultat piše u predani primjerak razreda
+	 * {@link RequestContext} <b>requestContext</b>
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva u koji se piše rezultat
+	 * @throws NullPointerException
+	 *             ukoliko je <b>requestContext</b> <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             ukoliko izvođenje skripte nije uspješno završilo
+	 */
+	public void render(RequestContext requestContext) {
+		ScriptFrame frame = frames.get();
+		if (frame.isInUse()) {
+			// predložak se izvodi unutar vlastitog izvođenja na istoj dretvi
+			frame = newFrame();
+		}
+		render(requestContext, frame);
+	}
+
+	/**
+	 * Metoda koja izvodi skriptu u okviru <b>frame</b> i rezultat piše u
+	 * predani primjerak razreda {@link RequestContext} <b>requestContext</b>
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva u koji se piše rezultat
+	 * @param frame
+	 *            okvir izvođenja koji se trenutno ne koristi
+	 * @throws NullPointerException
+	 *             ukoliko je <b>requestContext</b> <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             ukoliko izvođenje skripte nije uspješno završilo
+	 */
+	void render(RequestContext requestContext, ScriptFrame frame) {
+		Objects.requireNonNull(requestContext, "Kontekst zahtjeva ne smije biti null");
+
+		ScriptOutput output = new ScriptOutput(requestContext, streamThreshold);
+		boolean completed = false;
+		try {
+			frame.execute(document, requestContext, output);
+			completed = true;
+		} finally {
+			if (completed) {
+				output.finish();
+			} else {
+				output.close();
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja stvara novi okvir izvođenja ovog predloška
+	 *
+	 * @return novi okvir izvođenja
+	 */
+	ScriptFrame newFrame() {
+		return new ScriptFrame(document.getVariableCount());
+	}
+
+	/**
+	 * Metoda koja dohvaća vršni čvor stabla dokumenta
+	 *
+	 * @return vršni čvor stabla dokumenta
+	 */
+	public DocumentNode getDocument() {
+		return document;
+	}
+
+	/**
+	 * Metoda koja dohvaća veličinu spremnika nakon koje se rezultat šalje
+	 * klijentu u dijelovima
+	 *
+	 * @return veličinu spremnika ili {@link ScriptOutput#BUFFERED}
+	 */
+	public int getStreamThreshold() {
+		return streamThreshold;
+	}
+}
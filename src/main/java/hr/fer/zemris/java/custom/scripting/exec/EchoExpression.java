@@ -0,0 +1,201 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Objects;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Razred koji predstavlja razriješeni izraz jednog čvora {@link EchoNode}.
+ * Svaki element izraza razrješava se samo jednom, pri stvaranju primjerka
+ * razreda: operatori i funkcije postaju reference na operacije iz
+ * {@link StackOperationProvider}, a konstante vrijednosti koje se stavljaju
+ * na stog. Izvođenje izraza je tako samo prolazak kroz polja, bez
+ * dohvaćanja operacija po imenu, a nepodržane funkcije otkrivaju se već pri
+ * parsiranju.
+ * <p>
+ * Primjerak razreda je nepromjenjiv, pa ga smije istovremeno izvoditi više
+ * dretvi.
+ * </p>
+ *
+ * @see EchoNode
+ * @see SmartScriptEngine
+ *
+ * @author Davor Češljaš
+ */
+public class EchoExpression {
+
+	/**
+	 * Konstanta koja predstavlja naziv operacije čiji se konstantni uzorak
+	 * razrješava pri stvaranju izraza
+	 */
+	private static final String DECIMAL_FORMAT = "@decfmt";
+
+	/**
+	 * Članska varijabla koja predstavlja razriješene operacije (ili
+	 * <code>null</code> ukoliko element nije operacija)
+	 */
+	private final IStackOperation[] operations;
+
+	/**
+	 * Članska varijabla koja predstavlja mjesta varijabli u okviru izvođenja
+	 * (ili -1 ukoliko element nije varijabla)
+	 */
+	private final int[] slots;
+
+	/**
+	 * Članska varijabla koja predstavlja imena varijabli (koriste se samo za
+	 * poruku o nedefiniranoj varijabli)
+	 */
+	private final String[] names;
+
+	/**
+	 * Članska varijabla koja predstavlja vrijednosti konstanti (ili
+	 * <code>null</code> ukoliko element nije konstanta). Stog kopira
+	 * vrijednosti u svoje omotače, jer operacije mijenjaju omotače na stogu
+	 */
+	private final ValueWrapper[] constants;
+
+	/**
+	 * Članska varijabla koja indicira mijenja li neka od operacija izraza
+	 * zaglavlje odgovora (vidi {@link StackOperationProvider#changesHeaders(String)})
+	 */
+	private boolean changesHeaders;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda i razrješava sve
+	 * predane elemente <b>elements</b>
+	 *
+	 * @param elements
+	 *            elementi čvora {@link EchoNode}
+	 * @throws UnsupportedOperationException
+	 *             ukoliko neki od operatora ili funkcija nije podržan
+	 * @throws IllegalArgumentException
+	 *             ukoliko se iz nekog elementa ne može izvaditi vrijednost
+	 */
+	public EchoExpression(Element[] elements) {
+		Objects.requireNonNull(elements, "Elementi izraza ne smiju biti null");
+
+		StackOperationProvider opProvider = StackOperationProvider.getInstance();
+		operations = new IStackOperation[elements.length];
+		slots = new int[elements.length];
+		names = new String[elements.length];
+		constants = new ValueWrapper[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			Element element = elements[i];
+			slots[i] = -1;
+			if (element instanceof ElementFunction || element instanceof ElementOperator) {
+				operations[i] = opProvider.getOperation(element.asText());
+				changesHeaders |= opProvider.changesHeaders(element.asText());
+				if (DECIMAL_FORMAT.equals(element.asText()) && i > 0 && elements[i - 1] instanceof ElementString) {
+					operations[i] = bindDecimalFormat(opProvider, ((ElementString) elements[i - 1]).getValue(),
+							operations[i]);
+				}
+			} else if (element instanceof ElementVariable) {
+				slots[i] = ((ElementVariable) element).getSlot();
+				names[i] = ((ElementVariable) element).getName();
+				if (slots[i] < 0) {
+					throw new IllegalArgumentException(
+							String.format("Varijabla '%s' nema mjesto u okviru izvođenja", names[i]));
+				}
+			} else if (element instanceof ElementConstantInteger) {
+				constants[i] = new ValueWrapper(((ElementConstantInteger) element).getValue());
+			} else if (element instanceof ElementConstantDouble) {
+				constants[i] = new ValueWrapper(((ElementConstantDouble) element).getValue());
+			} else if (element instanceof ElementString) {
+				constants[i] = new ValueWrapper(((ElementString) element).getValue());
+			} else {
+				throw new IllegalArgumentException(
+						String.format("Ne mogu izvaditi vrijednost iz '%s'", element.toString()));
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja izvodi izraz nad stogom <b>echoStack</b>
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva kojim se služe operacije
+	 * @param frame
+	 *            okvir izvođenja s trenutnim vrijednostima varijabli
+	 * @param echoStack
+	 *            stog na koji se stavljaju vrijednosti i s kojeg operacije
+	 *            uzimaju argumente
+	 * @throws IllegalArgumentException
+	 *             ukoliko varijabla iz izraza još nije postavljena
+	 */
+	public void evaluate(RequestContext requestContext, ValueWrapper[] frame, ValueStack echoStack) {
+		for (int i = 0; i < operations.length; i++) {
+			IStackOperation operation = operations[i];
+			if (operation != null) {
+				operation.calculate(requestContext, echoStack);
+			} else if (slots[i] >= 0) {
+				echoStack.push(variable(frame[slots[i]], names[i]));
+			} else {
+				echoStack.push(constants[i]);
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja operaciju "@decfmt" kojoj neposredno prethodi
+	 * konstantni uzorak <b>pattern</b> veže uz taj uzorak, kako se format ne
+	 * bi tražio pri svakom izvođenju
+	 *
+	 * @param opProvider
+	 *            pružatelj operacija
+	 * @param pattern
+	 *            konstantni uzorak formata
+	 * @param operation
+	 *            općenita operacija "@decfmt"
+	 * @return vezanu operaciju ili <b>operation</b> ukoliko uzorak nije
+	 *         ispravan (pa se pogreška javlja tek pri izvođenju)
+	 */
+	private static IStackOperation bindDecimalFormat(StackOperationProvider opProvider, String pattern,
+			IStackOperation operation) {
+		try {
+			return opProvider.decimalFormat(pattern);
+		} catch (IllegalArgumentException e) {
+			return operation;
+		}
+	}
+
+	/**
+	 * Metoda koja ispituje mijenja li izraz zaglavlje odgovora (npr.
+	 * operacijom "@setMimeType")
+	 *
+	 * @return <code>true</code> ukoliko izraz mijenja zaglavlje odgovora,
+	 *         inače <code>false</code>
+	 */
+	public boolean changesHeaders() {
+		return changesHeaders;
+	}
+
+	/**
+	 * Metoda koja provjerava je li varijabla <b>name</b> postavljena prije
+	 * čitanja. Parser odbija varijable koje nije definirala niti jedna
+	 * prethodna for petlja, pa varijabla može biti nepostavljena samo ukoliko
+	 * se petlja koja ju definira nikad nije izvela
+	 *
+	 * @param value
+	 *            vrijednost s mjesta varijable u okviru izvođenja
+	 * @param name
+	 *            ime varijable
+	 * @return <b>value</b>
+	 * @throws IllegalArgumentException
+	 *             ukoliko varijabla nije postavljena
+	 */
+	public static ValueWrapper variable(ValueWrapper value, String name) {
+		if (value == null) {
+			throw new IllegalArgumentException(String.format("Varijabla '%s' nije postavljena", name));
+		}
+		return value;
+	}
+}
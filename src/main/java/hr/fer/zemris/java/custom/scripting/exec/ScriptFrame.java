@@ -0,0 +1,202 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Arrays;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestCancelledException;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Razred koji predstavlja okvir jednog izvođenja primjerka razreda
+ * {@link CompiledTemplate}. Okvir sadrži sve promjenjivo stanje izvođenja:
+ * vrijednosti varijabli, stog izraza, kontekst zahtjeva i izlazni tok.
+ * Okvir je ujedno i posjetitelj ({@link INodeVisitor}) koji obilazi stablo
+ * dokumenta.
+ * <p>
+ * Okvir nakon izvođenja ostaje prazan i spreman za iduće izvođenje istog
+ * predloška, pa ga {@link CompiledTemplate} čuva za svaku dretvu. Primjerak
+ * razreda smije istovremeno koristiti samo jedna dretva.
+ * </p>
+ *
+ * @see CompiledTemplate
+ *
+ * @author Davor Češljaš
+ */
+final class ScriptFrame implements INodeVisitor {
+
+	/**
+	 * Članska varijabla koja predstavlja trenutne vrijednosti svih varijabli,
+	 * a indeks je mjesto koje je varijabli dodijelio parser (vidi
+	 * {@link ElementVariable#getSlot()})
+	 */
+	private final ValueWrapper[] variables;
+
+	/**
+	 * Članska varijabla koja predstavlja stog nad kojim se izvode izrazi svih
+	 * čvorova {@link EchoNode}
+	 */
+	private final ValueStack echoStack = new ValueStack();
+
+	/**
+	 * Članska varijabla koja predstavlja kontekst zahtjeva trenutnog izvođenja
+	 * ili <code>null</code> ukoliko se okvir ne koristi
+	 */
+	private RequestContext requestContext;
+
+	/**
+	 * Članska varijabla koja predstavlja izlazni tok trenutnog izvođenja ili
+	 * <code>null</code> ukoliko se okvir ne koristi
+	 */
+	private ScriptOutput output;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param variableCount
+	 *            broj varijabli dokumenta (vidi
+	 *            {@link DocumentNode#getVariableCount()})
+	 */
+	ScriptFrame(int variableCount) {
+		variables = new ValueWrapper[variableCount];
+	}
+
+	/**
+	 * Metoda koja ispituje koristi li se okvir (tj. traje li izvođenje)
+	 *
+	 * @return <code>true</code> ukoliko se okvir koristi, inače
+	 *         <code>false</code>
+	 */
+	boolean isInUse() {
+		return requestContext != null;
+	}
+
+	/**
+	 * Metoda koja izvodi dokument <b>document</b> i rezultat piše u izlazni
+	 * tok <b>output</b>. Nakon izvođenja (uspješnog ili ne) okvir se prazni
+	 *
+	 * @param document
+	 *            vršni čvor stabla dokumenta
+	 * @param requestContext
+	 *            kontekst zahtjeva
+	 * @param output
+	 *            izlazni tok u koji se piše rezultat
+	 */
+	void execute(DocumentNode document, RequestContext requestContext, ScriptOutput output) {
+		this.requestContext = requestContext;
+		this.output = output;
+		try {
+			document.accept(this);
+		} finally {
+			Arrays.fill(variables, null);
+			echoStack.clear();
+			this.requestContext = null;
+			this.output = null;
+		}
+	}
+
+	@Override
+	public void visitTextNode(TextNode node) {
+		// tekst je kodiran pri parsiranju, pa se okteti samo kopiraju
+		byte[] bytes = node.getBytes();
+		output.write(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void visitForLoopNode(ForLoopNode node) {
+		ValueWrapper variableValue = new ValueWrapper(extractElementValue(node.getStartExpression()));
+		variables[node.getVariable().getSlot()] = variableValue;
+
+		// korak i granica su omotači, pa se u petlji ne stvara niti jedan objekt
+		Element step = node.getStepExpression();
+		ValueWrapper stepValue = new ValueWrapper(step == null ? Integer.valueOf(0) : extractElementValue(step));
+		ValueWrapper endValue = new ValueWrapper(extractElementValue(node.getEndExpression()));
+
+		for (; variableValue.numCompare(endValue) <= 0; variableValue.add(stepValue)) {
+			requestContext.checkCancelled();
+			visitChildren(node);
+		}
+	}
+
+	@Override
+	public void visitEchoNode(EchoNode node) {
+		node.getExpression().evaluate(requestContext, variables, echoStack);
+
+		// vrijednosti se zapisuju od dna prema vrhu izravno u spremnik
+		echoStack.drainTo(output);
+	}
+
+	@Override
+	public void visitDocumentNode(DocumentNode node) {
+		visitChildren(node);
+	}
+
+	/**
+	 * Pomoćna metoda koja ispituje predani primjerak razreda {@link Element}
+	 * <b>element</b> i vadi vrijednost na neka od 4 načina, a ovisno kojem
+	 * izvedenom razredu pripada <b>element</b>:
+	 * <ul>
+	 * <li>{@link ElementVariable} - vraća vrijednost s mjesta varijable u
+	 * {@link #variables}</li>
+	 * <li>{@link ElementConstantInteger} - vraća {@link Integer}
+	 * vrijednosti</li>
+	 * <li>{@link ElementConstantDouble} - vraća {@link Double}
+	 * vrijednost</li>
+	 * <li>{@link ElementString} - vraća {@link String} vrijednost</li>
+	 * </ul>
+	 *
+	 * @param element
+	 *            primjerak razreda {@link Element} koji se isputuje
+	 * @return neku od gore navedenih vrijednosti
+	 *
+	 * @throws IllegalArgumentException
+	 *             ako primjerak razreda {@link Element} nije nadrazred nekim
+	 *             od gore navedenih
+	 */
+	private Object extractElementValue(Element element) {
+		Object value;
+		if (element instanceof ElementVariable) {
+			ElementVariable variable = (ElementVariable) element;
+			value = EchoExpression.variable(variables[variable.getSlot()], variable.getName()).getValue();
+		} else if (element instanceof ElementConstantInteger) {
+			value = ((ElementConstantInteger) element).getValue();
+		} else if (element instanceof ElementConstantDouble) {
+			value = ((ElementConstantDouble) element).getValue();
+		} else if (element instanceof ElementString) {
+			value = ((ElementString) element).getValue();
+		} else {
+			throw new IllegalArgumentException(
+					String.format("Ne mogu izvaditi vrijednost iz '%s'", element.toString()));
+		}
+
+		return value;
+	}
+
+	/**
+	 * Pomoćna metoda koja poziva metodu {@link Node#accept(INodeVisitor)} nad
+	 * svom djecom primjerka razreda {@link Node}. Prije svakog čvora
+	 * provjerava se je li zahtjev otkazan, pa se izvođenje skripte kojoj je
+	 * istekao rok prekida iznimkom {@link RequestCancelledException}. Nakon
+	 * svakog čvora rezultat se, ukoliko je spremnik pun, šalje klijentu (vidi
+	 * {@link ScriptOutput#checkpoint()})
+	 *
+	 * @param node
+	 *            primjerak razreda {@link Node} čija se djeca obilaze
+	 */
+	private void visitChildren(Node node) {
+		for (Object obj : node) {
+			requestContext.checkCancelled();
+			((Node) obj).accept(this);
+			output.checkpoint();
+		}
+	}
+}
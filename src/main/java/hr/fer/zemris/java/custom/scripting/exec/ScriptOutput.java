@@ -0,0 +1,129 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja izlazni tok u koji skripta zapisuje svoj rezultat.
+ * Rezultat se zapisuje u spremnik iz bazena
+ * {@link hr.fer.zemris.java.webserver.buffer.BufferPool}, a u primjerak
+ * razreda {@link RequestContext} šalje se na jedan od dva načina:
+ * <ul>
+ * <li>odjednom ({@link #BUFFERED}) - čitav rezultat šalje se tek metodom
+ * {@link #finish()}, pa skripta do samog kraja smije mijenjati zaglavlje
+ * odgovora, a odgovor ima zaglavlje "Content-Length"</li>
+ * <li>u dijelovima - čim spremnik dosegne zadanu veličinu, sadržaj se šalje
+ * klijentu i spremnik se prazni. U memoriji se tako nikad ne drži čitav
+ * rezultat, a klijent prve oktete prima prije kraja izvođenja. Duljina
+ * odgovora tada nije poznata, pa se odgovor šalje bez zaglavlja
+ * "Content-Length" (vidi {@link RequestContext#setFullContent(boolean)}).
+ * Rezultat koji stane u spremnik šalje se odjednom, kao i u prvom načinu</li>
+ * </ul>
+ * Spremnik se provjerava samo na mjestima koja izvoditelj skripte označi
+ * pozivom metode {@link #checkpoint()} (nakon svakog čvora).
+ *
+ * @see SmartScriptEngine
+ * @see hr.fer.zemris.java.custom.scripting.compiler.CompiledScript
+ *
+ * @author Davor Češljaš
+ */
+public class ScriptOutput extends ByteBufferOutputStream {
+
+	/**
+	 * Konstanta koja predstavlja veličinu spremnika kojom se odabire slanje
+	 * rezultata odjednom
+	 */
+	public static final int BUFFERED = 0;
+
+	/** Članska varijabla koja predstavlja kontekst u koji se šalje rezultat */
+	private final RequestContext requestContext;
+
+	/**
+	 * Članska varijabla koja predstavlja veličinu spremnika nakon koje se
+	 * sadržaj šalje klijentu ili {@link #BUFFERED}
+	 */
+	private final int streamThreshold;
+
+	/**
+	 * Članska varijabla koja indicira je li dio rezultata već poslan klijentu
+	 */
+	private boolean streaming;
+
+	/**
+	 * Članska varijabla koja indicira je li pisanje u kontekst zahtjeva već
+	 * jednom neuspjelo. Nakon toga se rezultat samo odbacuje
+	 */
+	private boolean failed;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param requestContext
+	 *            kontekst zahtjeva u koji se šalje rezultat
+	 * @param streamThreshold
+	 *            veličina spremnika (u oktetima) nakon koje se sadržaj šalje
+	 *            klijentu ili {@link #BUFFERED} ukoliko se rezultat šalje
+	 *            odjednom
+	 * @throws NullPointerException
+	 *             ukoliko je <b>requestContext</b> <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             ukoliko je <b>streamThreshold</b> negativan
+	 */
+	public ScriptOutput(RequestContext requestContext, int streamThreshold) {
+		this.requestContext = Objects.requireNonNull(requestContext, "Kontekst zahtjeva ne smije biti null");
+		if (streamThreshold < 0) {
+			throw new IllegalArgumentException("Veličina spremnika ne smije biti negativna: " + streamThreshold);
+		}
+		this.streamThreshold = streamThreshold;
+	}
+
+	/**
+	 * Metoda koja sadržaj spremnika šalje klijentu ukoliko se rezultat šalje u
+	 * dijelovima i spremnik je dosegao zadanu veličinu. Izvoditelj skripte
+	 * poziva metodu nakon svakog čvora
+	 */
+	public void checkpoint() {
+		if (streamThreshold == BUFFERED || size() < streamThreshold) {
+			return;
+		}
+
+		if (!streaming && !requestContext.isHeaderGenerated()) {
+			requestContext.setFullContent(false);
+		}
+		streaming = true;
+		send();
+	}
+
+	/**
+	 * Metoda koja klijentu šalje ostatak rezultata i vraća spremnik u bazen.
+	 * Odgovor poslan u dijelovima završava poslužitelj (vidi
+	 * {@link RequestContext#finish()}), jer se nakon skripte u isti odgovor
+	 * smije još pisati
+	 */
+	public void finish() {
+		try {
+			send();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja sadržaj spremnika šalje u kontekst zahtjeva i
+	 * prazni spremnik
+	 */
+	private void send() {
+		if (!failed) {
+			try {
+				requestContext.write(toByteBuffer());
+			} catch (IOException e) {
+				failed = true;
+				System.err.println("Nisam u mogućnosti pisati u tok podataka");
+			}
+		}
+		reset();
+	}
+}
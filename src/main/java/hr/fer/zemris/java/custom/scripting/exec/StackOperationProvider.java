@@ -1,9 +1,11 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
-import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -17,9 +19,9 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * s oblikovnim obrascem
  * <a href = "https://en.wikipedia.org/wiki/Singleton_pattern">jedinstveni
  * objekt</a>. Za izvršavanje operacije korisniku se nudi metoda
- * {@link #calculateOperation(String, RequestContext, Stack)} koja prima naziv
+ * {@link #calculateOperation(String, RequestContext, ValueStack)} koja prima naziv
  * funkcije koju treba izvršiti i primjerke razreda {@link RequestContext} i
- * {@link Stack} pomoću kojih se operacija izvršava.
+ * {@link ValueStack} pomoću kojih se operacija izvršava.
  * 
  * 
  * @see RequestContext
@@ -43,6 +45,21 @@ public class StackOperationProvider {
 	 */
 	private static final String FUNCTION_START = "@";
 
+	/**
+	 * Konstanta koja predstavlja nazive operacija koje mijenjaju zaglavlje
+	 * odgovora (vidi {@link #changesHeaders(String)})
+	 */
+	private static final Set<String> HEADER_OPERATIONS = Collections
+			.unmodifiableSet(new HashSet<>(Arrays.asList(FUNCTION_START + "setMimeType")));
+
+	/**
+	 * Konstanta koja predstavlja nazive čistih operacija (vidi
+	 * {@link #isPure(String)})
+	 */
+	private static final Set<String> PURE_OPERATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("+",
+			"-", "*", "/", FUNCTION_START + "sin", FUNCTION_START + "decfmt", FUNCTION_START + "dup",
+			FUNCTION_START + "swap")));
+
 	/**
 	 * Članska varijabla koja sadrži (nakon inicijalizacije) sve operacije koje
 	 * primjerak ovog razreda može izvršiti
@@ -64,7 +81,7 @@ public class StackOperationProvider {
 	 * Metoda koja se koristi za izvršavanjem operacije pod nazivom
 	 * <b>opName</b>. Predani parametri <b>requestContext</b> i <b>echoStack</b>
 	 * koriste se isključivo za izračun ove operacije. Operacija uzima sve
-	 * parametre sa predanog primjerka razreda {@link Stack}, te na njega,
+	 * parametre sa predanog primjerka razreda {@link ValueStack}, te na njega,
 	 * ukoliko generira rezultat, sprema i rezultat. Primjerak razreda
 	 * {@link RequestContext} ovdje se koristi za izmjenu ili dohvaćanje
 	 * parametara iz nejgovih struktura
@@ -76,7 +93,7 @@ public class StackOperationProvider {
 	 *            primjerak razreda {@link RequestContext} koja se koristi za
 	 *            uzimanje i stavljanje parametara u njegove interne strukture
 	 * @param echoStack
-	 *            primjerak razreda {@link Stack} iz kojeg se uzimaju parametri,
+	 *            primjerak razreda {@link ValueStack} iz kojeg se uzimaju parametri,
 	 *            te ukoliko operacija generira rezultat za stog, taj rezultat
 	 *            se postavlja na ovaj stog
 	 * 
@@ -85,12 +102,77 @@ public class StackOperationProvider {
 	 * @throws UnsupportedOperationException
 	 *             ukoliko operacija s imenom <b>opName</b> nije podržana
 	 */
-	public void calculateOperation(String opName, RequestContext requestContext, Stack<ValueWrapper> echoStack) {
+	public void calculateOperation(String opName, RequestContext requestContext, ValueStack echoStack) {
+		getOperation(opName).calculate(requestContext, echoStack);
+	}
+
+	/**
+	 * Metoda koja dohvaća operaciju pod nazivom <b>opName</b>. Koristi se kako
+	 * bi se operacija razriješila samo jednom (npr. pri parsiranju primjerkom
+	 * razreda {@link EchoExpression}), a ne pri svakom izvođenju
+	 *
+	 * @param opName
+	 *            primjerak razreda {@link String} koji sadrži naziv operacije
+	 * @return operaciju pod nazivom <b>opName</b>
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             ukoliko operacija s imenom <b>opName</b> nije podržana
+	 */
+	public IStackOperation getOperation(String opName) {
 		IStackOperation stackOperation = operations.get(opName);
 		if (stackOperation == null) {
 			throw new UnsupportedOperationException(String.format("Operacija '%s' nije podržana", opName));
 		}
-		stackOperation.calculate(requestContext, echoStack);
+		return stackOperation;
+	}
+
+	/**
+	 * Metoda koja ispituje mijenja li operacija pod nazivom <b>opName</b>
+	 * zaglavlje odgovora. Skripta s takvom operacijom ne smije slati odgovor u
+	 * dijelovima, jer bi zaglavlje moglo biti poslano prije izmjene
+	 *
+	 * @param opName
+	 *            primjerak razreda {@link String} koji sadrži naziv operacije
+	 * @return <code>true</code> ukoliko operacija mijenja zaglavlje odgovora,
+	 *         inače <code>false</code>
+	 */
+	public boolean changesHeaders(String opName) {
+		return HEADER_OPERATIONS.contains(opName);
+	}
+
+	/**
+	 * Metoda koja ispituje je li operacija pod nazivom <b>opName</b> čista,
+	 * tj. ovisi li njen rezultat samo o argumentima sa stoga (bez čitanja ili
+	 * mijenjanja primjerka razreda {@link RequestContext}). Samo se čiste
+	 * operacije smiju izračunati unaprijed, pri prevođenju skripte
+	 *
+	 * @param opName
+	 *            primjerak razreda {@link String} koji sadrži naziv operacije
+	 * @return <code>true</code> ukoliko je operacija čista, inače
+	 *         <code>false</code>
+	 */
+	public boolean isPure(String opName) {
+		return PURE_OPERATIONS.contains(opName);
+	}
+
+	/**
+	 * Metoda koja stvara operaciju "@decfmt" vezanu uz konstantni uzorak
+	 * <b>pattern</b>. Uzorak se razrješava samo jednom, a operacija ga i dalje
+	 * skida sa stoga (na koji ga stavlja konstanta izraza), ali koristi
+	 * format svoje dretve (vidi {@link ThreadLocalDecimalFormat})
+	 *
+	 * @param pattern
+	 *            konstantni uzorak formata
+	 * @return operaciju "@decfmt" vezanu uz <b>pattern</b>
+	 * @throws IllegalArgumentException
+	 *             ukoliko uzorak nije ispravan
+	 */
+	public IStackOperation decimalFormat(String pattern) {
+		ThreadLocalDecimalFormat format = new ThreadLocalDecimalFormat(pattern);
+		return (requestContext, echoStack) -> {
+			echoStack.pop();
+			echoStack.pushValue(format.format(echoStack.pop().getValue()));
+		};
 	}
 
 	/**
@@ -101,40 +183,40 @@ public class StackOperationProvider {
 	 */
 	private void initOperations() {
 		IStackOperation add = new IStackOperation() {
-			private BiConsumer<ValueWrapper, Object> addOperation = ValueWrapper::add;
+			private BiConsumer<ValueWrapper, ValueWrapper> addOperation = ValueWrapper::add;
 
 			@Override
-			public void calculate(RequestContext requestContext, Stack<ValueWrapper> echoStack) {
+			public void calculate(RequestContext requestContext, ValueStack echoStack) {
 				binaryOperation(addOperation, echoStack);
 			}
 		};
 		operations.put("+", add);
 
 		IStackOperation sub = new IStackOperation() {
-			private BiConsumer<ValueWrapper, Object> subOperation = ValueWrapper::subtract;
+			private BiConsumer<ValueWrapper, ValueWrapper> subOperation = ValueWrapper::subtract;
 
 			@Override
-			public void calculate(RequestContext requestContext, Stack<ValueWrapper> echoStack) {
+			public void calculate(RequestContext requestContext, ValueStack echoStack) {
 				binaryOperation(subOperation, echoStack);
 			}
 		};
 		operations.put("-", sub);
 
 		IStackOperation mul = new IStackOperation() {
-			private BiConsumer<ValueWrapper, Object> mulOperation = ValueWrapper::multiply;
+			private BiConsumer<ValueWrapper, ValueWrapper> mulOperation = ValueWrapper::multiply;
 
 			@Override
-			public void calculate(RequestContext requestContext, Stack<ValueWrapper> echoStack) {
+			public void calculate(RequestContext requestContext, ValueStack echoStack) {
 				binaryOperation(mulOperation, echoStack);
 			}
 		};
 		operations.put("*", mul);
 
 		IStackOperation div = new IStackOperation() {
-			private BiConsumer<ValueWrapper, Object> divOperation = ValueWrapper::divide;
+			private BiConsumer<ValueWrapper, ValueWrapper> divOperation = ValueWrapper::divide;
 
 			@Override
-			public void calculate(RequestContext requestContext, Stack<ValueWrapper> echoStack) {
+			public void calculate(RequestContext requestContext, ValueStack echoStack) {
 				binaryOperation(divOperation, echoStack);
 			}
 		};
@@ -142,29 +224,25 @@ public class StackOperationProvider {
 
 		IStackOperation sin = (requestContext, echoStack) -> {
 			String argument = echoStack.pop().toString();
-			echoStack.push(new ValueWrapper(Math.sin(Double.parseDouble(argument))));
+			echoStack.pushValue(Math.sin(Double.parseDouble(argument)));
 		};
 		operations.put(FUNCTION_START + "sin", sin);
 
 		IStackOperation decfmt = (requestContext, echoStack) -> {
-			DecimalFormat formatter = new DecimalFormat(echoStack.pop().toString());
-			echoStack.push(new ValueWrapper(formatter.format(echoStack.pop().getValue())));
+			String pattern = echoStack.pop().toString();
+			echoStack.pushValue(ThreadLocalDecimalFormat.format(pattern, echoStack.pop().getValue()));
 		};
 		operations.put(FUNCTION_START + "decfmt", decfmt);
 
 		IStackOperation dup = (requestContext, echoStack) -> {
+			// stog kopira vrijednost u omotač sljedećeg mjesta
 			ValueWrapper toClone = echoStack.pop();
 			echoStack.push(toClone);
-			echoStack.push(new ValueWrapper(toClone.getValue()));
+			echoStack.push(toClone);
 		};
 		operations.put(FUNCTION_START + "dup", dup);
 
-		IStackOperation swap = (requestContext, echoStack) -> {
-			ValueWrapper first = echoStack.pop();
-			ValueWrapper second = echoStack.pop();
-			echoStack.push(first);
-			echoStack.push(second);
-		};
+		IStackOperation swap = (requestContext, echoStack) -> echoStack.swap();
 		operations.put(FUNCTION_START + "swap", swap);
 
 		IStackOperation setMimeType = (requestContext, echoStack) -> {
@@ -222,20 +300,20 @@ public class StackOperationProvider {
 	 * Metoda koja obrađuje binarne operacije. Metoda prima starategiju koja
 	 * obavlja izračun rezultata, a implementira sučelje {@link BiConsumer}
 	 * <b>consumer</b>. Metoda standardno prima već opisan primjerak razred
-	 * {@link Stack} (za detalje pogledati
-	 * {@link #calculateOperation(String, RequestContext, Stack)}). Operacija
+	 * {@link ValueStack} (za detalje pogledati
+	 * {@link #calculateOperation(String, RequestContext, ValueStack)}). Operacija
 	 * sve parametre dohvaća sa predanog stoga, te rezultat sprema na njega
 	 *
 	 * @param consumer
 	 *            strategija koja implementira sučelje {@link BiConsumer}, a
 	 *            koja predstavlja konkretnu operaciju
 	 * @param echoStack
-	 *            primjerak razreda {@link Stack} s kojeg se dohvaćaju parametri
+	 *            primjerak razreda {@link ValueStack} s kojeg se dohvaćaju parametri
 	 *            i na koji se spremaju rezultati
 	 */
-	private void binaryOperation(BiConsumer<ValueWrapper, Object> consumer, Stack<ValueWrapper> echoStack) {
+	private void binaryOperation(BiConsumer<ValueWrapper, ValueWrapper> consumer, ValueStack echoStack) {
 		ValueWrapper firstArgument = echoStack.pop();
-		consumer.accept(firstArgument, echoStack.pop().getValue());
+		consumer.accept(firstArgument, echoStack.pop());
 		echoStack.push(firstArgument);
 	}
 
@@ -244,29 +322,29 @@ public class StackOperationProvider {
 	 * {@link Supplier} dohvaća rezultat i sprema ga na stog.
 	 *
 	 * @param echoStack
-	 *            primjerak razreda {@link Stack} na koji se sprema rezultat
+	 *            primjerak razreda {@link ValueStack} na koji se sprema rezultat
 	 * @param valueSupplier
 	 *            strategija koja se koristi za dohvat rezultata operacije.
 	 *            Strategija implementira sučelje {@link Supplier}
 	 */
-	private void getParameter(Stack<ValueWrapper> echoStack, Supplier<String> valueSupplier) {
+	private void getParameter(ValueStack echoStack, Supplier<String> valueSupplier) {
 		Object defaultValue = echoStack.pop().getValue();
 		String value = valueSupplier.get();
-		echoStack.push(new ValueWrapper(value == null ? defaultValue : value));
+		echoStack.pushValue(value == null ? defaultValue : value);
 	}
 
 	/**
-	 * Pomoćna metoda koja sa predanog primjerka razreda {@link Stack}
+	 * Pomoćna metoda koja sa predanog primjerka razreda {@link ValueStack}
 	 * <b>echoStack</b> dohvaća dva parametra i predaje ih predanoj strategiji
 	 * koja implementira sučelje {@link BiConsumer} <b>valueSetter</b>.
 	 *
 	 * @param echoStack
-	 *            primjerak razreda {@link Stack} s kojeg se dohvaćaju parametri
+	 *            primjerak razreda {@link ValueStack} s kojeg se dohvaćaju parametri
 	 * @param valueSetter
 	 *            strategija koja implementira sučelje {@link BiConsumer}, a
 	 *            koja konzumira dva parametra dohvaćena sa stoga
 	 */
-	private void setParameter(Stack<ValueWrapper> echoStack, BiConsumer<String, String> valueSetter) {
+	private void setParameter(ValueStack echoStack, BiConsumer<String, String> valueSetter) {
 		String name = (String) echoStack.pop().getValue();
 		// toString u slučaju da se ne radi o String konstanti
 		String value = echoStack.pop().getValue().toString();
@@ -275,17 +353,17 @@ public class StackOperationProvider {
 	}
 
 	/**
-	 * Pomoćna metoda koja sa predanog primjerka razreda {@link Stack} dohvaća
+	 * Pomoćna metoda koja sa predanog primjerka razreda {@link ValueStack} dohvaća
 	 * parametar i predaje ga predanoj strategiji za brisanje koja implementira
 	 * sučelje {@link Consumer}.
 	 *
 	 * @param echoStack
-	 *            primjerak razreda {@link Stack} s kojeg se dohvaćaju parametri
+	 *            primjerak razreda {@link ValueStack} s kojeg se dohvaćaju parametri
 	 * @param paramRemover
 	 *            strategija koja implementira sučelje {@link Consumer}, a koja
 	 *            vrši brisanje
 	 */
-	private void deleteParameter(Stack<ValueWrapper> echoStack, Consumer<String> paramRemover) {
+	private void deleteParameter(ValueStack echoStack, Consumer<String> paramRemover) {
 		String name = (String) echoStack.pop().getValue();
 		paramRemover.accept(name);
 	}
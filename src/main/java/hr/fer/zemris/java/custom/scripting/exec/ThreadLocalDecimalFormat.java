@@ -0,0 +1,232 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Razred koji predstavlja formatiranje brojeva operacijom "@decfmt" bez
+ * stvaranja novog primjerka razreda {@link DecimalFormat} pri svakom pozivu.
+ * {@link DecimalFormat} nije siguran za korištenje iz više dretvi, pa svaka
+ * dretva koristi svoje primjerke:
+ * <ul>
+ * <li>primjerak ovog razreda vezan je uz jedan uzorak (npr. konstantni uzorak
+ * iz skripte) i svakoj dretvi daje kopiju istog formata. Uzorak se provjerava
+ * i razrješava samo jednom, pri stvaranju primjerka</li>
+ * <li>metoda {@link #format(String, Object)} služi za uzorke poznate tek pri
+ * izvođenju. Svaka dretva pamti najviše {@value #MAX_CACHED_FORMATS}
+ * posljednje korištenih formata, a uzorci dulji od
+ * {@value #MAX_PATTERN_LENGTH} znakova se ne pamte, pa uzorci koje zadaje
+ * klijent ne mogu neograničeno zauzimati memoriju</li>
+ * </ul>
+ * Formati se stvaraju za pretpostavljeni jezik formatiranja
+ * ({@link Locale.Category#FORMAT}), jednako kao konstruktorom
+ * {@link DecimalFormat#DecimalFormat(String)}. Za formate koje pamte dretve
+ * broje se pogoci, promašaji (uključujući uzorke koji se ne pamte) i
+ * izbačeni formati, zbrojeno za sve dretve.
+ *
+ * @see StackOperationProvider
+ *
+ * @author Davor Češljaš
+ */
+public final class ThreadLocalDecimalFormat {
+
+	/**
+	 * Konstanta koja predstavlja najveći broj formata koje pamti jedna dretva
+	 */
+	public static final int MAX_CACHED_FORMATS = 32;
+
+	/**
+	 * Konstanta koja predstavlja najveću duljinu uzorka čiji se format pamti
+	 */
+	public static final int MAX_PATTERN_LENGTH = 64;
+
+	/**
+	 * Konstanta koja predstavlja formate koje je dretva nedavno koristila, a
+	 * ključ je uzorak
+	 */
+	private static final ThreadLocal<FormatCache> CACHE = ThreadLocal.withInitial(FormatCache::new);
+
+	/** Konstanta koja predstavlja broj formata pronađenih među zapamćenima */
+	private static final LongAdder HITS = new LongAdder();
+
+	/** Konstanta koja predstavlja broj formata koji su se morali stvoriti */
+	private static final LongAdder MISSES = new LongAdder();
+
+	/**
+	 * Konstanta koja predstavlja broj formata izbačenih iz formata koje pamti
+	 * dretva (zbog ograničenja {@value #MAX_CACHED_FORMATS} ili promjene
+	 * jezika formatiranja)
+	 */
+	private static final LongAdder EVICTIONS = new LongAdder();
+
+	/**
+	 * Konstanta koja predstavlja broj formata stvorenih za uzorke dulje od
+	 * {@value #MAX_PATTERN_LENGTH} znakova, a koji se ne pamte
+	 */
+	private static final LongAdder UNCACHED = new LongAdder();
+
+	/**
+	 * Članska varijabla koja predstavlja format iz kojeg se stvaraju kopije za
+	 * svaku dretvu. Sam se nikad ne koristi za formatiranje
+	 */
+	private final DecimalFormat prototype;
+
+	/** Članska varijabla koja predstavlja kopiju formata svake dretve */
+	private final ThreadLocal<DecimalFormat> formats;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda vezan uz uzorak
+	 * <b>pattern</b>
+	 *
+	 * @param pattern
+	 *            uzorak formata
+	 * @throws NullPointerException
+	 *             ukoliko je <b>pattern</b> <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             ukoliko uzorak nije ispravan
+	 */
+	public ThreadLocalDecimalFormat(String pattern) {
+		Objects.requireNonNull(pattern, "Uzorak ne smije biti null");
+		prototype = new DecimalFormat(pattern);
+		formats = ThreadLocal.withInitial(() -> (DecimalFormat) prototype.clone());
+	}
+
+	/**
+	 * Metoda koja formatira vrijednost <b>value</b> formatom ovog primjerka
+	 *
+	 * @param value
+	 *            vrijednost koja se formatira
+	 * @return formatiranu vrijednost
+	 * @throws IllegalArgumentException
+	 *             ukoliko vrijednost nije broj
+	 */
+	public String format(Object value) {
+		return formats.get().format(value);
+	}
+
+	/**
+	 * Metoda koja formatira vrijednost <b>value</b> formatom s uzorkom
+	 * <b>pattern</b>. Format se dohvaća iz formata koje pamti trenutna
+	 * dretva, a stvara se samo ukoliko ga dretva nema
+	 *
+	 * @param pattern
+	 *            uzorak formata
+	 * @param value
+	 *            vrijednost koja se formatira
+	 * @return formatiranu vrijednost
+	 * @throws IllegalArgumentException
+	 *             ukoliko uzorak nije ispravan ili vrijednost nije broj
+	 */
+	public static String format(String pattern, Object value) {
+		if (pattern.length() > MAX_PATTERN_LENGTH) {
+			MISSES.increment();
+			UNCACHED.increment();
+			return new DecimalFormat(pattern).format(value);
+		}
+		return CACHE.get().formatFor(pattern).format(value);
+	}
+
+	/**
+	 * Metoda koja dohvaća broj formata koji su pronađeni među formatima koje
+	 * pamte dretve
+	 *
+	 * @return broj pogodaka
+	 */
+	public static long getHits() {
+		return HITS.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj formata koji su se morali stvoriti (uključujući
+	 * formate za uzorke koji se ne pamte)
+	 *
+	 * @return broj promašaja
+	 */
+	public static long getMisses() {
+		return MISSES.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj formata izbačenih iz formata koje pamte dretve
+	 *
+	 * @return broj izbačenih formata
+	 */
+	public static long getEvictions() {
+		return EVICTIONS.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj formata stvorenih za uzorke dulje od
+	 * {@value #MAX_PATTERN_LENGTH} znakova
+	 *
+	 * @return broj formata za uzorke koji se ne pamte
+	 */
+	public static long getUncached() {
+		return UNCACHED.sum();
+	}
+
+	/**
+	 * Razred koji predstavlja formate koje pamti jedna dretva, poredane od
+	 * najdavnije do posljednje korištenog. Ukoliko se promijeni
+	 * pretpostavljeni jezik formatiranja, zapamćeni formati se odbacuju.
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class FormatCache extends LinkedHashMap<String, DecimalFormat> {
+
+		/** Konstanta koja predstavlja verziju razreda */
+		private static final long serialVersionUID = 1L;
+
+		/** Članska varijabla koja predstavlja jezik zapamćenih formata */
+		private Locale locale;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 */
+		public FormatCache() {
+			super(16, 0.75f, true);
+		}
+
+		/**
+		 * Metoda koja dohvaća format s uzorkom <b>pattern</b> i stvara ga
+		 * ukoliko nije zapamćen
+		 *
+		 * @param pattern
+		 *            uzorak formata
+		 * @return format s uzorkom <b>pattern</b>
+		 * @throws IllegalArgumentException
+		 *             ukoliko uzorak nije ispravan
+		 */
+		public DecimalFormat formatFor(String pattern) {
+			Locale current = Locale.getDefault(Locale.Category.FORMAT);
+			if (!current.equals(locale)) {
+				EVICTIONS.add(size());
+				clear();
+				locale = current;
+			}
+
+			DecimalFormat format = get(pattern);
+			if (format == null) {
+				MISSES.increment();
+				format = new DecimalFormat(pattern);
+				put(pattern, format);
+			} else {
+				HITS.increment();
+			}
+			return format;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, DecimalFormat> eldest) {
+			if (size() > MAX_CACHED_FORMATS) {
+				EVICTIONS.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
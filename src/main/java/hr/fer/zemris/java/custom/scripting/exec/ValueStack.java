@@ -0,0 +1,167 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja stog primjeraka razreda {@link ValueWrapper} nad
+ * kojim se izvode izrazi čvorova
+ * {@link hr.fer.zemris.java.custom.scripting.nodes.EchoNode}. Za razliku od
+ * {@link java.util.Stack} stog nije sinkroniziran i elementi se čuvaju u
+ * običnom polju koje se samo povećava. Svako mjesto polja je omotač koji
+ * pripada stogu: vrijednost koja se stavlja na stog kopira se u omotač
+ * mjesta, a skinuti omotač ostaje na svom mjestu za sljedeće stavljanje.
+ * Primjerak razreda koji se koristi kroz cijelo izvođenje skripte nakon
+ * prvih nekoliko izraza tako više ne zauzima memoriju.
+ * <p>
+ * Omotač koji vrati {@link #pop()} vrijedi samo do sljedećeg stavljanja na
+ * stog, pa ga pozivatelj ne smije pamtiti.
+ * </p>
+ * <p>
+ * Primjerak razreda smije koristiti samo jedna dretva.
+ * </p>
+ *
+ * @see EchoExpression
+ * @see IStackOperation
+ *
+ * @author Davor Češljaš
+ */
+public class ValueStack {
+
+	/** Konstanta koja predstavlja početni kapacitet stoga */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Članska varijabla koja predstavlja omotače mjesta stoga od dna prema
+	 * vrhu (i omotače iznad vrha koji čekaju sljedeće stavljanje)
+	 */
+	private ValueWrapper[] elements = new ValueWrapper[INITIAL_CAPACITY];
+
+	/** Članska varijabla koja predstavlja broj elemenata na stogu */
+	private int size;
+
+	/**
+	 * Metoda koja kopira vrijednost omotača <b>value</b> na vrh stoga.
+	 * Omotač <b>value</b> se ne stavlja na stog, pa ga pozivatelj može i
+	 * dalje mijenjati
+	 *
+	 * @param value
+	 *            omotač čija se vrijednost stavlja na stog
+	 */
+	public void push(ValueWrapper value) {
+		ValueWrapper slot = nextSlot();
+		if (slot == null) {
+			elements[size] = new ValueWrapper(value);
+		} else {
+			slot.set(value);
+		}
+		size++;
+	}
+
+	/**
+	 * Metoda koja vrijednost <b>value</b> stavlja na vrh stoga
+	 *
+	 * @param value
+	 *            vrijednost koja se stavlja na stog
+	 */
+	public void pushValue(Object value) {
+		ValueWrapper slot = nextSlot();
+		if (slot == null) {
+			elements[size] = new ValueWrapper(value);
+		} else {
+			slot.setValue(value);
+		}
+		size++;
+	}
+
+	/**
+	 * Metoda koja zamjenjuje dvije vrijednosti s vrha stoga. Zamjenjuju se
+	 * omotači mjesta, pa se vrijednosti ne kopiraju
+	 *
+	 * @throws EmptyStackException
+	 *             ukoliko na stogu nema dvije vrijednosti
+	 */
+	public void swap() {
+		if (size < 2) {
+			throw new EmptyStackException();
+		}
+		ValueWrapper top = elements[size - 1];
+		elements[size - 1] = elements[size - 2];
+		elements[size - 2] = top;
+	}
+
+	/**
+	 * Metoda koja skida vrijednost s vrha stoga
+	 *
+	 * @return vrijednost s vrha stoga
+	 * @throws EmptyStackException
+	 *             ukoliko je stog prazan
+	 */
+	public ValueWrapper pop() {
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+		return elements[--size];
+	}
+
+	/**
+	 * Metoda koja vraća broj elemenata na stogu
+	 *
+	 * @return broj elemenata na stogu
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Metoda koja ispituje je li stog prazan
+	 *
+	 * @return <code>true</code> ukoliko je stog prazan, inače
+	 *         <code>false</code>
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Pomoćna metoda koja po potrebi povećava polje mjesta te vraća omotač
+	 * prvog mjesta iznad vrha stoga
+	 *
+	 * @return omotač prvog slobodnog mjesta ili <code>null</code> ukoliko
+	 *         mjesto još nema omotač
+	 */
+	private ValueWrapper nextSlot() {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, size * 2);
+		}
+		return elements[size];
+	}
+
+	/**
+	 * Metoda koja miče sve elemente sa stoga. Omotači mjesta se zadržavaju kako
+	 * bi ih koristio sljedeći izraz
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Metoda koja zapisuje sve elemente stoga od dna prema vrhu, odvojene
+	 * razmakom, u spremnik <b>out</b> te prazni stog. Elementi se zapisuju
+	 * izravno, bez rekurzije i bez pomoćnog niza znakova
+	 *
+	 * @param out
+	 *            spremnik u koji se zapisuju elementi
+	 */
+	public void drainTo(ByteBufferOutputStream out) {
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				out.write(' ');
+			}
+			elements[i].writeTo(out);
+		}
+		size = 0;
+	}
+}
@@ -1,7 +1,8 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
-import java.util.Comparator;
-import java.util.function.BiConsumer;
+import java.util.Objects;
+
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
 
 /**
  * Razred koji predstavlja omotač oko reference na primjerak bilo kojeg razreda.
@@ -32,6 +33,13 @@ import java.util.function.BiConsumer;
  * <li>{@link #hashCode()}</li>
  * <li>{@link #toString()}</li>
  * </ul>
+ * <p>
+ * Brojevi se čuvaju u primitivnim članskim varijablama (uz oznaku vrste
+ * vrijednosti), pa aritmetika između dva omotača ne stvara niti jedan objekt.
+ * Vrijednost se u {@link Integer} ili {@link Double} omata tek kada se
+ * dohvaća metodom {@link #getValue()}, npr. pri predaji u
+ * {@link hr.fer.zemris.java.webserver.RequestContext}.
+ * </p>
  * 
  * @see Integer
  * @see Double
@@ -41,8 +49,26 @@ import java.util.function.BiConsumer;
 public class ValueWrapper {
 
 	private static final double DIFFERENCE =  0.000001;
-	
-	/** Vrijednost koju ovaj razred omotava */
+
+	/** Konstanta koja predstavlja vrijednost koja nije broj (ili je <code>null</code>) */
+	private static final int OBJECT = 0;
+
+	/** Konstanta koja predstavlja cjelobrojnu vrijednost */
+	private static final int INT = 1;
+
+	/** Konstanta koja predstavlja decimalnu vrijednost */
+	private static final int DOUBLE = 2;
+
+	/** Vrsta vrijednosti koju ovaj razred omotava */
+	private int type;
+
+	/** Cjelobrojna vrijednost (ukoliko je vrsta {@link #INT}) */
+	private int intValue;
+
+	/** Decimalna vrijednost (ukoliko je vrsta {@link #DOUBLE}) */
+	private double doubleValue;
+
+	/** Vrijednost koju ovaj razred omotava (ukoliko je vrsta {@link #OBJECT}) */
 	private Object value;
 
 	/**
@@ -53,7 +79,40 @@ public class ValueWrapper {
 	 *            vrijednost na koju se inicijalizira primjerak ovog razreda
 	 */
 	public ValueWrapper(Object value) {
-		this.value = value;
+		setValue(value);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda na cjelobrojnu
+	 * vrijednost <b>value</b>
+	 *
+	 * @param value
+	 *            vrijednost na koju se inicijalizira primjerak ovog razreda
+	 */
+	public ValueWrapper(int value) {
+		setInt(value);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda na decimalnu
+	 * vrijednost <b>value</b>
+	 *
+	 * @param value
+	 *            vrijednost na koju se inicijalizira primjerak ovog razreda
+	 */
+	public ValueWrapper(double value) {
+		setDouble(value);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda na vrijednost
+	 * koju omotava <b>other</b> (bez omatanja brojeva)
+	 *
+	 * @param other
+	 *            omotač čija se vrijednost kopira
+	 */
+	public ValueWrapper(ValueWrapper other) {
+		set(other);
 	}
 
 	/**
@@ -62,7 +121,14 @@ public class ValueWrapper {
 	 * @return referncu koju ovaj razred omotava
 	 */
 	public Object getValue() {
-		return value;
+		switch (type) {
+		case INT:
+			return Integer.valueOf(intValue);
+		case DOUBLE:
+			return Double.valueOf(doubleValue);
+		default:
+			return value;
+		}
 	}
 
 	/**
@@ -73,7 +139,29 @@ public class ValueWrapper {
 	 *            nova referenca koju ovaj razred omotava
 	 */
 	public void setValue(Object value) {
-		this.value = value;
+		if (value instanceof Integer) {
+			setInt(((Integer) value).intValue());
+		} else if (value instanceof Double) {
+			setDouble(((Double) value).doubleValue());
+		} else {
+			this.type = OBJECT;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Metoda koja kopira vrijednost koju omotava <b>other</b> u ovaj omotač
+	 * (bez omatanja brojeva). Omotač se tako može ponovno koristiti umjesto
+	 * stvaranja novog primjerka
+	 *
+	 * @param other
+	 *            omotač čija se vrijednost kopira
+	 */
+	public void set(ValueWrapper other) {
+		this.type = other.type;
+		this.intValue = other.intValue;
+		this.doubleValue = other.doubleValue;
+		this.value = other.value;
 	}
 
 	/**
@@ -102,14 +190,21 @@ public class ValueWrapper {
 	 *             ukoliko bilo koji od uvjeta 1, 2 ili 3 nisu zadovoljeni
 	 */
 	public void add(Object incValue) {
-		BiConsumer<Number, Number> add = (first, second) -> {
-			if (checkForDoubles(first, second)) {
-				value = first.doubleValue() + second.doubleValue();
-				return;
-			}
-			value = first.intValue() + second.intValue();
-		};
-		calculateResult(value, incValue, add);
+		calculateResult('+', new ValueWrapper(incValue));
+	}
+
+	/**
+	 * Metoda koja vrši zbrajanje jednako kao {@link #add(Object)}, ali s
+	 * vrijednošću koju omotava <b>incValue</b>
+	 *
+	 * @param incValue
+	 *            drugi operand
+	 * 
+	 * @throws IllegalArgumentException
+	 *             ukoliko neki od operanada nije broj
+	 */
+	public void add(ValueWrapper incValue) {
+		calculateResult('+', incValue);
 	}
 
 	/**
@@ -138,14 +233,21 @@ public class ValueWrapper {
 	 *             ukoliko bilo koji od uvjeta 1, 2 ili 3 nisu zadovoljeni
 	 */
 	public void subtract(Object decValue) {
-		BiConsumer<Number, Number> sub = (first, second) -> {
-			if (checkForDoubles(first, second)) {
-				value = first.doubleValue() - second.doubleValue();
-				return;
-			}
-			value = first.intValue() - second.intValue();
-		};
-		calculateResult(value, decValue, sub);
+		calculateResult('-', new ValueWrapper(decValue));
+	}
+
+	/**
+	 * Metoda koja vrši oduzimanje jednako kao {@link #subtract(Object)}, ali
+	 * s vrijednošću koju omotava <b>decValue</b>
+	 *
+	 * @param decValue
+	 *            drugi operand
+	 * 
+	 * @throws IllegalArgumentException
+	 *             ukoliko neki od operanada nije broj
+	 */
+	public void subtract(ValueWrapper decValue) {
+		calculateResult('-', decValue);
 	}
 
 	/**
@@ -174,14 +276,21 @@ public class ValueWrapper {
 	 *             ukoliko bilo koji od uvjeta 1, 2 ili 3 nisu zadovoljeni
 	 */
 	public void multiply(Object mulValue) {
-		BiConsumer<Number, Number> mul = (first, second) -> {
-			if (checkForDoubles(first, second)) {
-				value = first.doubleValue() * second.doubleValue();
-				return;
-			}
-			value = first.intValue() * second.intValue();
-		};
-		calculateResult(value, mulValue, mul);
+		calculateResult('*', new ValueWrapper(mulValue));
+	}
+
+	/**
+	 * Metoda koja vrši množenje jednako kao {@link #multiply(Object)}, ali s
+	 * vrijednošću koju omotava <b>mulValue</b>
+	 *
+	 * @param mulValue
+	 *            drugi operand
+	 * 
+	 * @throws IllegalArgumentException
+	 *             ukoliko neki od operanada nije broj
+	 */
+	public void multiply(ValueWrapper mulValue) {
+		calculateResult('*', mulValue);
 	}
 
 	/**
@@ -209,18 +318,23 @@ public class ValueWrapper {
 	 *             ukoliko bilo koji od uvjeta 1, 2 ili 3 nisu zadovoljeni
 	 */
 	public void divide(Object divValue) {
-		BiConsumer<Number, Number> div = (first, second) -> {
-			if (Math.abs(second.doubleValue() - 0) < DIFFERENCE) {
-				throw new ArithmeticException("Dijeljenje s nulom!");
-			}
-
-			if (checkForDoubles(first, second)) {
-				value = first.doubleValue() / second.doubleValue();
-				return;
-			}
-			value = first.intValue() / second.intValue();
-		};
-		calculateResult(value, divValue, div);
+		calculateResult('/', new ValueWrapper(divValue));
+	}
+
+	/**
+	 * Metoda koja vrši dijeljenje jednako kao {@link #divide(Object)}, ali s
+	 * vrijednošću koju omotava <b>divValue</b>
+	 *
+	 * @param divValue
+	 *            drugi operand
+	 * 
+	 * @throws IllegalArgumentException
+	 *             ukoliko neki od operanada nije broj
+	 * @throws ArithmeticException
+	 *             ukoliko je drugi operand nula
+	 */
+	public void divide(ValueWrapper divValue) {
+		calculateResult('/', divValue);
 	}
 
 	/**
@@ -264,47 +378,111 @@ public class ValueWrapper {
 	 * 
 	 */
 	public int numCompare(Object withValue) {
-		Comparator<Number> comparator = (first, second) -> {
-			if (checkForDoubles(first, second)) {
-				return Double.compare(first.doubleValue(), second.doubleValue());
-			}
-			return Integer.compare(first.intValue(), second.intValue());
-		};
-		return comparator.compare(extractArgument(value), extractArgument(withValue));
+		return numCompare(new ValueWrapper(withValue));
 	}
 
 	/**
-	 * Generička pomoćna metoda koja nad parsiranim vrijednostima <b>first</b> i
-	 * <b>second</b> izvršava {@link BiConsumer#accept(Object, Object)} od
-	 * predanog <b>consumer</b>
+	 * Metoda koja vrši usporedbu jednako kao {@link #numCompare(Object)}, ali
+	 * s vrijednošću koju omotava <b>withValue</b>
 	 *
-	 * @param first
-	 *            prvi operand
-	 * @param second
+	 * @param withValue
+	 *            drugi operand
+	 * @return 1, -1 ili 0 jednako kao {@link #numCompare(Object)}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             ukoliko neki od operanada nije broj
+	 */
+	public int numCompare(ValueWrapper withValue) {
+		ValueWrapper first = numeric(this);
+		ValueWrapper second = numeric(withValue);
+		if (first.type == DOUBLE || second.type == DOUBLE) {
+			return Double.compare(first.asDouble(), second.asDouble());
+		}
+		return Integer.compare(first.intValue, second.intValue);
+	}
+
+	/**
+	 * Pomoćna metoda koja nad brojevima omotanima u ovom primjerku i u
+	 * <b>operand</b> izvodi operaciju <b>operator</b> i rezultat sprema u ovaj
+	 * primjerak. Rezultat je cijeli broj ukoliko su oba operanda cijeli
+	 * brojevi, a inače decimalni broj
+	 *
+	 * @param operator
+	 *            jedan od znakova '+', '-', '*' i '/'
+	 * @param operand
 	 *            drugi operand
-	 * @param consumer
-	 *            primjerak razreda koji imlementira sučelje {@link BiConsumer}
-	 * @see BiConsumer
+	 * @throws ArithmeticException
+	 *             ukoliko se dijeli s nulom
 	 * 
 	 * @see ValueWrapper#extractArgument(Object)
 	 */
-	private void calculateResult(Object first, Object second, BiConsumer<Number, Number> consumer) {
-		consumer.accept(extractArgument(first), extractArgument(second));
+	private void calculateResult(char operator, ValueWrapper operand) {
+		ValueWrapper first = numeric(this);
+		ValueWrapper second = numeric(operand);
+		if (operator == '/' && Math.abs(second.asDouble() - 0) < DIFFERENCE) {
+			throw new ArithmeticException("Dijeljenje s nulom!");
+		}
+
+		if (first.type == DOUBLE || second.type == DOUBLE) {
+			double a = first.asDouble();
+			double b = second.asDouble();
+			setDouble(operator == '+' ? a + b : operator == '-' ? a - b : operator == '*' ? a * b : a / b);
+			return;
+		}
+		int a = first.intValue;
+		int b = second.intValue;
+		setInt(operator == '+' ? a + b : operator == '-' ? a - b : operator == '*' ? a * b : a / b);
 	}
 
 	/**
-	 * Pomoćna metoda koja provjerava je li bilo koji od objekata primjerak
-	 * razreda {@link Double}
+	 * Pomoćna metoda koja dohvaća omotač s brojem iz <b>wrapper</b>. Omotač
+	 * koji već sadrži broj vraća se bez stvaranja novog primjerka
 	 *
-	 * @param firstArgument
-	 *            prvi operand
-	 * @param secondArgument
-	 *            drgui operand
-	 * @return <b>true</b> ukoliko je barem jedan od predanih operanada
-	 *         primjerak razreda {@link Double}
+	 * @param wrapper
+	 *            omotač čiji se broj dohvaća
+	 * @return omotač vrste {@link #INT} ili {@link #DOUBLE}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             ukoliko omotana vrijednost nije broj
+	 */
+	private static ValueWrapper numeric(ValueWrapper wrapper) {
+		if (wrapper.type != OBJECT) {
+			return wrapper;
+		}
+		return new ValueWrapper(extractArgument(wrapper.value));
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća omotani broj kao decimalni broj
+	 *
+	 * @return omotani broj kao decimalni broj
 	 */
-	private boolean checkForDoubles(Object firstArgument, Object secondArgument) {
-		return firstArgument instanceof Double || secondArgument instanceof Double;
+	private double asDouble() {
+		return type == DOUBLE ? doubleValue : intValue;
+	}
+
+	/**
+	 * Pomoćna metoda koja postavlja cjelobrojnu vrijednost <b>value</b>
+	 *
+	 * @param value
+	 *            nova vrijednost
+	 */
+	private void setInt(int value) {
+		this.type = INT;
+		this.intValue = value;
+		this.value = null;
+	}
+
+	/**
+	 * Pomoćna metoda koja postavlja decimalnu vrijednost <b>value</b>
+	 *
+	 * @param value
+	 *            nova vrijednost
+	 */
+	private void setDouble(double value) {
+		this.type = DOUBLE;
+		this.doubleValue = value;
+		this.value = null;
 	}
 
 	/**
@@ -321,7 +499,7 @@ public class ValueWrapper {
 	 * 
 	 * @see ValueWrapper#extractArgumentFromString(String)
 	 */
-	private Number extractArgument(Object argument) {
+	private static Number extractArgument(Object argument) {
 		if (argument == null) {
 			return Integer.valueOf(0);
 		}
@@ -350,7 +528,7 @@ public class ValueWrapper {
 	 *             ukoliko nije moguće parsirati predani argument
 	 *             <b>argument</b>
 	 */
-	private Number extractArgumentFromString(String argument) {
+	private static Number extractArgumentFromString(String argument) {
 		// ako se argument nemože parsirati baca se
 		// NumberFormatException(RuntimeException)
 		if (argument.contains(".") || argument.contains("E") || argument.contains("e")) {
@@ -363,7 +541,7 @@ public class ValueWrapper {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((value == null) ? 0 : value.hashCode());
+		result = prime * result + Objects.hashCode(getValue());
 		return result;
 	}
 
@@ -376,16 +554,34 @@ public class ValueWrapper {
 		if (getClass() != obj.getClass())
 			return false;
 		ValueWrapper other = (ValueWrapper) obj;
-		if (value == null) {
-			if (other.value != null)
-				return false;
-		} else if (!value.equals(other.value))
-			return false;
-		return true;
+		return Objects.equals(getValue(), other.getValue());
+	}
+
+	/**
+	 * Metoda koja zapisuje tekstualni oblik vrijednosti (isti kao
+	 * {@link #toString()}) kodiran skupom znakova UTF-8 u spremnik <b>out</b>.
+	 * Cijeli brojevi zapisuju se bez stvaranja pomoćnog niza znakova
+	 *
+	 * @param out
+	 *            spremnik u koji se zapisuje vrijednost
+	 */
+	public void writeTo(ByteBufferOutputStream out) {
+		if (type == INT) {
+			out.writeDecimal(intValue);
+		} else {
+			out.writeUtf8(toString());
+		}
 	}
 
 	@Override
 	public String toString() {
-		return value.toString();
+		switch (type) {
+		case INT:
+			return Integer.toString(intValue);
+		case DOUBLE:
+			return Double.toString(doubleValue);
+		default:
+			return value.toString();
+		}
 	}
 }
@@ -8,6 +8,58 @@ package hr.fer.zemris.java.custom.scripting.nodes;
  */
 public class DocumentNode extends Node {
 
+	/** Broj različitih varijabli dokumenta (veličina okvira izvođenja) */
+	private int variableCount;
+
+	/**
+	 * Zastavica koja indicira mijenja li dokument zaglavlje odgovora, pa se
+	 * njegov rezultat mora slati odjednom
+	 */
+	private boolean bufferedOutput;
+
+	/**
+	 * Dohvaća broj različitih varijabli dokumenta. Svaka varijabla ima svoje
+	 * mjesto u okviru izvođenja (vidi {@link hr.fer.zemris.java.custom.scripting.elems.ElementVariable#getSlot()})
+	 *
+	 * @return broj različitih varijabli dokumenta
+	 */
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	/**
+	 * Postavlja broj različitih varijabli dokumenta. Broj postavlja parser po
+	 * završetku izgradnje stabla
+	 *
+	 * @param variableCount
+	 *            broj različitih varijabli dokumenta
+	 */
+	public void setVariableCount(int variableCount) {
+		this.variableCount = variableCount;
+	}
+
+	/**
+	 * Ispituje mora li se rezultat dokumenta slati odjednom, jer neki od
+	 * izraza dokumenta mijenja zaglavlje odgovora (npr. "@setMimeType")
+	 *
+	 * @return <code>true</code> ukoliko se rezultat mora slati odjednom,
+	 *         inače <code>false</code>
+	 */
+	public boolean isBufferedOutput() {
+		return bufferedOutput;
+	}
+
+	/**
+	 * Postavlja zastavicu koja indicira mora li se rezultat dokumenta slati
+	 * odjednom. Zastavicu postavlja parser pri izgradnji stabla
+	 *
+	 * @param bufferedOutput
+	 *            <code>true</code> ukoliko se rezultat mora slati odjednom
+	 */
+	public void setBufferedOutput(boolean bufferedOutput) {
+		this.bufferedOutput = bufferedOutput;
+	}
+
 	@Override
 	public void accept(INodeVisitor nodeVisitor) {
 		nodeVisitor.visitDocumentNode(this);
@@ -1,6 +1,8 @@
 package hr.fer.zemris.java.custom.scripting.nodes;
 
 import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.exec.EchoExpression;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
 
 /**
  * Razred predstavlja čvor oznake ispisa (engl. Echo Tag). Razred nasljeđuje razred {@link Node}
@@ -12,13 +14,25 @@ public class EchoNode extends Node {
 	/** Elementi oznake ispisa */
 	private Element[] elements;
 
+	/** Razriješeni izraz oznake ispisa */
+	private EchoExpression expression;
+
 	/**
-	 * Konstruktor inicijalizira elemente oznake ispisa. Elementi su primjerci razreda {@link Element}
+	 * Konstruktor inicijalizira elemente oznake ispisa. Elementi su primjerci razreda {@link Element}.
+	 * Operatori i funkcije razrješavaju se odmah, pa se nepodržana funkcija otkriva već pri parsiranju
 	 *
 	 * @param elements oznake ispisa
+	 * 
+	 * @throws SmartScriptParserException
+	 *             ukoliko neki od operatora ili funkcija nije podržan
 	 */
 	public EchoNode(Element... elements) {
 		this.elements = elements;
+		try {
+			this.expression = new EchoExpression(elements);
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			throw new SmartScriptParserException(e.getMessage(), e);
+		}
 	}
 	
 	/**
@@ -30,6 +44,15 @@ public class EchoNode extends Node {
 		return elements;
 	}
 
+	/**
+	 * Dohvaća razriješeni izraz oznake ispisa
+	 *
+	 * @return razriješeni izraz oznake ispisa
+	 */
+	public EchoExpression getExpression() {
+		return expression;
+	}
+
 	@Override
 	public void accept(INodeVisitor nodeVisitor) {
 		nodeVisitor.visitEchoNode(this);
@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.custom.scripting.nodes;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Razred predstavlja čvor normalnog teksta(ne taga). Razred nasljeđuje razred
  * {@link Node}
@@ -11,13 +13,18 @@ public class TextNode extends Node {
 	/** Vrijednost teksta */
 	private String text;
 
+	/** Vrijednost teksta kodirana skupom znakova UTF-8 */
+	private byte[] bytes;
+
 	/**
-	 * Konstruktor inicijalizira vrijednost teksta.
+	 * Konstruktor inicijalizira vrijednost teksta. Tekst se odmah kodira
+	 * skupom znakova UTF-8, pa se pri izvođenju skripte samo kopira
 	 *
 	 * @param text  vrijednost teksta
 	 */
 	public TextNode(String text) {
 		this.text = text;
+		this.bytes = text.getBytes(StandardCharsets.UTF_8);
 	}
 
 	/**
@@ -29,6 +36,16 @@ public class TextNode extends Node {
 		return text;
 	}
 
+	/**
+	 * Dohvaća vrijednost teksta kodiranu skupom znakova UTF-8. Vraća se
+	 * interno polje koje se ne smije mijenjati
+	 *
+	 * @return vrijednost teksta kao oktete UTF-8
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
 	@Override
 	public void accept(INodeVisitor nodeVisitor) {
 		nodeVisitor.visitTextNode(this);
@@ -36,9 +53,9 @@ public class TextNode extends Node {
 	
 	@Override
 	public String toString() {
-		//vraćanje escape sekvenci
-		text = text.replaceAll("\\\\", "\\\\\\\\");
-		text = text.replaceAll("\\{","\\\\{");
-		return text;
+		//vraćanje escape sekvenci (tekst čvora se ne smije mijenjati)
+		String escaped = text.replaceAll("\\\\", "\\\\\\\\");
+		escaped = escaped.replaceAll("\\{","\\\\{");
+		return escaped;
 	}
 }
@@ -1,5 +1,8 @@
 package hr.fer.zemris.java.custom.scripting.parser;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import hr.fer.java.zemris.hw02.collections.ArrayIndexedCollection;
 import hr.fer.java.zemris.hw02.collections.Collection;
 import hr.fer.java.zemris.hw02.collections.EmptyStackException;
@@ -51,6 +54,18 @@ public class SmartScriptParser {
 	/** Pomoćni stog koji se koristi prilikom izgradnje stabla */
 	private ObjectStack nodeStack;
 
+	/**
+	 * Tekst koji još nije dodan u stablo. Susjedni tekstovi spajaju se u jedan
+	 * primjerak razreda {@link TextNode}
+	 */
+	private StringBuilder pendingText = new StringBuilder();
+
+	/**
+	 * Mjesta varijabli u okviru izvođenja, a ključ je naziv varijable.
+	 * Varijabla dobiva mjesto u prvoj for petlji koja je koristi
+	 */
+	private Map<String, Integer> variableSlots = new HashMap<>();
+
 	/**
 	 * Konstruktor koji stvara primjerak razreda {@link SmartScriptLexer} i
 	 * predaje mu predani tekst <b>documentBody</b>. Nakon uspješnog stvaranja
@@ -94,6 +109,7 @@ public class SmartScriptParser {
 		// inicijalno na stogu se nalazi samo dokument
 		nodeStack.push(documentNode);
 		parseInput();
+		documentNode.setVariableCount(variableSlots.size());
 		if (nodeStack.size() != 1) {
 			throw new SmartScriptParserException(
 					"Po završetku parsiranja na stogu smije biti samo jedan element. Broj elemenata je: "
@@ -119,18 +135,33 @@ public class SmartScriptParser {
 				parseTag();
 			}
 		}
+		flushText();
 	}
 
 	/**
-	 * Pomoćna metoda koja primjerku razreda {@link Node} koji je na vrhu stoga
-	 * dodaje primjerak razreda {@link TextNode}
+	 * Pomoćna metoda koja trenutni tekst dodaje u {@link #pendingText}.
+	 * Primjerak razreda {@link TextNode} dodaje se tek pozivom metode
+	 * {@link #flushText()}, pa susjedni tekstovi postaju jedan čvor
 	 * 
 	 * @throws SmartScriptParserException
 	 *             ukoliko leksički analizator dojavi da je nastala pogreška
 	 */
 	private void addTextNode() {
-		Node parent = requireParent();
-		parent.addChildNode(new TextNode(lexer.getCurrentToken().getValue().toString()));
+		requireParent();
+		pendingText.append(lexer.getCurrentToken().getValue().toString());
+	}
+
+	/**
+	 * Pomoćna metoda koja primjerku razreda {@link Node} koji je na vrhu stoga
+	 * dodaje primjerak razreda {@link TextNode} sa svim tekstom iz
+	 * {@link #pendingText}. Prazan tekst se ne dodaje
+	 */
+	private void flushText() {
+		if (pendingText.length() == 0) {
+			return;
+		}
+		requireParent().addChildNode(new TextNode(pendingText.toString()));
+		pendingText.setLength(0);
 	}
 
 	/**
@@ -143,6 +174,7 @@ public class SmartScriptParser {
 	 *             {@link SmartTokenType#TAG_NAME}.
 	 */
 	private void parseTag() {
+		flushText();
 		SmartToken token = getNextToken();
 		if (!isTokenOfType(SmartTokenType.TAG_NAME)) {
 			throw new SmartScriptParserException(
@@ -170,6 +202,13 @@ public class SmartScriptParser {
 	private void addForLoopNode() {
 		Node parent = requireParent();
 		ForLoopNode node = new ForLoopNode(requireTagElements());
+		ElementVariable variable = node.getVariable();
+		Integer slot = variableSlots.get(variable.getName());
+		if (slot == null) {
+			slot = variableSlots.size();
+			variableSlots.put(variable.getName(), slot);
+		}
+		variable.setSlot(slot);
 		parent.addChildNode(node);
 		// for loop može biti i parrent od drugih nodeova
 		nodeStack.push(node);
@@ -199,14 +238,35 @@ public class SmartScriptParser {
 
 	/**
 	 * Pomoćna metoda koja primjerku razreda {@link Node} koji je na vrhu stoga
-	 * dodaje primjerak razreda {@link EchoNode}
+	 * dodaje primjerak razreda {@link EchoNode}. Svakoj varijabli iz oznake
+	 * postavlja se mjesto iz {@link #variableSlots}
 	 * 
 	 * @throws SmartScriptParserException
-	 *             ukoliko leksički analizator dojavi da je nastala pogreška
+	 *             ukoliko leksički analizator dojavi da je nastala pogreška ili
+	 *             se varijabla koristi prije nego što ju je definirala neka for
+	 *             petlja
 	 */
 	private void addEchoNode() {
 		Node parent = requireParent();
-		parent.addChildNode(new EchoNode(requireTagElements()));
+		Element[] elements = requireTagElements();
+		for (Element element : elements) {
+			if (!(element instanceof ElementVariable)) {
+				continue;
+			}
+			ElementVariable variable = (ElementVariable) element;
+			Integer slot = variableSlots.get(variable.getName());
+			if (slot == null) {
+				throw new SmartScriptParserException(
+						"Varijabla '" + variable.getName() + "' koristi se prije nego što je definirana");
+			}
+			variable.setSlot(slot);
+		}
+		EchoNode node = new EchoNode(elements);
+		if (node.getExpression().changesHeaders()) {
+			// zaglavlje se mijenja tijekom izvođenja, pa se ne smije poslati ranije
+			documentNode.setBufferedOutput(true);
+		}
+		parent.addChildNode(node);
 	}
 
 	/**
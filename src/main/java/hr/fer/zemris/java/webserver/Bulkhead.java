@@ -0,0 +1,165 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.webserver.metrics.Counter;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry;
+
+/**
+ * Razred koji predstavlja pregradu (engl. <i>bulkhead</i>): zaseban bazen
+ * dretvi ograničene veličine s ograničenim redom čekanja u kojem se obrađuje
+ * jedna vrsta zahtjeva (npr. skripte ili radnici). Dretva veze predaje posao
+ * pregradi metodom {@link #submit(Runnable)} i odmah se oslobađa, a posao
+ * dovršava odgovor i zatvara vezu u dretvi pregrade. Spori ili zahtjevni
+ * poslovi jedne vrste tako mogu zauzeti najviše dretve svoje pregrade i mjesta
+ * u njezinom redu, dok se ostali zahtjevi (npr. statičke datoteke) i dalje
+ * obrađuju odmah. Metodom {@link #run(Task)} posao se obavlja u pregradi, a
+ * pozivatelj čeka njegov dovršetak (npr. tok HTTP/2 koji se obrađuje u
+ * vlastitom bazenu dretvi).
+ * <p>
+ * Kada su sve dretve pregrade zauzete, a red pun, posao se odbija iznimkom
+ * {@link RejectedExecutionException}, a poslužitelj klijentu odgovara
+ * statusom {@value ServerUtil#SERVICE_UNAVAILABLE_STATUS}. Pregrada u
+ * registar {@link MetricsRegistry} bilježi broj zauzetih dretvi, broj poslova
+ * u redu i broj odbijenih poslova.
+ * </p>
+ *
+ * @author Davor Češljaš
+ */
+public class Bulkhead {
+
+	/**
+	 * Sučelje koje predstavlja posao koji se obrađuje u pregradi
+	 *
+	 * @author Davor Češljaš
+	 */
+	public interface Task {
+
+		/**
+		 * Metoda koja obavlja posao
+		 *
+		 * @throws Exception
+		 *             ukoliko posao nije uspio
+		 */
+		void run() throws Exception;
+	}
+
+	/** Članska varijabla koja predstavlja bazen dretvi pregrade */
+	private final ThreadPoolExecutor executor;
+
+	/** Članska varijabla koja predstavlja brojač odbijenih poslova */
+	private final Counter rejected;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Dretve bazena
+	 * stvaraju se tek pri prvim poslovima
+	 *
+	 * @param name
+	 *            naziv pregrade (koristi se kao oznaka u metrikama i u nazivu
+	 *            dretvi)
+	 * @param threads
+	 *            broj dretvi pregrade
+	 * @param queueSize
+	 *            najveći broj poslova koji čekaju slobodnu dretvu (0 znači da
+	 *            se posao prima samo ako postoji slobodna dretva)
+	 * @param metrics
+	 *            registar u koji se bilježe metrike pregrade
+	 * @throws IllegalArgumentException
+	 *             ukoliko broj dretvi nije pozitivan ili je veličina reda
+	 *             negativna
+	 */
+	public Bulkhead(String name, int threads, int queueSize, MetricsRegistry metrics) {
+		if (threads < 1 || queueSize < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Pregrada '%s' mora imati barem jednu dretvu i nenegativan red, a predano je %d i %d", name,
+					threads, queueSize));
+		}
+
+		BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<>()
+				: new ArrayBlockingQueue<>(queueSize);
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, r -> {
+			Thread thread = new Thread(r, "smarthttp-" + name + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		String labels = "bulkhead=\"" + name + "\"";
+		metrics.gauge("bulkhead_active_threads", labels, "Broj dretvi pregrade koje trenutno obrađuju zahtjev",
+				executor::getActiveCount);
+		metrics.gauge("bulkhead_queued_tasks", labels, "Broj zahtjeva koji čekaju slobodnu dretvu pregrade",
+				() -> executor.getQueue().size());
+		rejected = metrics.counter("bulkhead_rejected_total", labels,
+				"Broj zahtjeva koje je pregrada odbila jer je bila puna");
+	}
+
+	/**
+	 * Metoda koja posao <b>task</b> predaje dretvi pregrade i ne čeka njegov
+	 * dovršetak. Posao sam mora obraditi svoje pogreške
+	 *
+	 * @param task
+	 *            posao koji se obavlja
+	 * @throws RejectedExecutionException
+	 *             ukoliko je pregrada puna ili zaustavljena
+	 */
+	public void submit(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw e;
+		}
+	}
+
+	/**
+	 * Metoda koja posao <b>task</b> obavlja u dretvi pregrade i čeka njegov
+	 * dovršetak. Iznimka koju posao baci prosljeđuje se pozivatelju. Ukoliko
+	 * se dretva pozivatelja prekine, posao se otkazuje
+	 *
+	 * @param task
+	 *            posao koji se obavlja
+	 * @throws RejectedExecutionException
+	 *             ukoliko je pregrada puna ili zaustavljena
+	 * @throws Exception
+	 *             iznimka koju je bacio posao ili {@link InterruptedException}
+	 *             ukoliko je dretva pozivatelja prekinuta
+	 */
+	public void run(Task task) throws Exception {
+		FutureTask<Void> future = new FutureTask<>(() -> {
+			task.run();
+			return null;
+		});
+
+		submit(future);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća bazen dretvi pregrade (npr. radi zaustavljanja
+	 * poslužitelja)
+	 *
+	 * @return bazen dretvi pregrade
+	 */
+	public ThreadPoolExecutor getExecutor() {
+		return executor;
+	}
+}
@@ -0,0 +1,235 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Pomoćni razred koji čita cookije iz retka zahtjeva "Cookie: " i zapisuje
+ * cookije modelirane razredom {@link RCCookie} kao retke odgovora
+ * "Set-Cookie: ".
+ * <p>
+ * Preglednici uz svaki zahtjev šalju sve cookije domene (često i nekoliko
+ * kilookteta cookija trećih strana), a poslužitelju treba tek poneki od njih.
+ * Zato metoda {@link #find(String, String)} redak prolazi znak po znak i
+ * uspoređuje nazive izravno s retkom, a stvara samo vrijednost traženog
+ * cookija. Metoda {@link #write(RCCookie, ByteBufferOutputStream)} cookie
+ * zapisuje izravno u spremnik zaglavlja odgovora.
+ * </p>
+ * Cookiji u retku odvojeni su znakom ';', a naziv i vrijednost prvim znakom
+ * '=' (vrijednost smije sadržavati i znakove ':' i '='). Razmaci oko naziva i
+ * vrijednosti se zanemaruju, a vrijednost omeđena navodnicima vraća se bez
+ * njih.
+ *
+ * @author Davor Češljaš
+ */
+public class CookieCodec {
+
+	/** Konstanta koja predstavlja naziv zaglavlja s cookijima zahtjeva */
+	public static final String COOKIE_HEADER = "Cookie:";
+
+	/** Konstanta koja predstavlja početak retka s cookijem odgovora */
+	private static final String SET_COOKIE = "Set-Cookie: ";
+
+	/**
+	 * Privatni konstruktor koji onemogućuje stvaranje primjeraka ovog razreda
+	 */
+	private CookieCodec() {
+	}
+
+	/**
+	 * Metoda koja u retku <b>cookieLine</b> pronalazi vrijednost prvog cookija
+	 * s nazivom <b>name</b>. Redak smije, ali ne mora započinjati s
+	 * {@value #COOKIE_HEADER}
+	 *
+	 * @param cookieLine
+	 *            redak s cookijima ili <code>null</code>
+	 * @param name
+	 *            naziv traženog cookija
+	 * @return vrijednost cookija ili <code>null</code> ukoliko takav cookie ne
+	 *         postoji
+	 */
+	public static String find(String cookieLine, String name) {
+		if (cookieLine == null) {
+			return null;
+		}
+
+		int end = cookieLine.length();
+		for (int start = valuesStart(cookieLine); start < end;) {
+			int next = indexOf(cookieLine, ';', start, end);
+			int equals = indexOf(cookieLine, '=', start, next);
+			if (equals != next) {
+				int nameStart = skipSpaces(cookieLine, start, equals);
+				int nameEnd = trimSpaces(cookieLine, nameStart, equals);
+				if (nameEnd - nameStart == name.length() && cookieLine.regionMatches(nameStart, name, 0, name.length())) {
+					return value(cookieLine, equals + 1, next);
+				}
+			}
+			start = next + 1;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Metoda koja parsira sve cookije iz retka <b>cookieLine</b>. Metoda se
+	 * koristi samo kada su potrebni svi cookiji, a za dohvat pojedinog cookija
+	 * koristi se metoda {@link #find(String, String)}
+	 *
+	 * @param cookieLine
+	 *            redak s cookijima
+	 * @return {@link List} parsiranih cookija (praznu ukoliko u retku nema
+	 *         ispravnih cookija)
+	 */
+	public static List<RCCookie> parseAll(String cookieLine) {
+		List<RCCookie> cookies = new ArrayList<>();
+
+		int end = cookieLine.length();
+		for (int start = valuesStart(cookieLine); start < end;) {
+			int next = indexOf(cookieLine, ';', start, end);
+			int equals = indexOf(cookieLine, '=', start, next);
+			if (equals != next) {
+				int nameStart = skipSpaces(cookieLine, start, equals);
+				int nameEnd = trimSpaces(cookieLine, nameStart, equals);
+				if (nameEnd > nameStart) {
+					cookies.add(new RCCookie(cookieLine.substring(nameStart, nameEnd),
+							value(cookieLine, equals + 1, next), null, null, null));
+				}
+			}
+			start = next + 1;
+		}
+
+		return cookies;
+	}
+
+	/**
+	 * Metoda koja cookie <b>cookie</b> zapisuje kao redak "Set-Cookie: " (bez
+	 * oznake kraja retka) u izlazni tok <b>header</b>
+	 *
+	 * @param cookie
+	 *            cookie koji se zapisuje
+	 * @param header
+	 *            izlazni tok zaglavlja odgovora
+	 */
+	public static void write(RCCookie cookie, ByteBufferOutputStream header) {
+		header.writeAscii(SET_COOKIE).writeAscii(cookie.getName()).writeAscii("=\"").writeAscii(cookie.getValue())
+				.writeAscii("\";");
+		if (cookie.getDomain() != null) {
+			header.writeAscii(" Domain=").writeAscii(cookie.getDomain()).write(';');
+		}
+		if (cookie.getPath() != null) {
+			header.writeAscii(" Path=").writeAscii(cookie.getPath()).write(';');
+		}
+		if (cookie.getMaxAge() != null) {
+			header.writeAscii(" Max-Age=").writeDecimal(cookie.getMaxAge()).write(';');
+		}
+		if (cookie.isHttpOnly()) {
+			header.writeAscii(" HttpOnly");
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja pronalazi indeks prvog cookija u retku
+	 * <b>cookieLine</b>
+	 *
+	 * @param cookieLine
+	 *            redak s cookijima
+	 * @return indeks iza {@value #COOKIE_HEADER} ili 0 ukoliko redak ne
+	 *         započinje nazivom zaglavlja
+	 */
+	private static int valuesStart(String cookieLine) {
+		return cookieLine.regionMatches(true, 0, COOKIE_HEADER, 0, COOKIE_HEADER.length()) ? COOKIE_HEADER.length()
+				: 0;
+	}
+
+	/**
+	 * Pomoćna metoda koja stvara vrijednost cookija zadanu između indeksa
+	 * <b>start</b> i <b>end</b>, bez okolnih razmaka i navodnika
+	 *
+	 * @param line
+	 *            redak s cookijima
+	 * @param start
+	 *            indeks početka vrijednosti
+	 * @param end
+	 *            indeks iza kraja vrijednosti
+	 * @return vrijednost cookija
+	 */
+	private static String value(String line, int start, int end) {
+		start = skipSpaces(line, start, end);
+		end = trimSpaces(line, start, end);
+		if (end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"') {
+			start++;
+			end--;
+		}
+		return line.substring(start, end);
+	}
+
+	/**
+	 * Pomoćna metoda koja pronalazi prvi znak <b>c</b> između indeksa
+	 * <b>start</b> i <b>end</b>
+	 *
+	 * @param line
+	 *            redak koji se pretražuje
+	 * @param c
+	 *            traženi znak
+	 * @param start
+	 *            indeks od kojeg se traži
+	 * @param end
+	 *            indeks do kojeg se traži
+	 * @return indeks znaka ili <b>end</b> ukoliko znak nije pronađen
+	 */
+	private static int indexOf(String line, char c, int start, int end) {
+		int index = line.indexOf(c, start);
+		return index == -1 || index > end ? end : index;
+	}
+
+	/**
+	 * Pomoćna metoda koja preskače razmake od indeksa <b>start</b>
+	 *
+	 * @param line
+	 *            redak s cookijima
+	 * @param start
+	 *            početni indeks
+	 * @param end
+	 *            indeks do kojeg se preskače
+	 * @return indeks prvog znaka koji nije razmak ili <b>end</b>
+	 */
+	private static int skipSpaces(String line, int start, int end) {
+		while (start < end && isSpace(line.charAt(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Pomoćna metoda koja uklanja razmake ispred indeksa <b>end</b>
+	 *
+	 * @param line
+	 *            redak s cookijima
+	 * @param start
+	 *            indeks do kojeg se uklanja
+	 * @param end
+	 *            početni indeks
+	 * @return indeks iza posljednjeg znaka koji nije razmak ili <b>start</b>
+	 */
+	private static int trimSpaces(String line, int start, int end) {
+		while (end > start && isSpace(line.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava je li znak <b>c</b> razmak ili tabulator
+	 *
+	 * @param c
+	 *            znak koji se provjerava
+	 * @return <code>true</code> ukoliko je znak razmak, <code>false</code>
+	 *         inače
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t';
+	}
+}
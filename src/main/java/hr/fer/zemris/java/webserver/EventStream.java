@@ -0,0 +1,308 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja tok događaja (engl. <i>Server-Sent Events</i>)
+ * prema jednom klijentu. Tok se otvara metodom
+ * {@link RequestContext#startEventStream()}, nakon čega radnik (ili bilo
+ * koja druga dretva) klijentu šalje događaje metodama
+ * {@link #send(String, String)} i {@link #send(String)}. Svaki događaj
+ * odmah se šalje klijentu.
+ * <p>
+ * Kada radnik završi s metodom {@link IWebWorker#processRequest(RequestContext)},
+ * poslužitelj vezu (ili tok HTTP/2) ostavlja otvorenom, a dretvu vraća u
+ * bazen, pa broj otvorenih tokova događaja nije ograničen brojem dretvi.
+ * Poslužitelj tokovima koji neko vrijeme nisu ništa poslali šalje komentare
+ * koji održavaju vezu živom, a tok se zatvara kada pisanje ne uspije, kada
+ * klijent prekine vezu ili tok HTTP/2 te kada se zahtjev otkaže. O zatvaranju
+ * se obavještavaju slušači registrirani metodom {@link #onClose(Runnable)}.
+ * </p>
+ * Metode ovog razreda smiju se pozivati iz više dretvi.
+ *
+ * @see RequestContext#startEventStream()
+ *
+ * @author Davor Češljaš
+ */
+public class EventStream implements Closeable {
+
+	/** Konstanta koja predstavlja mime-tip toka događaja */
+	public static final String MIME_TYPE = "text/event-stream";
+
+	/**
+	 * Konstanta koja predstavlja komentar kojim se otvara tok, a kojim se
+	 * klijentu odmah šalje i zaglavlje odgovora
+	 */
+	private static final byte[] OPEN_COMMENT = ": ok\n\n".getBytes(StandardCharsets.US_ASCII);
+
+	/** Konstanta koja predstavlja komentar koji održava vezu živom */
+	private static final byte[] KEEP_ALIVE_COMMENT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+	/** Članska varijabla koja predstavlja kontekst zahtjeva toka */
+	private final RequestContext context;
+
+	/**
+	 * Članska varijabla koja predstavlja ključ koji smije imati samo dretva
+	 * koja piše u tok
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Članska varijabla koja predstavlja slušače zatvaranja toka */
+	private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+	/** Članska varijabla koja predstavlja zastavicu zatvorenosti toka */
+	private volatile boolean closed;
+
+	/**
+	 * Članska varijabla koja predstavlja trenutak (prema
+	 * {@link System#nanoTime()}) posljednjeg pisanja u tok
+	 */
+	private volatile long lastWrite = System.nanoTime();
+
+	/**
+	 * Članska varijabla koja predstavlja objekt kojim se zatvara veza ili tok
+	 * HTTP/2 ili <code>null</code> ukoliko tok još nije preuzeo poslužitelj.
+	 * Koristi se isključivo uz ključ {@link #lock}
+	 */
+	private Closeable connection;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada je
+	 * veza zatvorena. Koristi se isključivo uz ključ {@link #lock}
+	 */
+	private boolean released;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param context
+	 *            kontekst zahtjeva u koji se pišu događaji
+	 */
+	EventStream(RequestContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Metoda koja klijentu šalje događaj bez naziva (klijent ga prima kao
+	 * događaj "message")
+	 *
+	 * @param data
+	 *            podaci događaja (smiju sadržavati više redaka)
+	 * @throws IOException
+	 *             ukoliko je tok zatvoren ili se u njega ne može pisati
+	 */
+	public void send(String data) throws IOException {
+		send(null, data);
+	}
+
+	/**
+	 * Metoda koja klijentu šalje događaj naziva <b>event</b> s podacima
+	 * <b>data</b>. Svaki redak podataka šalje se kao zasebno polje "data: "
+	 *
+	 * @param event
+	 *            naziv događaja ili <code>null</code>
+	 * @param data
+	 *            podaci događaja (smiju sadržavati više redaka)
+	 * @throws IOException
+	 *             ukoliko je tok zatvoren ili se u njega ne može pisati
+	 * @throws IllegalArgumentException
+	 *             ukoliko naziv događaja sadrži oznaku novog retka
+	 */
+	public void send(String event, String data) throws IOException {
+		if (event != null && (event.indexOf('\n') != -1 || event.indexOf('\r') != -1)) {
+			throw new IllegalArgumentException("Naziv događaja ne smije sadržavati oznaku novog retka");
+		}
+
+		try (ByteBufferOutputStream buffer = new ByteBufferOutputStream()) {
+			if (event != null) {
+				buffer.writeAscii("event: ").writeUtf8(event).writeAscii("\n");
+			}
+			for (String line : data.split("\r\n|\r|\n", -1)) {
+				buffer.writeAscii("data: ").writeUtf8(line).writeAscii("\n");
+			}
+			buffer.writeAscii("\n");
+			write(buffer.toByteBuffer());
+		}
+	}
+
+	/**
+	 * Metoda koja provjerava je li tok zatvoren
+	 *
+	 * @return <code>true</code> ukoliko je tok zatvoren, <code>false</code>
+	 *         inače
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Metoda koja registrira slušača <b>listener</b> koji se poziva kada se
+	 * tok zatvori (npr. kako bi radnik prestao slati događaje). Ukoliko je tok
+	 * već zatvoren, slušač se poziva odmah
+	 *
+	 * @param listener
+	 *            slušač koji se registrira
+	 */
+	public void onClose(Runnable listener) {
+		synchronized (closeListeners) {
+			if (!closed) {
+				closeListeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Metoda koja zatvara tok i obavještava slušače. Ukoliko neka dretva
+	 * upravo piše u tok, veza se zatvara čim ona završi s pisanjem, pa metoda
+	 * nikada ne čeka na klijenta
+	 */
+	@Override
+	public void close() {
+		synchronized (closeListeners) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+
+		releaseIfClosed();
+		for (Runnable listener : closeListeners) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Metoda koja otvara tok slanjem zaglavlja odgovora i komentara
+	 * {@link #OPEN_COMMENT}
+	 *
+	 * @throws IOException
+	 *             ukoliko se u tok ne može pisati
+	 */
+	void open() throws IOException {
+		write(ByteBuffer.wrap(OPEN_COMMENT));
+	}
+
+	/**
+	 * Metoda kojom poslužitelj preuzima tok nakon što je radnik završio s
+	 * radom. Od tog trenutka tok zatvaranjem zatvara i vezu <b>connection</b>
+	 *
+	 * @param connection
+	 *            objekt kojim se zatvara veza ili tok HTTP/2
+	 * @return <code>true</code> ukoliko je tok preuzet, <code>false</code>
+	 *         ukoliko je tok već zatvoren (vezu tada zatvara poslužitelj)
+	 */
+	boolean attach(Closeable connection) {
+		lock.lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			this.connection = connection;
+		} finally {
+			lock.unlock();
+		}
+
+		// tok se možda zatvorio dok je ključ bio zauzet
+		releaseIfClosed();
+		return true;
+	}
+
+	/**
+	 * Metoda koja klijentu šalje komentar koji održava vezu živom, ukoliko u
+	 * tok nije ništa pisano barem <b>period</b> nanosekundi i ukoliko u njega
+	 * upravo ne piše neka druga dretva
+	 *
+	 * @param now
+	 *            trenutak provjere (prema {@link System#nanoTime()})
+	 * @param period
+	 *            najdulje vrijeme (u nanosekundama) bez pisanja u tok
+	 */
+	void keepAlive(long now, long period) {
+		if (closed || now - lastWrite < period || !lock.tryLock()) {
+			return;
+		}
+
+		try {
+			writeLocked(ByteBuffer.wrap(KEEP_ALIVE_COMMENT));
+		} catch (IOException e) {
+			// veza je prekinuta, a tok je već zatvoren
+		} finally {
+			lock.unlock();
+			releaseIfClosed();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja sve preostale oktete spremnika <b>data</b> piše u
+	 * tok
+	 *
+	 * @param data
+	 *            okteti koji se pišu
+	 * @throws IOException
+	 *             ukoliko je tok zatvoren ili se u njega ne može pisati
+	 */
+	private void write(ByteBuffer data) throws IOException {
+		lock.lock();
+		try {
+			writeLocked(data);
+		} finally {
+			lock.unlock();
+			releaseIfClosed();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja piše u tok uz ključ {@link #lock}. Ukoliko pisanje
+	 * ne uspije, tok se zatvara
+	 *
+	 * @param data
+	 *            okteti koji se pišu
+	 * @throws IOException
+	 *             ukoliko je tok zatvoren ili se u njega ne može pisati
+	 */
+	private void writeLocked(ByteBuffer data) throws IOException {
+		if (closed) {
+			throw new IOException("Tok događaja je zatvoren");
+		}
+
+		try {
+			context.write(data);
+			lastWrite = System.nanoTime();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja zatvara vezu ukoliko je tok zatvoren, a veza još
+	 * nije zatvorena. Ukoliko ključ {@link #lock} ima neka druga dretva, vezu
+	 * zatvara ta dretva nakon što završi s pisanjem
+	 */
+	private void releaseIfClosed() {
+		if (!closed || !lock.tryLock()) {
+			return;
+		}
+
+		try {
+			if (released || connection == null) {
+				return;
+			}
+			released = true;
+			connection.close();
+		} catch (IOException ignorable) {
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,439 @@
+package hr.fer.zemris.java.webserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Razred koji predstavlja parametre zahtjeva zadane nizom upita (dio putanje
+ * nakon znaka '?'). Niz se pri stvaranju ({@link #parse(String, int, int)})
+ * prolazi samo jednom i pri tome se pamte samo granice ključeva i vrijednosti,
+ * bez stvaranja podnizova. Ključevi i vrijednosti dekodiraju se (nizovi
+ * "%xx" kao okteti UTF-8, znak '+' kao razmak) tek kada se zatraže, i to samo
+ * jednom. Ključevi bez kodiranih znakova uspoređuju se izravno s nizom upita,
+ * pa traženje parametra ne dekodira ostale ključeve.
+ * <p>
+ * Podržani su parametri bez vrijednosti ("a" i "a=", oba s praznom
+ * vrijednošću) te ključevi koji se ponavljaju. Kao {@link java.util.Map}
+ * primjerak ovog razreda vraća prvu vrijednost ključa, a sve vrijednosti
+ * vraća metoda {@link #getAll(String)}. Primjerak se ne može mijenjati.
+ * </p>
+ *
+ * @author Davor Češljaš
+ */
+public class QueryParameters extends AbstractMap<String, String> {
+
+	/** Konstanta koja predstavlja parametre praznog niza upita */
+	public static final QueryParameters EMPTY = new QueryParameters("", new int[0], 0);
+
+	/** Konstanta koja predstavlja broj cijelih brojeva po jednom parametru */
+	private static final int FIELDS = 4;
+
+	/** Konstanta koja predstavlja pomak početka ključa */
+	private static final int KEY_START = 0;
+
+	/** Konstanta koja predstavlja pomak kraja ključa */
+	private static final int KEY_END = 1;
+
+	/** Konstanta koja predstavlja pomak kraja vrijednosti */
+	private static final int VALUE_END = 2;
+
+	/** Konstanta koja predstavlja pomak zastavica parametra */
+	private static final int FLAGS = 3;
+
+	/** Konstanta koja predstavlja zastavicu ključa koji treba dekodirati */
+	private static final int KEY_ENCODED = 1;
+
+	/** Konstanta koja predstavlja zastavicu vrijednosti koju treba dekodirati */
+	private static final int VALUE_ENCODED = 2;
+
+	/** Konstanta koja predstavlja početni broj parametara */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** Članska varijabla koja predstavlja niz u kojem se nalazi upit */
+	private final String source;
+
+	/**
+	 * Članska varijabla koja predstavlja granice i zastavice parametara
+	 * ({@value #FIELDS} broja po parametru)
+	 */
+	private final int[] bounds;
+
+	/** Članska varijabla koja predstavlja broj parametara (s ponavljanjima) */
+	private final int count;
+
+	/**
+	 * Članska varijabla koja predstavlja dekodirane ključeve ili
+	 * <code>null</code> dok niti jedan kodirani ključ nije zatražen
+	 */
+	private String[] keys;
+
+	/**
+	 * Članska varijabla koja predstavlja dekodirane vrijednosti ili
+	 * <code>null</code> dok niti jedna vrijednost nije zatražena
+	 */
+	private String[] values;
+
+	/**
+	 * Članska varijabla koja predstavlja broj različitih ključeva ili -1 dok
+	 * nije izračunat
+	 */
+	private int distinctCount = -1;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param source
+	 *            niz u kojem se nalazi upit
+	 * @param bounds
+	 *            granice i zastavice parametara
+	 * @param count
+	 *            broj parametara
+	 */
+	private QueryParameters(String source, int[] bounds, int count) {
+		this.source = source;
+		this.bounds = bounds;
+		this.count = count;
+	}
+
+	/**
+	 * Metoda koja parsira niz upita koji se u nizu <b>source</b> nalazi između
+	 * indeksa <b>start</b> (uključivo) i <b>end</b> (isključivo). Parametri su
+	 * međusobno odvojeni znakom '&amp;', a ključ i vrijednost prvim znakom '='
+	 * u parametru. Prazni parametri (npr. "a=1&amp;&amp;b=2") se preskaču
+	 *
+	 * @param source
+	 *            niz u kojem se nalazi upit (npr. čitava zatražena putanja)
+	 * @param start
+	 *            indeks prvog znaka upita
+	 * @param end
+	 *            indeks iza posljednjeg znaka upita
+	 * @return parametre upita ili <code>null</code> ukoliko neki parametar
+	 *         nema ključ ili sadrži neispravan niz "%xx"
+	 */
+	public static QueryParameters parse(String source, int start, int end) {
+		int[] bounds = new int[INITIAL_CAPACITY * FIELDS];
+		int count = 0;
+		int pairStart = start;
+		int keyEnd = -1;
+		int flags = 0;
+
+		for (int i = start; i <= end; i++) {
+			char c = i < end ? source.charAt(i) : '&';
+			if (c == '&') {
+				if (i > pairStart) {
+					if (keyEnd == pairStart) {
+						return null;
+					}
+					if (count * FIELDS == bounds.length) {
+						bounds = Arrays.copyOf(bounds, bounds.length << 1);
+					}
+
+					int offset = count++ * FIELDS;
+					bounds[offset + KEY_START] = pairStart;
+					bounds[offset + KEY_END] = keyEnd == -1 ? i : keyEnd;
+					bounds[offset + VALUE_END] = i;
+					bounds[offset + FLAGS] = flags;
+				}
+				pairStart = i + 1;
+				keyEnd = -1;
+				flags = 0;
+			} else if (c == '=' && keyEnd == -1) {
+				keyEnd = i;
+			} else if (c == '%' || c == '+' || c > 0x7F) {
+				if (c == '%' && (i + 2 >= end || hexValue(source.charAt(i + 1)) == -1
+						|| hexValue(source.charAt(i + 2)) == -1)) {
+					return null;
+				}
+				flags |= keyEnd == -1 ? KEY_ENCODED : VALUE_ENCODED;
+			}
+		}
+
+		return count == 0 ? EMPTY : new QueryParameters(source, bounds, count);
+	}
+
+	/**
+	 * Metoda koja parsira čitav niz upita <b>query</b> (vidi
+	 * {@link #parse(String, int, int)})
+	 *
+	 * @param query
+	 *            niz upita
+	 * @return parametre upita ili <code>null</code> ukoliko upit nije ispravan
+	 */
+	public static QueryParameters parse(String query) {
+		return parse(query, 0, query.length());
+	}
+
+	/**
+	 * Metoda koja dohvaća sve vrijednosti ključa <b>name</b> redoslijedom
+	 * kojim su zadane u upitu
+	 *
+	 * @param name
+	 *            ključ parametra
+	 * @return nepromjenjivu {@link List}u vrijednosti (praznu ukoliko ključ
+	 *         ne postoji)
+	 */
+	public List<String> getAll(String name) {
+		List<String> all = null;
+		for (int i = 0; i < count; i++) {
+			if (keyEquals(i, name)) {
+				if (all == null) {
+					all = new ArrayList<>(2);
+				}
+				all.add(value(i));
+			}
+		}
+		return all == null ? Collections.emptyList() : Collections.unmodifiableList(all);
+	}
+
+	@Override
+	public String get(Object key) {
+		int index = key instanceof String ? indexOf((String) key) : -1;
+		return index == -1 ? null : value(index);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && indexOf((String) key) != -1;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	@Override
+	public int size() {
+		if (distinctCount == -1) {
+			int distinct = 0;
+			for (int i = 0; i < count; i++) {
+				if (isFirst(i)) {
+					distinct++;
+				}
+			}
+			distinctCount = distinct;
+		}
+		return distinctCount;
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+		return new AbstractSet<Entry<String, String>>() {
+
+			@Override
+			public Iterator<Entry<String, String>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return QueryParameters.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Pomoćna metoda koja pronalazi prvi parametar s ključem <b>name</b>
+	 *
+	 * @param name
+	 *            ključ parametra
+	 * @return indeks parametra ili -1 ukoliko ključ ne postoji
+	 */
+	private int indexOf(String name) {
+		for (int i = 0; i < count; i++) {
+			if (keyEquals(i, name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava je li parametar <b>index</b> prvi
+	 * parametar sa svojim ključem
+	 *
+	 * @param index
+	 *            indeks parametra
+	 * @return <code>true</code> ukoliko se ključ parametra ne pojavljuje
+	 *         ranije
+	 */
+	private boolean isFirst(int index) {
+		String key = key(index);
+		for (int i = 0; i < index; i++) {
+			if (keyEquals(i, key)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava je li ključ parametra <b>index</b> jednak
+	 * nizu <b>name</b>. Ključ bez kodiranih znakova uspoređuje se izravno s
+	 * nizom upita
+	 *
+	 * @param index
+	 *            indeks parametra
+	 * @param name
+	 *            niz s kojim se ključ uspoređuje
+	 * @return <code>true</code> ukoliko su ključ i niz jednaki
+	 */
+	private boolean keyEquals(int index, String name) {
+		int offset = index * FIELDS;
+		if ((bounds[offset + FLAGS] & KEY_ENCODED) != 0) {
+			return key(index).equals(name);
+		}
+
+		int start = bounds[offset + KEY_START];
+		int length = bounds[offset + KEY_END] - start;
+		return length == name.length() && source.regionMatches(start, name, 0, length);
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća dekodirani ključ parametra <b>index</b>
+	 *
+	 * @param index
+	 *            indeks parametra
+	 * @return dekodirani ključ
+	 */
+	private String key(int index) {
+		if (keys == null) {
+			keys = new String[count];
+		}
+		if (keys[index] == null) {
+			int offset = index * FIELDS;
+			keys[index] = decode(bounds[offset + KEY_START], bounds[offset + KEY_END],
+					(bounds[offset + FLAGS] & KEY_ENCODED) != 0);
+		}
+		return keys[index];
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća dekodiranu vrijednost parametra
+	 * <b>index</b>
+	 *
+	 * @param index
+	 *            indeks parametra
+	 * @return dekodiranu vrijednost (prazan niz ukoliko parametar nema
+	 *         vrijednost)
+	 */
+	private String value(int index) {
+		if (values == null) {
+			values = new String[count];
+		}
+		if (values[index] == null) {
+			int offset = index * FIELDS;
+			int keyEnd = bounds[offset + KEY_END];
+			int valueEnd = bounds[offset + VALUE_END];
+			values[index] = keyEnd == valueEnd ? ""
+					: decode(keyEnd + 1, valueEnd, (bounds[offset + FLAGS] & VALUE_ENCODED) != 0);
+		}
+		return values[index];
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira dio niza upita između indeksa <b>start</b>
+	 * i <b>end</b>. Nizovi "%xx" predstavljaju oktete, ostali znakovi oktete
+	 * skupa ISO-8859-1 (kojim je dekodiran zahtjev), a dobiveni okteti
+	 * tumače se kao UTF-8
+	 *
+	 * @param start
+	 *            indeks prvog znaka
+	 * @param end
+	 *            indeks iza posljednjeg znaka
+	 * @param encoded
+	 *            <code>true</code> ukoliko dio sadrži kodirane znakove
+	 * @return dekodirani niz
+	 */
+	private String decode(int start, int end, boolean encoded) {
+		if (!encoded) {
+			return source.substring(start, end);
+		}
+
+		byte[] bytes = new byte[end - start];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			char c = source.charAt(i);
+			if (c == '+') {
+				bytes[length++] = ' ';
+			} else if (c == '%') {
+				bytes[length++] = (byte) (hexValue(source.charAt(i + 1)) << 4 | hexValue(source.charAt(i + 2)));
+				i += 2;
+			} else {
+				bytes[length++] = (byte) c;
+			}
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Pomoćna metoda koja vraća vrijednost heksadekadske znamenke <b>c</b>
+	 *
+	 * @param c
+	 *            znamenka
+	 * @return vrijednost znamenke ili -1 ukoliko znak nije heksadekadska
+	 *         znamenka
+	 */
+	private static int hexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	/**
+	 * Privatni razred koji predstavlja iterator po parametrima s različitim
+	 * ključevima (svaki ključ s prvom vrijednošću)
+	 *
+	 * @author Davor Češljaš
+	 */
+	private class EntryIterator implements Iterator<Entry<String, String>> {
+
+		/** Članska varijabla koja predstavlja indeks idućeg parametra */
+		private int next = advance(0);
+
+		@Override
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		@Override
+		public Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("Nema više parametara");
+			}
+
+			int index = next;
+			next = advance(index + 1);
+			return new SimpleImmutableEntry<>(key(index), value(index));
+		}
+
+		/**
+		 * Pomoćna metoda koja pronalazi prvi parametar od indeksa <b>from</b>
+		 * čiji se ključ ne pojavljuje ranije
+		 *
+		 * @param from
+		 *            indeks od kojeg se traži
+		 * @return indeks parametra ili {@link QueryParameters#count}
+		 */
+		private int advance(int from) {
+			while (from < count && !isFirst(from)) {
+				from++;
+			}
+			return from;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.java.webserver.metrics.Counter;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry;
+
+/**
+ * Razred koji predstavlja ograničavač brzine zahtjeva po klijentu. Pravila se
+ * zadaju po početku putanje (npr. "/calc" ili "/scripts/"), a svako pravilo
+ * ima jedno ili više ograničenja po adresi klijenta ({@link Key#IP}) ili po
+ * sesiji ({@link Key#SID}). Zahtjevu se primjenjuju ograničenja pravila s
+ * najduljim početkom putanje koji mu odgovara.
+ * <p>
+ * Svako ograničenje ima vlastitu tablicu posuda s tokenima (engl. <i>token
+ * bucket</i>) po klijentu. Tablica je {@link ConcurrentHashMap} (podijeljena
+ * na dijelove koji se ne zaključavaju pri čitanju), a posuda je jedan
+ * {@link AtomicLong} koji pamti teorijsko vrijeme dolaska idućeg zahtjeva
+ * (algoritam GCRA), pa se token uzima jednom operacijom CAS, bez ključanja.
+ * Posuda koja se potpuno napunila jednaka je novoj posudi, pa je metoda
+ * {@link #expireIdle()} smije izbaciti iz tablice. Tako tablice ostaju male i
+ * pod prometom s mnogo različitih adresa. Posuda se prije izbacivanja
+ * operacijom CAS označava izbačenom, pa token ne može biti uzet iz posude koja
+ * više nije u tablici.
+ * </p>
+ * Kada klijent prekorači ograničenje, metoda
+ * {@link #acquire(String, Object, String)} vraća unaprijed pripremljene oktete
+ * odgovora "429 Too Many Requests".
+ *
+ * @author Davor Češljaš
+ */
+public class RateLimiter {
+
+	/**
+	 * Enumeracija koja predstavlja ključ po kojem se klijenti razlikuju
+	 *
+	 * @author Davor Češljaš
+	 */
+	public enum Key {
+		/** adresa klijenta */
+		IP,
+		/** Session ID klijenta */
+		SID;
+
+		/**
+		 * Metoda koja dohvaća oznaku ključa u postavkama i metrikama
+		 *
+		 * @return oznaku ključa
+		 */
+		public String getLabel() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/** Konstanta koja predstavlja broj nanosekundi u jednoj sekundi */
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Konstanta koja predstavlja vrijednost posude koja je izbačena iz
+	 * tablice. Iz takve posude se ne uzimaju tokeni, već se uzimaju iz nove
+	 */
+	private static final long EXPIRED = Long.MIN_VALUE;
+
+	/** Članska varijabla koja predstavlja pravila poredana od najduljeg */
+	private final List<Rule> rules = new ArrayList<>();
+
+	/**
+	 * Članska varijabla koja predstavlja brojače odbijenih zahtjeva po
+	 * ključevima
+	 */
+	private final Counter[] rejected = new Counter[Key.values().length];
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda i učitava pravila
+	 * iz datoteke <b>filePath</b>. Svaki redak datoteke je oblika
+	 * "početak_putanje = ključ brzina kapacitet[, ključ brzina kapacitet...]",
+	 * gdje je ključ "ip" ili "sid", brzina broj zahtjeva u sekundi, a kapacitet
+	 * najveći broj zahtjeva koji klijent smije poslati odjednom
+	 *
+	 * @param filePath
+	 *            putanja do datoteke s pravilima
+	 * @param metrics
+	 *            registar u koji se bilježe metrike ograničavača
+	 * @throws IOException
+	 *             ukoliko se ne može čitati iz datoteke
+	 * @throws IllegalArgumentException
+	 *             ukoliko neko pravilo nije ispravno
+	 */
+	public RateLimiter(String filePath, MetricsRegistry metrics) throws IOException {
+		ServerUtil.loadProperties(filePath,
+				(prefix, limits) -> rules.add(new Rule(prefix.toString().trim(), limits.toString())));
+		rules.sort(Comparator.comparingInt((Rule rule) -> rule.prefix.length()).reversed());
+
+		for (Key key : Key.values()) {
+			rejected[key.ordinal()] = metrics.counter("ratelimit_rejected_total", "key=\"" + key.getLabel() + "\"",
+					"Broj zahtjeva odbijenih zbog prekoračenja ograničenja brzine");
+		}
+		metrics.gauge("ratelimit_buckets", "Broj posuda s tokenima u tablicama ograničavača brzine",
+				this::countBuckets);
+	}
+
+	/**
+	 * Metoda koja zahtjevu na putanju <b>path</b> uzima po jedan token iz
+	 * posuda svih ograničenja pravila koje mu odgovara
+	 *
+	 * @param path
+	 *            putanja zahtjeva (bez parametara)
+	 * @param address
+	 *            adresa klijenta
+	 * @param sid
+	 *            Session ID klijenta ili <code>null</code>
+	 * @return <code>null</code> ukoliko je zahtjev dopušten, odnosno okteti
+	 *         odgovora koji se šalje klijentu ukoliko je neko ograničenje
+	 *         prekoračeno
+	 */
+	public byte[] acquire(String path, Object address, String sid) {
+		Rule rule = findRule(path);
+		if (rule == null) {
+			return null;
+		}
+
+		long now = System.nanoTime();
+		for (Limit limit : rule.limits) {
+			Object client = limit.key == Key.IP ? address : sid;
+			if (client != null && !limit.tryAcquire(client, now)) {
+				rejected[limit.key.ordinal()].increment();
+				return limit.response;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Metoda koja iz svih tablica izbacuje posude koje su se potpuno napunile
+	 * (klijent neko vrijeme nije slao zahtjeve). Posuda se izbacuje samo ako
+	 * ju je ova metoda uspjela označiti vrijednošću {@link #EXPIRED}, pa se
+	 * zahtjev koji istovremeno uzima token iz nje ne gubi. Metodu poslužitelj
+	 * periodički poziva
+	 */
+	public void expireIdle() {
+		long now = System.nanoTime();
+		for (Rule rule : rules) {
+			for (Limit limit : rule.limits) {
+				for (Map.Entry<Object, AtomicLong> entry : limit.buckets.entrySet()) {
+					AtomicLong bucket = entry.getValue();
+					long current = bucket.get();
+					if (current != EXPIRED && current - now <= 0 && bucket.compareAndSet(current, EXPIRED)) {
+						limit.buckets.remove(entry.getKey(), bucket);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja pronalazi pravilo s najduljim početkom putanje koji
+	 * odgovara putanji <b>path</b>
+	 *
+	 * @param path
+	 *            putanja zahtjeva
+	 * @return pronađeno pravilo ili <code>null</code>
+	 */
+	private Rule findRule(String path) {
+		for (Rule rule : rules) {
+			if (path.startsWith(rule.prefix)) {
+				return rule;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Pomoćna metoda koja prebrojava posude u svim tablicama
+	 *
+	 * @return ukupan broj posuda
+	 */
+	private long countBuckets() {
+		long count = 0;
+		for (Rule rule : rules) {
+			for (Limit limit : rule.limits) {
+				count += limit.buckets.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Privatni statički razred koji predstavlja pravilo za jedan početak
+	 * putanje
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class Rule {
+
+		/** Članska varijabla koja predstavlja početak putanje */
+		private final String prefix;
+
+		/** Članska varijabla koja predstavlja ograničenja pravila */
+		private final Limit[] limits;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param prefix
+		 *            početak putanje
+		 * @param description
+		 *            ograničenja odvojena zarezom
+		 */
+		Rule(String prefix, String description) {
+			this.prefix = prefix;
+
+			String[] parts = description.split(",");
+			limits = new Limit[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				limits[i] = new Limit(prefix, parts[i].trim());
+			}
+		}
+	}
+
+	/**
+	 * Privatni statički razred koji predstavlja jedno ograničenje pravila i
+	 * tablicu posuda s tokenima po klijentima
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class Limit {
+
+		/** Članska varijabla koja predstavlja ključ po kojem se ograničava */
+		private final Key key;
+
+		/**
+		 * Članska varijabla koja predstavlja razmak (u nanosekundama) između
+		 * dvaju tokena
+		 */
+		private final long interval;
+
+		/**
+		 * Članska varijabla koja predstavlja koliko (u nanosekundama) klijent
+		 * smije biti ispred ravnomjernog slanja zahtjeva
+		 */
+		private final long tolerance;
+
+		/** Članska varijabla koja predstavlja odgovor kojim se zahtjev odbija */
+		private final byte[] response;
+
+		/**
+		 * Članska varijabla koja predstavlja posude po klijentima. Vrijednost
+		 * posude je teorijsko vrijeme (prema {@link System#nanoTime()}) do
+		 * kojeg su potrošeni tokeni
+		 */
+		private final Map<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda iz opisa
+		 * oblika "ključ brzina kapacitet"
+		 *
+		 * @param prefix
+		 *            početak putanje pravila (za poruke o pogrešci)
+		 * @param description
+		 *            opis ograničenja
+		 * @throws IllegalArgumentException
+		 *             ukoliko opis nije ispravan
+		 */
+		Limit(String prefix, String description) {
+			String[] parts = description.split("\\s+");
+			double rate;
+			int burst;
+			try {
+				if (parts.length != 3) {
+					throw new IllegalArgumentException();
+				}
+				key = Key.valueOf(parts[0].toUpperCase(Locale.ROOT));
+				rate = Double.parseDouble(parts[1]);
+				burst = Integer.parseInt(parts[2]);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(String.format(
+						"Ograničenje '%s' za putanju '%s' nije oblika 'ip|sid brzina kapacitet'", description,
+						prefix));
+			}
+			if (rate <= 0 || burst < 1) {
+				throw new IllegalArgumentException(String.format(
+						"Brzina i kapacitet ograničenja za putanju '%s' moraju biti pozitivni", prefix));
+			}
+
+			interval = (long) (NANOS_PER_SECOND / rate);
+			tolerance = interval * burst;
+			long retryAfter = Math.max(1, (interval + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+			response = ("HTTP/1.1 429 Too Many Requests\r\nRetry-After: " + retryAfter
+					+ "\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		/**
+		 * Metoda koja klijentu <b>client</b> uzima jedan token. Ukoliko je
+		 * posuda u međuvremenu izbačena (vidi {@link RateLimiter#expireIdle()}),
+		 * token se uzima iz nove posude
+		 *
+		 * @param client
+		 *            klijent (adresa ili Session ID)
+		 * @param now
+		 *            trenutno vrijeme prema {@link System#nanoTime()}
+		 * @return <code>true</code> ukoliko je token uzet, <code>false</code>
+		 *         ukoliko je posuda prazna
+		 */
+		boolean tryAcquire(Object client, long now) {
+			AtomicLong bucket = buckets.get(client);
+			while (true) {
+				if (bucket == null) {
+					bucket = buckets.computeIfAbsent(client, c -> new AtomicLong(now));
+				}
+
+				long current = bucket.get();
+				if (current == EXPIRED) {
+					// izbačena posuda još može biti u tablici ako je dretva čišćenja nije stigla ukloniti
+					buckets.remove(client, bucket);
+					bucket = null;
+					continue;
+				}
+
+				long next = (current - now > 0 ? current : now) + interval;
+				if (next - now > tolerance) {
+					return false;
+				}
+				if (bucket.compareAndSet(current, next)) {
+					return true;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Locale;
+
+/**
+ * Razred koji predstavlja iznimku koja se baca kada je obrada zahtjeva
+ * otkazana, bilo zato što je istekao rok zahtjeva, bilo zato što je klijent
+ * prekinuo vezu. Iznimku baca metoda {@link RequestContext#checkCancelled()},
+ * a poslužitelj je hvata i (ukoliko je to još moguće) klijentu odgovara
+ * statusom {@value ServerUtil#SERVICE_UNAVAILABLE_STATUS}
+ *
+ * @see RequestContext
+ *
+ * @author Davor Češljaš
+ */
+public class RequestCancelledException extends RuntimeException {
+
+	/**
+	 * Enumeracija koja predstavlja razlog otkazivanja zahtjeva
+	 *
+	 * @author Davor Češljaš
+	 */
+	public enum Reason {
+		/** istekao je rok zahtjeva */
+		DEADLINE,
+		/** klijent je prekinuo vezu */
+		DISCONNECT;
+
+		/**
+		 * Metoda koja dohvaća oznaku razloga u metrikama
+		 *
+		 * @return oznaku razloga
+		 */
+		public String getLabel() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/** Konstanta koja predstavlja serijski broj razreda */
+	private static final long serialVersionUID = 1L;
+
+	/** Članska varijabla koja predstavlja razlog otkazivanja zahtjeva */
+	private final Reason reason;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param reason
+	 *            razlog otkazivanja zahtjeva
+	 */
+	public RequestCancelledException(Reason reason) {
+		super(reason == Reason.DEADLINE ? "Istekao je rok zahtjeva" : "Klijent je prekinuo vezu", null, false, false);
+		this.reason = reason;
+	}
+
+	/**
+	 * Metoda koja dohvaća razlog otkazivanja zahtjeva
+	 *
+	 * @return razlog otkazivanja zahtjeva
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+}
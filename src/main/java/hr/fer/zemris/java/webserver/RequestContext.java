@@ -2,15 +2,24 @@ package hr.fer.zemris.java.webserver;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import hr.fer.zemris.java.webserver.buffer.BufferPool;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
 
 /**
  * Razred koji predstavlja kontekst korisnikova zahtjeva koji je poslao. Razred
@@ -39,10 +48,10 @@ public class RequestContext {
 	private static final String DEFAULT_ENCODING = "UTF-8";
 
 	/**
-	 * Konstanta koja predstavlja skup znakova koji se enkodira zaglavlje
-	 * odgovora
+	 * Konstanta koja predstavlja veličinu spremnika kojim se kopiraju okteti
+	 * kada izlazni tok nije kanal
 	 */
-	private static final Charset HEADER_CHARSET = StandardCharsets.ISO_8859_1;
+	private static final int COPY_CHUNK_SIZE = 8192;
 
 	/** Konstanta koja predstavlja predpostavljeni statusni kod odgovora */
 	private static final int DEFAULT_STATUS_CODE = 200;
@@ -55,12 +64,19 @@ public class RequestContext {
 	/** Konstanta koja predstavlja predpostavljeni mime-tip odgovora */
 	private static final String DEFAULT_MIME_TYPE = "text/html";
 
-	/** Konstanta koja predstavlja prazan niz znakova */
-	private static final String EMPTY = "";
-
 	/** Konstanta koja predstavlja oznaku za novi redak unutar HTTP protokola */
 	private static final String REQUEST_NEWLINE = "\r\n";
 
+	/** Konstanta koja predstavlja oktete kojima završava jedan dio odgovora */
+	private static final byte[] CHUNK_END = REQUEST_NEWLINE.getBytes(StandardCharsets.US_ASCII);
+
+	/** Konstanta koja predstavlja završni (prazni) dio odgovora */
+	private static final byte[] LAST_CHUNK = ("0" + REQUEST_NEWLINE + REQUEST_NEWLINE)
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** Konstanta koja označava da zahtjev nema rok */
+	public static final long NO_DEADLINE = Long.MIN_VALUE;
+
 	/**
 	 * Članska varijabla koja predstavlja izlazni tok okteta u koji je potrebno
 	 * pisati
@@ -122,6 +138,13 @@ public class RequestContext {
 	 */
 	private List<RCCookie> outputCookies;
 
+	/**
+	 * Članska varijabla koja predstavlja redak zahtjeva "Cookie: " ili
+	 * <code>null</code> ukoliko ga klijent nije poslao. Cookiji se iz retka
+	 * čitaju tek kada ih se zatraži
+	 */
+	private String cookieLine;
+
 	/**
 	 * Članska varijabla koja indicira je li zaglavlje odgovora izgenerirano.
 	 */
@@ -134,6 +157,50 @@ public class RequestContext {
 	 */
 	private boolean fullContent = true;
 
+	/**
+	 * Članska varijabla koja indicira smije li se odgovor nepoznate duljine
+	 * slati u dijelovima ("Transfer-Encoding: chunked"). Dijelovi se smiju
+	 * slati samo izravno klijentu HTTP/1.1, pa zastavicu postavlja poslužitelj
+	 */
+	private boolean chunkedAllowed;
+
+	/**
+	 * Članska varijabla koja indicira šalje li se odgovor u dijelovima (tj. je
+	 * li u zaglavlje upisano "Transfer-Encoding: chunked")
+	 */
+	private boolean chunked;
+
+	/**
+	 * Članska varijabla koja indicira je li poslan završni dio odgovora
+	 * (vidi {@link #finish()})
+	 */
+	private boolean finished;
+
+	/**
+	 * Članska varijabla koja predstavlja rok zahtjeva (prema
+	 * {@link System#nanoTime()}) ili {@value #NO_DEADLINE} ukoliko zahtjev nema
+	 * rok
+	 */
+	private volatile long deadline = NO_DEADLINE;
+
+	/**
+	 * Članska varijabla koja predstavlja razlog otkazivanja zahtjeva ili
+	 * <code>null</code> ukoliko zahtjev nije otkazan
+	 */
+	private volatile RequestCancelledException.Reason cancelReason;
+
+	/**
+	 * Članska varijabla koja predstavlja slušače koji se obavještavaju o
+	 * otkazivanju zahtjeva
+	 */
+	private final List<Runnable> cancelListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Članska varijabla koja predstavlja tok događaja otvoren metodom
+	 * {@link #startEventStream()} ili <code>null</code>
+	 */
+	private EventStream eventStream;
+
 	/**
 	 * Konstruktor koji inicijalizira primjerak ovog razreda. Unutar
 	 * konstruktora reference na sve predane parametre spremaju kao članske
@@ -164,22 +231,53 @@ public class RequestContext {
 	 *            varijabla koja predstavlja {@link List} cookija modeliranih
 	 *            razredom {@link RCCookie}, a koji se šalju korisniku (nejgovom
 	 *            pregledniku)
+	 * @param cookieLine
+	 *            redak zahtjeva "Cookie: " ili <code>null</code>
 	 * @throws IllegalArgumentException
 	 *             ukoliko se kao parametar <b>outputStream</b> preda
 	 *             <code>null</code>
 	 */
 	public RequestContext(Map<String, String> temporaryParameters, IDispatcher dispatcher, OutputStream outputStream,
-			Map<String, String> parameters, Map<String, String> persistentParameters, List<RCCookie> outputCookies) {
+			Map<String, String> parameters, Map<String, String> persistentParameters, List<RCCookie> outputCookies,
+			String cookieLine) {
 		if (outputStream == null) {
 			throw new IllegalArgumentException("Izlazni tok podataka ne može biti null");
 		}
 
 		this.outputStream = outputStream;
-		this.parameters = Collections.unmodifiableMap(parameters != null ? parameters : new HashMap<>());
+		this.parameters = parameters instanceof QueryParameters ? parameters
+				: Collections.unmodifiableMap(parameters != null ? parameters : new HashMap<>());
 		this.persistentParameters = persistentParameters != null ? persistentParameters : new HashMap<>();
 		this.outputCookies = outputCookies != null ? outputCookies : new ArrayList<>();
 		this.temporaryParameters = temporaryParameters;
 		this.dispatcher = dispatcher;
+		this.cookieLine = cookieLine;
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda za zahtjev bez
+	 * cookija (vidi
+	 * {@link #RequestContext(Map, IDispatcher, OutputStream, Map, Map, List, String)})
+	 *
+	 * @param temporaryParameters
+	 *            {@link Map} privremenih parametara
+	 * @param dispatcher
+	 *            implementacija sučelja {@link IDispatcher}
+	 * @param outputStream
+	 *            izlazni tok okteta u koji je potrebno pisati
+	 * @param parameters
+	 *            {@link Map} parametara koje je korisnik poslao
+	 * @param persistentParameters
+	 *            {@link Map} stalnih parametara
+	 * @param outputCookies
+	 *            {@link List} cookija koji se šalju korisniku
+	 * @throws IllegalArgumentException
+	 *             ukoliko se kao parametar <b>outputStream</b> preda
+	 *             <code>null</code>
+	 */
+	public RequestContext(Map<String, String> temporaryParameters, IDispatcher dispatcher, OutputStream outputStream,
+			Map<String, String> parameters, Map<String, String> persistentParameters, List<RCCookie> outputCookies) {
+		this(temporaryParameters, dispatcher, outputStream, parameters, persistentParameters, outputCookies, null);
 	}
 
 	/**
@@ -241,6 +339,16 @@ public class RequestContext {
 		this.statusCode = statusCode;
 	}
 
+	/**
+	 * Metoda koja dohvaća statusni kod koji se šalje (ili je poslan) u
+	 * odgovoru
+	 *
+	 * @return statusni kod odgovora
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
 	/**
 	 * Metoda koja postavlja tekst uz statusni kod koji se šalje u odgovoru
 	 *
@@ -281,6 +389,22 @@ public class RequestContext {
 		this.fullContent = fullContent;
 	}
 
+	/**
+	 * Metoda koja postavlja smije li se odgovor nepoznate duljine (vidi
+	 * {@link #setFullContent(boolean)}) slati u dijelovima
+	 * ("Transfer-Encoding: chunked"). Ukoliko ne smije, kraj takvog odgovora
+	 * klijentu označava zatvaranje veze ili okvir HTTP/2
+	 *
+	 * @param chunkedAllowed
+	 *            <code>true</code> ukoliko se odgovor smije slati u dijelovima
+	 * @throws RuntimeException
+	 *             ako je zaglavlje već izgenerirano
+	 */
+	public void setChunkedAllowed(boolean chunkedAllowed) {
+		checkIfHeaderGenerated();
+		this.chunkedAllowed = chunkedAllowed;
+	}
+
 	/**
 	 * Metoda koja dodaje primjerak razreda {@link RCCookie} u {@link List} svih
 	 * primjeraka {@link RCCookie} koji se šalju kroz odogovor
@@ -317,6 +441,144 @@ public class RequestContext {
 		return dispatcher;
 	}
 
+	/**
+	 * Metoda koja postavlja rok zahtjeva. Nakon isteka roka metoda
+	 * {@link #isCancelled()} vraća <code>true</code>, a poslužitelj periodički
+	 * otkazuje zahtjeve kojima je rok istekao i obavještava slušače
+	 *
+	 * @param deadline
+	 *            rok zahtjeva (prema {@link System#nanoTime()}) ili
+	 *            {@value #NO_DEADLINE}
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Metoda koja dohvaća rok zahtjeva
+	 *
+	 * @return rok zahtjeva (prema {@link System#nanoTime()}) ili
+	 *         {@value #NO_DEADLINE} ukoliko zahtjev nema rok
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Metoda koja provjerava je li zahtjev otkazan ili mu je istekao rok.
+	 * Skripte i radnici koji dugo rade trebaju ovu metodu (ili metodu
+	 * {@link #checkCancelled()}) povremeno pozivati i prekinuti rad kada vrati
+	 * <code>true</code>
+	 *
+	 * @return <code>true</code> ukoliko je zahtjev otkazan, <code>false</code>
+	 *         inače
+	 */
+	public boolean isCancelled() {
+		if (cancelReason != null) {
+			return true;
+		}
+		long deadline = this.deadline;
+		return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * Metoda koja baca iznimku {@link RequestCancelledException} ukoliko je
+	 * zahtjev otkazan ili mu je istekao rok
+	 *
+	 * @throws RequestCancelledException
+	 *             ukoliko je zahtjev otkazan
+	 */
+	public void checkCancelled() {
+		if (isCancelled()) {
+			RequestCancelledException.Reason reason = cancelReason;
+			throw new RequestCancelledException(reason != null ? reason : RequestCancelledException.Reason.DEADLINE);
+		}
+	}
+
+	/**
+	 * Metoda koja otkazuje zahtjev i obavještava sve slušače. Ukoliko je
+	 * zahtjev već otkazan, metoda ne radi ništa
+	 *
+	 * @param reason
+	 *            razlog otkazivanja zahtjeva
+	 */
+	public void cancel(RequestCancelledException.Reason reason) {
+		synchronized (cancelListeners) {
+			if (cancelReason != null) {
+				return;
+			}
+			cancelReason = reason;
+		}
+		for (Runnable listener : cancelListeners) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Metoda koja registrira slušača <b>listener</b> koji se poziva kada se
+	 * zahtjev otkaže (npr. kako bi radnik zatvorio vezu prema bazi ili prekinuo
+	 * čekanje). Ukoliko je zahtjev već otkazan, slušač se poziva odmah
+	 *
+	 * @param listener
+	 *            slušač koji se registrira
+	 */
+	public void onCancel(Runnable listener) {
+		synchronized (cancelListeners) {
+			if (cancelReason == null) {
+				cancelListeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Metoda koja odgovor pretvara u tok događaja (engl. <i>Server-Sent
+	 * Events</i>). Klijentu se odmah šalje zaglavlje odgovora s mime-tipom
+	 * {@value EventStream#MIME_TYPE}, a događaji se šalju vraćenim tokom
+	 * {@link EventStream}. Veza ostaje otvorena i nakon što radnik završi s
+	 * radom, sve dok se tok ne zatvori. Tok se zatvara i kada se zahtjev
+	 * otkaže
+	 *
+	 * @return otvoreni tok događaja
+	 * @throws IOException
+	 *             ukoliko nije moguće pisati u interni izlazni tok okteta
+	 * @throws RuntimeException
+	 *             ako je zaglavlje već izgenerirano
+	 */
+	public EventStream startEventStream() throws IOException {
+		checkIfHeaderGenerated();
+		mimeType = EventStream.MIME_TYPE;
+		encoding = DEFAULT_ENCODING;
+		fullContent = false;
+
+		eventStream = new EventStream(this);
+		onCancel(eventStream::close);
+		eventStream.open();
+		return eventStream;
+	}
+
+	/**
+	 * Metoda koja dohvaća tok događaja otvoren metodom
+	 * {@link #startEventStream()}
+	 *
+	 * @return tok događaja ili <code>null</code> ukoliko tok nije otvoren
+	 */
+	EventStream getEventStream() {
+		return eventStream;
+	}
+
+	/**
+	 * Metoda koja provjerava je li zaglavlje odgovora već izgenerirano (tj. je
+	 * li klijentu već poslan dio odgovora)
+	 *
+	 * @return <code>true</code> ukoliko je zaglavlje izgenerirano,
+	 *         <code>false</code> inače
+	 */
+	public boolean isHeaderGenerated() {
+		return headerGenerated;
+	}
+
 	/**
 	 * Metoda koja iz {@link Map} korisnikovih parametara dohvaća parametar pod
 	 * ključem <b>name</b> ili vraća <code>null</code> ukoliko takav ključ ne
@@ -332,6 +594,39 @@ public class RequestContext {
 		return parameters.get(name);
 	}
 
+	/**
+	 * Metoda koja dohvaća vrijednost cookija <b>name</b> koji je klijent
+	 * poslao u zahtjevu. Redak "Cookie: " pretražuje se pri svakom pozivu, a
+	 * stvara se samo vrijednost traženog cookija (vidi {@link CookieCodec})
+	 *
+	 * @param name
+	 *            naziv cookija
+	 * @return vrijednost cookija ili <code>null</code> ukoliko klijent takav
+	 *         cookie nije poslao
+	 */
+	public String getCookie(String name) {
+		return CookieCodec.find(cookieLine, name);
+	}
+
+	/**
+	 * Metoda koja dohvaća sve vrijednosti parametra pod ključem <b>name</b>
+	 * (ključ se u upitu može ponavljati, npr. "?id=1&amp;id=2"). Metoda
+	 * {@link #getParameter(String)} vraća samo prvu od tih vrijednosti
+	 *
+	 * @param name
+	 *            ključ čije se vrijednosti dohvaćaju
+	 * @return nepromjenjivu {@link List}u vrijednosti parametra (praznu
+	 *         ukoliko takav ključ ne postoji)
+	 */
+	public List<String> getParameterValues(String name) {
+		if (parameters instanceof QueryParameters) {
+			return ((QueryParameters) parameters).getAll(name);
+		}
+
+		String value = parameters.get(name);
+		return value == null ? Collections.emptyList() : Collections.singletonList(value);
+	}
+
 	/**
 	 * Metoda koja dohvaća sve ključeve parametara iz {@link Map} parametara
 	 *
@@ -462,53 +757,289 @@ public class RequestContext {
 			throw new IllegalArgumentException("Predano polje okteta je referenca na null");
 		}
 
-		if (!headerGenerated) {
-			generateHeader(data.length);
+		return write(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Metoda koja upisuje sve preostale oktete spremnika <b>data</b> u interni
+	 * primjerak razreda {@link OutputStream} ovog primjerka razreda. Metoda
+	 * također generira zaglavlje odgovora ukoliko ono već nije izgenerirano,
+	 * pri čemu se zaglavlje i podaci šalju zajedno. Ukoliko je izlazni tok
+	 * ujedno i kanal ({@link GatheringByteChannel}), izravni spremnici pišu
+	 * se u vezu bez kopiranja u polje okteta
+	 *
+	 * @param data
+	 *            spremnik čiji se okteti upisuju
+	 * @return ovaj primjerak ovog razreda
+	 * @throws IOException
+	 *             ukoliko nije moguće pisati u interni izlazni tok okteta
+	 */
+	public RequestContext write(ByteBuffer data) throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("Predani spremnik je referenca na null");
 		}
 
-		outputStream.write(data);
-		outputStream.flush();
+		if (headerGenerated) {
+			writeBody(null, data);
+			return this;
+		}
+
+		try (ByteBufferOutputStream header = generateHeader(data.remaining())) {
+			writeBody(header, data);
+		}
+		return this;
+	}
+
+	/**
+	 * Metoda koja završava odgovor. Ukoliko se odgovor šalje u dijelovima,
+	 * klijentu se šalje završni (prazni) dio, a inače metoda ne radi ništa.
+	 * Nakon poziva ove metode u odgovor se više ne smije pisati. Višestruki
+	 * pozivi nemaju učinka
+	 *
+	 * @throws IOException
+	 *             ukoliko nije moguće pisati u interni izlazni tok okteta
+	 */
+	public void finish() throws IOException {
+		if (!chunked || finished) {
+			return;
+		}
+
+		finished = true;
+		writeToOutput(ByteBuffer.wrap(LAST_CHUNK));
+	}
+
+	/**
+	 * Metoda koja upisuje čitav sadržaj datoteke <b>file</b> u interni
+	 * primjerak razreda {@link OutputStream} ovog primjerka razreda. Datoteka
+	 * se čita u dijelovima kroz izravni spremnik iz bazena
+	 * {@link BufferPool}, pa se niti jednom ne stvara polje okteta veličine
+	 * datoteke. Metoda također generira zaglavlje odgovora ukoliko ono već nije
+	 * izgenerirano
+	 *
+	 * @param file
+	 *            putanja do datoteke koja se šalje
+	 * @return ovaj primjerak ovog razreda
+	 * @throws IOException
+	 *             ukoliko nije moguće čitati datoteku ili pisati u interni
+	 *             izlazni tok okteta
+	 */
+	public RequestContext write(Path file) throws IOException {
+		BufferPool pool = BufferPool.getInstance();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer = pool.acquire((int) Math.min(size, BufferPool.MAX_CLASS_SIZE));
+			ByteBufferOutputStream header = headerGenerated ? null : generateHeader(size);
+			try {
+				int read;
+				do {
+					((Buffer) buffer).clear();
+					read = channel.read(buffer);
+					((Buffer) buffer).flip();
+					if (header != null) {
+						// zaglavlje se šalje zajedno s prvim dijelom datoteke
+						writeBody(header, buffer);
+						header.close();
+						header = null;
+					} else if (read > 0) {
+						writeBody(null, buffer);
+					}
+				} while (read != -1);
+			} finally {
+				pool.release(buffer);
+				if (header != null) {
+					header.close();
+				}
+			}
+		}
 		return this;
 	}
 
+	/**
+	 * Pomoćna metoda koja upisuje zaglavlje <b>header</b> (ukoliko nije
+	 * <code>null</code>) i sve preostale oktete spremnika <b>data</b> u
+	 * {@link #outputStream}. Ukoliko se odgovor šalje u dijelovima, podaci se
+	 * upisuju kao jedan dio, tj. s duljinom (heksadekadski) ispred i novim
+	 * retkom iza podataka
+	 *
+	 * @param header
+	 *            izlazni tok sa zapisanim zaglavljem ili <code>null</code>
+	 * @param data
+	 *            spremnik čiji se okteti upisuju
+	 * @throws IOException
+	 *             ukoliko nije moguće pisati u interni izlazni tok okteta
+	 * @throws IllegalStateException
+	 *             ukoliko je odgovor već završen metodom {@link #finish()}
+	 */
+	private void writeBody(ByteBufferOutputStream header, ByteBuffer data) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("Odgovor je već završen");
+		}
+		if (!chunked) {
+			if (header == null) {
+				writeToOutput(data);
+			} else {
+				writeToOutput(header.toByteBuffer(), data);
+			}
+			return;
+		}
+
+		if (!data.hasRemaining()) {
+			// prazan dio označio bi kraj odgovora
+			if (header != null) {
+				writeToOutput(header.toByteBuffer());
+			}
+			return;
+		}
+
+		// duljina dijela zapisuje se iza zaglavlja (ukoliko se i ono šalje)
+		ByteBufferOutputStream chunkHeader = header != null ? header : new ByteBufferOutputStream();
+		try {
+			chunkHeader.writeAscii(Integer.toHexString(data.remaining())).writeAscii(REQUEST_NEWLINE);
+			writeToOutput(chunkHeader.toByteBuffer(), data, ByteBuffer.wrap(CHUNK_END));
+		} finally {
+			if (header == null) {
+				chunkHeader.close();
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja upisuje sve preostale oktete predanih spremnika
+	 * <b>buffers</b> u {@link #outputStream}. Ukoliko je izlazni tok ujedno i
+	 * kanal ({@link GatheringByteChannel}), spremnici se upisuju jednim
+	 * pozivom, inače se okteti kopiraju u izlazni tok. Spremnik na gomili veći
+	 * od {@link BufferPool#MAX_CLASS_SIZE} okteta upisuje se u kanal u
+	 * dijelovima, jer kanal za svaki takav spremnik stvara privremeni izravni
+	 * spremnik jednake veličine
+	 *
+	 * @param buffers
+	 *            spremnici čiji se okteti upisuju
+	 * @throws IOException
+	 *             ukoliko nije moguće pisati u interni izlazni tok okteta
+	 */
+	private void writeToOutput(ByteBuffer... buffers) throws IOException {
+		if (outputStream instanceof GatheringByteChannel) {
+			GatheringByteChannel channel = (GatheringByteChannel) outputStream;
+			int start = 0;
+			for (int i = 0; i < buffers.length; i++) {
+				ByteBuffer buffer = buffers[i];
+				if (buffer.isDirect() || buffer.remaining() <= BufferPool.MAX_CLASS_SIZE) {
+					continue;
+				}
+
+				writeFully(channel, buffers, start, i);
+				ByteBuffer part = buffer.duplicate();
+				while (buffer.hasRemaining()) {
+					((Buffer) part).limit(buffer.position() + Math.min(buffer.remaining(), BufferPool.MAX_CLASS_SIZE));
+					while (part.hasRemaining()) {
+						channel.write(part);
+					}
+					((Buffer) buffer).position(part.position());
+				}
+				start = i + 1;
+			}
+			writeFully(channel, buffers, start, buffers.length);
+			return;
+		}
+
+		byte[] chunk = null;
+		for (ByteBuffer buffer : buffers) {
+			if (buffer.hasArray()) {
+				outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+				((Buffer) buffer).position(buffer.limit());
+				continue;
+			}
+
+			while (buffer.hasRemaining()) {
+				if (chunk == null) {
+					chunk = new byte[COPY_CHUNK_SIZE];
+				}
+				int length = Math.min(chunk.length, buffer.remaining());
+				buffer.get(chunk, 0, length);
+				outputStream.write(chunk, 0, length);
+			}
+		}
+		outputStream.flush();
+	}
+
+	/**
+	 * Pomoćna metoda koja jednim ili više poziva upisuje u kanal <b>channel</b>
+	 * sve preostale oktete spremnika <b>buffers</b> od indeksa <b>from</b>
+	 * (uključivo) do indeksa <b>to</b> (isključivo)
+	 *
+	 * @param channel
+	 *            kanal u koji se upisuje
+	 * @param buffers
+	 *            spremnici čiji se okteti upisuju
+	 * @param from
+	 *            indeks prvog spremnika
+	 * @param to
+	 *            indeks iza posljednjeg spremnika
+	 * @throws IOException
+	 *             ukoliko nije moguće pisati u kanal
+	 */
+	private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers, int from, int to)
+			throws IOException {
+		long remaining = 0;
+		for (int i = from; i < to; i++) {
+			remaining += buffers[i].remaining();
+		}
+		while (remaining > 0) {
+			remaining -= channel.write(buffers, from, to - from);
+		}
+	}
+
 	/**
 	 * Pomoćna metoda koja generira zaglavlje. Metoda prima veličinu podataka
 	 * unutar teksta odgovora <b>fileSize</b> te ukoliko je {@link #fullContent}
-	 * postavljen dodaje i dio zaglavlja "Content-Length"
+	 * postavljen dodaje i dio zaglavlja "Content-Length". Zaglavlje se zapisuje
+	 * u izravni spremnik iz bazena {@link BufferPool}
 	 *
 	 * @param fileSize
 	 *            veličina podataka unutar teksta odgovora
-	 * @throws IOException
-	 *             ukoliko nije moguće pisati u interni izlazni tok okteta
+	 * @return izlazni tok sa zapisanim zaglavljem koji se mora zatvoriti nakon
+	 *         slanja
 	 */
-	private void generateHeader(int fileSize) throws IOException {
+	private ByteBufferOutputStream generateHeader(long fileSize) {
 		// postavi zastavicu
 		headerGenerated = true;
 
-		StringJoiner sj = new StringJoiner(REQUEST_NEWLINE, EMPTY, REQUEST_NEWLINE + REQUEST_NEWLINE);
-		sj.add(ServerUtil.generateFirstLineOfResponse("HTTP/1.1", statusCode, statusText));
-		sj.add("Content-Type: " + mimeType + (mimeType.startsWith("text/") ? "; charset=" + encoding : EMPTY));
+		ByteBufferOutputStream header = new ByteBufferOutputStream();
+		header.writeAscii(ServerUtil.generateFirstLineOfResponse("HTTP/1.1", statusCode, statusText))
+				.writeAscii(REQUEST_NEWLINE);
+		header.writeAscii("Content-Type: ").writeAscii(mimeType);
+		if (mimeType.startsWith("text/")) {
+			header.writeAscii("; charset=").writeAscii(encoding);
+		}
+		header.writeAscii(REQUEST_NEWLINE);
 		if (fullContent) {
-			sj.add("Content-Length: " + fileSize);
+			header.writeAscii("Content-Length: ").writeDecimal(fileSize).writeAscii(REQUEST_NEWLINE);
+		} else if (chunkedAllowed && eventStream == null) {
+			chunked = true;
+			header.writeAscii("Transfer-Encoding: chunked").writeAscii(REQUEST_NEWLINE);
+		}
+		if (eventStream != null) {
+			header.writeAscii("Cache-Control: no-cache").writeAscii(REQUEST_NEWLINE);
 		}
 
-		generateCookieDescriptions(sj);
+		generateCookieDescriptions(header);
 
-		outputStream.write(sj.toString().getBytes(HEADER_CHARSET));
-		outputStream.flush();
+		header.writeAscii(REQUEST_NEWLINE);
+		return header;
 	}
 
 	/**
 	 * Pomoćna metoda koja dodaje sve cookie modelirane razredom
 	 * {@link RCCookie} iz {@link #outputCookies} u zaglavlje odgovora
 	 *
-	 * @param sj
-	 *            primjerak razreda {@link StringJoiner} unutar kojeg se upisuju
-	 *            svi cookiji modelirani razredom {@link RCCookie}
+	 * @param header
+	 *            izlazni tok u koji se upisuju svi cookiji modelirani razredom
+	 *            {@link RCCookie}
 	 */
-	private void generateCookieDescriptions(StringJoiner sj) {
+	private void generateCookieDescriptions(ByteBufferOutputStream header) {
 		for (RCCookie cookie : outputCookies) {
-			sj.add(cookie.toString());
+			CookieCodec.write(cookie, header);
+			header.writeAscii(REQUEST_NEWLINE);
 		}
 	}
 
@@ -529,7 +1060,14 @@ public class RequestContext {
 		if (!headerGenerated) {
 			charset = Charset.forName(encoding);
 		}
-		return write(text.getBytes(charset));
+		if (!StandardCharsets.UTF_8.equals(charset)) {
+			return write(text.getBytes(charset));
+		}
+
+		try (ByteBufferOutputStream body = new ByteBufferOutputStream()) {
+			body.writeUtf8(text);
+			return write(body.toByteBuffer());
+		}
 	}
 
 	/**
@@ -541,12 +1079,6 @@ public class RequestContext {
 	 */
 	public static class RCCookie {
 
-		/**
-		 * Konstanta koja predstavlja niz znakova koji se dodaje ako je cookie
-		 * HttpOnly.
-		 */
-		private static final String HTTP_ONLY = "HttpOnly";
-
 		/** Članska varijabla koja predstavlja naziv parametra cookia */
 		private String name;
 
@@ -652,6 +1184,16 @@ public class RequestContext {
 			this.httpOnly = httpOnly;
 		}
 
+		/**
+		 * Metoda koja dohvaća indikator je li cookie HttpOnly
+		 *
+		 * @return <code>true</code> ukoliko je cookie HttpOnly,
+		 *         <code>false</code> inače
+		 */
+		public boolean isHttpOnly() {
+			return httpOnly;
+		}
+
 		@Override
 		public int hashCode() {
 			final int prime = 31;
@@ -706,10 +1248,10 @@ public class RequestContext {
 
 		@Override
 		public String toString() {
-			return String.format("Set-Cookie: %s=\"%s\";", name, value)
-					+ (domain != null ? String.format(" Domain=%s;", domain) : EMPTY)
-					+ (path != null ? String.format(" Path=%s;", path) : EMPTY)
-					+ (maxAge != null ? String.format(" Max-Age=%d;", maxAge) : EMPTY) + (httpOnly ? HTTP_ONLY : EMPTY);
+			try (ByteBufferOutputStream out = new ByteBufferOutputStream()) {
+				CookieCodec.write(this, out);
+				return StandardCharsets.ISO_8859_1.decode(out.toByteBuffer()).toString();
+			}
 		}
 	}
 }
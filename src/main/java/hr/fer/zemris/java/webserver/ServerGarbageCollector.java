@@ -5,12 +5,16 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
+import hr.fer.zemris.java.webserver.metrics.Counter;
+
 /**
  * Razred implementira sučelje {@link Runnable}. Primjerak ovog razreda obavlja
  * posao čišćenja tablice svih sesija koje su zapamćene, a koje su istekle.
  * Primjerak ovog razreda zaustavlja rad koristeći metodu
  * {@link Thread#sleep(long)} na {@value #TIMEOUT}ms. Po buđenju prolazi kroz
  * čitavu mapu koja mu se preda kroz konstuktor i vrši brisanje isteklih sesija.
+ * Primjerak ovog razreda prestaje s radom kada se dretva u kojoj radi prekine
+ * metodom {@link Thread#interrupt()}.
  * 
  * @see Thread
  * @see Runnable
@@ -29,6 +33,12 @@ public class ServerGarbageCollector implements Runnable {
 	/** Članska varijabla koja predstavlja sve aktivne sesije. */
 	private final Map<String, SmartHttpServer.SessionMapEntry> sessions;
 
+	/**
+	 * Članska varijabla koja predstavlja brojač isteklih sesija koji se uvećava
+	 * za svaku obrisanu sesiju
+	 */
+	private final Counter expiredCounter;
+
 	/**
 	 * Konstruktor koji inicijalizira primjerak ovo razreda. Konstruktor prima
 	 * {@link Map} sesija koje su trenutno aktivne na poslužitelju koji je
@@ -36,24 +46,29 @@ public class ServerGarbageCollector implements Runnable {
 	 *
 	 * @param sessions
 	 *            referenca na sesija koje su trenutno aktivne na poslužitelju
+	 * @param expiredCounter
+	 *            brojač isteklih sesija koji se uvećava za svaku obrisanu
+	 *            sesiju
 	 */
-	public ServerGarbageCollector(Map<String, SmartHttpServer.SessionMapEntry> sessions) {
+	public ServerGarbageCollector(Map<String, SmartHttpServer.SessionMapEntry> sessions, Counter expiredCounter) {
 		this.sessions = Objects.requireNonNull(sessions, "Nemam što čistiti");
+		this.expiredCounter = Objects.requireNonNull(expiredCounter, "Brojač isteklih sesija ne smije biti null");
 	}
 
 	@Override
 	public void run() {
-		while (true) {
+		while (!Thread.currentThread().isInterrupted()) {
 			long time = Calendar.getInstance().getTimeInMillis();
 			new HashMap<>(sessions).forEach((sid, entry) -> {
-				if (entry.getValidUntil() < time) {
-					sessions.remove(sid);
+				if (entry.getValidUntil() < time && sessions.remove(sid, entry)) {
+					expiredCounter.increment();
 				}
 			});
 
 			try {
 				Thread.sleep(TIMEOUT);
 			} catch (InterruptedException e) {
+				return;
 			}
 		}
 	}
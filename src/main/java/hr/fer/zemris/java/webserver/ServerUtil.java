@@ -1,9 +1,8 @@
 package hr.fer.zemris.java.webserver;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -29,7 +28,8 @@ import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
  * <li>{@link #sendBadRequestResponse(String, OutputStream)}</li>
  * <li>{@link #readFromDisk(Path, Charset)}</li>
  * <li>{@link #loadProperties(String, BiConsumer)}</li>
- * <li>{@link #readRequest(PushbackInputStream)}</li>
+ * <li>{@link #findHeaderEnd(ByteBuffer, int)}</li>
+ * <li>{@link #parseRequestLines(ByteBuffer, int)}</li>
  * <li>{@link #parseCookies(String)}</li>
  * <li>{@link #parseHost(String)}</li>
  * </ul>
@@ -78,9 +78,37 @@ public class ServerUtil {
 	/** Konstanta koja predstavlja tekst za "Not Found" pogrešku */
 	public static final String NOT_FOUND_TEXT = "Not Found";
 
+	/** Konstanta koja predstavlja status za "Service Unavailable" pogrešku */
+	public static final int SERVICE_UNAVAILABLE_STATUS = 503;
+
+	/** Konstanta koja predstavlja tekst za "Service Unavailable" pogrešku */
+	public static final String SERVICE_UNAVAILABLE_TEXT = "Service Unavailable";
+
+	/** Konstanta koja predstavlja status za "Internal Server Error" pogrešku */
+	public static final int INTERNAL_SERVER_ERROR_STATUS = 500;
+
+	/**
+	 * Konstanta koja predstavlja nestandardni status "Client Closed Request".
+	 * Klijentu se nikad ne šalje, već se njime u metrikama bilježe zahtjevi
+	 * klijenata koji su prekinuli vezu
+	 */
+	public static final int CLIENT_CLOSED_REQUEST_STATUS = 499;
+
 	/** Konstanta koja predstavlja terminator odgovora/zahtjeva */
 	public static final String HEADER_TERMINATOR = "\r\n\r\n";
 
+	/**
+	 * Konstanta koja predstavlja najveću dopuštenu veličinu zaglavlja zahtjeva
+	 * u oktetima
+	 */
+	public static final int MAX_HEADER_SIZE = 16384;
+
+	/**
+	 * Konstanta koja predstavlja pomoćno polje znakova svake dretve u koje se
+	 * dekodiraju retci zaglavlja
+	 */
+	private static final ThreadLocal<char[]> LINE_CHARS = ThreadLocal.withInitial(() -> new char[256]);
+
 	/**
 	 * Privatni predpostavljeni konstruktor koja je izrađen kako se ne bi mogli
 	 * instancirati primjerci ovog razreda
@@ -202,143 +230,123 @@ public class ServerUtil {
 	}
 
 	/**
-	 * Metoda koja čita zaglavlje korisnikovog zahtjev i parsira ga u polje
-	 * okteta. Metoda je preuzeta iz knjige profesora Marka Čupića. Metoda čita
-	 * oktete sve do pojave neke od sljedećih nizova znakova:
-	 * <ul>
-	 * <li>'\r\n\r\n'</li>
-	 * <li>'\n\n'</li>
-	 * <li>'\r\r'</li>
-	 * <ul>
+	 * Metoda koja u prvih <b>limit</b> okteta spremnika <b>buffer</b> traži
+	 * kraj zaglavlja zahtjeva. Kraj zaglavlja prepoznaje se po nizovima
+	 * '\r\n\r\n' i '\n\n'. Pozicija i granica spremnika se ne mijenjaju
 	 *
-	 * @param is
-	 *            ulazni tok okteta iz kojeg se čita korisnikova zahtjev
-	 * @return polje okteta koje predstavlja zaglavlje korisnikova zahtjeva
-	 * @throws IOException
-	 *             ukoliko se ne može čitati iz ulaznog toka podataka <b>is</b>
+	 * @param buffer
+	 *            spremnik u koji se čita zaglavlje
+	 * @param limit
+	 *            broj pročitanih okteta
+	 * @return indeks okteta iza kraja zaglavlja ili -1 ukoliko zaglavlje još
+	 *         nije pročitano do kraja
 	 */
-	public static byte[] readRequest(PushbackInputStream is) throws IOException {
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+	public static int findHeaderEnd(ByteBuffer buffer, int limit) {
 		int state = 0;
-		l: while (true) {
-			int b = is.read();
-			if (b == -1)
-				return null;
-			if (b != 13) {
-				bos.write(b);
-			}
+		for (int i = 0; i < limit; i++) {
+			byte b = buffer.get(i);
 			switch (state) {
 			case 0:
-				if (b == 13) {
-					state = 1;
-				} else if (b == 10)
-					state = 4;
+				state = b == 13 ? 1 : b == 10 ? 4 : 0;
 				break;
 			case 1:
-				if (b == 10) {
-					state = 2;
-				} else
-					state = 0;
+				state = b == 10 ? 2 : 0;
 				break;
 			case 2:
-				if (b == 13) {
-					state = 3;
-				} else
-					state = 0;
+				state = b == 13 ? 3 : 0;
 				break;
 			case 3:
-				if (b == 10) {
-					break l;
-				} else
-					state = 0;
-				break;
 			case 4:
 				if (b == 10) {
-					break l;
-				} else
-					state = 0;
+					return i + 1;
+				}
+				state = 0;
 				break;
 			}
 		}
-		return bos.toByteArray();
+		return -1;
+	}
+
+	/**
+	 * Metoda koja prvih <b>end</b> okteta spremnika <b>buffer</b> (zaglavlje
+	 * zahtjeva) rastavlja na retke. Retci se dekodiraju skupom znakova
+	 * ISO-8859-1, a prazni retci se preskaču. Pozicija i granica spremnika se
+	 * ne mijenjaju
+	 *
+	 * @param buffer
+	 *            spremnik u kojem se nalazi zaglavlje
+	 * @param end
+	 *            indeks okteta iza kraja zaglavlja
+	 * @return {@link List} redaka zaglavlja
+	 */
+	public static List<String> parseRequestLines(ByteBuffer buffer, int end) {
+		List<String> lines = new ArrayList<>();
+		char[] chars = LINE_CHARS.get();
+		int length = 0;
+		for (int i = 0; i <= end; i++) {
+			int b = i < end ? buffer.get(i) & 0xFF : '\n';
+			if (b != '\r' && b != '\n') {
+				if (length == chars.length) {
+					chars = Arrays.copyOf(chars, chars.length << 1);
+					LINE_CHARS.set(chars);
+				}
+				chars[length++] = (char) b;
+			} else if (length > 0) {
+				lines.add(new String(chars, 0, length));
+				length = 0;
+			}
+		}
+		return lines;
 	}
 
 	/**
 	 * Metoda koja iz predane linije predstavljene primjerkom razreda
 	 * {@link String}, a koja MORA započeti sa "Cookie: " čita i parsira sve
 	 * cookie koji postoje unutar tog redka. Predpostavka je da su svi cookiji
-	 * rastavljeni po ";" te da je između ključa i vrijednosti cookia niz "="
+	 * rastavljeni po ";" te da je između ključa i vrijednosti cookia niz "=".
+	 * Za dohvat jednog cookija bez parsiranja ostalih koristi se metoda
+	 * {@link CookieCodec#find(String, String)}
 	 *
 	 * @param cookieLine
 	 *            primjerak razreda {@link String} koji predstavlja liniju koja
 	 *            započinje sa "Cookie: "
 	 * @return {@link List} svih parsiranih cookija koji su unutar poslužitelja
 	 *         modeliranog razredom {@link SmartHttpServer} predstavljeni sa
-	 *         razredom {@link RCCookie}
+	 *         razredom {@link RCCookie} ili <code>null</code> ukoliko u
+	 *         retku nema ispravnih cookija
 	 */
 	public static List<RequestContext.RCCookie> parseCookies(String cookieLine) {
-		String[] splittedLine = cookieLine.split(":");
-
-		if (splittedLine.length != 2) {
-			return null;
-		}
-
-		List<RCCookie> cookies = new ArrayList<>();
-		for (String cookieString : splittedLine[1].split(";")) {
-			RCCookie cookie = extractCookie(cookieString);
-			if (cookie != null) {
-				cookies.add(cookie);
-			}
-		}
-
+		List<RCCookie> cookies = CookieCodec.parseAll(cookieLine);
 		return cookies.isEmpty() ? null : cookies;
 	}
 
-	/**
-	 * Pomoćna metoda koja iz predanog primjerka razreda {@link String} vadi
-	 * ključ i vrijednost cookija te stvara novi primjerak razreda
-	 * {@link RCCookie}.
-	 *
-	 * @param cookieString
-	 *            primjerak razreda {@link String} iz kojeg se parsira novi
-	 *            primjerak razreda {@link RCCookie}
-	 * @return novi primjerak razreda {@link RCCookie} nastao parsiranjem
-	 *         <b>cookieString</b>
-	 */
-	private static RCCookie extractCookie(String cookieString) {
-		String[] keyValue = cookieString.split("=");
-
-		if (keyValue.length != 2) {
-			return null;
-		}
-
-		for (int i = 0; i < keyValue.length; i++) {
-			keyValue[i] = keyValue[i].trim();
-		}
-
-		return new RCCookie(keyValue[0], keyValue[1].substring(1, keyValue[1].length() - 1), null, null, null);
-	}
-
 	/**
 	 * Metoda koja iz predane linije predstavljene primjerkom razreda
 	 * {@link String}, a koja MORA započeti sa "Host: " čita i parsira adresu
 	 * poslužitelja na koju je poslan zahtjev. Metoda se koristi jer poslužitelj
 	 * može imati više načina preko kojih se pristupa poslužitelju (npr.
-	 * localhost i 127.0.0.1)
+	 * localhost i 127.0.0.1). Vraća se adresa bez razmaka i bez vrata (adresa
+	 * IPv6 ostaje u uglatim zagradama)
 	 *
-	 * @param cookieLine
+	 * @param hostLine
 	 *            primjerak razreda {@link String} koji predstavlja liniju koja
 	 *            započinje sa "Host: "
 	 * @return primjerak razreda {@link String} koji predstavlja adresu
-	 *         poslužitelja koju je korisnik poslao zahtjev
+	 *         poslužitelja koju je korisnik poslao zahtjev ili
+	 *         <code>null</code> ukoliko je adresa prazna
 	 */
 	public static String parseHost(String hostLine) {
-		String[] splittedLine = hostLine.split(":");
-
-		if (splittedLine.length < 2) {
+		int start = hostLine.indexOf(':') + 1;
+		if (start == 0) {
 			return null;
 		}
 
-		return splittedLine[1];
+		String host = hostLine.substring(start).trim();
+		int end = host.startsWith("[") ? host.indexOf(']') + 1 : host.indexOf(':');
+		if (end > 0) {
+			host = host.substring(0, end);
+		}
+
+		return host.isEmpty() ? null : host;
 	}
 }
@@ -1,29 +1,70 @@
 package hr.fer.zemris.java.webserver;
 
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
-import java.net.ServerSocket;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
 
+import hr.fer.zemris.java.custom.scripting.compiler.ScriptOptimizer;
+import hr.fer.zemris.java.custom.scripting.compiler.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.compiler.TieredScript;
+import hr.fer.zemris.java.custom.scripting.exec.CompiledTemplate;
 import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.ThreadLocalDecimalFormat;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.buffer.BufferPool;
+import hr.fer.zemris.java.webserver.http2.FrameCodec;
+import hr.fer.zemris.java.webserver.http2.Http2Connection;
+import hr.fer.zemris.java.webserver.http2.Http2Exception;
+import hr.fer.zemris.java.webserver.http2.Http2Stream;
+import hr.fer.zemris.java.webserver.metrics.Counter;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry.RouteClass;
+import hr.fer.zemris.java.webserver.metrics.MetricsWorker;
+import hr.fer.zemris.java.webserver.websocket.IWebSocketHandler;
+import hr.fer.zemris.java.webserver.websocket.WebSocketCodec;
+import hr.fer.zemris.java.webserver.websocket.WebSocketReactor;
 
 /**
  * Razred koji predstavlja poslužitelj. Ovaj poslužitelj ima svega nekoliko
@@ -107,6 +148,204 @@ public class SmartHttpServer {
 	 */
 	private static final String SERVER_WORKERS = SERVER + "workers";
 
+	/**
+	 * Konstanta koja predstavlja ključ za putanju na kojoj se nalazi ugrađeni
+	 * radnik {@link MetricsWorker}. Ukoliko ključ nije zadan, metrike se ne
+	 * objavljuju
+	 */
+	private static final String SERVER_METRICS_PATH = SERVER + "metricsPath";
+
+	/**
+	 * Konstanta koja predstavlja ključ za najdulje vrijeme (u sekundama)
+	 * tijekom kojeg poslužitelj pri zaustavljanju čeka dovršetak započetih
+	 * zahtjeva
+	 */
+	private static final String SERVER_DRAIN_TIMEOUT = SERVER + "drainTimeout";
+
+	/**
+	 * Konstanta koja predstavlja ključ za putanju do datoteke u koju se pri
+	 * zaustavljanju poslužitelja spremaju sesije. Ukoliko ključ nije zadan,
+	 * sesije se ne spremaju
+	 */
+	private static final String SESSION_STORE = "session.store";
+
+	/**
+	 * Konstanta koja predstavlja ključ za najdulje vrijeme (u sekundama)
+	 * čitanja zaglavlja zahtjeva, računajući od trenutka kada dretva počne
+	 * čekati zahtjev
+	 */
+	private static final String SERVER_HEADER_READ_TIMEOUT = SERVER + "headerReadTimeout";
+
+	/**
+	 * Konstanta koja predstavlja ključ za najdulje vrijeme (u sekundama)
+	 * obrade čitavog zahtjeva (čitanje, stvaranje i slanje odgovora)
+	 */
+	private static final String SERVER_REQUEST_TIMEOUT = SERVER + "requestTimeout";
+
+	/**
+	 * Konstanta koja predstavlja ključ za najdulje vrijeme (u sekundama) jednog
+	 * pisanja odgovora u vezu (klijent koji ne čita odgovor)
+	 */
+	private static final String SERVER_WRITE_TIMEOUT = SERVER + "writeTimeout";
+
+	/**
+	 * Konstanta koja predstavlja ključ zastavice kojom se uključuje otkrivanje
+	 * curenja spremnika iz bazena {@link BufferPool}
+	 */
+	private static final String SERVER_BUFFER_LEAK_DETECTION = SERVER + "bufferLeakDetection";
+
+	/**
+	 * Konstanta koja predstavlja ključ broja dretvi koje prihvaćaju veze. Svaka
+	 * dretva predaje veze vlastitom dijelu bazena dretvi radnika
+	 */
+	private static final String SERVER_ACCEPTORS = SERVER + "acceptors";
+
+	/**
+	 * Konstanta koja predstavlja ključ zastavice kojom se uključuje podrška za
+	 * HTTP/2 bez enkripcije (h2c), izravno ili nadogradnjom veze HTTP/1.1
+	 */
+	private static final String SERVER_HTTP2 = SERVER + "http2";
+
+	/**
+	 * Konstanta koja predstavlja ključ najvećeg broja istovremeno otvorenih
+	 * tokova jedne veze HTTP/2
+	 */
+	private static final String SERVER_HTTP2_MAX_CONCURRENT_STREAMS = SERVER + "http2MaxConcurrentStreams";
+
+	/**
+	 * Konstanta koja predstavlja početak ključeva pregrada. Broj dretvi i
+	 * veličina reda pregrade vrste zahtjeva zadaju se ključevima
+	 * "server.bulkhead.<i>vrsta</i>.threads" i
+	 * "server.bulkhead.<i>vrsta</i>.queue" (npr. "server.bulkhead.script.threads").
+	 * Vrsta bez zadanog broja dretvi obrađuje se izravno u dretvi veze
+	 */
+	private static final String SERVER_BULKHEAD = SERVER + "bulkhead.";
+
+	/**
+	 * Konstanta koja predstavlja ključ za putanju do datoteke s pravilima
+	 * ograničavanja brzine zahtjeva (vidi {@link RateLimiter}). Ukoliko ključ
+	 * nije zadan, brzina zahtjeva se ne ograničava
+	 */
+	private static final String SERVER_RATE_LIMITS = SERVER + "rateLimits";
+
+	/**
+	 * Konstanta koja predstavlja početak ključeva najduljeg vremena (u
+	 * sekundama) izvođenja zahtjeva pojedine vrste, npr.
+	 * "server.requestTimeout.script". Skripte i radnici kojima istekne to
+	 * vrijeme (ili rok čitavog zahtjeva {@value #SERVER_REQUEST_TIMEOUT}) se
+	 * otkazuju (vidi {@link RequestContext#checkCancelled()})
+	 */
+	private static final String SERVER_ROUTE_TIMEOUT = SERVER_REQUEST_TIMEOUT + ".";
+
+	/**
+	 * Konstanta koja predstavlja ključ za najdulje vrijeme (u sekundama) bez
+	 * pisanja u tok događaja {@link EventStream}, nakon kojeg se klijentu
+	 * šalje komentar koji održava vezu živom. Vrijednost 0 isključuje slanje
+	 * komentara
+	 */
+	private static final String SERVER_SSE_KEEP_ALIVE = SERVER + "sseKeepAlive";
+
+	/**
+	 * Konstanta koja predstavlja ključ za putanju do konfiguracijske datoteke
+	 * obrađivača veza WebSocket (putanja = razred koji implementira sučelje
+	 * {@link IWebSocketHandler}). Ukoliko ključ nije zadan, poslužitelj ne
+	 * prihvaća nadogradnju veze na WebSocket
+	 */
+	private static final String SERVER_WEBSOCKETS = SERVER + "websockets";
+
+	/** Konstanta koja predstavlja ključ za broj dretvi obrađivača veza WebSocket */
+	private static final String SERVER_WEBSOCKET_THREADS = SERVER + "websocketThreads";
+
+	/**
+	 * Konstanta koja predstavlja ključ za broj izvođenja skripte nakon kojeg
+	 * se skripta prevodi u bajtni kod (0 isključuje prevođenje)
+	 */
+	private static final String SERVER_SCRIPT_COMPILE_THRESHOLD = SERVER + "scriptCompileThreshold";
+
+	/**
+	 * Konstanta koja predstavlja ključ za veličinu (u oktetima) rezultata
+	 * skripte nakon koje se rezultat šalje klijentu u dijelovima (0 uvijek
+	 * šalje rezultat odjednom)
+	 */
+	private static final String SERVER_SCRIPT_STREAM_THRESHOLD = SERVER + "scriptStreamThreshold";
+
+	/**
+	 * Konstanta koja predstavlja odgovor kojim poslužitelj prihvaća nadogradnju
+	 * veze HTTP/1.1 na HTTP/2 (RFC 7540, poglavlje 3.2)
+	 */
+	private static final byte[] SWITCHING_PROTOCOLS = "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+			.getBytes(StandardCharsets.ISO_8859_1);
+
+	/**
+	 * Konstanta koja predstavlja odgovor na zahtjev za nadogradnjom veze na
+	 * WebSocket nepodržane inačice protokola (RFC 6455, poglavlje 4.4)
+	 */
+	private static final byte[] UPGRADE_REQUIRED = ("HTTP/1.1 426 Upgrade Required\r\nSec-WebSocket-Version: "
+			+ WebSocketCodec.VERSION + "\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljeno vrijeme (u sekundama) čekanja
+	 * na dovršetak započetih zahtjeva
+	 */
+	private static final int DEFAULT_DRAIN_TIMEOUT = 30;
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljena vremenska ograničenja (u
+	 * sekundama) čitanja zaglavlja, obrade zahtjeva i pisanja odgovora
+	 */
+	private static final int[] DEFAULT_DEADLINES = { 10, 60, 30 };
+
+	/**
+	 * Konstanta koja predstavlja razmak (u milisekundama) između dvaju
+	 * pregleda otvorenih veza koje obavlja {@link #reaper}
+	 */
+	private static final long REAPER_PERIOD = 250;
+
+	/**
+	 * Konstanta koja predstavlja razmak (u milisekundama) između dvaju
+	 * izbacivanja napunjenih posuda iz ograničavača {@link #rateLimiter}
+	 */
+	private static final long RATE_LIMIT_EXPIRY_PERIOD = 1000;
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljeno najdulje vrijeme (u
+	 * sekundama) bez pisanja u tok događaja
+	 */
+	private static final int DEFAULT_SSE_KEEP_ALIVE = 15;
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljeni broj dretvi obrađivača veza
+	 * WebSocket
+	 */
+	private static final int DEFAULT_WEBSOCKET_THREADS = 4;
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljeni broj izvođenja skripte nakon
+	 * kojeg se skripta prevodi u bajtni kod
+	 */
+	private static final int DEFAULT_SCRIPT_COMPILE_THRESHOLD = 50;
+
+	/**
+	 * Konstanta koja predstavlja pretpostavljenu veličinu rezultata skripte
+	 * nakon koje se rezultat šalje klijentu u dijelovima
+	 */
+	private static final int DEFAULT_SCRIPT_STREAM_THRESHOLD = 16 * 1024;
+
+	/** Konstanta koja predstavlja rok koji nije postavljen */
+	private static final long NO_DEADLINE = RequestContext.NO_DEADLINE;
+
+	/** Konstanta koja predstavlja vezu koja još nije počela s radom */
+	private static final int CONNECTION_NEW = 0;
+
+	/** Konstanta koja predstavlja vezu koja čeka prvi oktet zahtjeva */
+	private static final int CONNECTION_IDLE = 1;
+
+	/** Konstanta koja predstavlja vezu čiji se zahtjev obrađuje */
+	private static final int CONNECTION_BUSY = 2;
+
+	/** Konstanta koja predstavlja vezu koju je poslužitelj zatvorio */
+	private static final int CONNECTION_CLOSED = 3;
+
 	/**
 	 * Konstanta koja predstavlja predpostavljeni mime-tip
 	 * "application/octet-stream"
@@ -183,16 +422,79 @@ public class SmartHttpServer {
 	private Map<String, String> mimeTypes = new HashMap<>();
 
 	/**
-	 * Članska varijabla koja predstavlja referencu na dretvu radnika koji
-	 * prihvaća zahtjeve od korisnika
+	 * Članska varijabla koja predstavlja broj dretvi koje prihvaćaju veze
+	 */
+	private int acceptors;
+
+	/**
+	 * Članska varijabla koja predstavlja dretve koje prihvaćaju zahtjeve od
+	 * korisnika ili <code>null</code> ukoliko poslužitelj još nije pokrenut
+	 */
+	private ServerThread[] serverThreads;
+
+	/**
+	 * Članska varijabla koja predstavlja dijelove bazena dretvi radnika koji
+	 * poslužuju klijente. Dio s indeksom <i>i</i> prima veze isključivo od
+	 * dretve {@link #serverThreads}[<i>i</i>]
+	 */
+	private ThreadPoolExecutor[] threadPools = new ThreadPoolExecutor[0];
+
+	/**
+	 * Članska varijabla koja predstavlja brojače prihvaćenih veza po dretvama
+	 * koje prihvaćaju veze
+	 */
+	private Counter[] accepted;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena ukoliko
+	 * poslužitelj podržava HTTP/2 bez enkripcije
+	 */
+	private boolean http2Enabled;
+
+	/**
+	 * Članska varijabla koja predstavlja najveći broj istovremeno otvorenih
+	 * tokova jedne veze HTTP/2
+	 */
+	private int http2MaxConcurrentStreams;
+
+	/**
+	 * Članska varijabla koja predstavlja bazen dretvi koje obrađuju tokove veza
+	 * HTTP/2 ili <code>null</code>. Veze HTTP/2 trajno zauzimaju dretve iz
+	 * {@link #threadPools} (čitaju okvire), pa se tokovi obrađuju u zasebnom
+	 * bazenu kako ne bi čekali na dretvu koju drži vlastita veza
+	 */
+	private ThreadPoolExecutor streamPool;
+
+	/** Članska varijabla koja predstavlja brojač veza HTTP/2 */
+	private Counter http2Connections;
+
+	/** Članska varijabla koja predstavlja brojač tokova HTTP/2 */
+	private Counter http2Streams;
+
+	/**
+	 * Članska varijabla koja predstavlja pregrade po vrstama zahtjeva. Vrsta
+	 * koja nema pregradu obrađuje se izravno u dretvi veze
+	 */
+	private Map<RouteClass, Bulkhead> bulkheads = new EnumMap<>(RouteClass.class);
+
+	/**
+	 * Članska varijabla koja predstavlja ograničavač brzine zahtjeva po
+	 * klijentima ili <code>null</code> ukoliko se brzina ne ograničava
+	 */
+	private RateLimiter rateLimiter;
+
+	/**
+	 * Članska varijabla koja predstavlja najdulja vremena (u nanosekundama)
+	 * izvođenja zahtjeva po vrstama. Vrsta bez zadanog vremena ograničena je
+	 * samo rokom čitavog zahtjeva
 	 */
-	private ServerThread serverThread;
+	private Map<RouteClass, Long> routeTimeouts = new EnumMap<>(RouteClass.class);
 
 	/**
-	 * Članska varijabla koja predstavlja thread pool (bazen dretvi) radnika
-	 * koji poslužuju klijente
+	 * Članska varijabla koja predstavlja brojače otkazanih zahtjeva po
+	 * razlozima otkazivanja
 	 */
-	private ExecutorService threadPool;
+	private Counter[] cancelled = new Counter[RequestCancelledException.Reason.values().length];
 
 	/**
 	 * Članska varijabla koja predstavlja putanju do javnog direktorija
@@ -219,6 +521,183 @@ public class SmartHttpServer {
 	 */
 	private Random sessionRandom = new Random();
 
+	/**
+	 * Članska varijabla koja predstavlja registar svih metrika ovog
+	 * poslužitelja
+	 */
+	private MetricsRegistry metrics = new MetricsRegistry();
+
+	/**
+	 * Članska varijabla koja predstavlja brojač stvorenih cookie sesija
+	 */
+	private Counter sessionsCreated = metrics.counter("sessions_created_total", "Ukupan broj stvorenih sesija");
+
+	/**
+	 * Članska varijabla koja predstavlja brojač isteklih cookie sesija
+	 */
+	private Counter sessionsExpired = metrics.counter("sessions_expired_total", "Ukupan broj isteklih sesija");
+
+	/**
+	 * Članska varijabla koja predstavlja najdulje vrijeme (u sekundama) čekanja
+	 * na dovršetak započetih zahtjeva pri zaustavljanju poslužitelja
+	 */
+	private int drainTimeout;
+
+	/**
+	 * Članska varijabla koja predstavlja putanju do datoteke u koju se spremaju
+	 * sesije ili <code>null</code>
+	 */
+	private Path sessionStore;
+
+	/**
+	 * Članska varijabla koja predstavlja {@link Set} svih trenutno otvorenih
+	 * veza s klijentima
+	 */
+	private Set<ClientWorker> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Članska varijabla koja predstavlja skup radnika koji trenutno obrađuju
+	 * tokove HTTP/2 (kako bi im {@link #reaper} mogao otkazati zahtjeve kojima
+	 * je istekao rok)
+	 */
+	private Set<ClientWorker> streamWorkers = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Članska varijabla koja predstavlja skup otvorenih tokova događaja čiji
+	 * su radnici završili s radom (veze tih tokova ne zauzimaju dretve)
+	 */
+	private Set<EventStream> eventStreams = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Članska varijabla koja predstavlja najdulje vrijeme (u nanosekundama)
+	 * bez pisanja u tok događaja ili 0 ukoliko se komentari ne šalju
+	 */
+	private long sseKeepAlive;
+
+	/**
+	 * Članska varijabla koja predstavlja dretvu koja tokovima događaja
+	 * {@link #eventStreams} šalje komentare koji održavaju veze živima.
+	 * Pisanje smije blokirati (do roka pisanja), pa se ne koristi
+	 * {@link #reaper}
+	 */
+	private ScheduledExecutorService keepAliveTimer;
+
+	/**
+	 * Članska varijabla koja predstavlja {@link Map}u obrađivača veza
+	 * WebSocket, a ključ je putanja na kojoj se prihvaća nadogradnja veze
+	 */
+	private Map<String, IWebSocketHandler> webSocketHandlers = new HashMap<>();
+
+	/** Članska varijabla koja predstavlja broj dretvi obrađivača veza WebSocket */
+	private int webSocketThreads;
+
+	/**
+	 * Članska varijabla koja predstavlja reaktor koji poslužuje nadograđene
+	 * veze WebSocket ili <code>null</code> ukoliko nema obrađivača
+	 */
+	private WebSocketReactor webSocketReactor;
+
+	/**
+	 * Članska varijabla koja predstavlja {@link Map}u isparsiranih skripti, a
+	 * ključ je putanja do datoteke skripte
+	 */
+	private Map<Path, ScriptMapEntry> scripts = new ConcurrentHashMap<>();
+
+	/**
+	 * Članska varijabla koja predstavlja broj izvođenja skripte nakon kojeg
+	 * se skripta prevodi u bajtni kod
+	 */
+	private int scriptCompileThreshold;
+
+	/**
+	 * Članska varijabla koja predstavlja veličinu rezultata skripte nakon
+	 * koje se rezultat šalje klijentu u dijelovima
+	 */
+	private int scriptStreamThreshold;
+
+	/**
+	 * Članska varijabla koja predstavlja optimizator koji unaprijed izračunava
+	 * konstantne dijelove skripti
+	 */
+	private ScriptOptimizer scriptOptimizer = new ScriptOptimizer();
+
+	/** Članska varijabla koja predstavlja prevoditelj skripti */
+	private SmartScriptCompiler scriptCompiler = new SmartScriptCompiler();
+
+	/**
+	 * Članska varijabla koja predstavlja brojač skripti koje se nisu mogle
+	 * prevesti u bajtni kod (takve se skripte i dalje interpretiraju)
+	 */
+	private Counter scriptCompileFailures = metrics.counter("script_compile_failures_total",
+			"Broj skripti koje se nisu mogle prevesti u bajtni kod");
+
+	/**
+	 * Članska varijabla koja predstavlja broj izvođenja skripti čiji je
+	 * predložak pronađen u priručnoj memoriji {@link #scripts}
+	 */
+	private LongAdder scriptCacheHits = new LongAdder();
+
+	/**
+	 * Članska varijabla koja predstavlja broj izvođenja skripti čiji se
+	 * predložak morao (ponovno) stvoriti jer ga nije bilo u priručnoj memoriji
+	 * {@link #scripts} ili je datoteka skripte promijenjena
+	 */
+	private LongAdder scriptCacheMisses = new LongAdder();
+
+	/**
+	 * Članska varijabla koja predstavlja dretvu u kojoj se skripte prevode u
+	 * bajtni kod, kako prevođenje ne bi usporilo niti jedan zahtjev
+	 */
+	private ExecutorService scriptCompilerExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "smarthttp-script-compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena od
+	 * trenutka kada poslužitelj prestaje primati nove veze
+	 */
+	private volatile boolean draining;
+
+	/**
+	 * Članska varijabla koja predstavlja ishod zaustavljanja poslužitelja ili
+	 * <code>null</code> ukoliko zaustavljanje još nije započelo
+	 */
+	private CompletableFuture<Boolean> drainFuture;
+
+	/**
+	 * Članska varijabla koja predstavlja dretvu u kojoj radi sakupljač smeća
+	 * {@link ServerGarbageCollector}
+	 */
+	private Thread cleaner;
+
+	/**
+	 * Članska varijabla koja predstavlja vremenska ograničenja (u
+	 * nanosekundama) pojedinih faza veze. Ograničenje 0 znači da faza nije
+	 * ograničena
+	 */
+	private Map<Deadline, Long> deadlines = new EnumMap<>(Deadline.class);
+
+	/**
+	 * Članska varijabla koja predstavlja brojače veza zatvorenih zbog isteka
+	 * pojedinog vremenskog ograničenja
+	 */
+	private Map<Deadline, Counter> reaped = new EnumMap<>(Deadline.class);
+
+	/**
+	 * Članska varijabla koja predstavlja dretvu koja periodički zatvara veze
+	 * kojima je istekao neki od rokova {@link Deadline}
+	 */
+	private ScheduledExecutorService reaper;
+
+	/**
+	 * Članska varijabla koja predstavlja spremnik u koji dretva
+	 * {@link #reaper} čita pri provjeri je li klijent prekinuo vezu (vidi
+	 * <code>ClientWorker.probeDisconnect</code>)
+	 */
+	private final ByteBuffer disconnectProbe = ByteBuffer.allocateDirect(1);
+
 	/**
 	 * Konstruktor koji inicijalizira primjerak ovog razreda. Konstruktoru se
 	 * kao jedini parametar šalje putanja (u obliku primjerka razreda
@@ -237,15 +716,213 @@ public class SmartHttpServer {
 		this.address = serverProperties.getProperty(SERVER_ADDRESS);
 		this.port = Integer.parseInt(serverProperties.getProperty(SERVER_PORT));
 		this.workerThreads = Integer.parseInt(serverProperties.getProperty(SERVER_WORKER_THREADS));
+		this.acceptors = Integer.parseInt(serverProperties.getProperty(SERVER_ACCEPTORS, "1").trim());
+		if (acceptors < 1 || acceptors > workerThreads) {
+			throw new IllegalArgumentException(String.format(
+					"Broj dretvi koje prihvaćaju veze mora biti između 1 i %d, a predano je %d", workerThreads,
+					acceptors));
+		}
+		this.http2Enabled = Boolean.parseBoolean(serverProperties.getProperty(SERVER_HTTP2, "false").trim());
+		this.http2MaxConcurrentStreams = Integer.parseInt(serverProperties.getProperty(
+				SERVER_HTTP2_MAX_CONCURRENT_STREAMS, Integer.toString(Http2Connection.DEFAULT_MAX_CONCURRENT_STREAMS))
+				.trim());
+		if (http2MaxConcurrentStreams < 1) {
+			throw new IllegalArgumentException(String.format(
+					"Najveći broj tokova veze HTTP/2 mora biti pozitivan, a predano je %d",
+					http2MaxConcurrentStreams));
+		}
 		this.sessionTimeout = Integer.parseInt(serverProperties.getProperty(SESSION_TIMEOUT));
+		this.drainTimeout = Integer.parseInt(
+				serverProperties.getProperty(SERVER_DRAIN_TIMEOUT, Integer.toString(DEFAULT_DRAIN_TIMEOUT)).trim());
+		BufferPool.getInstance().setLeakDetection(
+				Boolean.parseBoolean(serverProperties.getProperty(SERVER_BUFFER_LEAK_DETECTION, "false").trim()));
+		for (Deadline deadline : Deadline.values()) {
+			String seconds = serverProperties.getProperty(deadline.key,
+					Integer.toString(DEFAULT_DEADLINES[deadline.ordinal()]));
+			deadlines.put(deadline, TimeUnit.SECONDS.toNanos(Long.parseLong(seconds.trim())));
+		}
+
+		this.sseKeepAlive = TimeUnit.SECONDS.toNanos(Long.parseLong(serverProperties
+				.getProperty(SERVER_SSE_KEEP_ALIVE, Integer.toString(DEFAULT_SSE_KEEP_ALIVE)).trim()));
+
+		loadBulkheads(serverProperties);
+		for (RouteClass route : RouteClass.values()) {
+			String seconds = serverProperties.getProperty(SERVER_ROUTE_TIMEOUT + route.getLabel());
+			if (seconds != null) {
+				routeTimeouts.put(route, TimeUnit.SECONDS.toNanos(Long.parseLong(seconds.trim())));
+			}
+		}
+
+		String rateLimitsFile = serverProperties.getProperty(SERVER_RATE_LIMITS);
+		if (rateLimitsFile != null) {
+			this.rateLimiter = new RateLimiter(rateLimitsFile.trim(), metrics);
+		}
 
 		loadMimeTypes(serverProperties.getProperty(SERVER_MIME_CONFIG));
 
 		loadWorkers(serverProperties.getProperty(SERVER_WORKERS));
 
+		String webSocketsFile = serverProperties.getProperty(SERVER_WEBSOCKETS);
+		if (webSocketsFile != null) {
+			loadInstances(webSocketsFile.trim(), webSocketHandlers, IWebSocketHandler.class);
+		}
+		this.webSocketThreads = Integer.parseInt(serverProperties
+				.getProperty(SERVER_WEBSOCKET_THREADS, Integer.toString(DEFAULT_WEBSOCKET_THREADS)).trim());
+		this.scriptCompileThreshold = Integer.parseInt(serverProperties.getProperty(SERVER_SCRIPT_COMPILE_THRESHOLD,
+				Integer.toString(DEFAULT_SCRIPT_COMPILE_THRESHOLD)).trim());
+		this.scriptStreamThreshold = Integer.parseInt(serverProperties.getProperty(SERVER_SCRIPT_STREAM_THRESHOLD,
+				Integer.toString(DEFAULT_SCRIPT_STREAM_THRESHOLD)).trim());
+		if (scriptStreamThreshold < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Veličina nakon koje se rezultat skripte šalje u dijelovima ne smije biti negativna, a predano je %d",
+					scriptStreamThreshold));
+		}
+
 		this.documentRoot = Paths.get(serverProperties.getProperty(SERVER_DOCUMENT_ROOT)).toRealPath();
-		this.serverThread = new ServerThread();
 
+		String sessionStoreName = serverProperties.getProperty(SESSION_STORE);
+		if (sessionStoreName != null) {
+			this.sessionStore = Paths.get(sessionStoreName.trim());
+			loadSessions();
+		}
+
+		registerMetrics(serverProperties.getProperty(SERVER_METRICS_PATH));
+	}
+
+	/**
+	 * Pomoćna metoda koja registrira mjerače stanja poslužitelja (bazen dretvi
+	 * i sesije) u {@link #metrics}. Ukoliko je predana putanja
+	 * <b>metricsPath</b>, na nju se mapira ugrađeni radnik
+	 * {@link MetricsWorker}
+	 *
+	 * @param metricsPath
+	 *            putanja na kojoj se objavljuju metrike ili <code>null</code>
+	 */
+	private void registerMetrics(String metricsPath) {
+		metrics.gauge("threadpool_active_threads", "Broj dretvi koje trenutno obrađuju zahtjev",
+				() -> sumThreadPools(ThreadPoolExecutor::getActiveCount));
+		metrics.gauge("threadpool_queued_tasks", "Broj zahtjeva koji čekaju slobodnu dretvu",
+				() -> sumThreadPools(pool -> pool.getQueue().size()));
+		metrics.gauge("threadpool_completed_tasks", "Broj zahtjeva koje je bazen dretvi obradio",
+				() -> sumThreadPools(ThreadPoolExecutor::getCompletedTaskCount));
+		accepted = new Counter[acceptors];
+		for (int i = 0; i < acceptors; i++) {
+			accepted[i] = metrics.counter("acceptor_connections_total", "acceptor=\"" + i + "\"",
+					"Broj veza koje je prihvatila pojedina dretva za prihvaćanje veza");
+		}
+		http2Connections = metrics.counter("http2_connections_total", "Ukupan broj veza HTTP/2");
+		http2Streams = metrics.counter("http2_streams_total", "Ukupan broj obrađenih tokova HTTP/2");
+		metrics.gauge("sessions_active", "Broj trenutno zapamćenih sesija", () -> sessions.size());
+		metrics.gauge("connections_open", "Broj trenutno otvorenih veza s klijentima", () -> connections.size());
+		metrics.gauge("sse_streams_open", "Broj otvorenih tokova događaja koji ne zauzimaju dretvu",
+				() -> eventStreams.size());
+		metrics.gauge("scripts_cached", "Broj isparsiranih skripti u priručnoj memoriji", () -> scripts.size());
+		metrics.gauge("scripts_compiled", "Broj skripti prevedenih u bajtni kod",
+				() -> scripts.values().stream().filter(entry -> entry.getScript().isCompiled()).count());
+
+		metrics.cache("script_templates", scriptCacheHits::sum, scriptCacheMisses::sum);
+		metrics.cache("decimal_formats", ThreadLocalDecimalFormat::getHits, ThreadLocalDecimalFormat::getMisses);
+		metrics.gauge("decimal_formats_evicted", "Broj formata izbačenih iz formata koje pamte dretve",
+				ThreadLocalDecimalFormat::getEvictions);
+		metrics.gauge("decimal_formats_uncached", "Broj formata stvorenih za predugačke uzorke koji se ne pamte",
+				ThreadLocalDecimalFormat::getUncached);
+
+		BufferPool pool = BufferPool.getInstance();
+		metrics.cache("buffer_pool", pool::getHits, pool::getMisses);
+		metrics.gauge("buffer_pool_outstanding", "Broj spremnika uzetih iz bazena, a nevraćenih",
+				pool::getOutstanding);
+		metrics.gauge("buffer_pool_pooled_bytes", "Broj okteta u zajedničkim redovima bazena spremnika",
+				pool::getPooledBytes);
+		metrics.gauge("buffer_pool_unpooled", "Broj spremnika većih od najvećeg razreda stvorenih mimo bazena",
+				pool::getUnpooled);
+		metrics.gauge("buffer_pool_unpooled_bytes", "Ukupan broj okteta spremnika stvorenih mimo bazena",
+				pool::getUnpooledBytes);
+		for (Deadline deadline : Deadline.values()) {
+			reaped.put(deadline, metrics.counter("connections_reaped_total", "reason=\"" + deadline.label + "\"",
+					"Broj veza zatvorenih zbog isteka vremenskog ograničenja"));
+		}
+		for (RequestCancelledException.Reason reason : RequestCancelledException.Reason.values()) {
+			cancelled[reason.ordinal()] = metrics.counter("requests_cancelled_total",
+					"reason=\"" + reason.getLabel() + "\"", "Broj zahtjeva čija je obrada otkazana");
+		}
+
+		if (metricsPath == null) {
+			return;
+		}
+
+		metricsPath = metricsPath.trim();
+		if (workersMap.containsKey(metricsPath)) {
+			throw new IllegalArgumentException(
+					String.format("Putanja metrika '%s' već je zauzeta nekim radnikom", metricsPath));
+		}
+		workersMap.put(metricsPath, new MetricsWorker(metrics));
+	}
+
+	/**
+	 * Pomoćna metoda koja iz postavki <b>serverProperties</b> stvara pregrade
+	 * {@link #bulkheads} za sve vrste zahtjeva kojima je zadan broj dretvi
+	 * (vidi {@link #SERVER_BULKHEAD}). Ukoliko veličina reda nije zadana, red
+	 * prima onoliko zahtjeva koliko pregrada ima dretvi
+	 *
+	 * @param serverProperties
+	 *            postavke poslužitelja
+	 */
+	private void loadBulkheads(Properties serverProperties) {
+		for (RouteClass route : RouteClass.values()) {
+			String prefix = SERVER_BULKHEAD + route.getLabel();
+			String threads = serverProperties.getProperty(prefix + ".threads");
+			if (threads == null) {
+				continue;
+			}
+
+			int threadCount = Integer.parseInt(threads.trim());
+			int queueSize = Integer.parseInt(
+					serverProperties.getProperty(prefix + ".queue", Integer.toString(threadCount)).trim());
+			bulkheads.put(route, new Bulkhead(route.getLabel(), threadCount, queueSize, metrics));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja zbraja vrijednost <b>metric</b> po svim dijelovima
+	 * bazena dretvi {@link #threadPools}
+	 *
+	 * @param metric
+	 *            strategija koja čita vrijednost iz jednog dijela bazena
+	 * @return zbroj vrijednosti po svim dijelovima bazena
+	 */
+	private long sumThreadPools(ToLongFunction<ThreadPoolExecutor> metric) {
+		long sum = 0;
+		for (ThreadPoolExecutor pool : threadPools) {
+			sum += metric.applyAsLong(pool);
+		}
+		return sum;
+	}
+
+	/**
+	 * Metoda koja dohvaća adresu na kojoj se nalazi ovaj poslužitelj
+	 *
+	 * @return adresu na kojoj se nalazi ovaj poslužitelj
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Metoda koja dohvaća vrata na kojima se nalazi ovaj poslužitelj
+	 *
+	 * @return vrata na kojima se nalazi ovaj poslužitelj
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Metoda koja dohvaća registar svih metrika ovog poslužitelja
+	 *
+	 * @return registar svih metrika ovog poslužitelja
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -261,15 +938,38 @@ public class SmartHttpServer {
 	 *             ukoliko se ne može čitati iz konfiguracijske datoteke
 	 */
 	private void loadWorkers(String filePath) throws IOException {
+		loadInstances(filePath, workersMap, IWebWorker.class);
+	}
+
+	/**
+	 * Pomoćna metoda koja iz konfiguracijske datoteke <b>filePath</b>
+	 * (putanja = puni naziv razreda) stvara po jedan primjerak svakog razreda
+	 * i sprema ga u {@link Map}u <b>instances</b> pod pripadnom putanjom
+	 *
+	 * @param <T>
+	 *            tip primjeraka koji se stvaraju
+	 * @param filePath
+	 *            putanja do konfiguracijske datoteke
+	 * @param instances
+	 *            {@link Map} u koju se spremaju stvoreni primjerci
+	 * @param type
+	 *            razred ili sučelje koje razredi moraju naslijediti
+	 * @throws IOException
+	 *             ukoliko se ne može čitati iz konfiguracijske datoteke
+	 */
+	private <T> void loadInstances(String filePath, Map<String, T> instances, Class<T> type) throws IOException {
 		BiConsumer<Object, Object> consumer = (key, value) -> {
-			if (workersMap.containsKey(key)) {
+			if (instances.containsKey(key)) {
 				throw new IllegalArgumentException(
 						String.format("Svojstvo pod ključem '%s' već postoji", key.toString()));
 			}
 
 			try {
 				Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(value.toString());
-				workersMap.put((String) key, (IWebWorker) referenceToClass.newInstance());
+				instances.put((String) key, type.cast(referenceToClass.newInstance()));
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException(
+						String.format("Razred %s ne implementira %s", value.toString(), type.getSimpleName()));
 			} catch (ClassNotFoundException e) {
 				throw new IllegalArgumentException("Ne mogu pronaći razred: " + value.toString());
 			} catch (InstantiationException e) {
@@ -302,15 +1002,124 @@ public class SmartHttpServer {
 	/**
 	 * Metoda čijim pozivom započinje rad ovog poslužitelja
 	 */
-	protected synchronized void start() {
-		if (serverThread.isAlive()) {
+	public synchronized void start() {
+		if (serverThreads != null || draining) {
+			return;
+		}
+
+		ServerSocketChannel[] listeners;
+		try {
+			listeners = openListeners();
+		} catch (IOException e) {
+			System.out.println("Server se ne može slušati na portu: " + port);
+			System.out.println("Zatvaram poslužitelja...");
+			System.exit(-1);
 			return;
 		}
 
-		threadPool = Executors.newFixedThreadPool(workerThreads);
-		serverThread.start();
+		ThreadPoolExecutor[] pools = new ThreadPoolExecutor[acceptors];
+		serverThreads = new ServerThread[acceptors];
+		for (int i = 0; i < acceptors; i++) {
+			int shardThreads = workerThreads / acceptors + (i < workerThreads % acceptors ? 1 : 0);
+			pools[i] = new ThreadPoolExecutor(shardThreads, shardThreads, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>());
+			serverThreads[i] = new ServerThread(i, listeners[i], pools[i]);
+		}
+		threadPools = pools;
+		if (http2Enabled) {
+			streamPool = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>());
+		}
+		if (!webSocketHandlers.isEmpty()) {
+			try {
+				webSocketReactor = new WebSocketReactor(webSocketThreads, metrics);
+			} catch (IOException e) {
+				System.out.println("Ne mogu pokrenuti reaktor veza WebSocket");
+			}
+		}
+		for (ServerThread serverThread : serverThreads) {
+			serverThread.start();
+		}
 
 		startCleaning();
+		startReaping();
+		startKeepAlive();
+	}
+
+	/**
+	 * Pomoćna metoda koja otvara {@link #acceptors} utičnica na kojima se
+	 * prihvaćaju veze. Ukoliko je podržana opcija <code>SO_REUSEPORT</code>,
+	 * svaka dretva dobiva vlastitu utičnicu na istoj adresi i vratima pa
+	 * operacijski sustav sam raspoređuje nove veze među njima. Inače sve
+	 * dretve dijele jednu utičnicu. Podrška za opciju provjerava se samo
+	 * jednom, prije otvaranja prve utičnice, pa sve utičnice koriste isti
+	 * način (utičnica bez opcije ne može se vezati na vrata utičnice s
+	 * opcijom)
+	 *
+	 * @return utičnice na kojima se prihvaćaju veze (po jedna za svaku
+	 *         dretvu, moguće i ista)
+	 * @throws IOException
+	 *             ukoliko se neka od utičnica ne može otvoriti
+	 */
+	private ServerSocketChannel[] openListeners() throws IOException {
+		InetSocketAddress endpoint = address == null ? new InetSocketAddress(port)
+				: new InetSocketAddress(address.trim(), port);
+		SocketOption<Boolean> reusePort = acceptors > 1 ? reusePortOption() : null;
+		ServerSocketChannel[] listeners = new ServerSocketChannel[acceptors];
+
+		try {
+			for (int i = 0; i < acceptors; i++) {
+				if (i > 0 && reusePort == null) {
+					listeners[i] = listeners[0];
+					continue;
+				}
+
+				listeners[i] = ServerSocketChannel.open();
+				listeners[i].setOption(StandardSocketOptions.SO_REUSEADDR, true);
+				if (reusePort != null) {
+					listeners[i].setOption(reusePort, true);
+				}
+				listeners[i].bind(endpoint);
+			}
+		} catch (IOException e) {
+			for (ServerSocketChannel listener : listeners) {
+				if (listener != null) {
+					listener.close();
+				}
+			}
+			throw e;
+		}
+
+		return listeners;
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća opciju <code>SO_REUSEPORT</code>. Opcija
+	 * postoji tek od Jave 9 pa se dohvaća refleksijom, a podrška operacijskog
+	 * sustava provjerava se postavljanjem opcije na privremenoj, nevezanoj
+	 * utičnici
+	 *
+	 * @return opciju <code>SO_REUSEPORT</code> ili <code>null</code> ukoliko
+	 *         ona ne postoji ili je operacijski sustav ne podržava
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> reusePortOption() {
+		SocketOption<Boolean> reusePort;
+		try {
+			reusePort = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+
+		try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+			if (!probe.supportedOptions().contains(reusePort)) {
+				return null;
+			}
+			probe.setOption(reusePort, true);
+			return probe.getOption(reusePort) ? reusePort : null;
+		} catch (IOException | UnsupportedOperationException e) {
+			return null;
+		}
 	}
 
 	/**
@@ -319,25 +1128,467 @@ public class SmartHttpServer {
 	 * ga demonskoj dretvi i započinje rad te dretve
 	 */
 	private void startCleaning() {
-		Thread cleaner = new Thread(new ServerGarbageCollector(sessions));
+		cleaner = new Thread(new ServerGarbageCollector(sessions, sessionsExpired));
 		cleaner.setDaemon(true);
 
 		cleaner.start();
 	}
 
 	/**
-	 * Metoda koja zaustavlja rad ovog poslužitelja
+	 * Pomoćna metoda koja pokreće dretvu {@link #reaper} koja svakih
+	 * {@value #REAPER_PERIOD}ms pregledava sve otvorene veze i zatvara one
+	 * kojima je istekao neki od rokova {@link Deadline}. Tako jedna dretva
+	 * nadzire sve veze, a spori klijenti ne mogu trajno zauzeti dretve iz
+	 * {@link #threadPools}. Ista dretva svakih
+	 * {@value #RATE_LIMIT_EXPIRY_PERIOD}ms iz ograničavača {@link #rateLimiter}
+	 * izbacuje napunjene posude
+	 */
+	private void startReaping() {
+		reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "smarthttp-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reaper.scheduleWithFixedDelay(this::reapConnections, REAPER_PERIOD, REAPER_PERIOD, TimeUnit.MILLISECONDS);
+		if (rateLimiter != null) {
+			reaper.scheduleWithFixedDelay(rateLimiter::expireIdle, RATE_LIMIT_EXPIRY_PERIOD,
+					RATE_LIMIT_EXPIRY_PERIOD, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja pokreće dretvu {@link #keepAliveTimer} koja svakih
+	 * pola vremena {@link #sseKeepAlive} šalje komentar tokovima događaja u
+	 * koje dulje vrijeme nije ništa pisano. Tako posrednici ne zatvaraju
+	 * neaktivne veze, a poslužitelj otkriva klijente koji su prekinuli vezu
+	 */
+	private void startKeepAlive() {
+		if (sseKeepAlive <= 0) {
+			return;
+		}
+
+		keepAliveTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "smarthttp-sse");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = sseKeepAlive / 2;
+		keepAliveTimer.scheduleWithFixedDelay(() -> {
+			long now = System.nanoTime();
+			for (EventStream stream : eventStreams) {
+				stream.keepAlive(now, sseKeepAlive);
+			}
+		}, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Pomoćna metoda koja otkazuje zahtjeve kojima je istekao rok izvođenja
+	 * ili čiji je klijent prekinuo vezu, zatvara sve veze kojima je istekao
+	 * neki od rokova {@link Deadline} i bilježi razlog zatvaranja u
+	 * {@link #reaped}
+	 */
+	private void reapConnections() {
+		long now = System.nanoTime();
+		for (ClientWorker worker : streamWorkers) {
+			worker.cancelIfExpired(now);
+		}
+		for (ClientWorker connection : connections) {
+			connection.cancelIfExpired(now);
+			connection.probeDisconnect(disconnectProbe);
+			Deadline expired = connection.expiredDeadline(now);
+			if (expired != null && connection.reap()) {
+				reaped.get(expired).increment();
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje jedan tok veze HTTP/2. Tok se obrađuje
+	 * novim primjerkom razreda {@link ClientWorker} jednako kao zahtjev
+	 * HTTP/1.1, a odgovor se piše u izlazni tok toka
+	 *
+	 * @param stream
+	 *            tok koji se obrađuje
+	 * @param clientAddress
+	 *            adresa klijenta kojem tok pripada
+	 */
+	private void handleStream(Http2Stream stream, InetAddress clientAddress) {
+		http2Streams.increment();
+		OutputStream output = stream.getOutputStream();
+		ClientWorker worker = new ClientWorker(output, clientAddress);
+		stream.onReset(() -> worker.cancelRequest(RequestCancelledException.Reason.DISCONNECT));
+		streamWorkers.add(worker);
+		boolean detached = false;
+		try {
+			worker.processRequest(stream.getRequestLines());
+			detached = worker.detachEventStream(output);
+		} catch (IOException e) {
+			if (!stream.isReset()) {
+				System.out.println("Klijent je prekinuo konekciju.");
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Klijent je poslao neispravan zahtjev, šaljem poruku o pogrešci...");
+		} catch (Exception e) {
+			System.out.println("Ne mogu poslati odgovor");
+		} finally {
+			streamWorkers.remove(worker);
+			if (!detached) {
+				try {
+					output.close();
+				} catch (IOException ignorable) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja zaustavlja rad ovog poslužitelja. Poziv je jednak pozivu
+	 * metode {@link #drain(long, TimeUnit)} s rokom zadanim ključem
+	 * {@value #SERVER_DRAIN_TIMEOUT} (pretpostavljeno
+	 * {@value #DEFAULT_DRAIN_TIMEOUT} sekundi), ali metoda ne čeka kraj
+	 * zaustavljanja
+	 */
+	public void stop() {
+		drain(drainTimeout, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Metoda koja postupno zaustavlja rad ovog poslužitelja. Poslužitelj
+	 * odmah prestaje primati nove veze, zatvara veze koje još nisu poslale niti
+	 * jedan oktet zahtjeva te zaustavlja sakupljača smeća
+	 * {@link ServerGarbageCollector}. Započeti zahtjevi (i oni koji čekaju
+	 * slobodnu dretvu) obrađuju se do isteka roka <b>timeout</b>, nakon čega se
+	 * dretve prekidaju, a sve preostale veze zatvaraju. Na kraju se, ukoliko je
+	 * zadan ključ {@value #SESSION_STORE}, sve važeće sesije spremaju u
+	 * datoteku.
+	 * <p>
+	 * Višestruki pozivi ove metode vraćaju isti rezultat.
+	 * </p>
+	 *
+	 * @param timeout
+	 *            najdulje vrijeme čekanja na dovršetak započetih zahtjeva
+	 * @param unit
+	 *            mjerna jedinica vremena <b>timeout</b>
+	 * @return {@link CompletableFuture} koji se dovršava vrijednošću
+	 *         <code>true</code> ukoliko su svi zahtjevi obrađeni prije isteka
+	 *         roka, odnosno <code>false</code> ukoliko su neki zahtjevi
+	 *         prekinuti
+	 */
+	public synchronized CompletableFuture<Boolean> drain(long timeout, TimeUnit unit) {
+		if (drainFuture != null) {
+			return drainFuture;
+		}
+
+		drainFuture = new CompletableFuture<>();
+		draining = true;
+
+		if (serverThreads != null) {
+			for (ServerThread serverThread : serverThreads) {
+				serverThread.closeServerSocket();
+			}
+		}
+		connections.forEach(ClientWorker::closeIfIdle);
+		eventStreams.forEach(EventStream::close);
+		if (webSocketReactor != null) {
+			webSocketReactor.closeAll();
+		}
+		if (cleaner != null) {
+			cleaner.interrupt();
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		Thread drainer = new Thread(() -> finishDrain(deadline), "smarthttp-drain");
+		drainer.start();
+
+		return drainFuture;
+	}
+
+	/**
+	 * Pomoćna metoda koja čeka da svi dijelovi bazena dretvi
+	 * {@link #threadPools} (i bazen tokova HTTP/2 {@link #streamPool}) obrade
+	 * sve započete zahtjeve najdulje do trenutka
+	 * <b>deadline</b>, prekida preostale zahtjeve, sprema sesije te dovršava
+	 * {@link #drainFuture}. Pregrade {@link #bulkheads} zaustavljaju se tek
+	 * nakon bazena veza jer im dretve veza predaju zahtjeve, a zatim se do
+	 * istog trenutka čeka i na zahtjeve u pregradama
+	 *
+	 * @param deadline
+	 *            trenutak (prema {@link System#nanoTime()}) do kojeg se čeka
+	 *            dovršetak zahtjeva
+	 */
+	private void finishDrain(long deadline) {
+		try {
+			List<ThreadPoolExecutor> pools = new ArrayList<>(Arrays.asList(threadPools));
+			if (streamPool != null) {
+				pools.add(streamPool);
+			}
+
+			boolean completed = true;
+			for (ThreadPoolExecutor pool : pools) {
+				pool.shutdown();
+			}
+			for (ThreadPoolExecutor pool : pools) {
+				completed &= pool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			}
+			if (!completed) {
+				for (ThreadPoolExecutor pool : pools) {
+					pool.shutdownNow();
+				}
+			}
+			for (Bulkhead bulkhead : bulkheads.values()) {
+				bulkhead.getExecutor().shutdown();
+			}
+			for (Bulkhead bulkhead : bulkheads.values()) {
+				completed &= bulkhead.getExecutor().awaitTermination(deadline - System.nanoTime(),
+						TimeUnit.NANOSECONDS);
+			}
+			if (!completed) {
+				for (Bulkhead bulkhead : bulkheads.values()) {
+					for (Runnable task : bulkhead.getExecutor().shutdownNow()) {
+						// zahtjevi iz reda pregrade inače bi ostali bez odgovora i spremnika
+						if (task instanceof ClientWorker.HandOff) {
+							((ClientWorker.HandOff) task).reject();
+						} else if (task instanceof Future) {
+							((Future<?>) task).cancel(false);
+						}
+					}
+				}
+				connections.forEach(ClientWorker::close);
+			}
+			if (webSocketReactor != null) {
+				// klijenti odgovaraju na okvire zatvaranja poslane u drain
+				while (webSocketReactor.size() > 0 && deadline - System.nanoTime() > 0) {
+					Thread.sleep(10);
+				}
+				webSocketReactor.shutdown();
+			}
+
+			if (reaper != null) {
+				reaper.shutdownNow();
+			}
+			if (keepAliveTimer != null) {
+				keepAliveTimer.shutdownNow();
+			}
+			scriptCompilerExecutor.shutdownNow();
+
+			flushSessions();
+			BufferPool.getInstance().reportLeaks();
+			drainFuture.complete(completed);
+		} catch (IOException | InterruptedException e) {
+			drainFuture.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja sve važeće sesije iz {@link Map}e {@link #sessions}
+	 * sprema u datoteku {@link #sessionStore}. Za svaku sesiju zapisuje se
+	 * ključ "SID" s vremenom isteka te ključevi "SID.ime" sa stalnim
+	 * parametrima sesije
+	 *
+	 * @throws IOException
+	 *             ukoliko se u datoteku ne može pisati
+	 */
+	private void flushSessions() throws IOException {
+		if (sessionStore == null) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		Properties store = new Properties();
+		sessions.forEach((sid, entry) -> {
+			if (entry.validUntil < now) {
+				return;
+			}
+
+			store.setProperty(sid, Long.toString(entry.validUntil));
+			entry.map.forEach((name, value) -> store.setProperty(sid + "." + name, value));
+		});
+
+		try (Writer writer = Files.newBufferedWriter(sessionStore)) {
+			store.store(writer, "SmartHttpServer sessions");
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja učitava sesije koje je metoda
+	 * {@link #flushSessions()} spremila u datoteku {@link #sessionStore}.
+	 * Istekle sesije se preskaču
+	 *
+	 * @throws IOException
+	 *             ukoliko datoteka postoji, ali se ne može čitati
+	 */
+	private void loadSessions() throws IOException {
+		if (!Files.isRegularFile(sessionStore)) {
+			return;
+		}
+
+		ServerUtil.loadProperties(sessionStore.toString(), (key, value) -> {
+			String name = (String) key;
+			int dotIndex = name.indexOf('.');
+			String sid = dotIndex == -1 ? name : name.substring(0, dotIndex);
+			SessionMapEntry entry = sessions.computeIfAbsent(sid, s -> new SessionMapEntry(s, 0));
+
+			if (dotIndex == -1) {
+				entry.validUntil = Long.parseLong((String) value);
+			} else {
+				entry.map.put(name.substring(dotIndex + 1), (String) value);
+			}
+		});
+
+		long now = System.currentTimeMillis();
+		sessions.values().removeIf(entry -> entry.validUntil < now);
+	}
+
+	/**
+	 * Paketna metoda koja u {@link Map}i {@link #sessions} traži važeću sesiju
+	 * pod ključem <b>sidCandidate</b>. Ukoliko je sesija pronađena i nije
+	 * istekla, produljuje joj se trajanje i ona se vraća. Ukoliko je sesija
+	 * istekla, briše se iz {@link Map}e {@link #sessions}.
+	 *
+	 * @param sidCandidate
+	 *            kandidat za session ID parsiran iz cookia ili
+	 *            <code>null</code>
+	 * @return važeći primjerak razreda {@link SessionMapEntry} ili
+	 *         <code>null</code> ukoliko takav ne postoji
+	 */
+	SessionMapEntry findSession(String sidCandidate) {
+		SessionMapEntry entry;
+		if (sidCandidate == null || (entry = sessions.get(sidCandidate)) == null) {
+			return null;
+		}
+
+		if (entry.validUntil >= System.currentTimeMillis()) {
+			entry.validUntil = getSessionTimeoutInMilis();
+			return entry;
+		}
+
+		if (sessions.remove(sidCandidate, entry)) {
+			sessionsExpired.increment();
+		}
+		return null;
+	}
+
+	/**
+	 * Paketna metoda koja stvara novu sesiju s novim, jedinstvenim session
+	 * ID-om te je sprema u {@link Map}u {@link #sessions}
+	 *
+	 * @return novi primjerak razreda {@link SessionMapEntry}
+	 */
+	SessionMapEntry createSession() {
+		while (true) {
+			SessionMapEntry entry = new SessionMapEntry(generateSID(), getSessionTimeoutInMilis());
+			if (sessions.putIfAbsent(entry.sid, entry) == null) {
+				sessionsCreated.increment();
+				return entry;
+			}
+		}
+	}
+
+	/**
+	 * Paketna metoda koja poništava sesiju pod ključem <b>sid</b> (ukoliko
+	 * takva postoji)
+	 *
+	 * @param sid
+	 *            Session ID sesije koja se poništava
+	 */
+	void invalidateSession(String sid) {
+		sessions.remove(sid);
+	}
+
+	/**
+	 * Pomoćna metoda koja generira novi Session ID
+	 *
+	 * @return novi Session ID
+	 */
+	private String generateSID() {
+		char[] sid = new char[SID_SIZE];
+
+		for (int i = 0; i < SID_SIZE; i++) {
+			sid[i] = (char) (SID_FIRST + sessionRandom.nextInt(SID_RANGE));
+		}
+
+		return new String(sid);
+	}
+
+	/**
+	 * Metoda koja vraća vrijeme trajanja novog Session ID-a
+	 *
+	 * @return vrijeme trajanja novog Session ID-a
 	 */
-	protected synchronized void stop() {
-		serverThread.interrupt();
-		threadPool.shutdown();
+	private long getSessionTimeoutInMilis() {
+		return System.currentTimeMillis() + sessionTimeout * 1000L;
+	}
+
+	/**
+	 * Pomoćna metoda koja računa rok faze <b>deadline</b> koja započinje u
+	 * trenutku <b>now</b>
+	 *
+	 * @param now
+	 *            početak faze (prema {@link System#nanoTime()})
+	 * @param deadline
+	 *            faza čiji se rok računa
+	 * @return rok faze ili {@link #NO_DEADLINE} ukoliko faza nije ograničena
+	 */
+	private long deadlineFrom(long now, Deadline deadline) {
+		long timeout = deadlines.get(deadline);
+		return timeout <= 0 ? NO_DEADLINE : now + timeout;
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava je li rok <b>deadline</b> istekao u
+	 * trenutku <b>now</b>
+	 *
+	 * @param deadline
+	 *            rok ili {@link #NO_DEADLINE}
+	 * @param now
+	 *            trenutak provjere (prema {@link System#nanoTime()})
+	 * @return <code>true</code> ukoliko je rok postavljen i istekao
+	 */
+	private static boolean isExpired(long deadline, long now) {
+		return deadline != NO_DEADLINE && now - deadline >= 0;
+	}
+
+	/**
+	 * Privatno nabrajanje koje predstavlja vremenski ograničene faze jedne
+	 * veze. Svaka faza ima ključ u postavkama poslužitelja i oznaku pod kojom
+	 * se broje zatvorene veze
+	 *
+	 * @author Davor Češljaš
+	 */
+	private enum Deadline {
+		/** Čitanje zaglavlja zahtjeva */
+		HEADER_READ(SERVER_HEADER_READ_TIMEOUT, "header_read"),
+		/** Obrada čitavog zahtjeva */
+		REQUEST(SERVER_REQUEST_TIMEOUT, "request"),
+		/** Jedno pisanje odgovora u vezu */
+		WRITE(SERVER_WRITE_TIMEOUT, "write");
+
+		/** Članska varijabla koja predstavlja ključ u postavkama */
+		private final String key;
+
+		/** Članska varijabla koja predstavlja oznaku u metrikama */
+		private final String label;
+
+		/**
+		 * Konstruktor koji inicijalizira fazu
+		 *
+		 * @param key
+		 *            ključ u postavkama poslužitelja
+		 * @param label
+		 *            oznaka u metrikama
+		 */
+		private Deadline(String key, String label) {
+			this.key = key;
+			this.label = label;
+		}
 	}
 
 	/**
 	 * Zaštićeni razred koji nasljeđuje razred {@link Thread}. Ovaj razred
 	 * predstavlja dretvu koja čeka na zahtjeve korisnika, te kada ga dobije
 	 * delegira posao primjerku razreda {@link ClientWorker} koji onda taj
-	 * zahtjev obrađuje
+	 * zahtjev obrađuje. Poslužitelj pokreće {@value #SERVER_ACCEPTORS} ovakvih
+	 * dretvi, a svaka predaje veze vlastitom dijelu bazena dretvi radnika
 	 * 
 	 * @see ClientWorker
 	 * @see Thread
@@ -346,18 +1597,75 @@ public class SmartHttpServer {
 	 */
 	protected class ServerThread extends Thread {
 
+		/**
+		 * Članska varijabla koja predstavlja utičnicu na kojoj se prihvaćaju
+		 * veze (moguće dijeljenu s drugim dretvama)
+		 */
+		private final ServerSocketChannel serverSocket;
+
+		/**
+		 * Članska varijabla koja predstavlja dio bazena dretvi radnika kojem
+		 * se predaju prihvaćene veze
+		 */
+		private final ThreadPoolExecutor threadPool;
+
+		/**
+		 * Članska varijabla koja predstavlja brojač veza koje je prihvatila ova
+		 * dretva
+		 */
+		private final Counter acceptedCounter;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param index
+		 *            redni broj dretve
+		 * @param serverSocket
+		 *            utičnica na kojoj se prihvaćaju veze
+		 * @param threadPool
+		 *            dio bazena dretvi radnika kojem se predaju veze
+		 */
+		ServerThread(int index, ServerSocketChannel serverSocket, ThreadPoolExecutor threadPool) {
+			super("smarthttp-acceptor-" + index);
+			this.serverSocket = serverSocket;
+			this.threadPool = threadPool;
+			this.acceptedCounter = accepted[index];
+		}
+
 		@Override
 		public void run() {
-			try (ServerSocket serverSocket = new ServerSocket(port)) {
-				while (true) {
-					Socket client = serverSocket.accept();
-					ClientWorker clientWorker = new ClientWorker(client);
-					threadPool.submit(clientWorker);
+			try {
+				while (!draining) {
+					SocketChannel client = serverSocket.accept();
+					acceptedCounter.increment();
+					ClientWorker clientWorker = new ClientWorker(client.socket());
+					connections.add(clientWorker);
+					try {
+						threadPool.submit(clientWorker);
+					} catch (RejectedExecutionException e) {
+						clientWorker.close();
+					}
 				}
 			} catch (IOException e) {
-				System.out.println("Server se ne može slušati na portu: " + port);
+				if (draining) {
+					return;
+				}
+				System.out.println("Greška prilikom prihvaćanja veze: " + e.getMessage());
 				System.out.println("Zatvaram poslužitelja...");
 				System.exit(-1);
+			} finally {
+				closeServerSocket();
+			}
+		}
+
+		/**
+		 * Metoda koja zatvara utičnicu na kojoj se prihvaćaju veze, čime se
+		 * prekida čekanje u metodi {@link ServerSocketChannel#accept()}
+		 */
+		void closeServerSocket() {
+			try {
+				serverSocket.close();
+			} catch (IOException ignorable) {
 			}
 		}
 	}
@@ -381,10 +1689,16 @@ public class SmartHttpServer {
 		private Socket csocket;
 
 		/**
-		 * Članska varijabla koja predstavlja ulazni niz okteta iz kojeg se čita
+		 * Članska varijabla koja predstavlja kanal veze iz kojeg se čita
 		 * zahtjev
 		 */
-		private PushbackInputStream istream;
+		private SocketChannel channel;
+
+		/**
+		 * Članska varijabla koja predstavlja izravni spremnik iz bazena
+		 * {@link BufferPool} u koji se čita zaglavlje zahtjeva
+		 */
+		private ByteBuffer requestBuffer;
 
 		/**
 		 * Članska varijabla koja predstavlja izlazni niz okteta u koji se piše
@@ -395,104 +1709,885 @@ public class SmartHttpServer {
 		/** Članska varijabla koja predstavlja verziju HTTP protokola */
 		private String version;
 
-		/** Članska varijabla koja predstavlja HTTP metodu zahtjeva */
-		private String method;
+		/** Članska varijabla koja predstavlja HTTP metodu zahtjeva */
+		private String method;
+
+		/**
+		 * Članska varijabla koja predstavlja parametre koje je korisnik predao
+		 * u nizu upita
+		 */
+		private QueryParameters params = QueryParameters.EMPTY;
+
+		/**
+		 * Članska varijabla koja predstavlja {@link Map} privremenih parametara
+		 * sesije (brišu se čim se pošalje odgovor)
+		 */
+		private Map<String, String> tempParams = new HashMap<String, String>();
+
+		/**
+		 * Članska varijabla koja predstavlja {@link Map} stalnih parametara
+		 * sesije (brišu se tek kada istekne cookie sesija)
+		 */
+		private Map<String, String> persParams = new HashMap<String, String>();
+
+		/**
+		 * Članska varijabla koja predstavlja {@link List} cookia oblikovanih
+		 * razredom {@link RCCookie} koji se šalju korisniku u odgovoru
+		 */
+		private List<RCCookie> outputCookies = new ArrayList<RequestContext.RCCookie>();
+
+		/**
+		 * Članska varijabla koja predstavlja kontekst zahtjeva i odgovora na
+		 * zahtjev.
+		 */
+		private volatile RequestContext context;
+
+		/**
+		 * Članska varijabla koja predstavlja razlog otkazivanja zahtjeva ili
+		 * <code>null</code> ukoliko zahtjev nije otkazan. Pamti se i kada se
+		 * zahtjev otkaže prije stvaranja konteksta {@link #context}
+		 */
+		private volatile RequestCancelledException.Reason cancelReason;
+
+		/**
+		 * Članska varijabla koja predstavlja redak zahtjeva "Cookie: " ili
+		 * <code>null</code> ukoliko ga klijent nije poslao
+		 */
+		private String cookieLine;
+
+		/**
+		 * Članska varijabla koja predstavlja parsiranu putanju koju je korisnik
+		 * zatražio, a koja je predstavljena primjerkom sučelja {@link Path}
+		 */
+		private Path parsedPath;
+
+		/** Članska varijabla koja predstavlja Session ID */
+		private String SID;
+
+		/**
+		 * Članska varijabla koja predstavlja stanje veze (jedna od konstanti
+		 * <code>CONNECTION_*</code>)
+		 */
+		private AtomicInteger state = new AtomicInteger(CONNECTION_NEW);
+
+		/**
+		 * Članska varijabla koja predstavlja rok (prema
+		 * {@link System#nanoTime()}) do kojeg zaglavlje zahtjeva mora biti
+		 * pročitano ili {@link SmartHttpServer#NO_DEADLINE}
+		 */
+		private volatile long headerDeadline = NO_DEADLINE;
+
+		/**
+		 * Članska varijabla koja predstavlja rok do kojeg čitav zahtjev mora
+		 * biti obrađen ili {@link SmartHttpServer#NO_DEADLINE}
+		 */
+		private volatile long requestDeadline = NO_DEADLINE;
+
+		/**
+		 * Članska varijabla koja predstavlja rok do kojeg trenutno pisanje u
+		 * vezu mora završiti ili {@link SmartHttpServer#NO_DEADLINE} ukoliko se
+		 * trenutno ne piše
+		 */
+		private volatile long writeDeadline = NO_DEADLINE;
+
+		/**
+		 * Članska varijabla koja predstavlja indeks okteta iza kraja zaglavlja
+		 * zahtjeva u spremniku {@link #requestBuffer}
+		 */
+		private int requestEnd;
+
+		/**
+		 * Članska varijabla koja predstavlja vezu HTTP/2 koju ova veza
+		 * poslužuje ili <code>null</code> ukoliko se radi o vezi HTTP/1.x
+		 */
+		private volatile Http2Connection http2;
+
+		/** Članska varijabla koja predstavlja adresu klijenta */
+		private InetAddress clientAddress;
+
+		/**
+		 * Članska varijabla koja indicira je li vezu preuzeo tok događaja
+		 * (veza tada ostaje otvorena nakon obrade zahtjeva)
+		 */
+		private boolean detached;
+
+		/**
+		 * Članska varijabla koja predstavlja statusni kod poruke o pogrešci
+		 * koja je poslana klijentu ili 0 ukoliko pogreška nije poslana
+		 */
+		private int errorStatus;
+
+		/**
+		 * Članska varijabla koja indicira je li obrada zahtjeva predana
+		 * pregradi. Dretva pregrade tada dovršava odgovor i zatvara vezu, a
+		 * dretva veze se odmah oslobađa
+		 */
+		private boolean handedOff;
+
+		/**
+		 * Članska varijabla koja indicira obrađuje li se zahtjev HTTP/1 ove
+		 * veze. Samo se tada provjerava je li klijent prekinuo vezu (vidi
+		 * {@link #probeDisconnect(ByteBuffer)})
+		 */
+		private volatile boolean inFlight;
+
+		/**
+		 * Članska varijabla koja predstavlja lokot koji se drži za vrijeme
+		 * pisanja u vezu. Provjera prekida veze vezu nakratko prebacuje u
+		 * neblokirajući način rada, pa se provodi samo dok se u vezu ne piše
+		 */
+		private final ReentrantLock writeLock = new ReentrantLock();
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda. Konstruktor
+		 * interno sprema predanu referencu na primjerak razreda {@link Socket}
+		 * <b>csocket</b>
+		 *
+		 * @param csocket
+		 *            primjerak razreda {@link Socket} kojim se modelira veza
+		 *            između klijenta i poslužitelja
+		 */
+		public ClientWorker(Socket csocket) {
+			this.csocket = csocket;
+			this.clientAddress = csocket.getInetAddress();
+		}
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda koji obrađuje
+		 * jedan tok veze HTTP/2. Odgovor se piše u izlazni tok toka
+		 * <b>ostream</b>, a zahtjev se obrađuje metodom
+		 * {@link #processRequest(List)}
+		 *
+		 * @param ostream
+		 *            izlazni tok odgovora toka
+		 * @param clientAddress
+		 *            adresa klijenta kojem tok pripada
+		 */
+		public ClientWorker(OutputStream ostream, InetAddress clientAddress) {
+			this.ostream = ostream;
+			this.clientAddress = clientAddress;
+		}
+
+		@Override
+		public void run() {
+			try {
+				channel = csocket.getChannel();
+				ostream = new DeadlineOutputStream(csocket.getOutputStream());
+				requestBuffer = BufferPool.getInstance().acquire(ServerUtil.MAX_HEADER_SIZE);
+
+				if (!awaitRequest()) {
+					return;
+				}
+
+				if (http2Enabled && readPreface()) {
+					serveHttp2(null, null);
+					return;
+				}
+
+				List<String> request = readRequest();
+				headerDeadline = NO_DEADLINE;
+				String settings = http2Enabled ? findUpgradeSettings(request) : null;
+				if (settings != null) {
+					serveHttp2(request, settings);
+					return;
+				}
+				if (upgradeWebSocket(request)) {
+					return;
+				}
+
+				inFlight = true;
+				processRequest(request);
+				if (!handedOff) {
+					inFlight = false;
+					detached = detachEventStream(this::close);
+				}
+			} catch (Exception e) {
+				reportFailure(e);
+			} finally {
+				if (!handedOff) {
+					releaseConnection();
+				}
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja ispisuje poruku o neuspjeloj obradi zahtjeva
+		 * ovisno o tipu iznimke <b>e</b>
+		 *
+		 * @param e
+		 *            iznimka zbog koje obrada nije uspjela
+		 */
+		private void reportFailure(Exception e) {
+			if (e instanceof IOException) {
+				if (state.get() != CONNECTION_CLOSED) {
+					System.out.println("Klijent je prekinuo konekciju.");
+				}
+			} else if (e instanceof IllegalArgumentException) {
+				System.out.println("Klijent je poslao neispravan zahtjev, šaljem poruku o pogrešci...");
+			} else {
+				System.out.println("Ne mogu poslati odgovor");
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja nakon obrade zahtjeva zatvara vezu (osim ako ju
+		 * je preuzeo tok događaja) i vraća spremnik {@link #requestBuffer} u
+		 * bazen
+		 */
+		private void releaseConnection() {
+			inFlight = false;
+			if (!detached) {
+				connections.remove(this);
+				try {
+					csocket.close();
+				} catch (IOException ignorable) {
+				}
+			}
+			BufferPool.getInstance().release(requestBuffer);
+		}
+
+		/**
+		 * Metoda koja obrađuje zahtjev čiji su retci <b>request</b>: čita prvi
+		 * redak zahtjeva, pronalazi ili stvara sesiju i stvara odgovor. Ukoliko
+		 * je klijent prekoračio ograničenje brzine ({@link #rateLimiter}),
+		 * umjesto odgovora šalje se odgovor "429 Too Many Requests", a sesija se
+		 * ne stvara. Ograničenja po sesiji primjenjuju se samo na sesije koje
+		 * već postoje
+		 *
+		 * @param request
+		 *            {@link List} linija zahtjeva
+		 * @throws Exception
+		 *             iznimka koja nastaje u slučaju pogreške, a ovisno o tipu
+		 *             pogreške
+		 */
+		void processRequest(List<String> request) throws Exception {
+			if (request.isEmpty()) {
+				sendErrorResponse(ServerUtil.DEFAULT_VERISON, ServerUtil.BAD_REQUEST_STATUS,
+						ServerUtil.BAD_REQUEST_TEXT);
+			}
+
+			String firstLine = request.get(0);
+			String filepath = extractFirstLineParams(firstLine);
+
+			String host = readSessionHeaders(request);
+			String sidCandidate = CookieCodec.find(cookieLine, SID_COOKIE_KEY);
+			SessionMapEntry entry = findSession(sidCandidate);
+
+			// klijent bez sesije dobio bi novu sesiju (i punu posudu) uz svaki zahtjev
+			String limitedSid = entry == null ? null : sidCandidate;
+			byte[] rejection = rateLimiter == null ? null : rateLimiter.acquire(filepath, clientAddress, limitedSid);
+			if (rejection != null) {
+				ostream.write(rejection);
+				ostream.flush();
+				return;
+			}
+
+			if (entry == null) {
+				entry = generateSessionMapEntry(host);
+			} else {
+				SID = sidCandidate;
+			}
+			persParams = entry.map;
+
+			internalDispatchRequest(filepath, true);
+		}
+
+		/**
+		 * Pomoćna metoda koja provjerava započinje li veza uvodom HTTP/2
+		 * {@link FrameCodec#PREFACE}. Iz veze se čita samo dok se pročitani
+		 * okteti podudaraju s uvodom, pa zahtjevi HTTP/1.x ne čekaju na
+		 * dodatne oktete
+		 *
+		 * @return <code>true</code> ukoliko veza započinje uvodom HTTP/2,
+		 *         <code>false</code> inače
+		 * @throws IOException
+		 *             ukoliko se iz veze ne može čitati
+		 */
+		private boolean readPreface() throws IOException {
+			for (int i = 0; i < FrameCodec.PREFACE.length; i++) {
+				while (i >= requestBuffer.position()) {
+					if (channel.read(requestBuffer) == -1) {
+						return false;
+					}
+				}
+				if (requestBuffer.get(i) != FrameCodec.PREFACE[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Pomoćna metoda koja provjerava traži li zahtjev <b>request</b>
+		 * nadogradnju veze na HTTP/2 (zaglavlja "Upgrade: h2c" i
+		 * "HTTP2-Settings"). Nadograđuju se samo zahtjevi metodom
+		 * {@value ServerUtil#GET_METHOD} jer poslužitelj druge ne podržava
+		 *
+		 * @param request
+		 *            {@link List} linija zahtjeva
+		 * @return vrijednost zaglavlja "HTTP2-Settings" ili <code>null</code>
+		 *         ukoliko zahtjev ne traži nadogradnju
+		 */
+		private String findUpgradeSettings(List<String> request) {
+			if (request.isEmpty() || !request.get(0).startsWith(ServerUtil.GET_METHOD + " ")) {
+				return null;
+			}
+
+			boolean h2c = false;
+			String settings = null;
+			for (String line : request.subList(1, request.size())) {
+				int colon = line.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Upgrade")) {
+					for (String protocol : value.split(",")) {
+						h2c |= protocol.trim().equals("h2c");
+					}
+				} else if (name.equalsIgnoreCase("HTTP2-Settings")) {
+					settings = value;
+				}
+			}
+
+			return h2c ? settings : null;
+		}
+
+		/**
+		 * Pomoćna metoda koja nadograđuje ovu vezu na WebSocket ukoliko zahtjev
+		 * <b>request</b> to traži (zaglavlja "Upgrade: websocket",
+		 * "Connection: Upgrade" i "Sec-WebSocket-Key"), a na putanji zahtjeva
+		 * postoji obrađivač iz {@link #webSocketHandlers}. Nakon odgovora
+		 * "101 Switching Protocols" veza se predaje reaktoru
+		 * {@link #webSocketReactor} (zajedno s oktetima koje je klijent poslao
+		 * iza zahtjeva), uklanja iz {@link #connections} i ne zatvara se, a
+		 * dretva se vraća u bazen. Zahtjevu nepodržane inačice protokola
+		 * odgovara se s {@link SmartHttpServer#UPGRADE_REQUIRED}
+		 *
+		 * @param request
+		 *            {@link List} linija zahtjeva
+		 * @return <code>true</code> ukoliko je zahtjev obrađen (veza je
+		 *         nadograđena ili je poslan odgovor), <code>false</code> ukoliko
+		 *         zahtjev ne traži nadogradnju na WebSocket
+		 * @throws IOException
+		 *             ukoliko se u vezu ne može pisati
+		 */
+		private boolean upgradeWebSocket(List<String> request) throws IOException {
+			if (webSocketReactor == null || request.isEmpty()) {
+				return false;
+			}
+
+			String[] firstLine = request.get(0).split(" ");
+			if (firstLine.length != 3 || !firstLine[0].equals(ServerUtil.GET_METHOD)) {
+				return false;
+			}
+			int queryStart = firstLine[1].indexOf('?');
+			String path = queryStart == -1 ? firstLine[1] : firstLine[1].substring(0, queryStart);
+			IWebSocketHandler handler = webSocketHandlers.get(path);
+			if (handler == null) {
+				return false;
+			}
+
+			boolean upgrade = false;
+			boolean connectionUpgrade = false;
+			String key = null;
+			String socketVersion = null;
+			for (String line : request.subList(1, request.size())) {
+				int colon = line.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Upgrade")) {
+					upgrade |= containsToken(value, "websocket");
+				} else if (name.equalsIgnoreCase("Connection")) {
+					connectionUpgrade |= containsToken(value, "upgrade");
+				} else if (name.equalsIgnoreCase("Sec-WebSocket-Key")) {
+					key = value;
+				} else if (name.equalsIgnoreCase("Sec-WebSocket-Version")) {
+					socketVersion = value;
+				}
+			}
+			if (!upgrade) {
+				return false;
+			}
+
+			version = ServerUtil.DEFAULT_VERISON;
+			if (!connectionUpgrade || key == null || key.isEmpty()) {
+				sendErrorResponse(version, ServerUtil.BAD_REQUEST_STATUS, ServerUtil.BAD_REQUEST_TEXT);
+			}
+			if (!WebSocketCodec.VERSION.equals(socketVersion)) {
+				ostream.write(UPGRADE_REQUIRED);
+				ostream.flush();
+				return true;
+			}
+			if (draining) {
+				sendErrorResponse(version, ServerUtil.SERVICE_UNAVAILABLE_STATUS,
+						ServerUtil.SERVICE_UNAVAILABLE_TEXT);
+			}
+
+			QueryParameters parameters = QueryParameters.EMPTY;
+			if (queryStart != -1) {
+				parameters = QueryParameters.parse(firstLine[1], queryStart + 1, firstLine[1].length());
+				if (parameters == null) {
+					sendErrorResponse(version, ServerUtil.BAD_REQUEST_STATUS, ServerUtil.BAD_REQUEST_TEXT);
+				}
+			}
+
+			byte[] rejection = rateLimiter == null ? null : rateLimiter.acquire(path, clientAddress, null);
+			if (rejection != null) {
+				ostream.write(rejection);
+				ostream.flush();
+				return true;
+			}
+
+			ostream.write(WebSocketCodec.handshakeResponse(key));
+			ostream.flush();
+
+			// poruke se šalju malim pisanjima u dugotrajnu vezu
+			csocket.setTcpNoDelay(true);
+			ByteBuffer initial = requestBuffer.duplicate();
+			((Buffer) initial).limit(requestBuffer.position()).position(requestEnd);
+			headerDeadline = NO_DEADLINE;
+			requestDeadline = NO_DEADLINE;
+			connections.remove(this);
+			detached = true;
+			try {
+				webSocketReactor.register(channel, handler, path, parameters, initial);
+			} catch (IOException e) {
+				detached = false;
+				throw e;
+			}
+			return true;
+		}
+
+		/**
+		 * Pomoćna metoda koja provjerava sadrži li vrijednost zaglavlja
+		 * <b>value</b> (popis odvojen zarezima) element <b>token</b>, bez
+		 * obzira na velika i mala slova
+		 *
+		 * @param value
+		 *            vrijednost zaglavlja
+		 * @param token
+		 *            traženi element
+		 * @return <code>true</code> ukoliko vrijednost sadrži element,
+		 *         <code>false</code> inače
+		 */
+		private boolean containsToken(String value, String token) {
+			for (String element : value.split(",")) {
+				if (element.trim().equalsIgnoreCase(token)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Pomoćna metoda koja ovu vezu poslužuje protokolom HTTP/2 sve dok je
+		 * klijent ne zatvori. Ukoliko je predan zahtjev <b>request</b>, veza
+		 * se nadograđuje odgovorom {@link SmartHttpServer#SWITCHING_PROTOCOLS},
+		 * a zahtjev postaje prvi tok veze. Rokovi zaglavlja i zahtjeva ne
+		 * vrijede za vezu HTTP/2, već se veza bez otvorenih tokova zatvara
+		 * nakon roka čitanja zaglavlja (vidi {@link #expiredDeadline(long)})
+		 *
+		 * @param request
+		 *            {@link List} linija zahtjeva koji se nadograđuje ili
+		 *            <code>null</code> ukoliko je klijent poslao uvod HTTP/2
+		 * @param settings
+		 *            vrijednost zaglavlja "HTTP2-Settings" ili
+		 *            <code>null</code>
+		 * @throws IOException
+		 *             ukoliko se iz veze ne može čitati ili je klijent
+		 *             prekršio protokol
+		 */
+		private void serveHttp2(List<String> request, String settings) throws IOException {
+			ByteBuffer initial = requestBuffer.duplicate();
+			((Buffer) initial).limit(requestBuffer.position()).position(request == null ? 0 : requestEnd);
+
+			Http2Connection connection = new Http2Connection(channel, (GatheringByteChannel) ostream, initial,
+					streamPool, stream -> handleStream(stream, clientAddress), http2MaxConcurrentStreams);
+			if (request != null) {
+				try {
+					connection.upgrade(settings, request);
+				} catch (Http2Exception e) {
+					sendErrorResponse(ServerUtil.DEFAULT_VERISON, ServerUtil.BAD_REQUEST_STATUS,
+							ServerUtil.BAD_REQUEST_TEXT);
+				}
+				ostream.write(SWITCHING_PROTOCOLS);
+			}
+
+			// okviri različitih tokova šalju se malim pisanjima u dugotrajnu vezu
+			csocket.setTcpNoDelay(true);
+			headerDeadline = NO_DEADLINE;
+			requestDeadline = NO_DEADLINE;
+			http2Connections.increment();
+			http2 = connection;
+			if (draining) {
+				connection.shutdown();
+			}
+			connection.serve();
+		}
+
+		/**
+		 * Pomoćna metoda koja čeka prvi oktet zahtjeva. Dok prvi oktet ne
+		 * stigne, veza se smatra neaktivnom i poslužitelj je pri zaustavljanju
+		 * smije zatvoriti (vidi {@link #closeIfIdle()}). Ukoliko je
+		 * zaustavljanje već započelo, a klijent još nije ništa poslao, veza se
+		 * odmah zatvara.
+		 *
+		 * @return <code>true</code> ukoliko je prvi oktet zahtjeva stigao i
+		 *         zahtjev treba obraditi, <code>false</code> inače
+		 * @throws IOException
+		 *             ukoliko se iz veze ne može čitati
+		 */
+		private boolean awaitRequest() throws IOException {
+			long now = System.nanoTime();
+			headerDeadline = deadlineFrom(now, Deadline.HEADER_READ);
+			requestDeadline = deadlineFrom(now, Deadline.REQUEST);
+
+			state.set(CONNECTION_IDLE);
+			if (draining && csocket.getInputStream().available() == 0) {
+				closeIfIdle();
+				return false;
+			}
+
+			return channel.read(requestBuffer) != -1 && state.compareAndSet(CONNECTION_IDLE, CONNECTION_BUSY);
+		}
+
+		/**
+		 * Metoda koja zatvara ovu vezu ukoliko klijent još nije poslao niti
+		 * jedan oktet zahtjeva. Veza HTTP/2 se zatvara uredno: novi tokovi se
+		 * odbijaju, a veza se zatvara kada završe otvoreni tokovi
+		 */
+		void closeIfIdle() {
+			Http2Connection connection = http2;
+			if (connection != null) {
+				connection.shutdown();
+				return;
+			}
+			if (state.compareAndSet(CONNECTION_IDLE, CONNECTION_CLOSED)) {
+				close();
+			}
+		}
+
+		/**
+		 * Metoda koja vraća rok ove veze koji je istekao u trenutku <b>now</b>
+		 *
+		 * @param now
+		 *            trenutak (prema {@link System#nanoTime()}) u kojem se
+		 *            provjeravaju rokovi
+		 * @return istekli rok ili <code>null</code> ukoliko niti jedan rok
+		 *         nije istekao
+		 */
+		Deadline expiredDeadline(long now) {
+			Http2Connection connection = http2;
+			if (connection != null) {
+				long idleSince = connection.getIdleSince();
+				if (idleSince != Http2Connection.NOT_IDLE
+						&& isExpired(deadlineFrom(idleSince, Deadline.HEADER_READ), now)) {
+					return Deadline.HEADER_READ;
+				}
+			}
+			if (isExpired(headerDeadline, now)) {
+				return Deadline.HEADER_READ;
+			}
+			if (isExpired(writeDeadline, now)) {
+				return Deadline.WRITE;
+			}
+			if (isExpired(requestDeadline, now)) {
+				return Deadline.REQUEST;
+			}
+			return null;
+		}
+
+		/**
+		 * Metoda koja zatvara ovu vezu zbog isteka roka, ukoliko je već nije
+		 * zatvorio netko drugi
+		 *
+		 * @return <code>true</code> ukoliko je ovaj poziv zatvorio vezu,
+		 *         <code>false</code> ukoliko je veza već bila zatvorena
+		 */
+		boolean reap() {
+			if (state.getAndSet(CONNECTION_CLOSED) == CONNECTION_CLOSED) {
+				return false;
+			}
+
+			close();
+			return true;
+		}
 
 		/**
-		 * Članska varijabla koja predstavlja {@link Map} svih parametara koje
-		 * je korisnik predao
+		 * Metoda koja tok događaja koji je radnik otvorio (vidi
+		 * {@link RequestContext#startEventStream()}) odvaja od dretve koja je
+		 * obradila zahtjev. Rokovi zahtjeva se uklanjaju (rok pisanja i dalje
+		 * vrijedi), a tok se dodaje u {@link SmartHttpServer#eventStreams}
+		 *
+		 * @param connection
+		 *            objekt kojim tok zatvara vezu ili tok HTTP/2
+		 * @return <code>true</code> ukoliko je tok preuzeo vezu,
+		 *         <code>false</code> ukoliko tok nije otvoren ili je već
+		 *         zatvoren
 		 */
-		private Map<String, String> params = new HashMap<String, String>();
+		boolean detachEventStream(Closeable connection) {
+			RequestContext context = this.context;
+			EventStream stream = context == null ? null : context.getEventStream();
+			if (stream == null) {
+				return false;
+			}
+
+			headerDeadline = NO_DEADLINE;
+			requestDeadline = NO_DEADLINE;
+			context.setDeadline(NO_DEADLINE);
+			if (!stream.attach(connection)) {
+				return false;
+			}
+
+			eventStreams.add(stream);
+			stream.onClose(() -> eventStreams.remove(stream));
+			return true;
+		}
 
 		/**
-		 * Članska varijabla koja predstavlja {@link Map} privremenih parametara
-		 * sesije (brišu se čim se pošalje odgovor)
+		 * Metoda koja otkazuje zahtjev ove veze iz razloga <b>reason</b>.
+		 * Skripta ili radnik koji obrađuje zahtjev prekida rad pri idućoj
+		 * provjeri {@link RequestContext#checkCancelled()}, a slušači
+		 * registrirani metodom {@link RequestContext#onCancel(Runnable)}
+		 * obavještavaju se odmah
+		 *
+		 * @param reason
+		 *            razlog otkazivanja zahtjeva
 		 */
-		private Map<String, String> tempParams = new HashMap<String, String>();
+		void cancelRequest(RequestCancelledException.Reason reason) {
+			cancelReason = reason;
+			RequestContext context = this.context;
+			if (context != null) {
+				context.cancel(reason);
+			}
+		}
 
 		/**
-		 * Članska varijabla koja predstavlja {@link Map} stalnih parametara
-		 * sesije (brišu se tek kada istekne cookie sesija)
+		 * Metoda koja otkazuje zahtjev ove veze ukoliko mu je u trenutku
+		 * <b>now</b> istekao rok izvođenja
+		 *
+		 * @param now
+		 *            trenutak (prema {@link System#nanoTime()}) u kojem se
+		 *            provjerava rok
 		 */
-		private Map<String, String> persParams = new HashMap<String, String>();
+		void cancelIfExpired(long now) {
+			RequestContext context = this.context;
+			if (context != null && isExpired(context.getDeadline(), now)) {
+				context.cancel(RequestCancelledException.Reason.DEADLINE);
+			}
+		}
 
 		/**
-		 * Članska varijabla koja predstavlja {@link List} cookia oblikovanih
-		 * razredom {@link RCCookie} koji se šalju korisniku u odgovoru
+		 * Metoda koja provjerava je li klijent prekinuo vezu dok se njegov
+		 * zahtjev HTTP/1 obrađuje i ukoliko jest, otkazuje zahtjev iz razloga
+		 * {@link RequestCancelledException.Reason#DISCONNECT}. Nakon zaglavlja
+		 * zahtjeva iz veze više nitko ne čita, pa se veza nakratko prebacuje u
+		 * neblokirajući način rada i iz nje se pokuša pročitati oktet u
+		 * spremnik <b>probe</b>: kraj toka ili pogreška znače da je klijent
+		 * prekinuo vezu. Ukoliko se u vezu upravo piše, provjera se preskače
+		 * (pisanje samo otkriva prekinutu vezu)
+		 *
+		 * @param probe
+		 *            spremnik u koji se čita pri provjeri
 		 */
-		private List<RCCookie> outputCookies = new ArrayList<RequestContext.RCCookie>();
+		void probeDisconnect(ByteBuffer probe) {
+			if (!inFlight || cancelReason != null || !writeLock.tryLock()) {
+				return;
+			}
+
+			boolean disconnected;
+			try {
+				RequestContext context = this.context;
+				if (!inFlight || context != null && context.isCancelled()) {
+					return;
+				}
+
+				channel.configureBlocking(false);
+				try {
+					((Buffer) probe).clear();
+					disconnected = channel.read(probe) == -1;
+				} finally {
+					channel.configureBlocking(true);
+				}
+			} catch (IOException e) {
+				// veza koju je zatvorio poslužitelj ne znači da je klijent otišao
+				disconnected = channel.isOpen();
+			} finally {
+				writeLock.unlock();
+			}
+
+			if (disconnected) {
+				cancelRequest(RequestCancelledException.Reason.DISCONNECT);
+			}
+		}
 
 		/**
-		 * Članska varijabla koja predstavlja kontekst zahtjeva i odgovora na
-		 * zahtjev.
+		 * Metoda koja bezuvjetno zatvara ovu vezu i otkazuje zahtjev koji se
+		 * možda još obrađuje
 		 */
-		private RequestContext context;
+		void close() {
+			state.set(CONNECTION_CLOSED);
+			connections.remove(this);
+			try {
+				csocket.close();
+			} catch (IOException ignorable) {
+			}
+			cancelRequest(RequestCancelledException.Reason.DISCONNECT);
+		}
 
 		/**
-		 * Članska varijabla koja predstavlja parsiranu putanju koju je korisnik
-		 * zatražio, a koja je predstavljena primjerkom sučelja {@link Path}
+		 * Privatni razred koji predstavlja zahtjev HTTP/1 predan pregradi.
+		 * Zahtjev koji zaustavljena pregrada nije stigla obraditi odbija se
+		 * metodom {@link #reject()} kako bi klijent dobio odgovor, a
+		 * spremnik veze se vratio u {@link BufferPool}.
+		 *
+		 * @author Davor Češljaš
 		 */
-		private Path parsedPath;
+		private class HandOff implements Runnable {
+
+			/** Članska varijabla koja predstavlja vrstu zahtjeva */
+			private final RouteClass route;
+
+			/**
+			 * Članska varijabla koja predstavlja početak obrade (prema
+			 * {@link System#nanoTime()})
+			 */
+			private final long start;
+
+			/** Članska varijabla koja predstavlja posao koji stvara odgovor */
+			private final Bulkhead.Task response;
+
+			/**
+			 * Konstruktor koji inicijalizira primjerak ovog razreda
+			 *
+			 * @param route
+			 *            vrsta zahtjeva
+			 * @param start
+			 *            početak obrade (prema {@link System#nanoTime()})
+			 * @param response
+			 *            posao koji stvara odgovor
+			 */
+			public HandOff(RouteClass route, long start, Bulkhead.Task response) {
+				this.route = route;
+				this.start = start;
+				this.response = response;
+			}
 
-		/** Članska varijabla koja predstavlja Session ID */
-		private String SID;
+			@Override
+			public void run() {
+				completeHandedOff(route, start, response);
+			}
+
+			/**
+			 * Metoda koja zahtjev odbija u dretvi pozivatelja: klijent dobiva
+			 * odgovor {@value ServerUtil#SERVICE_UNAVAILABLE_STATUS} ukoliko je
+			 * veza još otvorena, a veza se potom zatvara
+			 */
+			public void reject() {
+				completeHandedOff(route, start, () -> {
+					throw new RejectedExecutionException();
+				});
+			}
+		}
 
 		/**
-		 * Konstruktor koji inicijalizira primjerak ovog razreda. Konstruktor
-		 * interno sprema predanu referencu na primjerak razreda {@link Socket}
-		 * <b>csocket</b>
+		 * Privatni razred koji predstavlja izlazni tok veze koji za vrijeme
+		 * svakog pisanja postavlja rok {@link ClientWorker#writeDeadline}.
+		 * Pisanje u vezu blokira samo dok klijent ne čita odgovor, pa se
+		 * ovako otkrivaju spori klijenti. Tok je ujedno i kanal pa se izravni
+		 * spremnici pišu u vezu bez kopiranja. Za vrijeme pisanja drži se
+		 * lokot {@link ClientWorker#writeLock}.
 		 *
-		 * @param csocket
-		 *            primjerak razreda {@link Socket} kojim se modelira veza
-		 *            između klijenta i poslužitelja
+		 * @author Davor Češljaš
 		 */
-		public ClientWorker(Socket csocket) {
-			this.csocket = csocket;
-		}
-
-		@Override
-		public void run() {
-			List<String> request = null;
-			try {
-				istream = new PushbackInputStream(csocket.getInputStream());
-				ostream = csocket.getOutputStream();
+		private class DeadlineOutputStream extends FilterOutputStream implements GatheringByteChannel {
+
+			/**
+			 * Konstruktor koji inicijalizira primjerak ovog razreda nad
+			 * izlaznim tokom veze <b>out</b>
+			 *
+			 * @param out
+			 *            izlazni tok veze
+			 */
+			public DeadlineOutputStream(OutputStream out) {
+				super(out);
+			}
 
-				request = readRequest();
-				if (request.isEmpty()) {
-					sendErrorResponse(ServerUtil.DEFAULT_VERISON, ServerUtil.BAD_REQUEST_STATUS,
-							ServerUtil.BAD_REQUEST_TEXT);
+			@Override
+			public void write(int b) throws IOException {
+				writeLock.lock();
+				writeDeadline = deadlineFrom(System.nanoTime(), Deadline.WRITE);
+				try {
+					out.write(b);
+				} finally {
+					writeDeadline = NO_DEADLINE;
+					writeLock.unlock();
 				}
+			}
 
-				SessionMapEntry entry = checkSession(request);
-				persParams = entry.map;
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writeLock.lock();
+				writeDeadline = deadlineFrom(System.nanoTime(), Deadline.WRITE);
+				try {
+					out.write(b, off, len);
+				} finally {
+					writeDeadline = NO_DEADLINE;
+					writeLock.unlock();
+				}
+			}
 
-				String firstLine = request.get(0);
-				String filepath = extractFirstLineParams(firstLine);
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				writeLock.lock();
+				writeDeadline = deadlineFrom(System.nanoTime(), Deadline.WRITE);
+				try {
+					return channel.write(src);
+				} finally {
+					writeDeadline = NO_DEADLINE;
+					writeLock.unlock();
+				}
+			}
 
-				internalDispatchRequest(filepath, true);
-			} catch (IOException e) {
-				System.out.println("Klijent je prekinuo konekciju.");
-				return;
-			} catch (IllegalArgumentException e) {
-				System.out.println("Klijent je poslao neispravan zahtjev, šaljem poruku o pogrešci...");
-				return;
-			} catch (Exception e) {
-				System.out.println("Ne mogu poslati odgovor");
-				return;
-			} finally {
+			@Override
+			public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+				writeLock.lock();
+				writeDeadline = deadlineFrom(System.nanoTime(), Deadline.WRITE);
 				try {
-					istream.close();
-					ostream.close();
-				} catch (IOException ignorable) {
+					return channel.write(srcs, offset, length);
+				} finally {
+					writeDeadline = NO_DEADLINE;
+					writeLock.unlock();
 				}
 			}
+
+			@Override
+			public long write(ByteBuffer[] srcs) throws IOException {
+				return write(srcs, 0, srcs.length);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return channel.isOpen();
+			}
 		}
 
 		/**
 		 * Pomoćna metoda koja čita zahtjev korisnika i iz njega gradi
 		 * {@link List} primjeraka razreda {@link String} koji predstavljaju
-		 * linije zahtjeva. Za ovo čitanje koristi se metoda
-		 * {@link ServerUtil#readRequest(PushbackInputStream)}
+		 * linije zahtjeva. Zaglavlje se iz kanala veze čita izravno u spremnik
+		 * {@link #requestBuffer}, a kraj zaglavlja i retci pronalaze se
+		 * metodama {@link ServerUtil#findHeaderEnd(ByteBuffer, int)} i
+		 * {@link ServerUtil#parseRequestLines(ByteBuffer, int)}. Zaglavlje
+		 * veće od {@value ServerUtil#MAX_HEADER_SIZE} okteta smatra se
+		 * neispravnim zahtjevom
 		 *
 		 * @return {@link List} primjeraka razreda {@link String} koji
 		 *         predstavljaju linije zahtjeva
@@ -500,102 +2595,42 @@ public class SmartHttpServer {
 		 *             Ukoliko nije moguće pročitati zahtjev od klijenta
 		 */
 		private List<String> readRequest() throws IOException {
-			// zahtjevi nemaju specijalnih znakova tako da se mogu
-			// čitati sa bilo kojim charsetom, pa tako i sa defaultnim
-			String string = new String(ServerUtil.readRequest(istream));
-			return new ArrayList<>(Arrays.asList(string.split("[\r\n]+")));
+			int end;
+			while ((end = ServerUtil.findHeaderEnd(requestBuffer, requestBuffer.position())) == -1) {
+				if (!requestBuffer.hasRemaining()) {
+					sendErrorResponse(ServerUtil.DEFAULT_VERISON, ServerUtil.BAD_REQUEST_STATUS,
+							ServerUtil.BAD_REQUEST_TEXT);
+				}
+				if (channel.read(requestBuffer) == -1) {
+					throw new IOException("Klijent je zatvorio vezu prije kraja zaglavlja");
+				}
+			}
+
+			requestEnd = end;
+			return ServerUtil.parseRequestLines(requestBuffer, end);
 		}
 
 		/**
-		 * Pomoćna metoda koja provjerava unutar predanog parametra
-		 * <b>request</b> postoji li cookie sa ključem {@value #SID_COOKIE_KEY}.
-		 * Te ukoliko postoji i ukoliko je primjerak u {@link Map}
-		 * {@link SmartHttpServer#sessions} važeći dohvaća primjerak razreda
-		 * {@link SessionMapEntry}. Ukoliko to nije točno ili ukoliko uopće
-		 * takav cookie ne postoji stvara se novi SID i novi primjerak razreda
-		 * {@link SessionMapEntry} te se on vraća
+		 * Pomoćna metoda koja iz redaka zahtjeva <b>request</b> čita redak
+		 * "Host: " i redak s cookijima (koji sprema u {@link #cookieLine})
 		 *
 		 * @param request
-		 *            {@link List} svih linija predstavljenih primjercima
-		 *            razreda {@link String} koje je korisnik poslao
-		 * @return primjerak razreda {@link SessionMapEntry}, a ovisno o ishodu
-		 *         gore opisanog scenarija
+		 *            {@link List} linija zahtjeva
+		 * @return host na koji je klijent poslao zahtjev ili
+		 *         {@link SmartHttpServer#address}
 		 */
-		private SessionMapEntry checkSession(List<String> request) {
+		private String readSessionHeaders(List<String> request) {
 			String host = null;
-			List<RCCookie> cookies = null;
 
 			for (String line : request) {
 				if (line.startsWith("Host:")) {
 					host = ServerUtil.parseHost(line);
-				} else if (line.startsWith("Cookie:")) {
-					cookies = ServerUtil.parseCookies(line);
-				}
-			}
-
-			host = host == null ? address : host;
-
-			String sidCandidate = findSIDCandidate(cookies);
-
-			return findSessionMapEntry(sidCandidate, host);
-		}
-
-		/**
-		 * Pomoćna metoda koja u unutar {@link List} svih parsiranih cookija
-		 * koji su primjerci razreda {@link RCCookie} <b>cookies</b> pokušava
-		 * pronaći onaj sa ključem {@value #SID_COOKIE_KEY} te vraća njegovu
-		 * vrijednost ukoliko je nađe ili <code>null</code> ukoliko takvog
-		 * cookia nema
-		 *
-		 * @param cookies
-		 *            {@link List} svih parsiranih cookija koji su primjerci
-		 *            razreda {@link RCCookie}
-		 * @return pronađenu vrijednost cookia sa ključem
-		 *         {@value #SID_COOKIE_KEY} ili <code>null</code> ukoliko cookie
-		 *         pod tim ključem ne postoji
-		 */
-		private String findSIDCandidate(List<RCCookie> cookies) {
-			if (cookies == null) {
-				return null;
-			}
-
-			String sidCandidate = null;
-
-			for (RCCookie cookie : cookies) {
-				if (cookie.getName().equals(SID_COOKIE_KEY)) {
-					sidCandidate = cookie.getValue();
+				} else if (line.startsWith(CookieCodec.COOKIE_HEADER)) {
+					cookieLine = line;
 				}
 			}
 
-			return sidCandidate;
-		}
-
-		/**
-		 * Pomoćna metoda koja iz predanih parametara pronalazi već postojeći
-		 * primjerak razreda {@link SessionMapEntry} ili stvara novi.
-		 *
-		 * @param sidCandidate
-		 *            kandidat za session ID parsiran iz cookia
-		 * @param host
-		 *            host na koji je klijent poslao zahtjev ili
-		 *            {@link SmartHttpServer#address}
-		 * @return primjerak razreda {@link SessionMapEntry} (novi ili već
-		 *         postojeći)
-		 */
-		private SessionMapEntry findSessionMapEntry(String sidCandidate, String host) {
-			SessionMapEntry entry = null;
-			if (sidCandidate == null || (entry = sessions.get(sidCandidate)) == null) {
-				return generateSessionMapEntry(host);
-			}
-
-			if (entry.validUntil >= Calendar.getInstance().getTimeInMillis()) {
-				SID = sidCandidate;
-				entry.validUntil = getSessionTimeoutInMilis();
-				return entry;
-			}
-
-			sessions.remove(SID);
-			return generateSessionMapEntry(host);
+			return host == null ? address : host;
 		}
 
 		/**
@@ -608,49 +2643,16 @@ public class SmartHttpServer {
 		 * @return novi primjerak razreda {@link SessionMapEntry}
 		 */
 		private SessionMapEntry generateSessionMapEntry(String host) {
-			SID = generateSID();
+			SessionMapEntry entry = createSession();
+			SID = entry.sid;
 
 			RCCookie sidCookie = new RCCookie(SID_COOKIE_KEY, SID, null, host, "/");
 			sidCookie.setHttpOnly(true);
 			outputCookies.add(sidCookie);
 
-			SessionMapEntry entry = new SessionMapEntry(SID, getSessionTimeoutInMilis());
-			sessions.put(SID, entry);
-
 			return entry;
 		}
 
-		/**
-		 * Pomoćna metoda koja generira novi Session ID
-		 *
-		 * @return novi Session ID
-		 */
-		private String generateSID() {
-			while (true) {
-				StringBuilder sb = new StringBuilder();
-
-				for (int i = 0; i < SID_SIZE; i++) {
-					int rand = SID_FIRST + sessionRandom.nextInt(SID_RANGE);
-					sb.append((char) rand);
-				}
-
-				String newSID = sb.toString();
-
-				if (!sessions.containsKey(newSID)) {
-					return newSID;
-				}
-			}
-		}
-
-		/**
-		 * Metoda koja vraća vrijeme trajanja novog Session ID-a
-		 *
-		 * @return vrijeme trajanja novog Session ID-a
-		 */
-		private long getSessionTimeoutInMilis() {
-			return Calendar.getInstance().getTimeInMillis() + sessionTimeout * 1000;
-		}
-
 		/**
 		 * Pomoćna metoda koja ekstrahira sve parametre prve linije zahtjeva
 		 * (HTTP metoda, HTTP verzija i putanja)
@@ -694,17 +2696,13 @@ public class SmartHttpServer {
 		 *             jer se ne može pisati u izlazni tok podataka
 		 */
 		private String parsePath(String requestedPath) throws IOException {
-			String[] splittedPath = requestedPath.split("\\?");
-			if (splittedPath.length < 1 || splittedPath.length > 2) {
-				sendErrorResponse(version, ServerUtil.BAD_REQUEST_STATUS, ServerUtil.BAD_REQUEST_TEXT);
-			}
-
-			String pathString = splittedPath[0].trim();
+			int queryStart = requestedPath.indexOf('?');
+			String pathString = (queryStart == -1 ? requestedPath : requestedPath.substring(0, queryStart)).trim();
 
 			checkRequestPath(pathString);
 
-			if (splittedPath.length == 2) {
-				parseParameters(splittedPath[1]);
+			if (queryStart != -1) {
+				parseParameters(requestedPath, queryStart + 1);
 			}
 
 			return pathString;
@@ -739,28 +2737,27 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Pomoćna metoda koja iz predanog primjerka razreda {@link String}
-		 * <b>parameters</b> parsira parametre koje je klijent poslao u
-		 * zahtjevu. Ukoliko parametar nema ključ i vrijednost, šalje se poruka
-		 * o pogrešci status-a {@link ServerUtil#BAD_REQUEST_STATUS} i baca se
-		 * iznimka
+		 * Pomoćna metoda koja parsira parametre koje je klijent poslao u nizu
+		 * upita, a koji u putanji <b>requestedPath</b> započinje indeksom
+		 * <b>queryStart</b>. Parametri se dekodiraju tek kada ih netko zatraži
+		 * (vidi {@link QueryParameters}). Ukoliko parametar nema ključ ili
+		 * sadrži neispravan niz "%xx", šalje se poruka o pogrešci status-a
+		 * {@link ServerUtil#BAD_REQUEST_STATUS} i baca se iznimka
 		 *
-		 * @param parameters
-		 *            primjerak razreda {@link String} iz kojeg se vade
-		 *            paramteri
+		 * @param requestedPath
+		 *            zatražena putanja
+		 * @param queryStart
+		 *            indeks prvog znaka niza upita
 		 * @throws IOException
 		 *             ukoliko se dogodi pogreška, a koja se ne može poslati,
 		 *             jer se ne može pisati u izlazni tok podataka
 		 */
-		private void parseParameters(String parameters) throws IOException {
-			for (String param : parameters.split("&")) {
-				String[] keyValue = param.split("=");
-				if (keyValue.length != 2) {
-					sendErrorResponse(version, ServerUtil.BAD_REQUEST_STATUS, ServerUtil.BAD_REQUEST_TEXT);
-				}
-
-				this.params.put(keyValue[0], keyValue[1]);
+		private void parseParameters(String requestedPath, int queryStart) throws IOException {
+			QueryParameters parsed = QueryParameters.parse(requestedPath, queryStart, requestedPath.length());
+			if (parsed == null) {
+				sendErrorResponse(version, ServerUtil.BAD_REQUEST_STATUS, ServerUtil.BAD_REQUEST_TEXT);
 			}
+			params = parsed;
 		}
 
 		/**
@@ -779,6 +2776,7 @@ public class SmartHttpServer {
 		 *             jer se ne može pisati u izlazni tok podataka
 		 */
 		private void sendErrorResponse(String version, int statusCode, String statusText) throws IOException {
+			errorStatus = statusCode;
 			ServerUtil.sendErrorResponse(version, statusCode, statusText, ostream);
 			throw new IllegalArgumentException();
 		}
@@ -806,10 +2804,20 @@ public class SmartHttpServer {
 		 */
 		public void internalDispatchRequest(String urlPath, boolean directCall) throws Exception {
 			if (context == null) {
-				context = new RequestContext(tempParams, this, ostream, params, persParams, outputCookies);
+				context = new RequestContext(tempParams, this, ostream, params, persParams, outputCookies, cookieLine);
+				// tok HTTP/2 ima vlastite okvire, a klijent HTTP/1.0 ne razumije dijelove
+				context.setChunkedAllowed(csocket != null && ServerUtil.DEFAULT_VERISON.equals(version));
+				RequestCancelledException.Reason reason = cancelReason;
+				if (reason != null) {
+					context.cancel(reason);
+				}
 			}
 
 			createResponse(urlPath, directCall);
+			if (directCall && !handedOff && !context.isCancelled()) {
+				// odgovor nepoznate duljine završava tek nakon svih internih poziva
+				context.finish();
+			}
 		}
 
 		/**
@@ -834,14 +2842,198 @@ public class SmartHttpServer {
 			}
 
 			String extension = extractExtension(urlPath);
+			long start = System.nanoTime();
+			RouteClass route;
 
 			if (urlPath.startsWith(WORKERS_PATH)) {
-				createWorkerResponse(urlPath);
+				route = RouteClass.EXT;
 			} else if (workersMap.containsKey(urlPath)) {
+				route = RouteClass.WORKER;
+			} else if (SMART_SCRIPT_EXTENSION.equals(extension)) {
+				route = RouteClass.SCRIPT;
+			} else {
+				route = RouteClass.STATIC;
+			}
+
+			if (!directCall) {
+				// interni pozivi izvode se u pregradi i s rokom vanjskog zahtjeva
+				createResponse(route, urlPath, extension);
+				return;
+			}
+
+			context.setDeadline(routeDeadline(route, start));
+			Bulkhead bulkhead = bulkheads.get(route);
+			Bulkhead.Task response = () -> createResponse(route, urlPath, extension);
+			if (bulkhead != null && csocket != null) {
+				// dretva veze ne čeka pregradu, pa zahtjev u redu pregrade ne zauzima dretvu veze
+				Bulkhead.Task direct = response;
+				handedOff = true;
+				try {
+					bulkhead.submit(new HandOff(route, start, direct));
+					return;
+				} catch (RejectedExecutionException e) {
+					handedOff = false;
+					response = () -> {
+						throw e;
+					};
+				}
+			} else if (bulkhead != null) {
+				Bulkhead.Task direct = response;
+				response = () -> bulkhead.run(direct);
+			}
+
+			respond(route, start, response);
+		}
+
+		/**
+		 * Pomoćna metoda koja dovršava zahtjev predan pregradi u dretvi
+		 * pregrade: stvara i završava odgovor, predaje vezu toku događaja
+		 * ukoliko je otvoren te na kraju zatvara vezu (vidi
+		 * {@link #releaseConnection()})
+		 *
+		 * @param route
+		 *            vrsta zahtjeva
+		 * @param start
+		 *            početak obrade (prema {@link System#nanoTime()})
+		 * @param response
+		 *            posao koji stvara odgovor
+		 */
+		private void completeHandedOff(RouteClass route, long start, Bulkhead.Task response) {
+			try {
+				respond(route, start, response);
+				if (!context.isCancelled()) {
+					context.finish();
+				}
+				inFlight = false;
+				detached = detachEventStream(this::close);
+			} catch (Exception e) {
+				reportFailure(e);
+			} finally {
+				releaseConnection();
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja poslom <b>response</b> stvara odgovor na zahtjev
+		 * vrste <b>route</b> te u metrikama bilježi trajanje i statusni kod
+		 * odgovora. Odbijeni zahtjev dobiva odgovor
+		 * {@value ServerUtil#SERVICE_UNAVAILABLE_STATUS}, a otkazani se obrađuje
+		 * metodom {@link #handleCancellation(RequestCancelledException)}
+		 *
+		 * @param route
+		 *            vrsta zahtjeva
+		 * @param start
+		 *            početak obrade (prema {@link System#nanoTime()})
+		 * @param response
+		 *            posao koji stvara odgovor
+		 * @throws Exception
+		 *             iznimka koja nastaje u slučaju pogreške, a ovisno o tipu
+		 *             pogreške
+		 */
+		private void respond(RouteClass route, long start, Bulkhead.Task response) throws Exception {
+			boolean completed = false;
+			errorStatus = 0;
+			try {
+				try {
+					response.run();
+				} catch (RejectedExecutionException e) {
+					sendErrorResponse(version, ServerUtil.SERVICE_UNAVAILABLE_STATUS,
+							ServerUtil.SERVICE_UNAVAILABLE_TEXT);
+				} catch (RequestCancelledException e) {
+					handleCancellation(e);
+				}
+				completed = true;
+			} finally {
+				// i zahtjev čija je obrada bacila iznimku bilježi se u metrikama
+				metrics.recordRequest(route, responseStatus(completed), System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja obrađuje otkazani zahtjev: bilježi razlog
+		 * otkazivanja i, ukoliko je istekao rok, a odgovor još nije započeo,
+		 * klijentu šalje odgovor {@value ServerUtil#SERVICE_UNAVAILABLE_STATUS}
+		 *
+		 * @param e
+		 *            iznimka kojom je zahtjev otkazan
+		 * @throws IOException
+		 *             ukoliko se u vezu ne može pisati
+		 */
+		private void handleCancellation(RequestCancelledException e) throws IOException {
+			cancelled[e.getReason().ordinal()].increment();
+			if (e.getReason() != RequestCancelledException.Reason.DEADLINE) {
+				errorStatus = ServerUtil.CLIENT_CLOSED_REQUEST_STATUS;
+			} else if (!context.isHeaderGenerated()) {
+				// klijentu koji je prekinuo vezu, ili već prima odgovor, nema smisla slati pogrešku
+				errorStatus = ServerUtil.SERVICE_UNAVAILABLE_STATUS;
+				ServerUtil.sendErrorResponse(version, ServerUtil.SERVICE_UNAVAILABLE_STATUS,
+						ServerUtil.SERVICE_UNAVAILABLE_TEXT, ostream);
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja određuje statusni kod odgovora koji se bilježi u
+		 * metrikama
+		 *
+		 * @param completed
+		 *            zastavica koja indicira je li obrada završila bez iznimke
+		 * @return statusni kod poslane poruke o pogrešci, statusni kod
+		 *         konteksta ukoliko je obrada uspjela ili
+		 *         {@value ServerUtil#INTERNAL_SERVER_ERROR_STATUS} ukoliko nije
+		 */
+		private int responseStatus(boolean completed) {
+			if (errorStatus != 0) {
+				return errorStatus;
+			}
+			return completed ? context.getStatusCode() : ServerUtil.INTERNAL_SERVER_ERROR_STATUS;
+		}
+
+		/**
+		 * Pomoćna metoda koja računa rok izvođenja zahtjeva vrste <b>route</b>
+		 * koji je započeo u trenutku <b>now</b>. Rok je raniji od roka čitavog
+		 * zahtjeva {@link #requestDeadline} i najduljeg vremena izvođenja vrste
+		 * (vidi {@link SmartHttpServer#SERVER_ROUTE_TIMEOUT})
+		 *
+		 * @param route
+		 *            vrsta zahtjeva
+		 * @param now
+		 *            početak izvođenja (prema {@link System#nanoTime()})
+		 * @return rok izvođenja ili {@link RequestContext#NO_DEADLINE}
+		 */
+		private long routeDeadline(RouteClass route, long now) {
+			Long timeout = routeTimeouts.get(route);
+			long deadline = timeout == null || timeout <= 0 ? NO_DEADLINE : now + timeout;
+			if (requestDeadline != NO_DEADLINE && (deadline == NO_DEADLINE || requestDeadline - deadline < 0)) {
+				deadline = requestDeadline;
+			}
+			return deadline;
+		}
+
+		/**
+		 * Pomoćna metoda koja stvara odgovor na zahtjev vrste <b>route</b>
+		 *
+		 * @param route
+		 *            vrsta zahtjeva
+		 * @param urlPath
+		 *            putanja do resursa koju je klijent zatražio
+		 * @param extension
+		 *            ekstenzija zatraženog resursa ili <code>null</code>
+		 * @throws Exception
+		 *             iznimka koja nastaje u slučaju pogreške, a ovisno o tipu
+		 *             pogreške
+		 */
+		private void createResponse(RouteClass route, String urlPath, String extension) throws Exception {
+			switch (route) {
+			case EXT:
+				createWorkerResponse(urlPath);
+				break;
+			case WORKER:
 				workersMap.get(urlPath).processRequest(context);
-			} else if (extension.equals(SMART_SCRIPT_EXTENSION)) {
+				break;
+			case SCRIPT:
 				createScriptResponse(urlPath);
-			} else {
+				break;
+			default:
 				createNormalResponse(extension);
 			}
 		}
@@ -863,7 +3055,10 @@ public class SmartHttpServer {
 			try {
 				referenceToClass = this.getClass().getClassLoader().loadClass(WORKERS_PACKAGE + workerName);
 				((IWebWorker) referenceToClass.newInstance()).processRequest(context);
+			} catch (RequestCancelledException e) {
+				throw e;
 			} catch (Exception e) {
+				errorStatus = ServerUtil.BAD_REQUEST_STATUS;
 				ServerUtil.sendBadRequestResponse(version, ostream);
 			}
 		}
@@ -887,10 +3082,15 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Pomoćna metoda koja stvara primjerak razreda
-		 * {@link SmartScriptEngine}, njemu predaje putanju do tražene skripte
-		 * koju treba izvršiti, a koju je korisnik zatražio. Metoda potom
-		 * generirani rezultat šalje klijentu kao odgovor
+		 * Pomoćna metoda koja izvršava skriptu koju je korisnik zatražio, a
+		 * generirani rezultat šalje klijentu kao odgovor. Skripta se parsira
+		 * samo pri prvom zahtjevu i nakon izmjene datoteke (kada se konstantni
+		 * dijelovi skripte izračunavaju primjerkom razreda
+		 * {@link ScriptOptimizer}), a izvodi se
+		 * primjerkom razreda {@link TieredScript} (isprva nepromjenjivim
+		 * predloškom {@link CompiledTemplate} koji dijele svi zahtjevi, a nakon
+		 * {@link SmartHttpServer#scriptCompileThreshold} izvođenja prevedena u
+		 * bajtni kod)
 		 *
 		 * @param filePath
 		 *            putanja do skripte koju je korisnik zatražio
@@ -903,10 +3103,24 @@ public class SmartHttpServer {
 				parsedPath = Paths.get(documentRoot.toString(), filePath);
 			}
 
-			String docBody = ServerUtil.readFromDisk(parsedPath, null);
-			SmartScriptParser parser = new SmartScriptParser(docBody);
+			long lastModified = Files.getLastModifiedTime(parsedPath).toMillis();
+			ScriptMapEntry entry = scripts.get(parsedPath);
+			if (entry == null || entry.getLastModified() != lastModified) {
+				scriptCacheMisses.increment();
+				String docBody = ServerUtil.readFromDisk(parsedPath, null);
+				SmartScriptParser parser = new SmartScriptParser(docBody);
+
+				DocumentNode document = scriptOptimizer.optimize(parser.getDocumentNode());
+				CompiledTemplate template = new CompiledTemplate(document, scriptStreamThreshold);
+				entry = new ScriptMapEntry(lastModified,
+						new TieredScript(template, scriptCompileThreshold, scriptCompiler, scriptCompilerExecutor,
+								scriptCompileFailures));
+				scripts.put(parsedPath, entry);
+			} else {
+				scriptCacheHits.increment();
+			}
 
-			new SmartScriptEngine(parser.getDocumentNode(), context).execute();
+			entry.getScript().execute(context);
 		}
 
 		/**
@@ -926,7 +3140,7 @@ public class SmartHttpServer {
 		private void createNormalResponse(String extension) throws Exception {
 			context.setMimeType(findMimeType(extension));
 
-			context.write(Files.readAllBytes(parsedPath));
+			context.write(parsedPath);
 		}
 
 		/**
@@ -954,6 +3168,55 @@ public class SmartHttpServer {
 		}
 	}
 
+	/**
+	 * Paketski statički razred koji predstavlja jednu isparsiranu skriptu
+	 * zajedno s vremenom izmjene datoteke iz koje je skripta pročitana
+	 *
+	 * @author Davor Češljaš
+	 */
+	static class ScriptMapEntry {
+
+		/**
+		 * Članska varijabla koja predstavlja vrijeme izmjene datoteke skripte
+		 * (u milisekundama)
+		 */
+		private final long lastModified;
+
+		/** Članska varijabla koja predstavlja isparsiranu skriptu */
+		private final TieredScript script;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param lastModified
+		 *            vrijeme izmjene datoteke skripte (u milisekundama)
+		 * @param script
+		 *            isparsirana skripta
+		 */
+		public ScriptMapEntry(long lastModified, TieredScript script) {
+			this.lastModified = lastModified;
+			this.script = script;
+		}
+
+		/**
+		 * Metoda koja dohvaća vrijeme izmjene datoteke skripte
+		 *
+		 * @return vrijeme izmjene datoteke skripte (u milisekundama)
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Metoda koja dohvaća isparsiranu skriptu
+		 *
+		 * @return isparsiranu skriptu
+		 */
+		public TieredScript getScript() {
+			return script;
+		}
+	}
+
 	/**
 	 * Paketski statički razred koji predstavlja jednu cookie sessiju. Razred
 	 * interno sadrži Session ID, do kada vrijedi i mapu zapamćenih parametara
@@ -995,6 +3258,15 @@ public class SmartHttpServer {
 			this.validUntil = validUntil;
 		}
 
+		/**
+		 * Metoda koja dohvaća Session ID ove sesije
+		 *
+		 * @return Session ID ove sesije
+		 */
+		public String getSid() {
+			return sid;
+		}
+
 		/**
 		 * Metoda koja dohvaća vrijeme u milisekundama do kada traje primjerak
 		 * ovog razreda
@@ -1045,7 +3317,14 @@ public class SmartHttpServer {
 		}
 
 		try {
-			new SmartHttpServer(args[0]).start();
+			SmartHttpServer server = new SmartHttpServer(args[0]);
+			server.start();
+
+			// pri gašenju procesa (npr. SIGTERM) dovrši započete zahtjeve
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				System.out.println("Zaustavljam poslužitelja...");
+				server.drain(server.drainTimeout, TimeUnit.SECONDS).join();
+			}));
 		} catch (IOException e) {
 			System.out.printf("Konfiguracijska datoteka '%s' ne može se učitati", args[0]);
 			System.out.println("Zatvaram poslužitelja...");
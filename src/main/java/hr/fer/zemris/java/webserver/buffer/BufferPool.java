@@ -0,0 +1,394 @@
+package hr.fer.zemris.java.webserver.buffer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Razred koji predstavlja bazen izravnih (engl. <i>direct</i>) spremnika
+ * {@link ByteBuffer} koje dijeli čitav poslužitelj. Spremnici su razvrstani u
+ * razrede veličina ({@value #MIN_CLASS_SIZE}B, 16KiB, 64KiB i 256KiB), a
+ * zahtjev za spremnikom poslužuje se najmanjim razredom u koji stane tražena
+ * veličina. Svaka dretva ima vlastitu malu priručnu memoriju spremnika pa se u
+ * ustaljenom radu spremnici uzimaju i vraćaju bez sinkronizacije. Tek kada je
+ * ona prazna (ili puna), koristi se zajednički red spremnika pojedinog
+ * razreda.
+ * <p>
+ * Spremnici veći od najvećeg razreda ne dolaze iz bazena i ne vraćaju se u
+ * njega. Takvi se spremnici stvaraju na gomili (engl. <i>heap</i>), pa velik
+ * ulaz ne može neograničeno zauzimati izravnu memoriju, a njihov broj i
+ * veličina prate se metodama {@link #getUnpooled()} i
+ * {@link #getUnpooledBytes()}. U načinu otkrivanja curenja (vidi {@link #setLeakDetection(boolean)})
+ * bazen pamti mjesto na kojem je uzet svaki spremnik koji još nije vraćen te
+ * otkriva višestruko vraćanje istog spremnika.
+ * </p>
+ *
+ * @see ByteBufferOutputStream
+ *
+ * @author Davor Češljaš
+ */
+public class BufferPool {
+
+	/** Konstanta koja predstavlja veličinu najmanjeg razreda spremnika */
+	public static final int MIN_CLASS_SIZE = 4096;
+
+	/** Konstanta koja predstavlja broj razreda spremnika */
+	private static final int CLASS_COUNT = 4;
+
+	/**
+	 * Konstanta koja predstavlja broj bitova za koji je svaki razred veći od
+	 * prethodnog (razredi rastu četverostruko)
+	 */
+	private static final int CLASS_SHIFT = 2;
+
+	/** Konstanta koja predstavlja veličinu najvećeg razreda spremnika */
+	public static final int MAX_CLASS_SIZE = MIN_CLASS_SIZE << (CLASS_SHIFT * (CLASS_COUNT - 1));
+
+	/**
+	 * Konstanta koja predstavlja najveći broj okteta koji se u zajedničkom redu
+	 * čuva za pojedini razred
+	 */
+	private static final int MAX_POOLED_BYTES_PER_CLASS = 8 << 20;
+
+	/**
+	 * Konstanta koja predstavlja broj spremnika pojedinog razreda u priručnoj
+	 * memoriji jedne dretve
+	 */
+	private static final int LOCAL_CACHE_SIZE = 4;
+
+	/** Konstanta koja predstavlja jedini primjerak ovog razreda */
+	private static final BufferPool INSTANCE = new BufferPool();
+
+	/** Članska varijabla koja predstavlja zajedničke redove spremnika */
+	private final List<Queue<ByteBuffer>> shared = new ArrayList<>(CLASS_COUNT);
+
+	/** Članska varijabla koja predstavlja broj spremnika u zajedničkim redovima */
+	private final AtomicInteger[] sharedCounts = new AtomicInteger[CLASS_COUNT];
+
+	/** Članska varijabla koja predstavlja priručne memorije dretvi */
+	private final ThreadLocal<LocalCache> localCaches = ThreadLocal.withInitial(LocalCache::new);
+
+	/** Članska varijabla koja predstavlja broj spremnika uzetih iz bazena */
+	private final LongAdder hits = new LongAdder();
+
+	/** Članska varijabla koja predstavlja broj novo stvorenih spremnika */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Članska varijabla koja predstavlja broj spremnika većih od najvećeg
+	 * razreda
+	 */
+	private final LongAdder unpooled = new LongAdder();
+
+	/**
+	 * Članska varijabla koja predstavlja ukupan broj okteta spremnika većih od
+	 * najvećeg razreda
+	 */
+	private final LongAdder unpooledBytes = new LongAdder();
+
+	/** Članska varijabla koja predstavlja broj uzetih, a ne vraćenih spremnika */
+	private final LongAdder outstanding = new LongAdder();
+
+	/**
+	 * Članska varijabla koja predstavlja mjesta na kojima su uzeti spremnici
+	 * koji još nisu vraćeni ili <code>null</code> ukoliko otkrivanje curenja
+	 * nije uključeno
+	 */
+	private volatile Map<ByteBuffer, Throwable> leakTracker;
+
+	/**
+	 * Privatni konstruktor koji inicijalizira jedini primjerak ovog razreda
+	 */
+	private BufferPool() {
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			shared.add(new ConcurrentLinkedQueue<>());
+			sharedCounts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća jedini primjerak ovog razreda
+	 *
+	 * @return jedini primjerak ovog razreda
+	 */
+	public static BufferPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Metoda koja uključuje ili isključuje otkrivanje curenja spremnika.
+	 * Otkrivanje je skupo (za svaki spremnik pamti se stog poziva) pa je
+	 * namijenjeno samo traženju pogrešaka
+	 *
+	 * @param enabled
+	 *            <code>true</code> ukoliko se otkrivanje uključuje
+	 */
+	public void setLeakDetection(boolean enabled) {
+		leakTracker = enabled ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+	}
+
+	/**
+	 * Metoda koja dohvaća izravni spremnik kapaciteta barem <b>minCapacity</b>
+	 * okteta. Spremnik veći od {@link #MAX_CLASS_SIZE} okteta nije izravni,
+	 * već se stvara na gomili. Dohvaćeni spremnik je očišćen (pozicija 0,
+	 * granica jednaka kapacitetu) i mora se vratiti metodom
+	 * {@link #release(ByteBuffer)}
+	 *
+	 * @param minCapacity
+	 *            najmanji traženi kapacitet
+	 * @return spremnik kapaciteta barem <b>minCapacity</b>
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int sizeClass = sizeClass(minCapacity);
+		ByteBuffer buffer;
+		if (sizeClass == -1) {
+			buffer = ByteBuffer.allocate(minCapacity);
+			unpooled.increment();
+			unpooledBytes.add(minCapacity);
+		} else {
+			buffer = localCaches.get().poll(sizeClass);
+			if (buffer == null && (buffer = shared.get(sizeClass).poll()) != null) {
+				sharedCounts[sizeClass].decrementAndGet();
+			}
+
+			if (buffer == null) {
+				buffer = ByteBuffer.allocateDirect(MIN_CLASS_SIZE << (CLASS_SHIFT * sizeClass));
+				misses.increment();
+			} else {
+				hits.increment();
+			}
+		}
+
+		outstanding.increment();
+		Map<ByteBuffer, Throwable> tracker = leakTracker;
+		if (tracker != null) {
+			tracker.put(buffer, new Throwable("Spremnik od " + buffer.capacity() + "B uzet je ovdje"));
+		}
+		return buffer;
+	}
+
+	/**
+	 * Metoda koja vraća spremnik <b>buffer</b> u bazen. Nakon poziva ove
+	 * metode spremnik se više ne smije koristiti
+	 *
+	 * @param buffer
+	 *            spremnik koji se vraća ili <code>null</code>
+	 * @throws IllegalStateException
+	 *             ukoliko je uključeno otkrivanje curenja, a spremnik nije
+	 *             uzet iz bazena ili je već vraćen
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+
+		Map<ByteBuffer, Throwable> tracker = leakTracker;
+		if (tracker != null && tracker.remove(buffer) == null) {
+			throw new IllegalStateException("Spremnik nije uzet iz bazena ili je već vraćen");
+		}
+		outstanding.decrement();
+
+		int sizeClass = sizeClass(buffer.capacity());
+		if (sizeClass == -1 || !buffer.isDirect()
+				|| buffer.capacity() != MIN_CLASS_SIZE << (CLASS_SHIFT * sizeClass)) {
+			return;
+		}
+
+		((Buffer) buffer).clear();
+		if (localCaches.get().offer(sizeClass, buffer)) {
+			return;
+		}
+
+		int maxCount = MAX_POOLED_BYTES_PER_CLASS / buffer.capacity();
+		if (sharedCounts[sizeClass].incrementAndGet() <= maxCount) {
+			shared.get(sizeClass).offer(buffer);
+		} else {
+			sharedCounts[sizeClass].decrementAndGet();
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća spremnik većeg kapaciteta u koji su prepisani svi
+	 * okteti (od početka do pozicije) spremnika <b>buffer</b>. Spremnik
+	 * <b>buffer</b> vraća se u bazen
+	 *
+	 * @param buffer
+	 *            spremnik koji se povećava
+	 * @param minCapacity
+	 *            najmanji traženi kapacitet novog spremnika
+	 * @return novi spremnik s pozicijom iza prepisanih okteta
+	 */
+	public ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+		ByteBuffer bigger = acquire(Math.max(minCapacity, buffer.capacity() << 1));
+		((Buffer) buffer).flip();
+		bigger.put(buffer);
+		release(buffer);
+		return bigger;
+	}
+
+	/**
+	 * Metoda koja ispisuje mjesta na kojima su uzeti svi spremnici koji još
+	 * nisu vraćeni. Metoda ima smisla samo ukoliko je uključeno otkrivanje
+	 * curenja
+	 *
+	 * @return broj spremnika koji nisu vraćeni
+	 */
+	public int reportLeaks() {
+		Map<ByteBuffer, Throwable> tracker = leakTracker;
+		if (tracker == null) {
+			return 0;
+		}
+
+		List<Throwable> leaks;
+		synchronized (tracker) {
+			leaks = new ArrayList<>(tracker.values());
+		}
+		for (Throwable leak : leaks) {
+			System.out.println("Spremnik nije vraćen u bazen:");
+			leak.printStackTrace(System.out);
+		}
+		return leaks.size();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj spremnika koji su uzeti iz bazena
+	 *
+	 * @return broj spremnika koji su uzeti iz bazena
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj spremnika koje je bazen morao stvoriti
+	 *
+	 * @return broj spremnika koje je bazen morao stvoriti
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj spremnika većih od najvećeg razreda, a koji su
+	 * stvoreni mimo bazena
+	 *
+	 * @return broj spremnika stvorenih mimo bazena
+	 */
+	public long getUnpooled() {
+		return unpooled.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća ukupan broj okteta spremnika stvorenih mimo bazena
+	 *
+	 * @return ukupan broj okteta spremnika stvorenih mimo bazena
+	 */
+	public long getUnpooledBytes() {
+		return unpooledBytes.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj spremnika koji su uzeti, a nisu vraćeni
+	 *
+	 * @return broj spremnika koji su uzeti, a nisu vraćeni
+	 */
+	public long getOutstanding() {
+		return outstanding.sum();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj okteta u zajedničkim redovima spremnika (bez
+	 * priručnih memorija dretvi)
+	 *
+	 * @return broj okteta u zajedničkim redovima spremnika
+	 */
+	public long getPooledBytes() {
+		long bytes = 0;
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			bytes += (long) sharedCounts[i].get() * (MIN_CLASS_SIZE << (CLASS_SHIFT * i));
+		}
+		return bytes;
+	}
+
+	/**
+	 * Pomoćna metoda koja računa razred najmanjih spremnika kapaciteta barem
+	 * <b>capacity</b> okteta
+	 *
+	 * @param capacity
+	 *            traženi kapacitet
+	 * @return indeks razreda ili -1 ukoliko je kapacitet veći od
+	 *         {@link #MAX_CLASS_SIZE}
+	 */
+	private static int sizeClass(int capacity) {
+		if (capacity > MAX_CLASS_SIZE) {
+			return -1;
+		}
+
+		int sizeClass = 0;
+		for (int size = MIN_CLASS_SIZE; size < capacity; size <<= CLASS_SHIFT) {
+			sizeClass++;
+		}
+		return sizeClass;
+	}
+
+	/**
+	 * Privatni statički razred koji predstavlja priručnu memoriju spremnika
+	 * jedne dretve. Za svaki razred pamti se najviše
+	 * {@value BufferPool#LOCAL_CACHE_SIZE} spremnika
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class LocalCache {
+
+		/** Članska varijabla koja predstavlja spremnike po razredima */
+		private final ByteBuffer[][] buffers = new ByteBuffer[CLASS_COUNT][LOCAL_CACHE_SIZE];
+
+		/** Članska varijabla koja predstavlja broj spremnika po razredima */
+		private final int[] sizes = new int[CLASS_COUNT];
+
+		/**
+		 * Metoda koja uzima spremnik razreda <b>sizeClass</b>
+		 *
+		 * @param sizeClass
+		 *            razred spremnika
+		 * @return spremnik ili <code>null</code> ukoliko takvog nema
+		 */
+		ByteBuffer poll(int sizeClass) {
+			if (sizes[sizeClass] == 0) {
+				return null;
+			}
+
+			int index = --sizes[sizeClass];
+			ByteBuffer buffer = buffers[sizeClass][index];
+			buffers[sizeClass][index] = null;
+			return buffer;
+		}
+
+		/**
+		 * Metoda koja sprema spremnik razreda <b>sizeClass</b>
+		 *
+		 * @param sizeClass
+		 *            razred spremnika
+		 * @param buffer
+		 *            spremnik
+		 * @return <code>true</code> ukoliko je spremnik spremljen,
+		 *         <code>false</code> ukoliko je priručna memorija puna
+		 */
+		boolean offer(int sizeClass, ByteBuffer buffer) {
+			if (sizes[sizeClass] == LOCAL_CACHE_SIZE) {
+				return false;
+			}
+
+			buffers[sizeClass][sizes[sizeClass]++] = buffer;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package hr.fer.zemris.java.webserver.buffer;
+
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Razred koji predstavlja izlazni tok okteta koji sve zapisane oktete sprema u
+ * izravni spremnik iz bazena {@link BufferPool}. Kada se spremnik napuni,
+ * zamjenjuje se većim spremnikom iz bazena. Razred se koristi umjesto razreda
+ * {@link java.io.ByteArrayOutputStream} kada se čitav odgovor mora stvoriti
+ * prije slanja (npr. zbog zaglavlja "Content-Length").
+ * <p>
+ * Uz metode razreda {@link OutputStream} razred nudi i metode
+ * {@link #writeAscii(CharSequence)} i {@link #writeUtf8(CharSequence)} koje
+ * tekst kodiraju izravno u spremnik, bez stvaranja pomoćnog polja okteta.
+ * Metodom {@link #close()} spremnik se vraća u bazen.
+ * </p>
+ *
+ * @author Davor Češljaš
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	/** Konstanta koja predstavlja prazan spremnik */
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	/** Članska varijabla koja predstavlja bazen iz kojeg dolaze spremnici */
+	private final BufferPool pool;
+
+	/** Članska varijabla koja predstavlja početni kapacitet spremnika */
+	private final int initialCapacity;
+
+	/**
+	 * Članska varijabla koja predstavlja trenutni spremnik ili
+	 * <code>null</code> ukoliko još ništa nije zapisano
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Spremnik se iz
+	 * bazena uzima tek pri prvom pisanju
+	 *
+	 * @param pool
+	 *            bazen iz kojeg dolaze spremnici
+	 * @param initialCapacity
+	 *            početni kapacitet spremnika
+	 */
+	public ByteBufferOutputStream(BufferPool pool, int initialCapacity) {
+		this.pool = pool;
+		this.initialCapacity = initialCapacity;
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda nad zajedničkim
+	 * bazenom {@link BufferPool#getInstance()} s početnim kapacitetom
+	 * {@value BufferPool#MIN_CLASS_SIZE}
+	 */
+	public ByteBufferOutputStream() {
+		this(BufferPool.getInstance(), BufferPool.MIN_CLASS_SIZE);
+	}
+
+	@Override
+	public void write(int b) {
+		ensureRemaining(1).put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureRemaining(len).put(b, off, len);
+	}
+
+	/**
+	 * Metoda koja zapisuje sve preostale oktete spremnika <b>src</b>
+	 *
+	 * @param src
+	 *            spremnik čiji se okteti zapisuju
+	 */
+	public void write(ByteBuffer src) {
+		ensureRemaining(src.remaining()).put(src);
+	}
+
+	/**
+	 * Metoda koja zapisuje tekst <b>text</b> u kojem su svi znakovi iz skupa
+	 * ISO-8859-1 (npr. zaglavlje odgovora)
+	 *
+	 * @param text
+	 *            tekst koji se zapisuje
+	 * @return ovaj izlazni tok
+	 */
+	public ByteBufferOutputStream writeAscii(CharSequence text) {
+		int length = text.length();
+		ByteBuffer target = ensureRemaining(length);
+		for (int i = 0; i < length; i++) {
+			target.put((byte) text.charAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Metoda koja zapisuje dekadski zapis broja <b>value</b> (npr. vrijednost
+	 * zaglavlja "Content-Length") bez stvaranja pomoćnog niza znakova
+	 *
+	 * @param value
+	 *            broj koji se zapisuje
+	 * @return ovaj izlazni tok
+	 */
+	public ByteBufferOutputStream writeDecimal(long value) {
+		if (value == Long.MIN_VALUE) {
+			return writeAscii(Long.toString(value));
+		}
+
+		int digits = 1;
+		for (long rest = Math.abs(value) / 10; rest != 0; rest /= 10) {
+			digits++;
+		}
+		int length = value < 0 ? digits + 1 : digits;
+
+		ByteBuffer target = ensureRemaining(length);
+		int position = target.position();
+		if (value < 0) {
+			target.put(position, (byte) '-');
+			value = -value;
+		}
+		for (int i = position + length - 1; i >= position + length - digits; i--) {
+			target.put(i, (byte) ('0' + value % 10));
+			value /= 10;
+		}
+		((Buffer) target).position(position + length);
+		return this;
+	}
+
+	/**
+	 * Metoda koja zapisuje tekst <b>text</b> kodiran skupom znakova UTF-8.
+	 * Neispravni surogatni parovi zapisuju se kao znak '?'
+	 *
+	 * @param text
+	 *            tekst koji se zapisuje
+	 * @return ovaj izlazni tok
+	 */
+	public ByteBufferOutputStream writeUtf8(CharSequence text) {
+		int length = text.length();
+		ByteBuffer target = ensureRemaining(length);
+		for (int i = 0; i < length; i++) {
+			// jedan znak (ili surogatni par) zauzima najviše četiri okteta
+			if (target.remaining() < 4) {
+				target = ensureRemaining(Math.max(4, length - i));
+			}
+
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				target.put((byte) c);
+			} else if (c < 0x800) {
+				target.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, text.charAt(++i));
+				target.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | cp >> 12 & 0x3F))
+						.put((byte) (0x80 | cp >> 6 & 0x3F)).put((byte) (0x80 | cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				target.put((byte) '?');
+			} else {
+				target.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F))
+						.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Metoda koja dohvaća broj zapisanih okteta
+	 *
+	 * @return broj zapisanih okteta
+	 */
+	public int size() {
+		return buffer == null ? 0 : buffer.position();
+	}
+
+	/**
+	 * Metoda koja briše sve zapisane oktete, ali zadržava spremnik
+	 */
+	public void reset() {
+		if (buffer != null) {
+			((Buffer) buffer).clear();
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća pogled na sve zapisane oktete. Pogled dijeli
+	 * sadržaj sa spremnikom ovog toka pa vrijedi samo do idućeg pisanja ili
+	 * poziva metode {@link #close()}
+	 *
+	 * @return pogled na sve zapisane oktete (pozicija 0, granica jednaka broju
+	 *         zapisanih okteta)
+	 */
+	public ByteBuffer toByteBuffer() {
+		if (buffer == null) {
+			return EMPTY;
+		}
+
+		ByteBuffer view = buffer.duplicate();
+		((Buffer) view).flip();
+		return view;
+	}
+
+	/**
+	 * Metoda koja vraća spremnik ovog toka u bazen. Tok se nakon toga može
+	 * ponovno koristiti, a spremnik će se uzeti pri idućem pisanju
+	 */
+	@Override
+	public void close() {
+		pool.release(buffer);
+		buffer = null;
+	}
+
+	/**
+	 * Pomoćna metoda koja osigurava da u spremniku ima mjesta za barem
+	 * <b>length</b> okteta
+	 *
+	 * @param length
+	 *            broj okteta koji se zapisuju
+	 * @return spremnik u koji se zapisuje
+	 */
+	private ByteBuffer ensureRemaining(int length) {
+		if (buffer == null) {
+			buffer = pool.acquire(Math.max(initialCapacity, length));
+		} else if (buffer.remaining() < length) {
+			buffer = pool.grow(buffer, buffer.position() + length);
+		}
+		return buffer;
+	}
+}
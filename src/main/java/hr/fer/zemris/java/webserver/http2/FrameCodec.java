@@ -0,0 +1,275 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Razred koji sadrži konstante protokola HTTP/2 (vrste okvira, zastavice,
+ * postavke i kodove pogrešaka) te metode koje stvaraju okvire spremne za
+ * slanje. Svaki okvir počinje zaglavljem od {@value #FRAME_HEADER_SIZE}
+ * okteta: duljina sadržaja (24 bita), vrsta (8 bita), zastavice (8 bita) i
+ * identifikator toka (31 bit). Okviri se čitaju primjerkom razreda
+ * {@link FrameReader}.
+ *
+ * @see <a href = "https://tools.ietf.org/html/rfc7540#section-4.1">RFC 7540,
+ *      poglavlje 4.1</a>
+ *
+ * @author Davor Češljaš
+ */
+public final class FrameCodec {
+
+	/** Konstanta koja predstavlja veličinu zaglavlja okvira u oktetima */
+	public static final int FRAME_HEADER_SIZE = 9;
+
+	/** Konstanta koja predstavlja uvod kojim klijent otvara vezu HTTP/2 */
+	public static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	/** Konstanta koja predstavlja pretpostavljenu najveću veličinu okvira */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+
+	/** Konstanta koja predstavlja najveću dopuštenu veličinu okvira */
+	public static final int MAX_ALLOWED_FRAME_SIZE = (1 << 24) - 1;
+
+	/** Konstanta koja predstavlja pretpostavljenu veličinu prozora toka */
+	public static final int DEFAULT_WINDOW_SIZE = 65535;
+
+	/** Konstanta koja predstavlja najveću dopuštenu veličinu prozora */
+	public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	/** Konstanta koja predstavlja pretpostavljenu veličinu tablice HPACK */
+	public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+
+	/** Konstanta koja predstavlja okvir DATA */
+	public static final int DATA = 0x0;
+
+	/** Konstanta koja predstavlja okvir HEADERS */
+	public static final int HEADERS = 0x1;
+
+	/** Konstanta koja predstavlja okvir PRIORITY */
+	public static final int PRIORITY = 0x2;
+
+	/** Konstanta koja predstavlja okvir RST_STREAM */
+	public static final int RST_STREAM = 0x3;
+
+	/** Konstanta koja predstavlja okvir SETTINGS */
+	public static final int SETTINGS = 0x4;
+
+	/** Konstanta koja predstavlja okvir PUSH_PROMISE */
+	public static final int PUSH_PROMISE = 0x5;
+
+	/** Konstanta koja predstavlja okvir PING */
+	public static final int PING = 0x6;
+
+	/** Konstanta koja predstavlja okvir GOAWAY */
+	public static final int GOAWAY = 0x7;
+
+	/** Konstanta koja predstavlja okvir WINDOW_UPDATE */
+	public static final int WINDOW_UPDATE = 0x8;
+
+	/** Konstanta koja predstavlja okvir CONTINUATION */
+	public static final int CONTINUATION = 0x9;
+
+	/** Konstanta koja predstavlja zastavicu END_STREAM */
+	public static final int FLAG_END_STREAM = 0x1;
+
+	/** Konstanta koja predstavlja zastavicu ACK (okviri SETTINGS i PING) */
+	public static final int FLAG_ACK = 0x1;
+
+	/** Konstanta koja predstavlja zastavicu END_HEADERS */
+	public static final int FLAG_END_HEADERS = 0x4;
+
+	/** Konstanta koja predstavlja zastavicu PADDED */
+	public static final int FLAG_PADDED = 0x8;
+
+	/** Konstanta koja predstavlja zastavicu PRIORITY */
+	public static final int FLAG_PRIORITY = 0x20;
+
+	/** Konstanta koja predstavlja postavku SETTINGS_HEADER_TABLE_SIZE */
+	public static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+
+	/** Konstanta koja predstavlja postavku SETTINGS_ENABLE_PUSH */
+	public static final int SETTINGS_ENABLE_PUSH = 0x2;
+
+	/** Konstanta koja predstavlja postavku SETTINGS_MAX_CONCURRENT_STREAMS */
+	public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+
+	/** Konstanta koja predstavlja postavku SETTINGS_INITIAL_WINDOW_SIZE */
+	public static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+
+	/** Konstanta koja predstavlja postavku SETTINGS_MAX_FRAME_SIZE */
+	public static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+	/** Konstanta koja predstavlja postavku SETTINGS_MAX_HEADER_LIST_SIZE */
+	public static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	/** Konstanta koja predstavlja kod NO_ERROR */
+	public static final int NO_ERROR = 0x0;
+
+	/** Konstanta koja predstavlja kod PROTOCOL_ERROR */
+	public static final int PROTOCOL_ERROR = 0x1;
+
+	/** Konstanta koja predstavlja kod INTERNAL_ERROR */
+	public static final int INTERNAL_ERROR = 0x2;
+
+	/** Konstanta koja predstavlja kod FLOW_CONTROL_ERROR */
+	public static final int FLOW_CONTROL_ERROR = 0x3;
+
+	/** Konstanta koja predstavlja kod STREAM_CLOSED */
+	public static final int STREAM_CLOSED = 0x5;
+
+	/** Konstanta koja predstavlja kod FRAME_SIZE_ERROR */
+	public static final int FRAME_SIZE_ERROR = 0x6;
+
+	/** Konstanta koja predstavlja kod REFUSED_STREAM */
+	public static final int REFUSED_STREAM = 0x7;
+
+	/** Konstanta koja predstavlja kod CANCEL */
+	public static final int CANCEL = 0x8;
+
+	/** Konstanta koja predstavlja kod COMPRESSION_ERROR */
+	public static final int COMPRESSION_ERROR = 0x9;
+
+	/** Konstanta koja predstavlja veličinu jedne postavke u oktetima */
+	public static final int SETTING_SIZE = 6;
+
+	/**
+	 * Privatni konstruktor koji onemogućuje stvaranje primjeraka ovog razreda
+	 */
+	private FrameCodec() {
+	}
+
+	/**
+	 * Metoda koja stvara zaglavlje okvira
+	 *
+	 * @param length
+	 *            duljina sadržaja okvira
+	 * @param type
+	 *            vrsta okvira
+	 * @param flags
+	 *            zastavice okvira
+	 * @param streamId
+	 *            identifikator toka
+	 * @return spremnik sa zaglavljem okvira spreman za čitanje
+	 */
+	public static ByteBuffer frameHeader(int length, int type, int flags, int streamId) {
+		ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+		putFrameHeader(header, length, type, flags, streamId);
+		((Buffer) header).flip();
+		return header;
+	}
+
+	/**
+	 * Metoda koja stvara okvir SETTINGS s postavkama <b>settings</b> zadanim
+	 * kao parovi (identifikator, vrijednost)
+	 *
+	 * @param settings
+	 *            parovi identifikatora i vrijednosti postavki
+	 * @return spremnik s okvirom spreman za čitanje
+	 */
+	public static ByteBuffer settingsFrame(int... settings) {
+		int length = settings.length / 2 * SETTING_SIZE;
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + length);
+		putFrameHeader(frame, length, SETTINGS, 0, 0);
+		for (int i = 0; i + 1 < settings.length; i += 2) {
+			frame.putShort((short) settings[i]).putInt(settings[i + 1]);
+		}
+		((Buffer) frame).flip();
+		return frame;
+	}
+
+	/**
+	 * Metoda koja stvara okvir SETTINGS kojim se potvrđuje primitak postavki
+	 *
+	 * @return spremnik s okvirom spreman za čitanje
+	 */
+	public static ByteBuffer settingsAckFrame() {
+		return frameHeader(0, SETTINGS, FLAG_ACK, 0);
+	}
+
+	/**
+	 * Metoda koja stvara okvir PING s potvrdom i sadržajem <b>payload</b>
+	 *
+	 * @param payload
+	 *            osam okteta primljenog okvira PING
+	 * @return spremnik s okvirom spreman za čitanje
+	 */
+	public static ByteBuffer pingAckFrame(ByteBuffer payload) {
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.remaining());
+		putFrameHeader(frame, payload.remaining(), PING, FLAG_ACK, 0);
+		frame.put(payload);
+		((Buffer) frame).flip();
+		return frame;
+	}
+
+	/**
+	 * Metoda koja stvara okvir WINDOW_UPDATE
+	 *
+	 * @param streamId
+	 *            identifikator toka ili 0 za prozor čitave veze
+	 * @param increment
+	 *            povećanje prozora
+	 * @return spremnik s okvirom spreman za čitanje
+	 */
+	public static ByteBuffer windowUpdateFrame(int streamId, int increment) {
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + 4);
+		putFrameHeader(frame, 4, WINDOW_UPDATE, 0, streamId);
+		frame.putInt(increment);
+		((Buffer) frame).flip();
+		return frame;
+	}
+
+	/**
+	 * Metoda koja stvara okvir RST_STREAM
+	 *
+	 * @param streamId
+	 *            identifikator toka koji se prekida
+	 * @param errorCode
+	 *            kod pogreške
+	 * @return spremnik s okvirom spreman za čitanje
+	 */
+	public static ByteBuffer rstStreamFrame(int streamId, int errorCode) {
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + 4);
+		putFrameHeader(frame, 4, RST_STREAM, 0, streamId);
+		frame.putInt(errorCode);
+		((Buffer) frame).flip();
+		return frame;
+	}
+
+	/**
+	 * Metoda koja stvara okvir GOAWAY
+	 *
+	 * @param lastStreamId
+	 *            identifikator posljednjeg toka koji je obrađen ili će biti
+	 *            obrađen
+	 * @param errorCode
+	 *            kod pogreške
+	 * @return spremnik s okvirom spreman za čitanje
+	 */
+	public static ByteBuffer goAwayFrame(int lastStreamId, int errorCode) {
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + 8);
+		putFrameHeader(frame, 8, GOAWAY, 0, 0);
+		frame.putInt(lastStreamId).putInt(errorCode);
+		((Buffer) frame).flip();
+		return frame;
+	}
+
+	/**
+	 * Pomoćna metoda koja zapisuje zaglavlje okvira u spremnik <b>target</b>
+	 *
+	 * @param target
+	 *            spremnik u koji se zapisuje zaglavlje
+	 * @param length
+	 *            duljina sadržaja okvira
+	 * @param type
+	 *            vrsta okvira
+	 * @param flags
+	 *            zastavice okvira
+	 * @param streamId
+	 *            identifikator toka
+	 */
+	private static void putFrameHeader(ByteBuffer target, int length, int type, int flags, int streamId) {
+		target.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+		target.put((byte) type).put((byte) flags).putInt(streamId & MAX_WINDOW_SIZE);
+	}
+}
@@ -0,0 +1,216 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import hr.fer.zemris.java.webserver.buffer.BufferPool;
+
+/**
+ * Razred koji čita okvire HTTP/2 iz kanala. Okteti se čitaju u izravni
+ * spremnik iz bazena {@link BufferPool} koji je dovoljno velik za jedan okvir
+ * najveće dopuštene veličine, pa se sadržaj okvira nikada ne kopira. Nakon
+ * poziva metode {@link #readFrame()} dostupna su polja zaglavlja okvira i
+ * njegov sadržaj ({@link #getPayload()}) koji vrijedi do idućeg čitanja.
+ *
+ * @see FrameCodec
+ *
+ * @author Davor Češljaš
+ */
+public class FrameReader implements Closeable {
+
+	/** Članska varijabla koja predstavlja kanal iz kojeg se čitaju okviri */
+	private final ReadableByteChannel channel;
+
+	/** Članska varijabla koja predstavlja najveću dopuštenu veličinu okvira */
+	private final int maxFrameSize;
+
+	/**
+	 * Članska varijabla koja predstavlja spremnik s pročitanim, a još
+	 * neobrađenim oktetima (u načinu čitanja)
+	 */
+	private ByteBuffer buffer;
+
+	/** Članska varijabla koja predstavlja duljinu sadržaja trenutnog okvira */
+	private int length;
+
+	/** Članska varijabla koja predstavlja vrstu trenutnog okvira */
+	private int type;
+
+	/** Članska varijabla koja predstavlja zastavice trenutnog okvira */
+	private int flags;
+
+	/** Članska varijabla koja predstavlja identifikator toka trenutnog okvira */
+	private int streamId;
+
+	/** Članska varijabla koja predstavlja sadržaj trenutnog okvira */
+	private ByteBuffer payload;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param channel
+	 *            kanal iz kojeg se čitaju okviri
+	 * @param maxFrameSize
+	 *            najveća dopuštena veličina sadržaja okvira
+	 * @param initial
+	 *            već pročitani okteti veze koji prethode oktetima iz kanala
+	 *            ili <code>null</code>
+	 */
+	public FrameReader(ReadableByteChannel channel, int maxFrameSize, ByteBuffer initial) {
+		this.channel = channel;
+		this.maxFrameSize = maxFrameSize;
+		this.buffer = BufferPool.getInstance().acquire(FrameCodec.FRAME_HEADER_SIZE + maxFrameSize);
+		if (initial != null) {
+			buffer.put(initial);
+		}
+		((Buffer) buffer).flip();
+	}
+
+	/**
+	 * Metoda koja čita i provjerava uvod veze {@link FrameCodec#PREFACE}
+	 *
+	 * @return <code>true</code> ukoliko je pročitan ispravan uvod,
+	 *         <code>false</code> inače
+	 * @throws IOException
+	 *             ukoliko se iz kanala ne može čitati
+	 */
+	public boolean readPreface() throws IOException {
+		if (!fill(FrameCodec.PREFACE.length)) {
+			return false;
+		}
+
+		for (byte b : FrameCodec.PREFACE) {
+			if (buffer.get() != b) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Metoda koja čita idući okvir
+	 *
+	 * @return <code>true</code> ukoliko je okvir pročitan,
+	 *         <code>false</code> ukoliko je druga strana zatvorila vezu
+	 *         između dva okvira
+	 * @throws Http2Exception
+	 *             ukoliko je okvir veći od dopuštenog
+	 * @throws IOException
+	 *             ukoliko se iz kanala ne može čitati ili je veza zatvorena
+	 *             usred okvira
+	 */
+	public boolean readFrame() throws IOException {
+		if (!fill(FrameCodec.FRAME_HEADER_SIZE)) {
+			if (buffer.hasRemaining()) {
+				throw new EOFException("Veza je zatvorena usred okvira");
+			}
+			return false;
+		}
+
+		length = (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8 | buffer.get() & 0xFF;
+		type = buffer.get() & 0xFF;
+		flags = buffer.get() & 0xFF;
+		streamId = buffer.getInt() & FrameCodec.MAX_WINDOW_SIZE;
+		if (length > maxFrameSize) {
+			throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR,
+					String.format("Okvir je veličine %d, a najviše je dopušteno %d", length, maxFrameSize));
+		}
+		if (!fill(length)) {
+			throw new EOFException("Veza je zatvorena usred okvira");
+		}
+
+		payload = buffer.slice();
+		((Buffer) payload).limit(length);
+		((Buffer) buffer).position(buffer.position() + length);
+		return true;
+	}
+
+	/**
+	 * Metoda koja dohvaća duljinu sadržaja trenutnog okvira
+	 *
+	 * @return duljinu sadržaja trenutnog okvira
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Metoda koja dohvaća vrstu trenutnog okvira
+	 *
+	 * @return vrstu trenutnog okvira
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Metoda koja provjerava je li trenutnom okviru postavljena zastavica
+	 * <b>flag</b>
+	 *
+	 * @param flag
+	 *            zastavica koja se provjerava
+	 * @return <code>true</code> ukoliko je zastavica postavljena,
+	 *         <code>false</code> inače
+	 */
+	public boolean hasFlag(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	/**
+	 * Metoda koja dohvaća identifikator toka trenutnog okvira
+	 *
+	 * @return identifikator toka trenutnog okvira
+	 */
+	public int getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Metoda koja dohvaća sadržaj trenutnog okvira. Sadržaj dijeli spremnik s
+	 * ovim čitačem pa vrijedi samo do idućeg poziva metode
+	 * {@link #readFrame()}
+	 *
+	 * @return sadržaj trenutnog okvira
+	 */
+	public ByteBuffer getPayload() {
+		return payload;
+	}
+
+	/**
+	 * Metoda koja vraća spremnik ovog čitača u bazen
+	 */
+	@Override
+	public void close() {
+		BufferPool.getInstance().release(buffer);
+		buffer = null;
+		payload = null;
+	}
+
+	/**
+	 * Pomoćna metoda koja čita iz kanala dok u spremniku nema barem
+	 * <b>count</b> neobrađenih okteta
+	 *
+	 * @param count
+	 *            potreban broj okteta
+	 * @return <code>true</code> ukoliko je pročitano dovoljno okteta,
+	 *         <code>false</code> ukoliko je druga strana prije toga zatvorila
+	 *         vezu
+	 * @throws IOException
+	 *             ukoliko se iz kanala ne može čitati
+	 */
+	private boolean fill(int count) throws IOException {
+		while (buffer.remaining() < count) {
+			buffer.compact();
+			int read = channel.read(buffer);
+			((Buffer) buffer).flip();
+			if (read == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,244 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Razred koji dekodira blokove zaglavlja sažete postupkom HPACK. Dekoder
+ * pamti dinamičku tablicu zaglavlja pa jedan primjerak smije dekodirati samo
+ * blokove jedne veze, i to redoslijedom kojim su primljeni.
+ *
+ * @see <a href = "https://tools.ietf.org/html/rfc7541">RFC 7541</a>
+ *
+ * @author Davor Češljaš
+ */
+public class HpackDecoder {
+
+	/**
+	 * Konstanta koja predstavlja dodatak veličini svakog zapisa dinamičke
+	 * tablice (RFC 7541, poglavlje 4.1)
+	 */
+	private static final int ENTRY_OVERHEAD = 32;
+
+	/**
+	 * Članska varijabla koja predstavlja dinamičku tablicu. Najnoviji zapis
+	 * nalazi se na kraju liste
+	 */
+	private final List<String[]> dynamicTable = new ArrayList<>();
+
+	/**
+	 * Članska varijabla koja predstavlja najveću veličinu dinamičke tablice
+	 * koju druga strana smije postaviti
+	 */
+	private final int maxTableSize;
+
+	/**
+	 * Članska varijabla koja predstavlja najveći zbroj veličina zaglavlja
+	 * jednog bloka
+	 */
+	private final int maxHeaderListSize;
+
+	/** Članska varijabla koja predstavlja trenutnu najveću veličinu tablice */
+	private int tableCapacity;
+
+	/** Članska varijabla koja predstavlja trenutnu veličinu tablice */
+	private int tableSize;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param maxTableSize
+	 *            najveća veličina dinamičke tablice (postavka
+	 *            SETTINGS_HEADER_TABLE_SIZE)
+	 * @param maxHeaderListSize
+	 *            najveći zbroj veličina zaglavlja jednog bloka
+	 */
+	public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+		this.maxTableSize = maxTableSize;
+		this.maxHeaderListSize = maxHeaderListSize;
+		this.tableCapacity = maxTableSize;
+	}
+
+	/**
+	 * Metoda koja dekodira blok zaglavlja <b>block</b> i svako zaglavlje
+	 * predaje strategiji <b>consumer</b>
+	 *
+	 * @param block
+	 *            spremnik s čitavim blokom zaglavlja
+	 * @param consumer
+	 *            strategija koja prima naziv i vrijednost svakog zaglavlja
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	public void decode(ByteBuffer block, BiConsumer<String, String> consumer) throws Http2Exception {
+		long listSize = 0;
+		boolean fieldSeen = false;
+		try {
+			while (block.hasRemaining()) {
+				int first = block.get(block.position()) & 0xFF;
+				String[] field;
+				if ((first & 0x80) != 0) {
+					// indeksirano zaglavlje
+					field = lookup(decodeInt(block, 7));
+				} else if ((first & 0xC0) == 0x40) {
+					// doslovno zaglavlje koje se dodaje u tablicu
+					field = decodeLiteral(block, 6);
+					insert(field);
+				} else if ((first & 0xE0) == 0x20) {
+					// promjena veličine tablice smije biti samo na početku bloka
+					int capacity = decodeInt(block, 5);
+					if (fieldSeen || capacity > maxTableSize) {
+						throw new Http2Exception(FrameCodec.COMPRESSION_ERROR, "Neispravna promjena veličine tablice");
+					}
+					tableCapacity = capacity;
+					evict(0);
+					continue;
+				} else {
+					// doslovno zaglavlje bez dodavanja u tablicu (0000 ili 0001)
+					field = decodeLiteral(block, 4);
+				}
+
+				fieldSeen = true;
+				listSize += field[0].length() + field[1].length() + ENTRY_OVERHEAD;
+				if (listSize > maxHeaderListSize) {
+					throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Zaglavlja zahtjeva su prevelika");
+				}
+				consumer.accept(field[0], field[1]);
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new Http2Exception(FrameCodec.COMPRESSION_ERROR, "Blok zaglavlja je nepotpun");
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dohvaća zapis s indeksom <b>index</b> iz statičke
+	 * ili dinamičke tablice
+	 *
+	 * @param index
+	 *            indeks zapisa
+	 * @return zapis (naziv, vrijednost)
+	 * @throws Http2Exception
+	 *             ukoliko zapis s tim indeksom ne postoji
+	 */
+	private String[] lookup(int index) throws Http2Exception {
+		if (index >= 1 && index <= HpackStaticTable.SIZE) {
+			return HpackStaticTable.get(index);
+		}
+
+		int dynamicIndex = index - HpackStaticTable.SIZE;
+		if (index < 1 || dynamicIndex > dynamicTable.size()) {
+			throw new Http2Exception(FrameCodec.COMPRESSION_ERROR, "Nepostojeći indeks zaglavlja: " + index);
+		}
+		return dynamicTable.get(dynamicTable.size() - dynamicIndex);
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira doslovno zaglavlje čiji naziv je zadan
+	 * indeksom s prefiksom od <b>prefixBits</b> bitova ili doslovno
+	 *
+	 * @param block
+	 *            spremnik iz kojeg se čita
+	 * @param prefixBits
+	 *            broj bitova prefiksa indeksa naziva
+	 * @return zapis (naziv, vrijednost)
+	 * @throws Http2Exception
+	 *             ukoliko zaglavlje nije ispravno kodirano
+	 */
+	private String[] decodeLiteral(ByteBuffer block, int prefixBits) throws Http2Exception {
+		int nameIndex = decodeInt(block, prefixBits);
+		String name = nameIndex == 0 ? decodeString(block) : lookup(nameIndex)[0];
+		return new String[] { name, decodeString(block) };
+	}
+
+	/**
+	 * Pomoćna metoda koja zapis <b>field</b> dodaje na početak dinamičke
+	 * tablice i po potrebi izbacuje najstarije zapise
+	 *
+	 * @param field
+	 *            zapis koji se dodaje
+	 */
+	private void insert(String[] field) {
+		int size = field[0].length() + field[1].length() + ENTRY_OVERHEAD;
+		evict(size);
+		if (size <= tableCapacity) {
+			dynamicTable.add(field);
+			tableSize += size;
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja izbacuje najstarije zapise dok u tablici nema mjesta
+	 * za <b>space</b> okteta
+	 *
+	 * @param space
+	 *            potreban broj okteta
+	 */
+	private void evict(int space) {
+		while (!dynamicTable.isEmpty() && tableSize + space > tableCapacity) {
+			String[] removed = dynamicTable.remove(0);
+			tableSize -= removed[0].length() + removed[1].length() + ENTRY_OVERHEAD;
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira cijeli broj s prefiksom od
+	 * <b>prefixBits</b> bitova (RFC 7541, poglavlje 5.1)
+	 *
+	 * @param block
+	 *            spremnik iz kojeg se čita
+	 * @param prefixBits
+	 *            broj bitova prefiksa
+	 * @return dekodirani broj
+	 * @throws Http2Exception
+	 *             ukoliko broj ne stane u tip <code>int</code>
+	 */
+	static int decodeInt(ByteBuffer block, int prefixBits) throws Http2Exception {
+		int mask = (1 << prefixBits) - 1;
+		int value = block.get() & mask;
+		if (value < mask) {
+			return value;
+		}
+
+		for (int shift = 0;; shift += 7) {
+			if (shift > 21) {
+				throw new Http2Exception(FrameCodec.COMPRESSION_ERROR, "Prevelik cijeli broj u bloku zaglavlja");
+			}
+			int b = block.get() & 0xFF;
+			value += (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira niz znakova (RFC 7541, poglavlje 5.2).
+	 * Okteti se tumače kao znakovi skupa ISO-8859-1
+	 *
+	 * @param block
+	 *            spremnik iz kojeg se čita
+	 * @return dekodirani niz znakova
+	 * @throws Http2Exception
+	 *             ukoliko niz nije ispravno kodiran
+	 */
+	static String decodeString(ByteBuffer block) throws Http2Exception {
+		boolean huffman = (block.get(block.position()) & 0x80) != 0;
+		int length = decodeInt(block, 7);
+		if (length > block.remaining()) {
+			throw new Http2Exception(FrameCodec.COMPRESSION_ERROR, "Niz je dulji od bloka zaglavlja");
+		}
+
+		StringBuilder sb = new StringBuilder(length);
+		if (huffman) {
+			Huffman.decode(block, length, sb);
+		} else {
+			for (int i = 0; i < length; i++) {
+				sb.append((char) (block.get() & 0xFF));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,93 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji kodira zaglavlja postupkom HPACK. Koder koristi samo statičku
+ * tablicu ({@link HpackStaticTable}): zaglavlja koja se u njoj nalaze šalju se
+ * indeksom, a ostala kao doslovna zaglavlja bez dodavanja u dinamičku tablicu.
+ * Zato koder nema stanja i jedan primjerak smiju istovremeno koristiti sve
+ * dretve veze, bez obzira na redoslijed kojim se blokovi šalju. Nizovi se
+ * kodiraju Huffmanovim kodom kada je tako kraći.
+ *
+ * @see <a href = "https://tools.ietf.org/html/rfc7541">RFC 7541</a>
+ *
+ * @author Davor Češljaš
+ */
+public class HpackEncoder {
+
+	/**
+	 * Metoda koja kodira zaglavlje s nazivom <b>name</b> (malim slovima) i
+	 * vrijednošću <b>value</b> te ga zapisuje u <b>out</b>
+	 *
+	 * @param name
+	 *            naziv zaglavlja
+	 * @param value
+	 *            vrijednost zaglavlja
+	 * @param out
+	 *            izlazni tok u koji se zapisuje kodirano zaglavlje
+	 */
+	public void encode(String name, String value, ByteBufferOutputStream out) {
+		int index = HpackStaticTable.indexOf(name, value);
+		if (index != 0) {
+			encodeInt(out, 0x80, 7, index);
+			return;
+		}
+
+		// doslovno zaglavlje bez dodavanja u tablicu (RFC 7541, poglavlje 6.2.2)
+		int nameIndex = HpackStaticTable.indexOfName(name);
+		encodeInt(out, 0x00, 4, nameIndex);
+		if (nameIndex == 0) {
+			encodeString(out, name);
+		}
+		encodeString(out, value);
+	}
+
+	/**
+	 * Pomoćna metoda koja kodira cijeli broj <b>value</b> s prefiksom od
+	 * <b>prefixBits</b> bitova (RFC 7541, poglavlje 5.1)
+	 *
+	 * @param out
+	 *            izlazni tok u koji se zapisuje broj
+	 * @param flags
+	 *            bitovi prvog okteta iznad prefiksa
+	 * @param prefixBits
+	 *            broj bitova prefiksa
+	 * @param value
+	 *            broj koji se kodira
+	 */
+	static void encodeInt(ByteBufferOutputStream out, int flags, int prefixBits, int value) {
+		int mask = (1 << prefixBits) - 1;
+		if (value < mask) {
+			out.write(flags | value);
+			return;
+		}
+
+		out.write(flags | mask);
+		value -= mask;
+		while (value >= 0x80) {
+			out.write(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Pomoćna metoda koja kodira niz <b>text</b> (RFC 7541, poglavlje 5.2)
+	 *
+	 * @param out
+	 *            izlazni tok u koji se zapisuje niz
+	 * @param text
+	 *            niz koji se kodira
+	 */
+	static void encodeString(ByteBufferOutputStream out, String text) {
+		int huffmanLength = Huffman.encodedLength(text);
+		if (huffmanLength < text.length()) {
+			encodeInt(out, 0x80, 7, huffmanLength);
+			Huffman.encode(text, out);
+		} else {
+			encodeInt(out, 0x00, 7, text.length());
+			out.writeAscii(text);
+		}
+	}
+}
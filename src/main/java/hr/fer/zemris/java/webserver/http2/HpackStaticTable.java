@@ -0,0 +1,95 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Razred koji predstavlja statičku tablicu zaglavlja sažimanja HPACK. Tablica
+ * sadrži {@value #SIZE} najčešćih zaglavlja, a indeksi počinju od 1.
+ *
+ * @see <a href = "https://tools.ietf.org/html/rfc7541#appendix-A">RFC 7541,
+ *      dodatak A</a>
+ *
+ * @author Davor Češljaš
+ */
+final class HpackStaticTable {
+
+	/** Konstanta koja predstavlja zapise tablice (naziv, vrijednost) */
+	private static final String[][] ENTRIES = { { ":authority", "" }, { ":method", "GET" },
+			{ ":method", "POST" }, { ":path", "/" }, { ":path", "/index.html" }, { ":scheme", "http" },
+			{ ":scheme", "https" }, { ":status", "200" }, { ":status", "204" }, { ":status", "206" },
+			{ ":status", "304" }, { ":status", "400" }, { ":status", "404" }, { ":status", "500" },
+			{ "accept-charset", "" }, { "accept-encoding", "gzip, deflate" }, { "accept-language", "" },
+			{ "accept-ranges", "" }, { "accept", "" }, { "access-control-allow-origin", "" }, { "age", "" },
+			{ "allow", "" }, { "authorization", "" }, { "cache-control", "" }, { "content-disposition", "" },
+			{ "content-encoding", "" }, { "content-language", "" }, { "content-length", "" },
+			{ "content-location", "" }, { "content-range", "" }, { "content-type", "" }, { "cookie", "" },
+			{ "date", "" }, { "etag", "" }, { "expect", "" }, { "expires", "" }, { "from", "" }, { "host", "" },
+			{ "if-match", "" }, { "if-modified-since", "" }, { "if-none-match", "" }, { "if-range", "" },
+			{ "if-unmodified-since", "" }, { "last-modified", "" }, { "link", "" }, { "location", "" },
+			{ "max-forwards", "" }, { "proxy-authenticate", "" }, { "proxy-authorization", "" }, { "range", "" },
+			{ "referer", "" }, { "refresh", "" }, { "retry-after", "" }, { "server", "" }, { "set-cookie", "" },
+			{ "strict-transport-security", "" }, { "transfer-encoding", "" }, { "user-agent", "" },
+			{ "vary", "" }, { "via", "" }, { "www-authenticate", "" } };
+
+	/** Konstanta koja predstavlja broj zapisa tablice */
+	static final int SIZE = 61;
+
+	/** Konstanta koja predstavlja indekse zapisa po nazivu i vrijednosti */
+	private static final Map<String, Integer> FIELDS = new HashMap<>();
+
+	/** Konstanta koja predstavlja indeks prvog zapisa sa zadanim nazivom */
+	private static final Map<String, Integer> NAMES = new HashMap<>();
+
+	static {
+		for (int i = ENTRIES.length; i > 0; i--) {
+			String[] entry = ENTRIES[i - 1];
+			FIELDS.put(entry[0] + '\0' + entry[1], i);
+			NAMES.put(entry[0], i);
+		}
+	}
+
+	/**
+	 * Privatni konstruktor koji onemogućuje stvaranje primjeraka ovog razreda
+	 */
+	private HpackStaticTable() {
+	}
+
+	/**
+	 * Metoda koja dohvaća zapis s indeksom <b>index</b>
+	 *
+	 * @param index
+	 *            indeks zapisa (od 1 do {@value #SIZE})
+	 * @return zapis (naziv, vrijednost)
+	 */
+	static String[] get(int index) {
+		return ENTRIES[index - 1];
+	}
+
+	/**
+	 * Metoda koja traži zapis s nazivom <b>name</b> i vrijednošću
+	 * <b>value</b>
+	 *
+	 * @param name
+	 *            naziv zaglavlja
+	 * @param value
+	 *            vrijednost zaglavlja
+	 * @return indeks zapisa ili 0 ukoliko takav zapis ne postoji
+	 */
+	static int indexOf(String name, String value) {
+		Integer index = FIELDS.get(name + '\0' + value);
+		return index == null ? 0 : index;
+	}
+
+	/**
+	 * Metoda koja traži prvi zapis s nazivom <b>name</b>
+	 *
+	 * @param name
+	 *            naziv zaglavlja
+	 * @return indeks zapisa ili 0 ukoliko takav zapis ne postoji
+	 */
+	static int indexOfName(String name) {
+		Integer index = NAMES.get(name);
+		return index == null ? 0 : index;
+	}
+}
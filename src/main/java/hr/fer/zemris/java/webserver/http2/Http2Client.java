@@ -0,0 +1,514 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja jednostavnog klijenta HTTP/2 bez enkripcije (h2c)
+ * koji zahtjeve šalje izravno, bez nadogradnje veze HTTP/1.1. Svi zahtjevi
+ * dijele jednu vezu: metoda {@link #get(String)} samo šalje okvir HEADERS
+ * novog toka, a odgovore prima zasebna dretva, pa proizvoljno mnogo dretvi
+ * smije istovremeno slati zahtjeve. Klijent je namijenjen lokalnom
+ * ispitivanju i mjerenju poslužitelja te ne poštuje postavku
+ * SETTINGS_MAX_CONCURRENT_STREAMS (tokovi iznad ograničenja poslužitelja
+ * završavaju iznimkom).
+ * <p>
+ * Primjer pokretanja:
+ * <code>java hr.fer.zemris.java.webserver.http2.Http2Client 127.0.0.1 5721 /index.html /hello</code>
+ * </p>
+ *
+ * @author Davor Češljaš
+ */
+public class Http2Client implements Closeable {
+
+	/**
+	 * Konstanta koja predstavlja broj primljenih okteta nakon kojeg se obnavlja
+	 * prozor veze
+	 */
+	private static final int WINDOW_REFILL_THRESHOLD = FrameCodec.MAX_WINDOW_SIZE / 2;
+
+	/** Članska varijabla koja predstavlja kanal veze */
+	private final SocketChannel channel;
+
+	/** Članska varijabla koja predstavlja vrijednost zaglavlja ":authority" */
+	private final String authority;
+
+	/** Članska varijabla koja predstavlja čitača okvira */
+	private final FrameReader reader;
+
+	/** Članska varijabla koja predstavlja dekoder zaglavlja odgovora */
+	private final HpackDecoder decoder = new HpackDecoder(FrameCodec.DEFAULT_HEADER_TABLE_SIZE, Integer.MAX_VALUE);
+
+	/** Članska varijabla koja predstavlja koder zaglavlja zahtjeva */
+	private final HpackEncoder encoder = new HpackEncoder();
+
+	/** Članska varijabla koja predstavlja odgovore koji još nisu primljeni */
+	private final Map<Integer, PendingResponse> pending = new ConcurrentHashMap<>();
+
+	/** Članska varijabla koja predstavlja ključ pisanja okvira */
+	private final Object writeLock = new Object();
+
+	/** Članska varijabla koja predstavlja dretvu koja prima odgovore */
+	private final Thread readerThread;
+
+	/**
+	 * Članska varijabla koja predstavlja identifikator idućeg toka (uz ključ
+	 * {@link #writeLock})
+	 */
+	private int nextStreamId = 1;
+
+	/**
+	 * Članska varijabla koja predstavlja pogrešku zbog koje je veza zatvorena
+	 * ili <code>null</code>
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * Članska varijabla koja predstavlja broj primljenih okteta od posljednjeg
+	 * obnavljanja prozora veze
+	 */
+	private int consumed;
+
+	/**
+	 * Članska varijabla koja predstavlja blok zaglavlja koji se skuplja ili
+	 * <code>null</code>
+	 */
+	private ByteBufferOutputStream headerBlock;
+
+	/** Članska varijabla koja predstavlja tok čiji se blok zaglavlja skuplja */
+	private int headerStreamId;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu kraja toka bloka zaglavlja
+	 * koji se skuplja
+	 */
+	private boolean headerEndStream;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda i otvara vezu s
+	 * poslužiteljem na adresi <b>address</b>
+	 *
+	 * @param address
+	 *            adresa poslužitelja
+	 * @throws IOException
+	 *             ukoliko se veza ne može otvoriti
+	 */
+	public Http2Client(InetSocketAddress address) throws IOException {
+		this.channel = SocketChannel.open(address);
+		channel.socket().setTcpNoDelay(true);
+		this.authority = address.getHostString() + ":" + address.getPort();
+		this.reader = new FrameReader(channel, FrameCodec.DEFAULT_MAX_FRAME_SIZE, null);
+
+		write(ByteBuffer.wrap(FrameCodec.PREFACE),
+				FrameCodec.settingsFrame(FrameCodec.SETTINGS_ENABLE_PUSH, 0, FrameCodec.SETTINGS_INITIAL_WINDOW_SIZE,
+						FrameCodec.MAX_WINDOW_SIZE),
+				FrameCodec.windowUpdateFrame(0, FrameCodec.MAX_WINDOW_SIZE - FrameCodec.DEFAULT_WINDOW_SIZE));
+
+		readerThread = new Thread(this::readResponses, "h2c-client-" + authority);
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * Metoda koja šalje zahtjev GET na putanju <b>path</b>
+	 *
+	 * @param path
+	 *            putanja zahtjeva (uključujući parametre)
+	 * @return {@link CompletableFuture} koji se dovršava odgovorom ili
+	 *         iznimkom ukoliko je tok prekinut ili je veza zatvorena
+	 */
+	public CompletableFuture<Response> get(String path) {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		ByteBufferOutputStream block = new ByteBufferOutputStream();
+		try {
+			encoder.encode(":method", "GET", block);
+			encoder.encode(":scheme", "http", block);
+			encoder.encode(":path", path, block);
+			encoder.encode(":authority", authority, block);
+
+			synchronized (writeLock) {
+				if (failure != null) {
+					throw failure;
+				}
+
+				int streamId = nextStreamId;
+				nextStreamId += 2;
+				pending.put(streamId, new PendingResponse(future));
+				write(FrameCodec.frameHeader(block.size(), FrameCodec.HEADERS,
+						FrameCodec.FLAG_END_HEADERS | FrameCodec.FLAG_END_STREAM, streamId), block.toByteBuffer());
+			}
+		} catch (IOException e) {
+			future.completeExceptionally(e);
+		} finally {
+			block.close();
+		}
+		return future;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (writeLock) {
+			if (failure == null) {
+				try {
+					write(FrameCodec.goAwayFrame(0, FrameCodec.NO_ERROR));
+				} catch (IOException ignorable) {
+				}
+			}
+		}
+		channel.close();
+		try {
+			readerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koju izvodi dretva {@link #readerThread}: čita okvire
+	 * sve dok se veza ne zatvori, a zatim prekida sve nedovršene odgovore
+	 */
+	private void readResponses() {
+		IOException cause = new IOException("Poslužitelj je zatvorio vezu");
+		try {
+			while (reader.readFrame()) {
+				handleFrame();
+			}
+		} catch (IOException e) {
+			cause = e;
+		} finally {
+			synchronized (writeLock) {
+				failure = cause;
+			}
+			for (PendingResponse response : pending.values()) {
+				response.future.completeExceptionally(cause);
+			}
+			pending.clear();
+			reader.close();
+			if (headerBlock != null) {
+				headerBlock.close();
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje upravo pročitani okvir
+	 *
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se odgovor ne može poslati
+	 */
+	private void handleFrame() throws IOException {
+		int streamId = reader.getStreamId();
+		ByteBuffer payload = reader.getPayload();
+		switch (reader.getType()) {
+		case FrameCodec.DATA:
+			onData(streamId, payload);
+			break;
+		case FrameCodec.HEADERS:
+			if (reader.hasFlag(FrameCodec.FLAG_PADDED)) {
+				int padding = payload.get() & 0xFF;
+				((Buffer) payload).limit(payload.limit() - padding);
+			}
+			if (reader.hasFlag(FrameCodec.FLAG_PRIORITY)) {
+				((Buffer) payload).position(payload.position() + 5);
+			}
+			headerStreamId = streamId;
+			headerEndStream = reader.hasFlag(FrameCodec.FLAG_END_STREAM);
+			headerBlock = new ByteBufferOutputStream();
+			onHeaderFragment(payload);
+			break;
+		case FrameCodec.CONTINUATION:
+			if (headerBlock == null || streamId != headerStreamId) {
+				throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neočekivani okvir CONTINUATION");
+			}
+			onHeaderFragment(payload);
+			break;
+		case FrameCodec.RST_STREAM:
+			fail(streamId, "Poslužitelj je prekinuo tok " + streamId + " (kod " + payload.getInt() + ")");
+			break;
+		case FrameCodec.SETTINGS:
+			if (!reader.hasFlag(FrameCodec.FLAG_ACK)) {
+				write(FrameCodec.settingsAckFrame());
+			}
+			break;
+		case FrameCodec.PING:
+			if (!reader.hasFlag(FrameCodec.FLAG_ACK)) {
+				write(FrameCodec.pingAckFrame(payload));
+			}
+			break;
+		case FrameCodec.GOAWAY:
+			int lastStreamId = payload.getInt() & FrameCodec.MAX_WINDOW_SIZE;
+			synchronized (writeLock) {
+				failure = new IOException("Poslužitelj zatvara vezu (kod " + payload.getInt() + ")");
+			}
+			for (Integer id : pending.keySet()) {
+				if (id > lastStreamId) {
+					fail(id, "Poslužitelj nije obradio tok " + id);
+				}
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir DATA i po potrebi obnavlja prozor
+	 * veze
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @param payload
+	 *            sadržaj okvira
+	 * @throws IOException
+	 *             ukoliko se okvir WINDOW_UPDATE ne može poslati
+	 */
+	private void onData(int streamId, ByteBuffer payload) throws IOException {
+		consumed += reader.getLength();
+		if (consumed >= WINDOW_REFILL_THRESHOLD) {
+			write(FrameCodec.windowUpdateFrame(0, consumed));
+			consumed = 0;
+		}
+
+		if (reader.hasFlag(FrameCodec.FLAG_PADDED)) {
+			int padding = payload.get() & 0xFF;
+			((Buffer) payload).limit(payload.limit() - padding);
+		}
+
+		PendingResponse response = pending.get(streamId);
+		if (response == null) {
+			return;
+		}
+		byte[] data = new byte[payload.remaining()];
+		payload.get(data);
+		response.body.write(data, 0, data.length);
+		if (reader.hasFlag(FrameCodec.FLAG_END_STREAM)) {
+			complete(streamId);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dodaje dio bloka zaglavlja i, nakon posljednjeg
+	 * dijela, dekodira blok
+	 *
+	 * @param payload
+	 *            dio bloka zaglavlja
+	 * @throws IOException
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	private void onHeaderFragment(ByteBuffer payload) throws IOException {
+		headerBlock.write(payload);
+		if (!reader.hasFlag(FrameCodec.FLAG_END_HEADERS)) {
+			return;
+		}
+
+		PendingResponse response = pending.get(headerStreamId);
+		Map<String, String> headers = response == null || response.status != 0 ? new HashMap<>() : response.headers;
+		try {
+			decoder.decode(headerBlock.toByteBuffer(), headers::put);
+		} finally {
+			headerBlock.close();
+			headerBlock = null;
+		}
+
+		if (response == null) {
+			return;
+		}
+		if (response.status == 0) {
+			String status = headers.remove(":status");
+			response.status = status == null ? -1 : Integer.parseInt(status);
+		}
+		if (headerEndStream) {
+			complete(headerStreamId);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dovršava odgovor toka <b>streamId</b>
+	 *
+	 * @param streamId
+	 *            identifikator toka
+	 */
+	private void complete(int streamId) {
+		PendingResponse response = pending.remove(streamId);
+		if (response != null) {
+			response.future.complete(
+					new Response(response.status, response.headers, response.body.toByteArray()));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja odgovor toka <b>streamId</b> završava iznimkom s
+	 * porukom <b>message</b>
+	 *
+	 * @param streamId
+	 *            identifikator toka
+	 * @param message
+	 *            poruka iznimke
+	 */
+	private void fail(int streamId, String message) {
+		PendingResponse response = pending.remove(streamId);
+		if (response != null) {
+			response.future.completeExceptionally(new IOException(message));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja upisuje okvire <b>frames</b> u vezu
+	 *
+	 * @param frames
+	 *            spremnici s okvirima
+	 * @throws IOException
+	 *             ukoliko se u vezu ne može pisati
+	 */
+	private void write(ByteBuffer... frames) throws IOException {
+		synchronized (writeLock) {
+			long remaining = 0;
+			for (ByteBuffer frame : frames) {
+				remaining += frame.remaining();
+			}
+			while (remaining > 0) {
+				remaining -= channel.write(frames);
+			}
+		}
+	}
+
+	/**
+	 * Statički razred koji predstavlja primljeni odgovor
+	 *
+	 * @author Davor Češljaš
+	 */
+	public static class Response {
+
+		/** Članska varijabla koja predstavlja statusni kod odgovora */
+		private final int status;
+
+		/** Članska varijabla koja predstavlja zaglavlja odgovora */
+		private final Map<String, String> headers;
+
+		/** Članska varijabla koja predstavlja tijelo odgovora */
+		private final byte[] body;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param status
+		 *            statusni kod odgovora
+		 * @param headers
+		 *            zaglavlja odgovora (nazivi malim slovima)
+		 * @param body
+		 *            tijelo odgovora
+		 */
+		public Response(int status, Map<String, String> headers, byte[] body) {
+			this.status = status;
+			this.headers = Collections.unmodifiableMap(headers);
+			this.body = body;
+		}
+
+		/**
+		 * Metoda koja dohvaća statusni kod odgovora
+		 *
+		 * @return statusni kod odgovora
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * Metoda koja dohvaća zaglavlja odgovora
+		 *
+		 * @return nepromjenjivu {@link Map}u zaglavlja (nazivi malim slovima)
+		 */
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		/**
+		 * Metoda koja dohvaća tijelo odgovora
+		 *
+		 * @return tijelo odgovora
+		 */
+		public byte[] getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * Privatni statički razred koji predstavlja odgovor koji se još prima
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class PendingResponse {
+
+		/** Članska varijabla koja predstavlja budući odgovor */
+		private final CompletableFuture<Response> future;
+
+		/** Članska varijabla koja predstavlja zaglavlja odgovora */
+		private final Map<String, String> headers = new HashMap<>();
+
+		/** Članska varijabla koja predstavlja tijelo odgovora */
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		/**
+		 * Članska varijabla koja predstavlja statusni kod odgovora ili 0 dok
+		 * zaglavlje nije primljeno
+		 */
+		private int status;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param future
+		 *            budući odgovor
+		 */
+		public PendingResponse(CompletableFuture<Response> future) {
+			this.future = future;
+		}
+	}
+
+	/**
+	 * Metoda od koje započinje rad ovog programa. Argumenti su adresa i vrata
+	 * poslužitelja te putanje koje se istovremeno dohvaćaju jednom vezom. Za
+	 * svaku putanju ispisuje se statusni kod, veličina tijela i zaglavlja
+	 * odgovora
+	 *
+	 * @param args
+	 *            argumenti naredbenog retka
+	 * @throws IOException
+	 *             ukoliko se veza ne može otvoriti
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			throw new IllegalArgumentException("Očekivao sam adresu, vrata i barem jednu putanju");
+		}
+
+		try (Http2Client client = new Http2Client(new InetSocketAddress(args[0], Integer.parseInt(args[1])))) {
+			Map<String, CompletableFuture<Response>> responses = new LinkedHashMap<>();
+			for (int i = 2; i < args.length; i++) {
+				responses.put(args[i], client.get(args[i]));
+			}
+
+			for (Map.Entry<String, CompletableFuture<Response>> entry : responses.entrySet()) {
+				try {
+					Response response = entry.getValue().join();
+					System.out.printf("%s -> %d (%d okteta) %s%n", entry.getKey(), response.getStatus(),
+							response.getBody().length, response.getHeaders());
+				} catch (Exception e) {
+					System.out.printf("%s -> %s%n", entry.getKey(), e.getCause().getMessage());
+				}
+			}
+		}
+	}
+}
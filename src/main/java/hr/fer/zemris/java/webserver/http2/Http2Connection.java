@@ -0,0 +1,1028 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import hr.fer.zemris.java.webserver.ServerUtil;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja poslužiteljsku stranu jedne veze HTTP/2 bez
+ * enkripcije (h2c). Veza se uspostavlja ili izravno, kada klijent odmah pošalje
+ * uvod {@link FrameCodec#PREFACE}, ili nadogradnjom zahtjeva HTTP/1.1 sa
+ * zaglavljem "Upgrade: h2c" (vidi {@link #upgrade(String, List)}).
+ * <p>
+ * Okvire čita jedna dretva (ona koja je pozvala {@link #serve()}), a svaki
+ * novi tok predaje se obrađivaču {@link IStreamHandler} na izvršitelju
+ * <b>executor</b>, pa se odgovori na više zahtjeva iste veze stvaraju
+ * istovremeno. Okviri se u vezu pišu pod zajedničkim ključem, a tijela
+ * odgovora šalju se samo dok to dopuštaju prozori kontrole toka veze i toka
+ * (okviri WINDOW_UPDATE). Tijela zahtjeva se zanemaruju, ali se prozori za
+ * njih odmah obnavljaju.
+ * </p>
+ *
+ * @see Http2Stream
+ * @see <a href = "https://tools.ietf.org/html/rfc7540">RFC 7540</a>
+ *
+ * @author Davor Češljaš
+ */
+public class Http2Connection {
+
+	/**
+	 * Konstanta koja predstavlja vrijednost {@link #getIdleSince()} dok veza
+	 * ima otvorenih tokova
+	 */
+	public static final long NOT_IDLE = Long.MIN_VALUE;
+
+	/** Konstanta koja predstavlja pretpostavljeni najveći broj otvorenih tokova */
+	public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+	/** Konstanta koja predstavlja najveću veličinu zaglavlja jednog zahtjeva */
+	private static final int MAX_HEADER_LIST_SIZE = 65536;
+
+	/** Članska varijabla koja predstavlja kanal veze */
+	private final SocketChannel channel;
+
+	/** Članska varijabla koja predstavlja kanal u koji se pišu okviri */
+	private final GatheringByteChannel out;
+
+	/** Članska varijabla koja predstavlja izvršitelja obrade tokova */
+	private final Executor executor;
+
+	/** Članska varijabla koja predstavlja obrađivača tokova */
+	private final IStreamHandler handler;
+
+	/** Članska varijabla koja predstavlja najveći broj otvorenih tokova */
+	private final int maxConcurrentStreams;
+
+	/** Članska varijabla koja predstavlja čitača okvira */
+	private final FrameReader reader;
+
+	/** Članska varijabla koja predstavlja dekoder zaglavlja zahtjeva */
+	private final HpackDecoder decoder = new HpackDecoder(FrameCodec.DEFAULT_HEADER_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+
+	/** Članska varijabla koja predstavlja koder zaglavlja odgovora */
+	private final HpackEncoder encoder = new HpackEncoder();
+
+	/** Članska varijabla koja predstavlja otvorene tokove po identifikatorima */
+	private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
+
+	/** Članska varijabla koja predstavlja ključ pisanja okvira */
+	private final Object writeLock = new Object();
+
+	/** Članska varijabla koja predstavlja ključ prozora kontrole toka */
+	private final Object windowLock = new Object();
+
+	/**
+	 * Članska varijabla koja predstavlja broj okteta koje poslužitelj smije
+	 * poslati čitavom vezom (uz ključ {@link #windowLock})
+	 */
+	private int sendWindow = FrameCodec.DEFAULT_WINDOW_SIZE;
+
+	/**
+	 * Članska varijabla koja predstavlja početni prozor novih tokova (uz ključ
+	 * {@link #windowLock})
+	 */
+	private int initialWindowSize = FrameCodec.DEFAULT_WINDOW_SIZE;
+
+	/** Članska varijabla koja predstavlja najveći okvir koji klijent prima */
+	private volatile int peerMaxFrameSize = FrameCodec.DEFAULT_MAX_FRAME_SIZE;
+
+	/** Članska varijabla koja predstavlja identifikator posljednjeg toka */
+	private volatile int lastStreamId;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena nakon
+	 * okvira GOAWAY (poslanog ili primljenog), kada se novi tokovi odbijaju
+	 */
+	private volatile boolean goingAway;
+
+	/** Članska varijabla koja predstavlja zastavicu zatvorenosti veze */
+	private volatile boolean closed;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada
+	 * su poslane postavke poslužitelja (uz ključ {@link #writeLock})
+	 */
+	private boolean settingsSent;
+
+	/**
+	 * Članska varijabla koja predstavlja trenutak (prema
+	 * {@link System#nanoTime()}) od kojeg veza nema otvorenih tokova ili
+	 * {@link #NOT_IDLE}
+	 */
+	private volatile long idleSince = System.nanoTime();
+
+	/**
+	 * Članska varijabla koja predstavlja tok nadograđenog zahtjeva HTTP/1.1
+	 * ili <code>null</code>
+	 */
+	private Http2Stream upgradeStream;
+
+	/**
+	 * Članska varijabla koja predstavlja blok zaglavlja koji se skuplja iz
+	 * okvira HEADERS i CONTINUATION ili <code>null</code>
+	 */
+	private ByteBufferOutputStream headerBlock;
+
+	/**
+	 * Članska varijabla koja predstavlja tok čiji se blok zaglavlja skuplja
+	 * ili 0
+	 */
+	private int headerStreamId;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param channel
+	 *            kanal veze iz kojeg se čitaju okviri
+	 * @param out
+	 *            kanal u koji se pišu okviri
+	 * @param initial
+	 *            već pročitani okteti veze (npr. uvod) ili <code>null</code>
+	 * @param executor
+	 *            izvršitelj na kojem se obrađuju tokovi
+	 * @param handler
+	 *            obrađivač tokova
+	 * @param maxConcurrentStreams
+	 *            najveći broj istovremeno otvorenih tokova
+	 */
+	public Http2Connection(SocketChannel channel, GatheringByteChannel out, ByteBuffer initial, Executor executor,
+			IStreamHandler handler, int maxConcurrentStreams) {
+		this.channel = channel;
+		this.out = out;
+		this.executor = executor;
+		this.handler = handler;
+		this.maxConcurrentStreams = maxConcurrentStreams;
+		this.reader = new FrameReader(channel, FrameCodec.DEFAULT_MAX_FRAME_SIZE, initial);
+	}
+
+	/**
+	 * Metoda koja vezu priprema za nadogradnju zahtjeva HTTP/1.1 (RFC 7540,
+	 * poglavlje 3.2). Postavke iz zaglavlja "HTTP2-Settings" primjenjuju se
+	 * kao da su primljene okvirom SETTINGS, a zahtjev <b>requestLines</b>
+	 * postaje tok 1 čiji se odgovor šalje odmah nakon postavki poslužitelja
+	 *
+	 * @param settings
+	 *            vrijednost zaglavlja "HTTP2-Settings" (base64url)
+	 * @param requestLines
+	 *            retci nadograđenog zahtjeva
+	 * @throws Http2Exception
+	 *             ukoliko postavke nisu ispravne
+	 */
+	public void upgrade(String settings, List<String> requestLines) throws Http2Exception {
+		byte[] payload;
+		try {
+			payload = Base64.getUrlDecoder().decode(settings.trim());
+		} catch (IllegalArgumentException e) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neispravno zaglavlje HTTP2-Settings");
+		}
+		if (payload.length % FrameCodec.SETTING_SIZE != 0) {
+			throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, "Neispravno zaglavlje HTTP2-Settings");
+		}
+
+		applySettings(ByteBuffer.wrap(payload));
+		lastStreamId = 1;
+		upgradeStream = openStream(1, requestLines);
+	}
+
+	/**
+	 * Metoda koja poslužuje vezu: šalje postavke poslužitelja, čita uvod
+	 * klijenta i zatim obrađuje okvire sve dok klijent ne zatvori vezu.
+	 * Pogreške protokola završavaju slanjem okvira GOAWAY
+	 *
+	 * @throws IOException
+	 *             ukoliko se iz veze ne može čitati ili je klijent prekršio
+	 *             protokol
+	 */
+	public void serve() throws IOException {
+		try {
+			synchronized (writeLock) {
+				writeFrames(FrameCodec.settingsFrame(FrameCodec.SETTINGS_MAX_CONCURRENT_STREAMS,
+						maxConcurrentStreams, FrameCodec.SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE));
+				settingsSent = true;
+				if (goingAway) {
+					sendGoAway(FrameCodec.NO_ERROR);
+				}
+			}
+			if (upgradeStream != null) {
+				dispatch(upgradeStream);
+			}
+
+			if (!reader.readPreface()) {
+				throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neispravan uvod veze HTTP/2");
+			}
+
+			boolean first = true;
+			while (reader.readFrame()) {
+				if (first && (reader.getType() != FrameCodec.SETTINGS || reader.hasFlag(FrameCodec.FLAG_ACK))) {
+					throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Prvi okvir klijenta mora biti SETTINGS");
+				}
+				first = false;
+
+				try {
+					handleFrame();
+				} catch (Http2Exception e) {
+					if (e.getStreamId() == 0) {
+						throw e;
+					}
+					resetStream(e.getStreamId(), e.getErrorCode());
+				}
+			}
+		} catch (Http2Exception e) {
+			sendGoAway(e.getErrorCode());
+			throw e;
+		} catch (IOException e) {
+			// veza koju je poslužitelj uredno zatvorio nakon okvira GOAWAY
+			if (!goingAway || !streams.isEmpty()) {
+				throw e;
+			}
+		} finally {
+			close();
+			reader.close();
+			if (headerBlock != null) {
+				headerBlock.close();
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja započinje uredno zatvaranje veze: klijentu se šalje okvir
+	 * GOAWAY, novi tokovi se odbijaju, a veza se zatvara čim završe svi
+	 * otvoreni tokovi. Metoda se smije pozvati i prije {@link #serve()}, kada
+	 * se okvir GOAWAY šalje odmah iza postavki poslužitelja
+	 */
+	public void shutdown() {
+		synchronized (writeLock) {
+			goingAway = true;
+			if (settingsSent) {
+				sendGoAway(FrameCodec.NO_ERROR);
+			}
+		}
+		if (streams.isEmpty()) {
+			closeOutput();
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća trenutak od kojeg veza nema otvorenih tokova
+	 *
+	 * @return trenutak (prema {@link System#nanoTime()}) od kojeg veza nema
+	 *         otvorenih tokova ili {@link #NOT_IDLE}
+	 */
+	public long getIdleSince() {
+		return idleSince;
+	}
+
+	/**
+	 * Metoda koja dohvaća koder zaglavlja odgovora
+	 *
+	 * @return koder zaglavlja odgovora
+	 */
+	HpackEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Metoda koja šalje blok zaglavlja <b>block</b> toka <b>stream</b>
+	 * okvirom HEADERS i, ukoliko je blok veći od najvećeg okvira, okvirima
+	 * CONTINUATION
+	 *
+	 * @param stream
+	 *            tok kojem zaglavlja pripadaju
+	 * @param block
+	 *            kodirani blok zaglavlja
+	 * @param endStream
+	 *            <code>true</code> ukoliko odgovor nema tijela
+	 * @throws IOException
+	 *             ukoliko se okviri ne mogu poslati
+	 */
+	void writeHeaders(Http2Stream stream, ByteBuffer block, boolean endStream) throws IOException {
+		synchronized (writeLock) {
+			int type = FrameCodec.HEADERS;
+			int flags = endStream ? FrameCodec.FLAG_END_STREAM : 0;
+			do {
+				ByteBuffer fragment = slice(block, peerMaxFrameSize);
+				if (!block.hasRemaining()) {
+					flags |= FrameCodec.FLAG_END_HEADERS;
+				}
+				writeFrames(FrameCodec.frameHeader(fragment.remaining(), type, flags, stream.getId()), fragment);
+
+				type = FrameCodec.CONTINUATION;
+				flags = 0;
+			} while (block.hasRemaining());
+		}
+	}
+
+	/**
+	 * Metoda koja šalje sve preostale oktete spremnika <b>src</b> okvirima
+	 * DATA toka <b>stream</b>. Metoda čeka dok prozori kontrole toka ne
+	 * dopuste slanje
+	 *
+	 * @param stream
+	 *            tok kojem podaci pripadaju
+	 * @param src
+	 *            spremnik s podacima
+	 * @param endStream
+	 *            <code>true</code> ukoliko su ovo posljednji podaci toka
+	 * @throws IOException
+	 *             ukoliko je tok prekinut ili se okviri ne mogu poslati
+	 */
+	void writeData(Http2Stream stream, ByteBuffer src, boolean endStream) throws IOException {
+		int flags = endStream ? FrameCodec.FLAG_END_STREAM : 0;
+		if (!src.hasRemaining()) {
+			writeFrames(FrameCodec.frameHeader(0, FrameCodec.DATA, flags, stream.getId()));
+			return;
+		}
+
+		while (src.hasRemaining()) {
+			ByteBuffer fragment = slice(src, acquireWindow(stream, src.remaining()));
+			writeFrames(FrameCodec.frameHeader(fragment.remaining(), FrameCodec.DATA,
+					src.hasRemaining() ? 0 : flags, stream.getId()), fragment);
+		}
+	}
+
+	/**
+	 * Metoda koja prekida tok <b>stream</b> okvirom RST_STREAM
+	 *
+	 * @param stream
+	 *            tok koji se prekida
+	 * @param errorCode
+	 *            kod pogreške
+	 * @throws IOException
+	 *             ukoliko se okvir ne može poslati
+	 */
+	void resetStream(Http2Stream stream, int errorCode) throws IOException {
+		stream.markReset();
+		writeFrames(FrameCodec.rstStreamFrame(stream.getId(), errorCode));
+	}
+
+	/**
+	 * Metoda koja uklanja završeni tok <b>stream</b>. Ukoliko je to bio
+	 * posljednji tok veze koja se zatvara, veza se zatvara
+	 *
+	 * @param stream
+	 *            završeni tok
+	 */
+	void streamClosed(Http2Stream stream) {
+		streams.remove(stream.getId());
+		if (streams.isEmpty()) {
+			idleSince = System.nanoTime();
+			if (goingAway) {
+				closeOutput();
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje upravo pročitani okvir
+	 *
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se odgovor ne može poslati
+	 */
+	private void handleFrame() throws IOException {
+		int type = reader.getType();
+		int streamId = reader.getStreamId();
+		if (headerStreamId != 0 && type != FrameCodec.CONTINUATION) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Očekivao sam okvir CONTINUATION");
+		}
+
+		switch (type) {
+		case FrameCodec.DATA:
+			onData(streamId);
+			break;
+		case FrameCodec.HEADERS:
+			onHeaders(streamId);
+			break;
+		case FrameCodec.PRIORITY:
+			requireStream(streamId);
+			if (reader.getLength() != 5) {
+				throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, streamId, "Neispravan okvir PRIORITY");
+			}
+			break;
+		case FrameCodec.RST_STREAM:
+			onRstStream(streamId);
+			break;
+		case FrameCodec.SETTINGS:
+			onSettings(streamId);
+			break;
+		case FrameCodec.PUSH_PROMISE:
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Klijent ne smije slati okvir PUSH_PROMISE");
+		case FrameCodec.PING:
+			onPing(streamId);
+			break;
+		case FrameCodec.GOAWAY:
+			requireConnection(streamId);
+			goingAway = true;
+			break;
+		case FrameCodec.WINDOW_UPDATE:
+			onWindowUpdate(streamId);
+			break;
+		case FrameCodec.CONTINUATION:
+			onContinuation(streamId);
+			break;
+		default:
+			// nepoznate vrste okvira se zanemaruju (RFC 7540, poglavlje 4.1)
+			break;
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir DATA. Tijelo zahtjeva se zanemaruje
+	 * jer poslužitelj podržava samo metodu GET, ali se prozori veze i toka
+	 * odmah obnavljaju
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se odgovor ne može poslati
+	 */
+	private void onData(int streamId) throws IOException {
+		requireStream(streamId);
+		int length = reader.getLength();
+		if (length == 0) {
+			return;
+		}
+
+		if (streams.containsKey(streamId) && !reader.hasFlag(FrameCodec.FLAG_END_STREAM)) {
+			writeFrames(FrameCodec.windowUpdateFrame(0, length), FrameCodec.windowUpdateFrame(streamId, length));
+		} else {
+			writeFrames(FrameCodec.windowUpdateFrame(0, length));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir HEADERS i započinje skupljanje bloka
+	 * zaglavlja
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se odgovor ne može poslati
+	 */
+	private void onHeaders(int streamId) throws IOException {
+		requireStream(streamId);
+		ByteBuffer payload = reader.getPayload();
+		int padding = 0;
+		if (reader.hasFlag(FrameCodec.FLAG_PADDED)) {
+			requireRemaining(payload, 1);
+			padding = payload.get() & 0xFF;
+		}
+		if (reader.hasFlag(FrameCodec.FLAG_PRIORITY)) {
+			requireRemaining(payload, 5);
+			((Buffer) payload).position(payload.position() + 5);
+		}
+		requireRemaining(payload, padding);
+		((Buffer) payload).limit(payload.limit() - padding);
+
+		headerStreamId = streamId;
+		headerBlock = new ByteBufferOutputStream();
+		headerBlock.write(payload);
+		if (reader.hasFlag(FrameCodec.FLAG_END_HEADERS)) {
+			finishHeaders();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir CONTINUATION
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se odgovor ne može poslati
+	 */
+	private void onContinuation(int streamId) throws IOException {
+		if (headerStreamId == 0 || streamId != headerStreamId) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neočekivani okvir CONTINUATION");
+		}
+		if (headerBlock.size() + reader.getLength() > MAX_HEADER_LIST_SIZE) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Zaglavlja zahtjeva su prevelika");
+		}
+
+		headerBlock.write(reader.getPayload());
+		if (reader.hasFlag(FrameCodec.FLAG_END_HEADERS)) {
+			finishHeaders();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira skupljeni blok zaglavlja i otvara novi tok.
+	 * Blok se dekodira i kada se tok odbija jer dekoder mora pratiti stanje
+	 * dinamičke tablice
+	 *
+	 * @throws IOException
+	 *             ukoliko je blok neispravan ili se odgovor ne može poslati
+	 */
+	private void finishHeaders() throws IOException {
+		int streamId = headerStreamId;
+		headerStreamId = 0;
+		List<String[]> fields = new ArrayList<>();
+		try {
+			decoder.decode(headerBlock.toByteBuffer(), (name, value) -> fields.add(new String[] { name, value }));
+		} finally {
+			headerBlock.close();
+			headerBlock = null;
+		}
+
+		if (streams.containsKey(streamId)) {
+			// završna zaglavlja (trailers) se zanemaruju
+			return;
+		}
+		if (streamId % 2 == 0 || streamId <= lastStreamId) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neispravan identifikator toka: " + streamId);
+		}
+		lastStreamId = streamId;
+
+		if (goingAway || streams.size() >= maxConcurrentStreams) {
+			writeFrames(FrameCodec.rstStreamFrame(streamId, FrameCodec.REFUSED_STREAM));
+			return;
+		}
+
+		List<String> requestLines = toRequestLines(fields);
+		if (requestLines == null) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, streamId, "Neispravan zahtjev");
+		}
+		dispatch(openStream(streamId, requestLines));
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir RST_STREAM
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws Http2Exception
+	 *             ukoliko je okvir neispravan
+	 */
+	private void onRstStream(int streamId) throws Http2Exception {
+		requireStream(streamId);
+		if (reader.getLength() != 4) {
+			throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, "Neispravan okvir RST_STREAM");
+		}
+
+		Http2Stream stream = streams.get(streamId);
+		if (stream != null) {
+			stream.markReset();
+			synchronized (windowLock) {
+				windowLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir SETTINGS
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se potvrda ne može poslati
+	 */
+	private void onSettings(int streamId) throws IOException {
+		requireConnection(streamId);
+		int length = reader.getLength();
+		if (reader.hasFlag(FrameCodec.FLAG_ACK)) {
+			if (length != 0) {
+				throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, "Potvrda postavki ne smije imati sadržaj");
+			}
+			return;
+		}
+		if (length % FrameCodec.SETTING_SIZE != 0) {
+			throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, "Neispravan okvir SETTINGS");
+		}
+
+		applySettings(reader.getPayload());
+		writeFrames(FrameCodec.settingsAckFrame());
+	}
+
+	/**
+	 * Pomoćna metoda koja primjenjuje postavke klijenta iz spremnika
+	 * <b>payload</b>
+	 *
+	 * @param payload
+	 *            sadržaj okvira SETTINGS
+	 * @throws Http2Exception
+	 *             ukoliko neka od postavki nije ispravna
+	 */
+	private void applySettings(ByteBuffer payload) throws Http2Exception {
+		while (payload.remaining() >= FrameCodec.SETTING_SIZE) {
+			int id = payload.getShort() & 0xFFFF;
+			long value = payload.getInt() & 0xFFFFFFFFL;
+			switch (id) {
+			case FrameCodec.SETTINGS_ENABLE_PUSH:
+				if (value > 1) {
+					throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neispravna postavka ENABLE_PUSH");
+				}
+				break;
+			case FrameCodec.SETTINGS_INITIAL_WINDOW_SIZE:
+				if (value > FrameCodec.MAX_WINDOW_SIZE) {
+					throw new Http2Exception(FrameCodec.FLOW_CONTROL_ERROR, "Prevelik početni prozor: " + value);
+				}
+				updateInitialWindowSize((int) value);
+				break;
+			case FrameCodec.SETTINGS_MAX_FRAME_SIZE:
+				if (value < FrameCodec.DEFAULT_MAX_FRAME_SIZE || value > FrameCodec.MAX_ALLOWED_FRAME_SIZE) {
+					throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Neispravna veličina okvira: " + value);
+				}
+				peerMaxFrameSize = (int) value;
+				break;
+			default:
+				// koder ne koristi dinamičku tablicu, a poslužitelj ne šalje
+				// tokove pa ostale postavke na njega ne utječu
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja mijenja početni prozor tokova i za razliku stare i
+	 * nove vrijednosti mijenja prozore svih otvorenih tokova
+	 *
+	 * @param size
+	 *            novi početni prozor
+	 * @throws Http2Exception
+	 *             ukoliko bi prozor nekog toka prekoračio najveću vrijednost
+	 */
+	private void updateInitialWindowSize(int size) throws Http2Exception {
+		synchronized (windowLock) {
+			int delta = size - initialWindowSize;
+			initialWindowSize = size;
+			for (Http2Stream stream : streams.values()) {
+				if (delta > 0 && stream.sendWindow > FrameCodec.MAX_WINDOW_SIZE - delta) {
+					throw new Http2Exception(FrameCodec.FLOW_CONTROL_ERROR, "Prozor toka je prevelik");
+				}
+				stream.sendWindow += delta;
+			}
+			windowLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir PING
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws IOException
+	 *             ukoliko je okvir neispravan ili se odgovor ne može poslati
+	 */
+	private void onPing(int streamId) throws IOException {
+		requireConnection(streamId);
+		if (reader.getLength() != 8) {
+			throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, "Neispravan okvir PING");
+		}
+		if (!reader.hasFlag(FrameCodec.FLAG_ACK)) {
+			writeFrames(FrameCodec.pingAckFrame(reader.getPayload()));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir WINDOW_UPDATE
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira ili 0 za prozor veze
+	 * @throws Http2Exception
+	 *             ukoliko je okvir neispravan ili prozor prekorači najveću
+	 *             vrijednost
+	 */
+	private void onWindowUpdate(int streamId) throws Http2Exception {
+		if (reader.getLength() != 4) {
+			throw new Http2Exception(FrameCodec.FRAME_SIZE_ERROR, "Neispravan okvir WINDOW_UPDATE");
+		}
+		int increment = reader.getPayload().getInt() & FrameCodec.MAX_WINDOW_SIZE;
+		if (increment == 0) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, streamId, "Povećanje prozora ne smije biti 0");
+		}
+
+		synchronized (windowLock) {
+			if (streamId == 0) {
+				if (sendWindow > FrameCodec.MAX_WINDOW_SIZE - increment) {
+					throw new Http2Exception(FrameCodec.FLOW_CONTROL_ERROR, "Prozor veze je prevelik");
+				}
+				sendWindow += increment;
+			} else {
+				Http2Stream stream = streams.get(streamId);
+				if (stream == null) {
+					return;
+				}
+				if (stream.sendWindow > FrameCodec.MAX_WINDOW_SIZE - increment) {
+					throw new Http2Exception(FrameCodec.FLOW_CONTROL_ERROR, streamId, "Prozor toka je prevelik");
+				}
+				stream.sendWindow += increment;
+			}
+			windowLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja iz dekodiranih zaglavlja gradi retke zahtjeva u
+	 * obliku HTTP/1.1 (vidi {@link Http2Stream#getRequestLines()})
+	 *
+	 * @param fields
+	 *            dekodirana zaglavlja (naziv, vrijednost)
+	 * @return retke zahtjeva ili <code>null</code> ukoliko zahtjev nije
+	 *         ispravan
+	 */
+	static List<String> toRequestLines(List<String[]> fields) {
+		String method = null;
+		String path = null;
+		String scheme = null;
+		String authority = null;
+		StringBuilder cookies = null;
+		List<String> headers = new ArrayList<>();
+
+		for (String[] field : fields) {
+			String name = field[0];
+			String value = field[1];
+			if (name.startsWith(":")) {
+				// pseudo-zaglavlja moraju prethoditi ostalima
+				if (!headers.isEmpty() || cookies != null) {
+					return null;
+				}
+				switch (name) {
+				case ":method":
+					method = value;
+					break;
+				case ":path":
+					path = value;
+					break;
+				case ":scheme":
+					scheme = value;
+					break;
+				case ":authority":
+					authority = value;
+					break;
+				default:
+					return null;
+				}
+			} else if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+				return null;
+			} else if (name.equals("cookie")) {
+				cookies = cookies == null ? new StringBuilder(value) : cookies.append("; ").append(value);
+			} else if (name.equals("host")) {
+				authority = authority == null ? value : authority;
+			} else {
+				headers.add(name + ": " + value);
+			}
+		}
+
+		if (method == null || path == null || scheme == null || path.isEmpty()) {
+			return null;
+		}
+
+		List<String> lines = new ArrayList<>(headers.size() + 3);
+		lines.add(method + " " + path + " " + ServerUtil.DEFAULT_VERISON);
+		if (authority != null) {
+			lines.add("Host: " + authority);
+		}
+		if (cookies != null) {
+			lines.add("Cookie: " + cookies);
+		}
+		lines.addAll(headers);
+		return lines;
+	}
+
+	/**
+	 * Pomoćna metoda koja otvara novi tok
+	 *
+	 * @param streamId
+	 *            identifikator toka
+	 * @param requestLines
+	 *            retci zahtjeva u obliku HTTP/1.1
+	 * @return otvoreni tok
+	 */
+	private Http2Stream openStream(int streamId, List<String> requestLines) {
+		Http2Stream stream;
+		synchronized (windowLock) {
+			stream = new Http2Stream(this, streamId, requestLines, initialWindowSize);
+		}
+		streams.put(streamId, stream);
+		idleSince = NOT_IDLE;
+		return stream;
+	}
+
+	/**
+	 * Pomoćna metoda koja tok <b>stream</b> predaje obrađivaču
+	 * {@link #handler}. Ukoliko izvršitelj više ne prima poslove, tok se
+	 * odbija
+	 *
+	 * @param stream
+	 *            tok koji se obrađuje
+	 * @throws IOException
+	 *             ukoliko se okvir RST_STREAM ne može poslati
+	 */
+	private void dispatch(Http2Stream stream) throws IOException {
+		try {
+			executor.execute(() -> handler.handleStream(stream));
+		} catch (RejectedExecutionException e) {
+			resetStream(stream, FrameCodec.REFUSED_STREAM);
+			streamClosed(stream);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja prekida tok s identifikatorom <b>streamId</b> zbog
+	 * pogreške toka
+	 *
+	 * @param streamId
+	 *            identifikator toka
+	 * @param errorCode
+	 *            kod pogreške
+	 * @throws IOException
+	 *             ukoliko se okvir ne može poslati
+	 */
+	private void resetStream(int streamId, int errorCode) throws IOException {
+		Http2Stream stream = streams.get(streamId);
+		if (stream != null) {
+			stream.markReset();
+			synchronized (windowLock) {
+				windowLock.notifyAll();
+			}
+		}
+		writeFrames(FrameCodec.rstStreamFrame(streamId, errorCode));
+	}
+
+	/**
+	 * Pomoćna metoda koja čeka dok prozori veze i toka <b>stream</b> ne
+	 * dopuste slanje barem jednog okteta i zauzima najviše <b>wanted</b>
+	 * okteta (ali ne više od jednog okvira)
+	 *
+	 * @param stream
+	 *            tok koji šalje podatke
+	 * @param wanted
+	 *            broj okteta koji tok želi poslati
+	 * @return broj zauzetih okteta
+	 * @throws IOException
+	 *             ukoliko je tok prekinut, veza zatvorena ili je dretva
+	 *             prekinuta tijekom čekanja
+	 */
+	private int acquireWindow(Http2Stream stream, int wanted) throws IOException {
+		synchronized (windowLock) {
+			while (true) {
+				if (closed || stream.reset) {
+					throw new IOException("Tok " + stream.getId() + " je prekinut");
+				}
+
+				int length = Math.min(Math.min(wanted, peerMaxFrameSize), Math.min(sendWindow, stream.sendWindow));
+				if (length > 0) {
+					sendWindow -= length;
+					stream.sendWindow -= length;
+					return length;
+				}
+
+				try {
+					windowLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Čekanje na prozor toka je prekinuto");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja upisuje okvire <b>frames</b> u vezu. Okviri se pišu
+	 * pod ključem {@link #writeLock} pa se okviri različitih tokova ne
+	 * miješaju
+	 *
+	 * @param frames
+	 *            spremnici s okvirima
+	 * @throws IOException
+	 *             ukoliko je veza zatvorena ili se u nju ne može pisati
+	 */
+	private void writeFrames(ByteBuffer... frames) throws IOException {
+		synchronized (writeLock) {
+			if (closed) {
+				throw new IOException("Veza HTTP/2 je zatvorena");
+			}
+
+			long remaining = 0;
+			for (ByteBuffer frame : frames) {
+				remaining += frame.remaining();
+			}
+			while (remaining > 0) {
+				remaining -= out.write(frames);
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja šalje okvir GOAWAY s kodom <b>errorCode</b>.
+	 * Pogreške pri slanju se zanemaruju jer se veza ionako zatvara
+	 *
+	 * @param errorCode
+	 *            kod pogreške
+	 */
+	private void sendGoAway(int errorCode) {
+		try {
+			writeFrames(FrameCodec.goAwayFrame(lastStreamId, errorCode));
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja zatvara izlaznu stranu veze nakon uredno završenih
+	 * tokova. Veza se potpuno zatvara kada klijent zatvori svoju stranu, pa
+	 * klijent sigurno primi sve poslane okvire
+	 */
+	private void closeOutput() {
+		synchronized (writeLock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				channel.shutdownOutput();
+			} catch (IOException ignorable) {
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja zatvara vezu i prekida sve otvorene tokove
+	 */
+	private void close() {
+		closed = true;
+		for (Http2Stream stream : streams.values()) {
+			stream.markReset();
+		}
+		synchronized (windowLock) {
+			windowLock.notifyAll();
+		}
+		try {
+			channel.close();
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja iz spremnika <b>src</b> izdvaja najviše
+	 * <b>length</b> okteta i pomiče poziciju spremnika iza njih
+	 *
+	 * @param src
+	 *            spremnik iz kojeg se izdvajaju okteti
+	 * @param length
+	 *            najveći broj izdvojenih okteta
+	 * @return spremnik s izdvojenim oktetima
+	 */
+	private static ByteBuffer slice(ByteBuffer src, int length) {
+		ByteBuffer fragment = src.duplicate();
+		((Buffer) fragment).limit(src.position() + Math.min(length, src.remaining()));
+		((Buffer) src).position(fragment.limit());
+		return fragment;
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da se okvir odnosi na neki tok
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws Http2Exception
+	 *             ukoliko je identifikator toka 0
+	 */
+	private static void requireStream(int streamId) throws Http2Exception {
+		if (streamId == 0) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Okvir se mora odnositi na neki tok");
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da se okvir odnosi na čitavu vezu
+	 *
+	 * @param streamId
+	 *            identifikator toka okvira
+	 * @throws Http2Exception
+	 *             ukoliko identifikator toka nije 0
+	 */
+	private static void requireConnection(int streamId) throws Http2Exception {
+		if (streamId != 0) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Okvir se mora odnositi na čitavu vezu");
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da u spremniku <b>payload</b> ima barem
+	 * <b>count</b> okteta
+	 *
+	 * @param payload
+	 *            sadržaj okvira
+	 * @param count
+	 *            potreban broj okteta
+	 * @throws Http2Exception
+	 *             ukoliko u spremniku nema dovoljno okteta
+	 */
+	private static void requireRemaining(ByteBuffer payload, int count) throws Http2Exception {
+		if (payload.remaining() < count) {
+			throw new Http2Exception(FrameCodec.PROTOCOL_ERROR, "Okvir je prekratak");
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.IOException;
+
+/**
+ * Razred koji predstavlja pogrešku protokola HTTP/2. Uz poruku iznimka nosi
+ * kod pogreške (jedna od konstanti <code>*_ERROR</code> iz razreda
+ * {@link FrameCodec}) i identifikator toka na koji se pogreška odnosi.
+ * Pogreška s identifikatorom toka 0 je pogreška čitave veze i završava slanjem
+ * okvira GOAWAY, a ostale se pogreške odnose samo na jedan tok i završavaju
+ * slanjem okvira RST_STREAM.
+ *
+ * @author Davor Češljaš
+ */
+public class Http2Exception extends IOException {
+
+	/** Konstanta koja predstavlja serijski broj razreda */
+	private static final long serialVersionUID = 1L;
+
+	/** Članska varijabla koja predstavlja kod pogreške */
+	private final int errorCode;
+
+	/**
+	 * Članska varijabla koja predstavlja identifikator toka ili 0 ukoliko se
+	 * radi o pogrešci čitave veze
+	 */
+	private final int streamId;
+
+	/**
+	 * Konstruktor koji inicijalizira pogrešku čitave veze
+	 *
+	 * @param errorCode
+	 *            kod pogreške
+	 * @param message
+	 *            opis pogreške
+	 */
+	public Http2Exception(int errorCode, String message) {
+		this(errorCode, 0, message);
+	}
+
+	/**
+	 * Konstruktor koji inicijalizira pogrešku toka <b>streamId</b>
+	 *
+	 * @param errorCode
+	 *            kod pogreške
+	 * @param streamId
+	 *            identifikator toka ili 0 ukoliko se radi o pogrešci čitave
+	 *            veze
+	 * @param message
+	 *            opis pogreške
+	 */
+	public Http2Exception(int errorCode, int streamId, String message) {
+		super(message);
+		this.errorCode = errorCode;
+		this.streamId = streamId;
+	}
+
+	/**
+	 * Metoda koja dohvaća kod pogreške
+	 *
+	 * @return kod pogreške
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * Metoda koja dohvaća identifikator toka na koji se pogreška odnosi
+	 *
+	 * @return identifikator toka ili 0 ukoliko se radi o pogrešci čitave veze
+	 */
+	public int getStreamId() {
+		return streamId;
+	}
+}
@@ -0,0 +1,357 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import hr.fer.zemris.java.webserver.ServerUtil;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja jedan tok veze HTTP/2, odnosno jedan zahtjev i
+ * odgovor na njega. Zahtjev je preveden u retke zahtjeva HTTP/1.1
+ * ({@link #getRequestLines()}), a odgovor se piše u izlazni tok
+ * {@link #getOutputStream()} upravo onako kako bi se pisao u vezu HTTP/1.1.
+ * Izlazni tok iz statusnog retka i zaglavlja odgovora gradi okvir HEADERS, a
+ * tijelo odgovora šalje okvirima DATA uz poštivanje kontrole toka. Tako
+ * postojeći načini stvaranja odgovora (radnici, skripte i statičke datoteke)
+ * rade bez izmjena.
+ *
+ * @see Http2Connection
+ *
+ * @author Davor Češljaš
+ */
+public class Http2Stream {
+
+	/**
+	 * Konstanta koja predstavlja zaglavlja vezana uz jednu vezu HTTP/1.1 koja
+	 * se ne smiju slati u HTTP/2 (RFC 7540, poglavlje 8.1.2.2)
+	 */
+	private static final Set<String> CONNECTION_HEADERS = Collections.unmodifiableSet(new HashSet<>(
+			Arrays.asList("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade")));
+
+	/** Konstanta koja predstavlja oznaku kraja zaglavlja odgovora */
+	private static final byte[] HEADER_END = ServerUtil.HEADER_TERMINATOR.getBytes();
+
+	/** Konstanta koja predstavlja prazan spremnik */
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	/** Članska varijabla koja predstavlja vezu kojoj tok pripada */
+	private final Http2Connection connection;
+
+	/** Članska varijabla koja predstavlja identifikator toka */
+	private final int id;
+
+	/** Članska varijabla koja predstavlja retke zahtjeva u obliku HTTP/1.1 */
+	private final List<String> requestLines;
+
+	/** Članska varijabla koja predstavlja izlazni tok odgovora */
+	private final ResponseOutputStream output = new ResponseOutputStream();
+
+	/**
+	 * Članska varijabla koja predstavlja broj okteta koje poslužitelj smije
+	 * poslati ovim tokom. Čita se i mijenja isključivo uz zaključan prozor
+	 * veze
+	 */
+	int sendWindow;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada je
+	 * tok prekinut (okvirom RST_STREAM ili zatvaranjem veze)
+	 */
+	volatile boolean reset;
+
+	/**
+	 * Članska varijabla koja predstavlja slušača kojeg se obavještava o
+	 * prekidu toka ili <code>null</code>
+	 */
+	private Runnable resetListener;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param connection
+	 *            veza kojoj tok pripada
+	 * @param id
+	 *            identifikator toka
+	 * @param requestLines
+	 *            retci zahtjeva u obliku HTTP/1.1
+	 * @param sendWindow
+	 *            početna veličina prozora toka
+	 */
+	Http2Stream(Http2Connection connection, int id, List<String> requestLines, int sendWindow) {
+		this.connection = connection;
+		this.id = id;
+		this.requestLines = requestLines;
+		this.sendWindow = sendWindow;
+	}
+
+	/**
+	 * Metoda koja dohvaća identifikator toka
+	 *
+	 * @return identifikator toka
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Metoda koja dohvaća retke zahtjeva u obliku HTTP/1.1. Prvi redak je
+	 * oblika "METODA putanja HTTP/1.1", a slijede zaglavlja (pseudo-zaglavlje
+	 * ":authority" prevedeno je u zaglavlje "Host", a sva zaglavlja "cookie"
+	 * spojena su u jedno zaglavlje "Cookie")
+	 *
+	 * @return retke zahtjeva
+	 */
+	public List<String> getRequestLines() {
+		return requestLines;
+	}
+
+	/**
+	 * Metoda koja dohvaća izlazni tok u koji se piše odgovor u obliku
+	 * HTTP/1.1. Zatvaranjem toka završava se odgovor
+	 *
+	 * @return izlazni tok odgovora
+	 */
+	public OutputStream getOutputStream() {
+		return output;
+	}
+
+	/**
+	 * Metoda koja provjerava je li tok prekinut
+	 *
+	 * @return <code>true</code> ukoliko je tok prekinut, <code>false</code>
+	 *         inače
+	 */
+	public boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 * Metoda koja registrira slušača <b>listener</b> kojeg se obavještava kada
+	 * se tok prekine (npr. kako bi se otkazala obrada zahtjeva). Ukoliko je
+	 * tok već prekinut, slušač se poziva odmah
+	 *
+	 * @param listener
+	 *            slušač koji se registrira
+	 */
+	public void onReset(Runnable listener) {
+		synchronized (this) {
+			if (!reset) {
+				resetListener = listener;
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Metoda koja označava tok prekinutim i obavještava slušača registriranog
+	 * metodom {@link #onReset(Runnable)}
+	 */
+	void markReset() {
+		Runnable listener;
+		synchronized (this) {
+			if (reset) {
+				return;
+			}
+			reset = true;
+			listener = resetListener;
+		}
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Privatni razred koji predstavlja izlazni tok odgovora. Okteti se do kraja
+	 * zaglavlja odgovora skupljaju u spremnik, a zatim se zaglavlje kodira
+	 * postupkom HPACK. Okvir HEADERS šalje se zajedno s prvim oktetima tijela
+	 * ili, ako tijela nema, pri zatvaranju toka. Tok je ujedno i kanal pa se
+	 * izravni spremnici šalju bez kopiranja.
+	 *
+	 * @author Davor Češljaš
+	 */
+	private class ResponseOutputStream extends OutputStream implements GatheringByteChannel {
+
+		/**
+		 * Članska varijabla koja predstavlja oktete zaglavlja odgovora ili
+		 * <code>null</code> ukoliko je zaglavlje već pročitano
+		 */
+		private ByteBufferOutputStream header = new ByteBufferOutputStream();
+
+		/**
+		 * Članska varijabla koja predstavlja broj do sada prepoznatih okteta
+		 * oznake kraja zaglavlja
+		 */
+		private int matched;
+
+		/**
+		 * Članska varijabla koja predstavlja kodirani blok zaglavlja koji još
+		 * nije poslan ili <code>null</code>
+		 */
+		private ByteBufferOutputStream headerBlock;
+
+		/** Članska varijabla koja predstavlja zastavicu zatvorenosti toka */
+		private boolean closed;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			write(ByteBuffer.wrap(b, off, len));
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int length = src.remaining();
+			consume(src);
+			return length;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			long total = 0;
+			for (int i = offset; i < offset + length; i++) {
+				total += write(srcs[i]);
+			}
+			return total;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) throws IOException {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return !closed;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+
+			try {
+				if (reset) {
+					return;
+				}
+				if (header != null) {
+					// odgovor je završio prije kraja zaglavlja
+					connection.resetStream(Http2Stream.this, FrameCodec.INTERNAL_ERROR);
+				} else if (headerBlock != null) {
+					sendHeaders(true);
+				} else {
+					connection.writeData(Http2Stream.this, EMPTY, true);
+				}
+			} finally {
+				if (header != null) {
+					header.close();
+				}
+				if (headerBlock != null) {
+					headerBlock.close();
+				}
+				connection.streamClosed(Http2Stream.this);
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja obrađuje sve preostale oktete spremnika
+		 * <b>src</b>
+		 *
+		 * @param src
+		 *            spremnik s oktetima odgovora
+		 * @throws IOException
+		 *             ukoliko je tok zatvoren ili prekinut ili se odgovor ne
+		 *             može poslati
+		 */
+		private void consume(ByteBuffer src) throws IOException {
+			if (closed || reset) {
+				throw new IOException("Tok " + id + " je zatvoren");
+			}
+
+			while (header != null && src.hasRemaining()) {
+				byte b = src.get();
+				header.write(b);
+				matched = b == HEADER_END[matched] ? matched + 1 : b == HEADER_END[0] ? 1 : 0;
+				if (matched == HEADER_END.length) {
+					encodeHeaders();
+				}
+			}
+
+			if (src.hasRemaining()) {
+				sendHeaders(false);
+				connection.writeData(Http2Stream.this, src, false);
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja statusni redak i zaglavlja odgovora HTTP/1.1
+		 * kodira u blok zaglavlja {@link #headerBlock}
+		 *
+		 * @throws IOException
+		 *             ukoliko statusni redak nije ispravan
+		 */
+		private void encodeHeaders() throws IOException {
+			ByteBuffer raw = header.toByteBuffer();
+			List<String> lines = ServerUtil.parseRequestLines(raw, raw.limit());
+			header.close();
+			header = null;
+
+			String[] status = lines.isEmpty() ? new String[0] : lines.get(0).split(" ", 3);
+			if (status.length < 2) {
+				throw new IOException("Neispravan statusni redak odgovora");
+			}
+
+			HpackEncoder encoder = connection.getEncoder();
+			headerBlock = new ByteBufferOutputStream();
+			encoder.encode(":status", status[1], headerBlock);
+			for (String line : lines.subList(1, lines.size())) {
+				int colon = line.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+
+				String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+				if (!CONNECTION_HEADERS.contains(name)) {
+					encoder.encode(name, line.substring(colon + 1).trim(), headerBlock);
+				}
+			}
+		}
+
+		/**
+		 * Pomoćna metoda koja šalje kodirani blok zaglavlja ukoliko on još
+		 * nije poslan
+		 *
+		 * @param endStream
+		 *            <code>true</code> ukoliko odgovor nema tijela
+		 * @throws IOException
+		 *             ukoliko se okvir ne može poslati
+		 */
+		private void sendHeaders(boolean endStream) throws IOException {
+			if (headerBlock == null) {
+				return;
+			}
+
+			try {
+				connection.writeHeaders(Http2Stream.this, headerBlock.toByteBuffer(), endStream);
+			} finally {
+				headerBlock.close();
+				headerBlock = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package hr.fer.zemris.java.webserver.http2;
+
+/**
+ * Sučelje koje predstavlja obrađivača jednog toka veze HTTP/2. Veza
+ * {@link Http2Connection} svaki novi tok predaje obrađivaču na zasebnoj
+ * dretvi, a obrađivač je dužan u izlazni tok
+ * {@link Http2Stream#getOutputStream()} zapisati odgovor i potom ga zatvoriti.
+ *
+ * <p>
+ * Napomena: ovo sučelje je funkcionalno sučelje i time se može koristiti u
+ * lambda-izrazima
+ * </p>
+ *
+ * @see Http2Connection
+ *
+ * @author Davor Češljaš
+ */
+public interface IStreamHandler {
+
+	/**
+	 * Metoda koja obrađuje zahtjev toka <b>stream</b> i šalje odgovor na njega
+	 *
+	 * @param stream
+	 *            tok koji se obrađuje
+	 */
+	void handleStream(Http2Stream stream);
+}
@@ -0,0 +1,441 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+import hr.fer.zemris.java.webserver.http2.Http2Client;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry.RouteClass;
+
+/**
+ * Program koji pokreće {@link SmartHttpServer} iz predane konfiguracijske
+ * datoteke te ga opterećuje zahtjevima s iste računalne adrese. Zahtjevi se
+ * biraju prema mješavini prometa {@link TrafficMix} (statičke datoteke,
+ * skripte i radnici), a rezultati se ispisuju kao percentili latencije i
+ * propusnost ({@link LoadReport}).
+ * <p>
+ * Podržana su dva načina rada:
+ * <ul>
+ * <li><b>open</b> - zahtjevi pristižu stalnom brzinom (<code>--rate</code>)
+ * neovisno o tome koliko brzo poslužitelj odgovara. Latencija se mjeri od
+ * trenutka u kojem je zahtjev trebao biti poslan, pa uključuje i čekanje na
+ * slobodnu vezu.</li>
+ * <li><b>closed</b> - svaka od <code>--connections</code> veza šalje idući
+ * zahtjev tek nakon što primi odgovor na prethodni. Ukoliko je zadan i
+ * <code>--rate</code>, veze se usporavaju na zadanu brzinu, a latencije se
+ * ispravljaju metodom
+ * {@link hr.fer.zemris.java.webserver.metrics.LatencyHistogram#recordMicros(long, long)}
+ * (ispravak koordiniranog propusta).</li>
+ * </ul>
+ * Uz <code>--protocol h2c</code> zahtjevi se umjesto zasebnim vezama
+ * HTTP/1.1 šalju kao tokovi jedne zajedničke veze HTTP/2 ({@link Http2Client}),
+ * a <code>--connections</code> tada predstavlja broj istovremenih tokova.
+ * Primjer pokretanja:
+ * <code>java hr.fer.zemris.java.webserver.loadgen.LoadGenerator config/server.properties --mode open --rate 500 --duration 30</code>
+ * </p>
+ *
+ * @author Davor Češljaš
+ */
+public class LoadGenerator {
+
+	/** Konstanta koja predstavlja vremensko ograničenje veze u milisekundama */
+	private static final int SOCKET_TIMEOUT = 10_000;
+
+	/** Konstanta koja predstavlja uspješan statusni redak odgovora */
+	private static final byte[] OK_STATUS = "HTTP/1.1 200".getBytes(StandardCharsets.US_ASCII);
+
+	/** Konstanta koja predstavlja pretpostavljene vrijednosti argumenata */
+	private static final String[][] DEFAULT_OPTIONS = { { "mode", "open" }, { "rate", "200" },
+			{ "connections", "16" }, { "duration", "30" }, { "warmup", "5" }, { "mix", TrafficMix.DEFAULT_MIX },
+			{ "protocol", "http1" } };
+
+	/** Članska varijabla koja predstavlja adresu poslužitelja */
+	private final InetSocketAddress address;
+
+	/** Članska varijabla koja predstavlja mješavinu prometa */
+	private final TrafficMix mix;
+
+	/** Članska varijabla koja predstavlja način rada ("open" ili "closed") */
+	private final boolean openLoop;
+
+	/** Članska varijabla koja predstavlja ciljanu brzinu (zahtjeva u sekundi) */
+	private final double rate;
+
+	/** Članska varijabla koja predstavlja broj istovremenih veza */
+	private final int connections;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena ukoliko
+	 * se zahtjevi šalju protokolom HTTP/2
+	 */
+	private final boolean http2;
+
+	/**
+	 * Članska varijabla koja predstavlja klijenta HTTP/2 trenutnog mjerenja ili
+	 * <code>null</code>
+	 */
+	private volatile Http2Client client;
+
+	/**
+	 * Konstruktor koji inicijalizira generator opterećenja
+	 *
+	 * @param address
+	 *            adresa poslužitelja
+	 * @param mix
+	 *            mješavina prometa
+	 * @param openLoop
+	 *            <code>true</code> ukoliko zahtjevi pristižu stalnom brzinom,
+	 *            <code>false</code> ukoliko veze čekaju odgovor
+	 * @param rate
+	 *            ciljana brzina u zahtjevima po sekundi (0 znači bez
+	 *            ograničenja u načinu "closed")
+	 * @param connections
+	 *            broj istovremenih veza (tokova ukoliko je <b>http2</b>
+	 *            postavljen)
+	 * @param http2
+	 *            <code>true</code> ukoliko se zahtjevi šalju kao tokovi jedne
+	 *            veze HTTP/2
+	 * @throws IllegalArgumentException
+	 *             ukoliko je broj veza manji od 1 ili brzina nije ispravna
+	 */
+	public LoadGenerator(InetSocketAddress address, TrafficMix mix, boolean openLoop, double rate,
+			int connections, boolean http2) {
+		if (connections < 1) {
+			throw new IllegalArgumentException("Broj veza mora biti barem 1, a predan je: " + connections);
+		}
+		if (rate < 0 || (openLoop && rate == 0)) {
+			throw new IllegalArgumentException("Neispravna brzina zahtjeva: " + rate);
+		}
+
+		this.address = address;
+		this.mix = mix;
+		this.openLoop = openLoop;
+		this.rate = rate;
+		this.connections = connections;
+		this.http2 = http2;
+	}
+
+	/**
+	 * Metoda koja opterećuje poslužitelj <b>seconds</b> sekundi i vraća
+	 * izvještaj s rezultatima
+	 *
+	 * @param seconds
+	 *            trajanje mjerenja u sekundama
+	 * @return izvještaj s rezultatima mjerenja
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta tijekom čekanja na dretve
+	 *             generatora
+	 * @throws IOException
+	 *             ukoliko se ne može otvoriti veza HTTP/2
+	 */
+	public LoadReport run(long seconds) throws InterruptedException, IOException {
+		if (http2) {
+			client = new Http2Client(address);
+		}
+
+		try {
+			return runThreads(seconds);
+		} finally {
+			if (client != null) {
+				client.close();
+				client = null;
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja pokreće {@link #connections} dretvi generatora na
+	 * <b>seconds</b> sekundi i spaja njihove izvještaje
+	 *
+	 * @param seconds
+	 *            trajanje mjerenja u sekundama
+	 * @return izvještaj s rezultatima mjerenja
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta tijekom čekanja na dretve
+	 *             generatora
+	 */
+	private LoadReport runThreads(long seconds) throws InterruptedException {
+		long startNanos = System.nanoTime();
+		long endNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+		AtomicLong sequence = new AtomicLong();
+
+		List<Thread> threads = new ArrayList<>(connections);
+		List<LoadReport> reports = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			LoadReport report = new LoadReport();
+			Runnable job = openLoop ? () -> runOpen(report, sequence, startNanos, endNanos)
+					: () -> runClosed(report, endNanos);
+			Thread thread = new Thread(job, "loadgen-" + i);
+			thread.setDaemon(true);
+
+			reports.add(report);
+			threads.add(thread);
+			thread.start();
+		}
+
+		LoadReport merged = new LoadReport();
+		for (int i = 0; i < connections; i++) {
+			threads.get(i).join();
+			merged.merge(reports.get(i));
+		}
+		return merged;
+	}
+
+	/**
+	 * Pomoćna metoda koja izvodi jednu dretvu načina "open". Zahtjev s rednim
+	 * brojem <i>n</i> trebao bi biti poslan u trenutku
+	 * <code>startNanos + n / rate</code>, a latencija se mjeri upravo od tog
+	 * trenutka.
+	 *
+	 * @param report
+	 *            izvještaj ove dretve
+	 * @param sequence
+	 *            brojač zahtjeva zajednički svim dretvama
+	 * @param startNanos
+	 *            početak mjerenja
+	 * @param endNanos
+	 *            kraj mjerenja
+	 */
+	private void runOpen(LoadReport report, AtomicLong sequence, long startNanos, long endNanos) {
+		double intervalNanos = 1e9 / rate;
+		while (true) {
+			long intendedNanos = startNanos + (long) (sequence.getAndIncrement() * intervalNanos);
+			if (intendedNanos >= endNanos) {
+				return;
+			}
+
+			parkUntil(intendedNanos);
+			RouteClass route = mix.nextRoute();
+			boolean success = send(mix.nextPath(route));
+			recordResult(report, route, success, System.nanoTime() - intendedNanos, 0);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja izvodi jednu dretvu načina "closed". Ukoliko je
+	 * zadana ciljana brzina, svaka veza šalje zahtjeve s razmakom
+	 * <code>connections / rate</code> sekundi.
+	 *
+	 * @param report
+	 *            izvještaj ove dretve
+	 * @param endNanos
+	 *            kraj mjerenja
+	 */
+	private void runClosed(LoadReport report, long endNanos) {
+		long intervalNanos = rate == 0 ? 0 : (long) (1e9 * connections / rate);
+		long nextNanos = System.nanoTime();
+		while (nextNanos < endNanos) {
+			parkUntil(nextNanos);
+			RouteClass route = mix.nextRoute();
+			long sentNanos = System.nanoTime();
+			boolean success = send(mix.nextPath(route));
+			long now = System.nanoTime();
+			recordResult(report, route, success, now - sentNanos, TimeUnit.NANOSECONDS.toMicros(intervalNanos));
+
+			nextNanos = intervalNanos == 0 ? now : Math.max(nextNanos + intervalNanos, now);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja bilježi ishod jednog zahtjeva
+	 *
+	 * @param report
+	 *            izvještaj u koji se ishod bilježi
+	 * @param route
+	 *            vrsta zahtjeva
+	 * @param success
+	 *            <code>true</code> ukoliko je zahtjev uspio
+	 * @param nanos
+	 *            latencija zahtjeva u nanosekundama
+	 * @param intervalMicros
+	 *            očekivani razmak između zahtjeva jedne veze u mikrosekundama
+	 *            ili 0
+	 */
+	private static void recordResult(LoadReport report, RouteClass route, boolean success, long nanos,
+			long intervalMicros) {
+		if (!success) {
+			report.recordError(route);
+			return;
+		}
+		report.getLatency(route).recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos), intervalMicros);
+	}
+
+	/**
+	 * Pomoćna metoda koja šalje jedan GET zahtjev na putanju <b>path</b> i
+	 * čita čitav odgovor. Poslužitelj nakon svakog odgovora zatvara vezu, pa
+	 * se za svaki zahtjev otvara nova veza. Ukoliko je otvorena veza HTTP/2,
+	 * zahtjev se šalje kao novi tok te veze.
+	 *
+	 * @param path
+	 *            putanja zahtjeva
+	 * @return <code>true</code> ukoliko je odgovor stigao sa statusom 200,
+	 *         <code>false</code> inače
+	 */
+	private boolean send(String path) {
+		Http2Client client = this.client;
+		if (client != null) {
+			try {
+				return client.get(path).get(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS).getStatus() == 200;
+			} catch (ExecutionException | TimeoutException e) {
+				return false;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		try (Socket socket = new Socket()) {
+			socket.connect(address, SOCKET_TIMEOUT);
+			socket.setSoTimeout(SOCKET_TIMEOUT);
+			socket.setTcpNoDelay(true);
+
+			OutputStream os = socket.getOutputStream();
+			os.write(("GET " + path + " HTTP/1.1\r\nHost: " + address.getHostString() + ":" + address.getPort()
+					+ "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			os.flush();
+
+			return readResponse(socket.getInputStream());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja čita odgovor do kraja toka i provjerava statusni
+	 * redak
+	 *
+	 * @param is
+	 *            ulazni tok veze
+	 * @return <code>true</code> ukoliko odgovor počinje s
+	 *         {@link #OK_STATUS}
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	private static boolean readResponse(InputStream is) throws IOException {
+		byte[] buffer = new byte[8192];
+		int total = 0;
+		boolean ok = true;
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			for (int i = 0; i < read && total + i < OK_STATUS.length; i++) {
+				ok &= buffer[i] == OK_STATUS[total + i];
+			}
+			total += read;
+		}
+		return ok && total >= OK_STATUS.length;
+	}
+
+	/**
+	 * Pomoćna metoda koja čeka do trenutka <b>deadlineNanos</b>
+	 *
+	 * @param deadlineNanos
+	 *            trenutak (prema {@link System#nanoTime()}) do kojeg se čeka
+	 */
+	private static void parkUntil(long deadlineNanos) {
+		long remaining;
+		while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja parsira argumente oblika <code>--ime vrijednost</code>
+	 * koji slijede putanju do konfiguracijske datoteke
+	 *
+	 * @param args
+	 *            argumenti naredbenog retka
+	 * @return {@link Map} imena argumenata i njihovih vrijednosti
+	 * @throws IllegalArgumentException
+	 *             ukoliko argumenti nisu ispravni
+	 */
+	private static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String[] option : DEFAULT_OPTIONS) {
+			options.put(option[0], option[1]);
+		}
+
+		for (int i = 1; i < args.length; i += 2) {
+			if (!args[i].startsWith("--") || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Neispravan argument: " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		return options;
+	}
+
+	/**
+	 * Metoda od koje započinje rad ovog programa. Prvi argument je putanja do
+	 * konfiguracijske datoteke poslužitelja, a slijede neobavezni argumenti
+	 * <code>--mode open|closed</code>, <code>--rate</code>,
+	 * <code>--connections</code>, <code>--duration</code> (sekunde),
+	 * <code>--warmup</code> (sekunde), <code>--mix</code>,
+	 * <code>--protocol http1|h2c</code> i <code>--report</code> (datoteka u
+	 * koju se dodatno zapisuje izvještaj).
+	 *
+	 * @param args
+	 *            argumenti naredbenog retka
+	 * @throws IOException
+	 *             ukoliko se konfiguracija ne može pročitati ili se izvještaj
+	 *             ne može zapisati
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta tijekom mjerenja
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			throw new IllegalArgumentException("Očekivao sam putanju do konfiguracijske datoteke poslužitelja");
+		}
+
+		Map<String, String> options = parseOptions(args);
+		String mode = options.get("mode");
+		if (!mode.equals("open") && !mode.equals("closed")) {
+			throw new IllegalArgumentException("Način rada mora biti 'open' ili 'closed', a predan je: " + mode);
+		}
+		String protocol = options.get("protocol");
+		if (!protocol.equals("http1") && !protocol.equals("h2c")) {
+			throw new IllegalArgumentException("Protokol mora biti 'http1' ili 'h2c', a predan je: " + protocol);
+		}
+
+		SmartHttpServer server = new SmartHttpServer(args[0]);
+		server.start();
+
+		LoadGenerator generator = new LoadGenerator(new InetSocketAddress(server.getAddress(), server.getPort()),
+				new TrafficMix(options.get("mix")), mode.equals("open"), Double.parseDouble(options.get("rate")),
+				Integer.parseInt(options.get("connections")), protocol.equals("h2c"));
+
+		long warmup = Long.parseLong(options.get("warmup"));
+		if (warmup > 0) {
+			System.out.printf("Zagrijavanje %d s...%n", warmup);
+			generator.run(warmup);
+		}
+
+		long duration = Long.parseLong(options.get("duration"));
+		System.out.printf("Mjerenje %d s (mode=%s, protocol=%s, rate=%s, connections=%s, mix=%s)...%n", duration,
+				mode, protocol, options.get("rate"), options.get("connections"), options.get("mix"));
+		long start = System.nanoTime();
+		LoadReport report = generator.run(duration);
+		String text = report.format(System.nanoTime() - start);
+		System.out.print(text);
+
+		String reportFile = options.get("report");
+		if (reportFile != null) {
+			Files.write(Paths.get(reportFile), text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		server.drain(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS).join();
+	}
+}
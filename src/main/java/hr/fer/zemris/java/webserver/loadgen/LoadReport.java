@@ -0,0 +1,153 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import hr.fer.zemris.java.webserver.metrics.LatencyHistogram;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry.RouteClass;
+
+/**
+ * Razred koji predstavlja rezultate jednog mjerenja generatora opterećenja
+ * {@link LoadGenerator}. Za svaku vrstu zahtjeva ({@link RouteClass}) pamti se
+ * histogram latencija ({@link LatencyHistogram}) te broj neuspjelih zahtjeva.
+ * Svaka dretva generatora puni vlastiti primjerak ovog razreda, a primjerci se
+ * na kraju mjerenja spajaju metodom {@link #merge(LoadReport)}.
+ *
+ * @see LoadGenerator
+ *
+ * @author Davor Češljaš
+ */
+public class LoadReport {
+
+	/** Konstanta koja predstavlja percentile koji se ispisuju u izvještaju */
+	private static final double[] PERCENTILES = { 50, 75, 90, 99, 99.9 };
+
+	/** Konstanta koja predstavlja format retka izvještaja */
+	private static final String ROW_FORMAT = "%-8s %10s %8s %10s %9s %9s %9s %9s %9s %9s%n";
+
+	/** Članska varijabla koja predstavlja histograme latencija po vrstama */
+	private final Map<RouteClass, LatencyHistogram> latencies = new EnumMap<>(RouteClass.class);
+
+	/** Članska varijabla koja predstavlja broj neuspjelih zahtjeva po vrstama */
+	private final Map<RouteClass, long[]> errors = new EnumMap<>(RouteClass.class);
+
+	/**
+	 * Konstruktor koji inicijalizira prazan izvještaj
+	 */
+	public LoadReport() {
+		for (RouteClass route : RouteClass.values()) {
+			latencies.put(route, new LatencyHistogram());
+			errors.put(route, new long[1]);
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća histogram latencija zahtjeva vrste <b>route</b>
+	 *
+	 * @param route
+	 *            vrsta zahtjeva
+	 * @return histogram latencija zahtjeva vrste <b>route</b>
+	 */
+	public LatencyHistogram getLatency(RouteClass route) {
+		return latencies.get(route);
+	}
+
+	/**
+	 * Metoda koja bilježi jedan neuspjeli zahtjev vrste <b>route</b>
+	 *
+	 * @param route
+	 *            vrsta zahtjeva
+	 */
+	public void recordError(RouteClass route) {
+		errors.get(route)[0]++;
+	}
+
+	/**
+	 * Metoda koja sve rezultate iz izvještaja <b>other</b> dodaje u ovaj
+	 * izvještaj
+	 *
+	 * @param other
+	 *            izvještaj čiji se rezultati dodaju
+	 */
+	public void merge(LoadReport other) {
+		for (RouteClass route : RouteClass.values()) {
+			latencies.get(route).merge(other.latencies.get(route));
+			errors.get(route)[0] += other.errors.get(route)[0];
+		}
+	}
+
+	/**
+	 * Metoda koja oblikuje tekstualni izvještaj s brojem zahtjeva, propusnošću
+	 * i percentilima latencije (u milisekundama) za svaku vrstu zahtjeva te za
+	 * sve zahtjeve zajedno
+	 *
+	 * @param elapsedNanos
+	 *            trajanje mjerenja u nanosekundama
+	 * @return tekstualni izvještaj
+	 */
+	public String format(long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, ROW_FORMAT, "route", "requests", "errors", "req/s", "p50", "p75", "p90",
+				"p99", "p99.9", "max"));
+
+		LatencyHistogram total = new LatencyHistogram();
+		long totalErrors = 0;
+		for (RouteClass route : RouteClass.values()) {
+			LatencyHistogram latency = latencies.get(route);
+			long routeErrors = errors.get(route)[0];
+			if (latency.getCount() == 0 && routeErrors == 0) {
+				continue;
+			}
+
+			appendRow(sb, route.getLabel(), latency, routeErrors, seconds);
+			total.merge(latency);
+			totalErrors += routeErrors;
+		}
+		appendRow(sb, "total", total, totalErrors, seconds);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Pomoćna metoda koja u <b>sb</b> dodaje jedan redak izvještaja
+	 *
+	 * @param sb
+	 *            spremnik u koji se dodaje redak
+	 * @param label
+	 *            oznaka retka
+	 * @param latency
+	 *            histogram latencija
+	 * @param errorCount
+	 *            broj neuspjelih zahtjeva
+	 * @param seconds
+	 *            trajanje mjerenja u sekundama
+	 */
+	private static void appendRow(StringBuilder sb, String label, LatencyHistogram latency, long errorCount,
+			double seconds) {
+		Object[] row = new Object[4 + PERCENTILES.length + 1];
+		row[0] = label;
+		row[1] = Long.toString(latency.getCount());
+		row[2] = Long.toString(errorCount);
+		row[3] = String.format(Locale.ROOT, "%.1f", (latency.getCount() + errorCount) / seconds);
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			row[4 + i] = toMillis(latency.getValueAtPercentile(PERCENTILES[i]));
+		}
+		row[row.length - 1] = toMillis(latency.getMaxMicros());
+
+		sb.append(String.format(Locale.ROOT, ROW_FORMAT, row));
+	}
+
+	/**
+	 * Pomoćna metoda koja mikrosekunde zapisuje kao milisekunde s tri
+	 * decimale
+	 *
+	 * @param micros
+	 *            vrijednost u mikrosekundama
+	 * @return zapis vrijednosti u milisekundama
+	 */
+	private static String toMillis(long micros) {
+		return String.format(Locale.ROOT, "%.3f", micros / 1000.0);
+	}
+}
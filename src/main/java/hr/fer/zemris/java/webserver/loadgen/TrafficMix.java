@@ -0,0 +1,158 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry.RouteClass;
+
+/**
+ * Razred koji predstavlja mješavinu prometa koju generator opterećenja
+ * {@link LoadGenerator} šalje poslužitelju. Mješavina je zadana težinama
+ * pojedinih vrsta zahtjeva ({@link RouteClass}), a unutar svake vrste putanja
+ * se bira jednoliko iz popisa putanja te vrste. Pretpostavljene putanje
+ * odgovaraju sadržaju direktorija <code>webroot</code> i datoteke
+ * <code>config/workers.properties</code>.
+ * <p>
+ * Mješavina se zadaje u obliku <code>static:50,script:30,worker:20</code>.
+ * Vrste koje nisu navedene imaju težinu 0.
+ * </p>
+ *
+ * @see LoadGenerator
+ *
+ * @author Davor Češljaš
+ */
+public class TrafficMix {
+
+	/** Konstanta koja predstavlja pretpostavljenu mješavinu prometa */
+	public static final String DEFAULT_MIX = "static:50,script:30,worker:20";
+
+	/** Konstanta koja predstavlja pretpostavljene putanje pojedinih vrsta */
+	private static final Map<RouteClass, List<String>> DEFAULT_PATHS = new EnumMap<>(RouteClass.class);
+
+	static {
+		DEFAULT_PATHS.put(RouteClass.STATIC, Arrays.asList("/index.html", "/sample.txt", "/logo.png"));
+		DEFAULT_PATHS.put(RouteClass.SCRIPT,
+				Arrays.asList("/scripts/osnovni.smscr", "/scripts/fibonacci.smscr", "/scripts/brojPoziva.smscr"));
+		DEFAULT_PATHS.put(RouteClass.WORKER, Arrays.asList("/hello?name=Perica", "/calc?a=3&b=4", "/cw"));
+		DEFAULT_PATHS.put(RouteClass.EXT, Arrays.asList("/ext/EchoParams?x=1&y=2", "/ext/HelloWorker"));
+	}
+
+	/** Članska varijabla koja predstavlja vrste zahtjeva s težinom većom od 0 */
+	private final RouteClass[] routes;
+
+	/** Članska varijabla koja predstavlja kumulativne težine vrsta */
+	private final int[] cumulativeWeights;
+
+	/** Članska varijabla koja predstavlja zbroj svih težina */
+	private final int totalWeight;
+
+	/** Članska varijabla koja predstavlja putanje pojedinih vrsta */
+	private final Map<RouteClass, List<String>> paths;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda iz zapisa oblika
+	 * <code>static:50,script:30,worker:20</code>
+	 *
+	 * @param description
+	 *            zapis mješavine prometa
+	 * @throws IllegalArgumentException
+	 *             ukoliko zapis nije ispravan ili je zbroj težina 0
+	 */
+	public TrafficMix(String description) {
+		Map<RouteClass, Integer> weights = new EnumMap<>(RouteClass.class);
+		for (String part : description.split(",")) {
+			String[] routeWeight = part.trim().split(":");
+			if (routeWeight.length != 2) {
+				throw new IllegalArgumentException("Neispravan dio mješavine prometa: " + part);
+			}
+
+			RouteClass route = parseRoute(routeWeight[0].trim());
+			int weight = Integer.parseInt(routeWeight[1].trim());
+			if (weight < 0) {
+				throw new IllegalArgumentException("Težina ne smije biti negativna: " + part);
+			}
+			weights.put(route, weight);
+		}
+
+		List<RouteClass> nonZero = new ArrayList<>();
+		weights.forEach((route, weight) -> {
+			if (weight > 0) {
+				nonZero.add(route);
+			}
+		});
+		if (nonZero.isEmpty()) {
+			throw new IllegalArgumentException("Mješavina prometa mora imati barem jednu vrstu s težinom većom od 0");
+		}
+
+		this.routes = nonZero.toArray(new RouteClass[0]);
+		this.cumulativeWeights = new int[routes.length];
+		int sum = 0;
+		for (int i = 0; i < routes.length; i++) {
+			sum += weights.get(routes[i]);
+			cumulativeWeights[i] = sum;
+		}
+		this.totalWeight = sum;
+		this.paths = Collections.unmodifiableMap(DEFAULT_PATHS);
+	}
+
+	/**
+	 * Metoda koja slučajno odabire vrstu idućeg zahtjeva, u skladu s težinama
+	 *
+	 * @return vrstu idućeg zahtjeva
+	 */
+	public RouteClass nextRoute() {
+		int value = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (int i = 0; i < routes.length; i++) {
+			if (value < cumulativeWeights[i]) {
+				return routes[i];
+			}
+		}
+		return routes[routes.length - 1];
+	}
+
+	/**
+	 * Metoda koja slučajno odabire putanju zahtjeva vrste <b>route</b>
+	 *
+	 * @param route
+	 *            vrsta zahtjeva
+	 * @return putanja zahtjeva
+	 */
+	public String nextPath(RouteClass route) {
+		List<String> routePaths = paths.get(route);
+		return routePaths.get(ThreadLocalRandom.current().nextInt(routePaths.size()));
+	}
+
+	/**
+	 * Pomoćna metoda koja iz oznake vrste zahtjeva (npr. "static") dohvaća
+	 * pripadnu vrstu {@link RouteClass}
+	 *
+	 * @param label
+	 *            oznaka vrste zahtjeva
+	 * @return pripadna vrsta zahtjeva
+	 * @throws IllegalArgumentException
+	 *             ukoliko vrsta s predanom oznakom ne postoji
+	 */
+	private static RouteClass parseRoute(String label) {
+		for (RouteClass route : RouteClass.values()) {
+			if (route.getLabel().equalsIgnoreCase(label)) {
+				return route;
+			}
+		}
+		throw new IllegalArgumentException("Nepoznata vrsta zahtjeva: " + label);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < routes.length; i++) {
+			int weight = cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]);
+			sb.append(i == 0 ? "" : ",").append(routes[i].getLabel()).append(':').append(weight);
+		}
+		return sb.toString();
+	}
+}
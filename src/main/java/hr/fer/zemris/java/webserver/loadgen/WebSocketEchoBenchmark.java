@@ -0,0 +1,328 @@
+package hr.fer.zemris.java.webserver.loadgen;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+import hr.fer.zemris.java.webserver.metrics.LatencyHistogram;
+import hr.fer.zemris.java.webserver.websocket.WebSocketCodec;
+
+/**
+ * Program koji pokreće {@link SmartHttpServer} iz predane konfiguracijske
+ * datoteke i mjeri kašnjenje i propusnost veza WebSocket. Svaka od
+ * <code>--connections</code> veza nadograđuje se na putanji
+ * <code>--path</code> (na kojoj mora biti obrađivač koji vraća poruke, npr.
+ * {@link hr.fer.zemris.java.webserver.workers.EchoHandler}), a zatim šalje
+ * binarnu poruku od <code>--size</code> okteta i čeka da joj se ona vrati
+ * prije slanja iduće. Ispisuje se broj poruka u sekundi i percentili vremena
+ * povratka poruke u mikrosekundama.
+ * <p>
+ * Primjer pokretanja:
+ * <code>java hr.fer.zemris.java.webserver.loadgen.WebSocketEchoBenchmark config/server.properties --connections 16 --duration 10</code>
+ * </p>
+ *
+ * @see LoadGenerator
+ *
+ * @author Davor Češljaš
+ */
+public class WebSocketEchoBenchmark {
+
+	/** Konstanta koja predstavlja vremensko ograničenje veze u milisekundama */
+	private static final int SOCKET_TIMEOUT = 10_000;
+
+	/** Konstanta koja predstavlja percentile koji se ispisuju u izvještaju */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	/** Konstanta koja predstavlja pretpostavljene vrijednosti argumenata */
+	private static final String[][] DEFAULT_OPTIONS = { { "path", "/ws/echo" }, { "connections", "16" },
+			{ "duration", "10" }, { "warmup", "2" }, { "size", "64" } };
+
+	/** Članska varijabla koja predstavlja adresu poslužitelja */
+	private final InetSocketAddress address;
+
+	/** Članska varijabla koja predstavlja putanju obrađivača */
+	private final String path;
+
+	/** Članska varijabla koja predstavlja broj istovremenih veza */
+	private final int connections;
+
+	/** Članska varijabla koja predstavlja veličinu poruke u oktetima */
+	private final int size;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param address
+	 *            adresa poslužitelja
+	 * @param path
+	 *            putanja obrađivača koji vraća poruke
+	 * @param connections
+	 *            broj istovremenih veza
+	 * @param size
+	 *            veličina poruke u oktetima
+	 * @throws IllegalArgumentException
+	 *             ukoliko je broj veza manji od 1 ili je veličina negativna
+	 */
+	public WebSocketEchoBenchmark(InetSocketAddress address, String path, int connections, int size) {
+		if (connections < 1) {
+			throw new IllegalArgumentException("Broj veza mora biti barem 1, a predan je: " + connections);
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException("Veličina poruke ne smije biti negativna, a predana je: " + size);
+		}
+
+		this.address = address;
+		this.path = path;
+		this.connections = connections;
+		this.size = size;
+	}
+
+	/**
+	 * Metoda koja otvara {@link #connections} veza i <b>seconds</b> sekundi
+	 * šalje poruke. Vraća se histogram vremena povratka svih poruka, a broj
+	 * neuspjelih veza zapisuje se u <b>errors</b>
+	 *
+	 * @param seconds
+	 *            trajanje mjerenja u sekundama
+	 * @param errors
+	 *            polje od jednog elementa u koje se zapisuje broj neuspjelih
+	 *            veza
+	 * @return histogram vremena povratka poruka
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta tijekom čekanja na dretve
+	 *             mjerenja
+	 */
+	public LatencyHistogram run(long seconds, long[] errors) throws InterruptedException {
+		long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+		List<Thread> threads = new ArrayList<>(connections);
+		List<LatencyHistogram> histograms = new ArrayList<>(connections);
+		boolean[] failed = new boolean[connections];
+		for (int i = 0; i < connections; i++) {
+			LatencyHistogram histogram = new LatencyHistogram();
+			int index = i;
+			Thread thread = new Thread(() -> {
+				try {
+					runConnection(histogram, endNanos);
+				} catch (IOException e) {
+					failed[index] = true;
+				}
+			}, "ws-bench-" + i);
+			thread.setDaemon(true);
+
+			histograms.add(histogram);
+			threads.add(thread);
+			thread.start();
+		}
+
+		LatencyHistogram merged = new LatencyHistogram();
+		for (int i = 0; i < connections; i++) {
+			threads.get(i).join();
+			merged.merge(histograms.get(i));
+			if (failed[i]) {
+				errors[0]++;
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Pomoćna metoda koja izvodi jednu vezu: nadograđuje je na WebSocket,
+	 * šalje poruke do trenutka <b>endNanos</b> i na kraju uredno zatvara vezu
+	 *
+	 * @param histogram
+	 *            histogram u koji se bilježe vremena povratka poruka
+	 * @param endNanos
+	 *            kraj mjerenja
+	 * @throws IOException
+	 *             ukoliko nadogradnja nije uspjela, poruka nije vraćena ili
+	 *             je veza prekinuta
+	 */
+	private void runConnection(LatencyHistogram histogram, long endNanos) throws IOException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		byte[] payload = new byte[size];
+		random.nextBytes(payload);
+		byte[] mask = new byte[WebSocketCodec.MASK_SIZE];
+
+		try (Socket socket = new Socket()) {
+			socket.connect(address, SOCKET_TIMEOUT);
+			socket.setSoTimeout(SOCKET_TIMEOUT);
+			socket.setTcpNoDelay(true);
+			OutputStream os = socket.getOutputStream();
+			DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			handshake(os, is);
+
+			while (System.nanoTime() < endNanos) {
+				random.nextBytes(mask);
+				ByteBuffer frame = WebSocketCodec.frame(WebSocketCodec.BINARY, true, ByteBuffer.wrap(payload), mask);
+
+				long sentNanos = System.nanoTime();
+				os.write(frame.array(), frame.position(), frame.remaining());
+				os.flush();
+				if (readFrame(is) != WebSocketCodec.BINARY) {
+					throw new IOException("Poslužitelj nije vratio poruku");
+				}
+				histogram.record(System.nanoTime() - sentNanos);
+			}
+
+			random.nextBytes(mask);
+			ByteBuffer close = WebSocketCodec.frame(WebSocketCodec.CLOSE, true,
+					WebSocketCodec.closePayload(WebSocketCodec.NORMAL_CLOSURE, ""), mask);
+			os.write(close.array(), close.position(), close.remaining());
+			os.flush();
+			while (readFrame(is) != WebSocketCodec.CLOSE) {
+				// preostali okviri se zanemaruju
+			}
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja šalje zahtjev za nadogradnjom veze i provjerava
+	 * odgovor poslužitelja
+	 *
+	 * @param os
+	 *            izlazni tok veze
+	 * @param is
+	 *            ulazni tok veze
+	 * @throws IOException
+	 *             ukoliko poslužitelj nije prihvatio nadogradnju
+	 */
+	private void handshake(OutputStream os, DataInputStream is) throws IOException {
+		byte[] nonce = new byte[16];
+		ThreadLocalRandom.current().nextBytes(nonce);
+		String key = Base64.getEncoder().encodeToString(nonce);
+
+		os.write(("GET " + path + " HTTP/1.1\r\nHost: " + address.getHostString() + ":" + address.getPort()
+				+ "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Key: " + key
+				+ "\r\nSec-WebSocket-Version: " + WebSocketCodec.VERSION + "\r\n\r\n")
+						.getBytes(StandardCharsets.US_ASCII));
+		os.flush();
+
+		StringBuilder response = new StringBuilder();
+		while (response.length() < 4 || !response.substring(response.length() - 4).equals("\r\n\r\n")) {
+			response.append((char) is.readUnsignedByte());
+		}
+		if (!response.toString().startsWith("HTTP/1.1 101")
+				|| response.indexOf(WebSocketCodec.acceptKey(key)) == -1) {
+			throw new IOException("Poslužitelj nije prihvatio nadogradnju veze");
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja čita jedan (nemaskirani) okvir poslužitelja
+	 *
+	 * @param is
+	 *            ulazni tok veze
+	 * @return vrsta pročitanog okvira
+	 * @throws IOException
+	 *             ukoliko je veza prekinuta
+	 */
+	private static int readFrame(DataInputStream is) throws IOException {
+		int opcode = is.readUnsignedByte() & 0x0F;
+		long length = is.readUnsignedByte() & 0x7F;
+		if (length == 126) {
+			length = is.readUnsignedShort();
+		} else if (length == 127) {
+			length = is.readLong();
+		}
+
+		while (length > 0) {
+			length -= is.skipBytes((int) Math.min(length, Integer.MAX_VALUE));
+		}
+		return opcode;
+	}
+
+	/**
+	 * Pomoćna metoda koja parsira argumente oblika <code>--ime vrijednost</code>
+	 * koji slijede putanju do konfiguracijske datoteke
+	 *
+	 * @param args
+	 *            argumenti naredbenog retka
+	 * @return {@link Map} imena argumenata i njihovih vrijednosti
+	 * @throws IllegalArgumentException
+	 *             ukoliko argumenti nisu ispravni
+	 */
+	private static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String[] option : DEFAULT_OPTIONS) {
+			options.put(option[0], option[1]);
+		}
+
+		for (int i = 1; i < args.length; i += 2) {
+			if (!args[i].startsWith("--") || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Neispravan argument: " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		return options;
+	}
+
+	/**
+	 * Metoda od koje započinje rad ovog programa. Prvi argument je putanja do
+	 * konfiguracijske datoteke poslužitelja, a slijede neobavezni argumenti
+	 * <code>--path</code>, <code>--connections</code>,
+	 * <code>--duration</code> (sekunde), <code>--warmup</code> (sekunde) i
+	 * <code>--size</code> (okteti poruke).
+	 *
+	 * @param args
+	 *            argumenti naredbenog retka
+	 * @throws IOException
+	 *             ukoliko se konfiguracija ne može pročitati
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta tijekom mjerenja
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			throw new IllegalArgumentException("Očekivao sam putanju do konfiguracijske datoteke poslužitelja");
+		}
+
+		Map<String, String> options = parseOptions(args);
+		SmartHttpServer server = new SmartHttpServer(args[0]);
+		server.start();
+
+		WebSocketEchoBenchmark benchmark = new WebSocketEchoBenchmark(
+				new InetSocketAddress(server.getAddress(), server.getPort()), options.get("path"),
+				Integer.parseInt(options.get("connections")), Integer.parseInt(options.get("size")));
+
+		long warmup = Long.parseLong(options.get("warmup"));
+		if (warmup > 0) {
+			System.out.printf("Zagrijavanje %d s...%n", warmup);
+			benchmark.run(warmup, new long[1]);
+		}
+
+		long duration = Long.parseLong(options.get("duration"));
+		System.out.printf("Mjerenje %d s (path=%s, connections=%s, size=%s)...%n", duration, options.get("path"),
+				options.get("connections"), options.get("size"));
+		long[] errors = new long[1];
+		long start = System.nanoTime();
+		LatencyHistogram latency = benchmark.run(duration, errors);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "messages %d, failed connections %d, %.1f msg/s%n", latency.getCount(),
+				errors[0], latency.getCount() / seconds));
+		sb.append("round trip (us):");
+		for (double percentile : PERCENTILES) {
+			sb.append(String.format(Locale.ROOT, " p%s=%d", percentile % 1 == 0 ? Long.toString((long) percentile)
+					: Double.toString(percentile), latency.getValueAtPercentile(percentile)));
+		}
+		sb.append(String.format(" max=%d%n", latency.getMaxMicros()));
+		System.out.print(sb);
+
+		server.drain(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS).join();
+	}
+}
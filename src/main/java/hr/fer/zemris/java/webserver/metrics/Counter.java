@@ -0,0 +1,52 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Razred koji predstavlja monotono rastući brojač. Interno se koristi primjerak
+ * razreda {@link LongAdder}, pa je uvećavanje brojača bez ključanja i (nakon
+ * zagrijavanja) bez zauzimanja memorije čak i kada ga istovremeno uvećava više
+ * dretvi. Primjerci ovog razreda stvaraju se isključivo kroz
+ * {@link MetricsRegistry}.
+ *
+ * @see MetricsRegistry
+ *
+ * @author Davor Češljaš
+ */
+public class Counter {
+
+	/** Članska varijabla koja predstavlja trenutnu vrijednost brojača */
+	private final LongAdder value = new LongAdder();
+
+	/**
+	 * Paketni konstruktor koji inicijalizira primjerak ovog razreda
+	 */
+	Counter() {
+	}
+
+	/**
+	 * Metoda koja uvećava brojač za jedan
+	 */
+	public void increment() {
+		value.increment();
+	}
+
+	/**
+	 * Metoda koja uvećava brojač za <b>amount</b>
+	 *
+	 * @param amount
+	 *            nenegativna vrijednost za koju se uvećava brojač
+	 */
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	/**
+	 * Metoda koja dohvaća trenutnu vrijednost brojača
+	 *
+	 * @return trenutnu vrijednost brojača
+	 */
+	public long get() {
+		return value.sum();
+	}
+}
@@ -0,0 +1,305 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Razred koji predstavlja histogram latencija. Vrijednosti se pamte u
+ * mikrosekundama unutar log-linearnih pretinaca: vrijednosti do
+ * {@value #LINEAR_LIMIT} imaju vlastiti pretinac, a svaki idući raspon
+ * (2<sup>k</sup>, 2<sup>k+1</sup>] podijeljen je na {@value #SUB_BUCKETS}
+ * jednakih pretinaca (relativna pogreška je time najviše 12.5%). Gornja
+ * granica pretinca pripada pretincu, a granice pretinaca uključuju sve
+ * potencije broja 2, pa se u Prometheus formatu (granica "le" znači "manje ili
+ * jednako") točno ispisuju potencije broja 2.
+ * <p>
+ * Bilježenje vrijednosti metodom {@link #record(long)} ne zauzima memoriju i ne
+ * koristi ključanje (koristi se {@link AtomicLongArray}), pa se histogram može
+ * koristiti i u produkciji. Svi primjerci ovog razreda imaju isti raspored
+ * pretinaca, pa se mogu spajati metodom {@link #merge(LatencyHistogram)}.
+ * </p>
+ *
+ * @see MetricsRegistry
+ *
+ * @author Davor Češljaš
+ */
+public class LatencyHistogram {
+
+	/** Konstanta koja predstavlja broj bitova kojim se dijeli jedan raspon */
+	private static final int SUB_BITS = 3;
+
+	/** Konstanta koja predstavlja broj pretinaca unutar jednog raspona */
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	 * Konstanta koja predstavlja granicu do koje svaka vrijednost ima vlastiti
+	 * pretinac
+	 */
+	private static final int LINEAR_LIMIT = 1 << (SUB_BITS + 1);
+
+	/**
+	 * Konstanta koja predstavlja najveću potenciju broja 2 koja se bilježi
+	 * (2<sup>40</sup> mikrosekundi je oko 12 dana). Veće vrijednosti spremaju
+	 * se u zadnji pretinac
+	 */
+	private static final int MAX_EXPONENT = 40;
+
+	/**
+	 * Konstanta koja predstavlja ukupan broj pretinaca (prvi pretinac sadrži
+	 * samo vrijednost 0)
+	 */
+	static final int BUCKET_COUNT = 1 + LINEAR_LIMIT + (MAX_EXPONENT - SUB_BITS - 1) * SUB_BUCKETS;
+
+	/** Konstanta koja predstavlja broj nanosekundi u jednoj mikrosekundi */
+	private static final long NANOS_PER_MICRO = 1000L;
+
+	/** Članska varijabla koja predstavlja brojače pojedinih pretinaca */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	/** Članska varijabla koja predstavlja ukupan broj zabilježenih vrijednosti */
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Članska varijabla koja predstavlja zbroj svih zabilježenih vrijednosti u
+	 * mikrosekundama
+	 */
+	private final AtomicLong sum = new AtomicLong();
+
+	/**
+	 * Članska varijabla koja predstavlja najveću zabilježenu vrijednost u
+	 * mikrosekundama
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Metoda koja bilježi latenciju predanu u nanosekundama. Metoda ne zauzima
+	 * memoriju.
+	 *
+	 * @param nanos
+	 *            latencija u nanosekundama
+	 */
+	public void record(long nanos) {
+		recordMicros(nanos / NANOS_PER_MICRO);
+	}
+
+	/**
+	 * Metoda koja bilježi vrijednost predanu u mikrosekundama. Negativne
+	 * vrijednosti bilježe se kao 0
+	 *
+	 * @param micros
+	 *            vrijednost u mikrosekundama
+	 */
+	public void recordMicros(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+
+		buckets.incrementAndGet(bucketIndex(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+
+		long currentMax;
+		while (micros > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, micros)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja bilježi vrijednost predanu u mikrosekundama, uz ispravak
+	 * koordiniranog propusta (engl. <i>coordinated omission</i>). Ukoliko je
+	 * <b>micros</b> veći od očekivanog razmaka između dvaju uzoraka
+	 * <b>expectedIntervalMicros</b>, dodatno se bilježe i vrijednosti koje bi
+	 * izmjerili zahtjevi koji za to vrijeme nisu mogli biti poslani.
+	 *
+	 * @param micros
+	 *            vrijednost u mikrosekundama
+	 * @param expectedIntervalMicros
+	 *            očekivani razmak između dvaju uzoraka u mikrosekundama
+	 */
+	public void recordMicros(long micros, long expectedIntervalMicros) {
+		recordMicros(micros);
+		if (expectedIntervalMicros <= 0) {
+			return;
+		}
+
+		for (long missing = micros - expectedIntervalMicros; missing >= expectedIntervalMicros; missing -= expectedIntervalMicros) {
+			recordMicros(missing);
+		}
+	}
+
+	/**
+	 * Metoda koja sve vrijednosti iz predanog histograma <b>other</b> dodaje u
+	 * ovaj histogram
+	 *
+	 * @param other
+	 *            histogram čije se vrijednosti dodaju u ovaj histogram
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long value = other.buckets.get(i);
+			if (value != 0) {
+				buckets.addAndGet(i, value);
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+
+		long otherMax = other.max.get();
+		long currentMax;
+		while (otherMax > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, otherMax)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Metoda koja briše sve zabilježene vrijednosti
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Metoda koja dohvaća ukupan broj zabilježenih vrijednosti
+	 *
+	 * @return ukupan broj zabilježenih vrijednosti
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Metoda koja dohvaća zbroj svih zabilježenih vrijednosti u mikrosekundama
+	 *
+	 * @return zbroj svih zabilježenih vrijednosti u mikrosekundama
+	 */
+	public long getSumMicros() {
+		return sum.get();
+	}
+
+	/**
+	 * Metoda koja dohvaća najveću zabilježenu vrijednost u mikrosekundama
+	 *
+	 * @return najveću zabilježenu vrijednost u mikrosekundama
+	 */
+	public long getMaxMicros() {
+		return max.get();
+	}
+
+	/**
+	 * Metoda koja dohvaća srednju vrijednost svih zabilježenih vrijednosti u
+	 * mikrosekundama
+	 *
+	 * @return srednju vrijednost u mikrosekundama ili 0 ukoliko nema
+	 *         zabilježenih vrijednosti
+	 */
+	public double getMeanMicros() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Metoda koja dohvaća vrijednost (u mikrosekundama) do koje je
+	 * <b>percentile</b> posto svih zabilježenih vrijednosti. Vraća se gornja
+	 * granica pretinca u kojem se nalazi traženi percentil.
+	 *
+	 * @param percentile
+	 *            percentil iz intervala [0, 100]
+	 * @return vrijednost u mikrosekundama do koje je <b>percentile</b> posto
+	 *         zabilježenih vrijednosti
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+		rank = Math.max(rank, 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj zabilježenih vrijednosti koje su manje ili
+	 * jednake <b>micros</b>. Rezultat je točan ukoliko je <b>micros</b> granica
+	 * nekog pretinca (npr. potencija broja 2)
+	 *
+	 * @param micros
+	 *            gornja granica u mikrosekundama (uključena)
+	 * @return broj zabilježenih vrijednosti koje nisu veće od <b>micros</b>
+	 */
+	public long getCountAtOrBelow(long micros) {
+		long result = 0;
+		for (int i = 0; i < BUCKET_COUNT && bucketUpperBound(i) <= micros; i++) {
+			result += buckets.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Pomoćna metoda koja računa indeks pretinca za predanu vrijednost
+	 *
+	 * @param micros
+	 *            nenegativna vrijednost u mikrosekundama
+	 * @return indeks pretinca u koji se sprema vrijednost
+	 */
+	static int bucketIndex(long micros) {
+		if (micros == 0) {
+			return 0;
+		}
+
+		// pretinci su oblika (donja, gornja], pa se traži pretinac vrijednosti micros - 1
+		long value = micros - 1;
+		if (value < LINEAR_LIMIT) {
+			return 1 + (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent >= MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+
+		int shift = exponent - SUB_BITS;
+		int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+		return 1 + LINEAR_LIMIT + (exponent - SUB_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Pomoćna metoda koja računa gornju (uključenu) granicu pretinca s
+	 * indeksom <b>index</b>
+	 *
+	 * @param index
+	 *            indeks pretinca
+	 * @return gornja granica pretinca u mikrosekundama
+	 */
+	static long bucketUpperBound(int index) {
+		if (index <= LINEAR_LIMIT) {
+			return index;
+		}
+
+		int octave = (index - 1 - LINEAR_LIMIT) / SUB_BUCKETS;
+		int subBucket = (index - 1 - LINEAR_LIMIT) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + subBucket + 1) << (octave + 1);
+	}
+}
@@ -0,0 +1,446 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Razred koji predstavlja registar svih metrika poslužitelja. Metrike se
+ * registriraju jednom (prilikom pokretanja poslužitelja), a potom se pojedini
+ * brojači ({@link Counter}) i histogrami ({@link LatencyHistogram}) koriste
+ * izravno preko reference, pa bilježenje uzorka ne zauzima memoriju i ne
+ * prolazi kroz nikakvu mapu. Osim brojača i histograma podržani su i mjerači
+ * (engl. <i>gauge</i>) čija se vrijednost čita tek prilikom ispisa.
+ * <p>
+ * Za svaku vrstu zahtjeva ({@link RouteClass}) registar unaprijed sadrži brojač
+ * zahtjeva i histogram latencija. Sve metrike ispisuju se u tekstualnom formatu
+ * alata <a href="https://prometheus.io">Prometheus</a> metodom
+ * {@link #writePrometheus(StringBuilder)}.
+ * </p>
+ *
+ * @see Counter
+ * @see LatencyHistogram
+ *
+ * @author Davor Češljaš
+ */
+public class MetricsRegistry {
+
+	/** Konstanta koja predstavlja prefiks naziva svih metrika */
+	public static final String PREFIX = "smarthttp_";
+
+	/**
+	 * Konstanta koja predstavlja najmanji eksponent (potencija broja 2 u
+	 * mikrosekundama) koji se ispisuje kao granica histograma
+	 */
+	private static final int MIN_LE_EXPONENT = 6;
+
+	/**
+	 * Konstanta koja predstavlja najveći eksponent (potencija broja 2 u
+	 * mikrosekundama) koji se ispisuje kao granica histograma
+	 */
+	private static final int MAX_LE_EXPONENT = 25;
+
+	/**
+	 * Konstanta koja predstavlja oznake razreda statusnih kodova odgovora, a
+	 * indeks je prva znamenka statusnog koda umanjena za jedan
+	 */
+	private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+	/** Konstanta koja predstavlja broj mikrosekundi u jednoj sekundi */
+	private static final double MICROS_PER_SECOND = 1_000_000.0;
+
+	/**
+	 * Enumeracija koja predstavlja vrste zahtjeva koje poslužitelj razlikuje
+	 * prilikom bilježenja metrika
+	 *
+	 * @author Davor Češljaš
+	 */
+	public enum RouteClass {
+		/** statički resursi iz javnog direktorija */
+		STATIC("static"),
+		/** skripte koje izvodi SmartScriptEngine */
+		SCRIPT("script"),
+		/** radnici mapirani u konfiguracijskoj datoteci radnika */
+		WORKER("worker"),
+		/** radnici dohvaćeni preko putanje /ext/ */
+		EXT("ext");
+
+		/** Članska varijabla koja predstavlja oznaku vrste u ispisu */
+		private final String label;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ove enumeracije
+		 *
+		 * @param label
+		 *            oznaka vrste u ispisu
+		 */
+		private RouteClass(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * Metoda koja dohvaća oznaku vrste u ispisu
+		 *
+		 * @return oznaku vrste u ispisu
+		 */
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * Članska varijabla koja predstavlja sve obitelji metrika (metrike istog
+	 * naziva) po redoslijedu registracije
+	 */
+	private final Map<String, Family> families = new LinkedHashMap<>();
+
+	/**
+	 * Članska varijabla koja predstavlja brojače zahtjeva po vrstama zahtjeva
+	 */
+	private final Map<RouteClass, Counter> routeRequests = new EnumMap<>(RouteClass.class);
+
+	/**
+	 * Članska varijabla koja predstavlja histograme latencija po vrstama
+	 * zahtjeva
+	 */
+	private final Map<RouteClass, LatencyHistogram> routeLatencies = new EnumMap<>(RouteClass.class);
+
+	/**
+	 * Članska varijabla koja predstavlja brojače odgovora po vrstama zahtjeva
+	 * i razredima statusnih kodova (vidi {@link #STATUS_CLASSES})
+	 */
+	private final Map<RouteClass, Counter[]> routeResponses = new EnumMap<>(RouteClass.class);
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda. Unutar
+	 * konstruktora registriraju se brojači i histogrami za svaku vrstu zahtjeva
+	 * {@link RouteClass}
+	 */
+	public MetricsRegistry() {
+		for (RouteClass route : RouteClass.values()) {
+			String labels = "route=\"" + route.getLabel() + "\"";
+			routeRequests.put(route, counter("requests_total", labels, "Ukupan broj obrađenih zahtjeva"));
+			routeLatencies.put(route,
+					histogram("request_duration_seconds", labels, "Vrijeme obrade zahtjeva u sekundama"));
+
+			Counter[] responses = new Counter[STATUS_CLASSES.length];
+			for (int i = 0; i < responses.length; i++) {
+				responses[i] = counter("responses_total", labels + ",code=\"" + STATUS_CLASSES[i] + "\"",
+						"Broj odgovora po razredu statusnog koda");
+			}
+			routeResponses.put(route, responses);
+		}
+	}
+
+	/**
+	 * Metoda koja registrira novi brojač bez oznaka
+	 *
+	 * @param name
+	 *            naziv brojača (bez prefiksa {@value #PREFIX})
+	 * @param help
+	 *            opis brojača
+	 * @return registrirani brojač
+	 */
+	public Counter counter(String name, String help) {
+		return counter(name, null, help);
+	}
+
+	/**
+	 * Metoda koja registrira novi brojač s oznakama <b>labels</b> (npr.
+	 * <code>route="static"</code>)
+	 *
+	 * @param name
+	 *            naziv brojača (bez prefiksa {@value #PREFIX})
+	 * @param labels
+	 *            oznake brojača ili <code>null</code>
+	 * @param help
+	 *            opis brojača
+	 * @return registrirani brojač
+	 */
+	public Counter counter(String name, String labels, String help) {
+		Counter counter = new Counter();
+		register(name, "counter", help, new Sample(labels) {
+			@Override
+			void write(String fullName, StringBuilder sb) {
+				writeLine(sb, fullName, labels, Long.toString(counter.get()));
+			}
+		});
+		return counter;
+	}
+
+	/**
+	 * Metoda koja registrira novi mjerač bez oznaka. Vrijednost mjerača čita
+	 * se iz predane strategije <b>supplier</b> tek prilikom ispisa
+	 *
+	 * @param name
+	 *            naziv mjerača (bez prefiksa {@value #PREFIX})
+	 * @param help
+	 *            opis mjerača
+	 * @param supplier
+	 *            strategija koja dohvaća trenutnu vrijednost mjerača
+	 */
+	public void gauge(String name, String help, LongSupplier supplier) {
+		gauge(name, null, help, supplier);
+	}
+
+	/**
+	 * Metoda koja registrira novi mjerač s oznakama <b>labels</b>. Vrijednost
+	 * mjerača čita se iz predane strategije <b>supplier</b> tek prilikom ispisa
+	 *
+	 * @param name
+	 *            naziv mjerača (bez prefiksa {@value #PREFIX})
+	 * @param labels
+	 *            oznake mjerača ili <code>null</code>
+	 * @param help
+	 *            opis mjerača
+	 * @param supplier
+	 *            strategija koja dohvaća trenutnu vrijednost mjerača
+	 */
+	public void gauge(String name, String labels, String help, LongSupplier supplier) {
+		register(name, "gauge", help, new Sample(labels) {
+			@Override
+			void write(String fullName, StringBuilder sb) {
+				writeLine(sb, fullName, labels, Long.toString(supplier.getAsLong()));
+			}
+		});
+	}
+
+	/**
+	 * Metoda koja registrira novi histogram latencija s oznakama
+	 * <b>labels</b>
+	 *
+	 * @param name
+	 *            naziv histograma (bez prefiksa {@value #PREFIX})
+	 * @param labels
+	 *            oznake histograma ili <code>null</code>
+	 * @param help
+	 *            opis histograma
+	 * @return registrirani histogram
+	 */
+	public LatencyHistogram histogram(String name, String labels, String help) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		register(name, "histogram", help, new Sample(labels) {
+			@Override
+			void write(String fullName, StringBuilder sb) {
+				String prefix = labels == null ? "" : labels + ",";
+				for (int exponent = MIN_LE_EXPONENT; exponent <= MAX_LE_EXPONENT; exponent++) {
+					long bound = 1L << exponent;
+					writeLine(sb, fullName + "_bucket", prefix + "le=\"" + (bound / MICROS_PER_SECOND) + "\"",
+							Long.toString(histogram.getCountAtOrBelow(bound)));
+				}
+				long count = histogram.getCount();
+				writeLine(sb, fullName + "_bucket", prefix + "le=\"+Inf\"", Long.toString(count));
+				writeLine(sb, fullName + "_sum", labels, Double.toString(histogram.getSumMicros() / MICROS_PER_SECOND));
+				writeLine(sb, fullName + "_count", labels, Long.toString(count));
+			}
+		});
+		return histogram;
+	}
+
+	/**
+	 * Metoda koja registrira statistiku priručne memorije (engl. <i>cache</i>)
+	 * pod nazivom <b>cacheName</b>. Ispisuju se broj pogodaka, broj promašaja i
+	 * omjer pogodaka u promilima
+	 *
+	 * @param cacheName
+	 *            naziv priručne memorije
+	 * @param hits
+	 *            strategija koja dohvaća broj pogodaka
+	 * @param misses
+	 *            strategija koja dohvaća broj promašaja
+	 */
+	public void cache(String cacheName, LongSupplier hits, LongSupplier misses) {
+		String labels = "cache=\"" + cacheName + "\"";
+		register("cache_hits_total", "counter", "Broj pogodaka priručne memorije", new Sample(labels) {
+			@Override
+			void write(String fullName, StringBuilder sb) {
+				writeLine(sb, fullName, labels, Long.toString(hits.getAsLong()));
+			}
+		});
+		register("cache_misses_total", "counter", "Broj promašaja priručne memorije", new Sample(labels) {
+			@Override
+			void write(String fullName, StringBuilder sb) {
+				writeLine(sb, fullName, labels, Long.toString(misses.getAsLong()));
+			}
+		});
+		gauge("cache_hit_ratio_permille", labels, "Omjer pogodaka priručne memorije u promilima", () -> {
+			long h = hits.getAsLong();
+			long total = h + misses.getAsLong();
+			return total == 0 ? 0 : h * 1000 / total;
+		});
+	}
+
+	/**
+	 * Metoda koja dohvaća brojač zahtjeva za vrstu zahtjeva <b>route</b>
+	 *
+	 * @param route
+	 *            vrsta zahtjeva
+	 * @return brojač zahtjeva za predanu vrstu
+	 */
+	public Counter getRouteRequests(RouteClass route) {
+		return routeRequests.get(route);
+	}
+
+	/**
+	 * Metoda koja dohvaća histogram latencija za vrstu zahtjeva <b>route</b>
+	 *
+	 * @param route
+	 *            vrsta zahtjeva
+	 * @return histogram latencija za predanu vrstu
+	 */
+	public LatencyHistogram getRouteLatency(RouteClass route) {
+		return routeLatencies.get(route);
+	}
+
+	/**
+	 * Metoda koja bilježi jedan obrađeni zahtjev vrste <b>route</b> koji je
+	 * trajao <b>nanos</b> nanosekundi i završio statusnim kodom <b>status</b>.
+	 * Bilježe se i neuspjeli zahtjevi, pa statusni kod izvan intervala
+	 * [100, 599] broji se kao "5xx". Metoda ne zauzima memoriju
+	 *
+	 * @param route
+	 *            vrsta zahtjeva
+	 * @param status
+	 *            statusni kod odgovora
+	 * @param nanos
+	 *            trajanje obrade zahtjeva u nanosekundama
+	 */
+	public void recordRequest(RouteClass route, int status, long nanos) {
+		routeRequests.get(route).increment();
+		routeLatencies.get(route).record(nanos);
+
+		int statusClass = status / 100 - 1;
+		if (statusClass < 0 || statusClass >= STATUS_CLASSES.length) {
+			statusClass = STATUS_CLASSES.length - 1;
+		}
+		routeResponses.get(route)[statusClass].increment();
+	}
+
+	/**
+	 * Metoda koja u predani primjerak razreda {@link StringBuilder} ispisuje
+	 * sve registrirane metrike u tekstualnom formatu alata Prometheus
+	 *
+	 * @param sb
+	 *            primjerak razreda {@link StringBuilder} u koji se ispisuju
+	 *            metrike
+	 */
+	public synchronized void writePrometheus(StringBuilder sb) {
+		families.forEach((name, family) -> {
+			String fullName = PREFIX + name;
+			sb.append("# HELP ").append(fullName).append(' ').append(family.help).append('\n');
+			sb.append("# TYPE ").append(fullName).append(' ').append(family.type).append('\n');
+			for (Sample sample : family.samples) {
+				sample.write(fullName, sb);
+			}
+		});
+	}
+
+	/**
+	 * Pomoćna metoda koja registrira uzorak <b>sample</b> unutar obitelji
+	 * metrika naziva <b>name</b>. Ukoliko obitelj ne postoji, stvara se nova
+	 *
+	 * @param name
+	 *            naziv obitelji metrika
+	 * @param type
+	 *            tip metrike u Prometheus formatu
+	 * @param help
+	 *            opis metrike
+	 * @param sample
+	 *            uzorak koji se registrira
+	 * @throws IllegalArgumentException
+	 *             ukoliko obitelj već postoji, a tip joj je drugačiji
+	 */
+	private synchronized void register(String name, String type, String help, Sample sample) {
+		Family family = families.computeIfAbsent(name, key -> new Family(type, help));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException(
+					String.format("Metrika '%s' već je registrirana kao '%s'", name, family.type));
+		}
+		family.samples.add(sample);
+	}
+
+	/**
+	 * Pomoćna metoda koja ispisuje jedan redak u Prometheus formatu
+	 *
+	 * @param sb
+	 *            primjerak razreda {@link StringBuilder} u koji se ispisuje
+	 * @param name
+	 *            puni naziv metrike
+	 * @param labels
+	 *            oznake metrike ili <code>null</code>
+	 * @param value
+	 *            vrijednost metrike
+	 */
+	private static void writeLine(StringBuilder sb, String name, String labels, String value) {
+		sb.append(name);
+		if (labels != null) {
+			sb.append('{').append(labels).append('}');
+		}
+		sb.append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Privatni statički razred koji predstavlja obitelj metrika istog naziva
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class Family {
+
+		/** Članska varijabla koja predstavlja tip metrike */
+		private final String type;
+
+		/** Članska varijabla koja predstavlja opis metrike */
+		private final String help;
+
+		/** Članska varijabla koja predstavlja sve uzorke ove obitelji */
+		private final List<Sample> samples = new ArrayList<>();
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param type
+		 *            tip metrike
+		 * @param help
+		 *            opis metrike
+		 */
+		public Family(String type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	}
+
+	/**
+	 * Privatni apstraktni razred koji predstavlja jedan uzorak metrike (jednu
+	 * kombinaciju oznaka)
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static abstract class Sample {
+
+		/** Članska varijabla koja predstavlja oznake uzorka */
+		protected final String labels;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param labels
+		 *            oznake uzorka ili <code>null</code>
+		 */
+		public Sample(String labels) {
+			this.labels = labels;
+		}
+
+		/**
+		 * Metoda koja ispisuje uzorak u Prometheus formatu
+		 *
+		 * @param fullName
+		 *            puni naziv metrike
+		 * @param sb
+		 *            primjerak razreda {@link StringBuilder} u koji se ispisuje
+		 */
+		abstract void write(String fullName, StringBuilder sb);
+	}
+}
@@ -0,0 +1,48 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.Objects;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Razred koji implementira sučelje {@link IWebWorker}. Primjerak razreda je
+ * ugrađeni radnik poslužitelja koji korisniku vraća sve metrike iz predanog
+ * primjerka razreda {@link MetricsRegistry} u tekstualnom formatu alata
+ * <a href="https://prometheus.io">Prometheus</a>. Poslužitelj ovog radnika
+ * mapira na putanju zadanu u konfiguracijskoj datoteci.
+ *
+ * @see MetricsRegistry
+ * @see IWebWorker
+ *
+ * @author Davor Češljaš
+ */
+public class MetricsWorker implements IWebWorker {
+
+	/** Konstanta koja predstavlja mime-tip Prometheus tekstualnog formata */
+	private static final String PROMETHEUS_MIME_TYPE = "text/plain; version=0.0.4";
+
+	/** Članska varijabla koja predstavlja registar metrika koji se ispisuje */
+	private final MetricsRegistry registry;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param registry
+	 *            registar metrika koji se ispisuje
+	 * @throws NullPointerException
+	 *             ukoliko je <b>registry</b> <code>null</code>
+	 */
+	public MetricsWorker(MetricsRegistry registry) {
+		this.registry = Objects.requireNonNull(registry, "Registar metrika ne smije biti null");
+	}
+
+	@Override
+	public void processRequest(RequestContext context) throws Exception {
+		StringBuilder sb = new StringBuilder(8192);
+		registry.writePrometheus(sb);
+
+		context.setMimeType(PROMETHEUS_MIME_TYPE);
+		context.write(sb.toString());
+	}
+}
@@ -0,0 +1,72 @@
+package hr.fer.zemris.java.webserver.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sučelje koje predstavlja obrađivača veza WebSocket jedne putanje. Jedan
+ * primjerak obrađivača poslužuje sve veze svoje putanje (kao i radnici
+ * {@link hr.fer.zemris.java.webserver.IWebWorker}), pa se stanje pojedine veze
+ * može spremiti metodom {@link WebSocket#setAttachment(Object)}.
+ * <p>
+ * Metode obrađivača pozivaju se u dretvama reaktora
+ * {@link WebSocketReactor}, i to za svaku vezu redom kojim su poruke
+ * pristigle (nikada istovremeno za istu vezu). Iznimka koju obrađivač baci
+ * zatvara vezu kodom {@value WebSocketCodec#INTERNAL_ERROR}.
+ * </p>
+ *
+ * @see WebSocket
+ *
+ * @author Davor Češljaš
+ */
+public interface IWebSocketHandler {
+
+	/**
+	 * Metoda koja se poziva kada je veza <b>socket</b> otvorena
+	 *
+	 * @param socket
+	 *            otvorena veza
+	 * @throws Exception
+	 *             ukoliko obrada nije uspjela
+	 */
+	void onOpen(WebSocket socket) throws Exception;
+
+	/**
+	 * Metoda koja se poziva kada veza <b>socket</b> primi tekstualnu poruku
+	 * <b>message</b>
+	 *
+	 * @param socket
+	 *            veza koja je primila poruku
+	 * @param message
+	 *            primljena poruka
+	 * @throws Exception
+	 *             ukoliko obrada nije uspjela
+	 */
+	void onText(WebSocket socket, String message) throws Exception;
+
+	/**
+	 * Metoda koja se poziva kada veza <b>socket</b> primi binarnu poruku
+	 * <b>message</b>
+	 *
+	 * @param socket
+	 *            veza koja je primila poruku
+	 * @param message
+	 *            spremnik s oktetima primljene poruke
+	 * @throws Exception
+	 *             ukoliko obrada nije uspjela
+	 */
+	void onBinary(WebSocket socket, ByteBuffer message) throws Exception;
+
+	/**
+	 * Metoda koja se poziva kada je veza <b>socket</b> zatvorena (okvirom
+	 * zatvaranja ili prekidom veze)
+	 *
+	 * @param socket
+	 *            zatvorena veza
+	 * @param code
+	 *            kod zatvaranja (ili {@value WebSocketCodec#ABNORMAL_CLOSURE}
+	 *            ukoliko je veza prekinuta bez okvira zatvaranja)
+	 * @param reason
+	 *            razlog zatvaranja
+	 */
+	void onClose(WebSocket socket, int code, String reason);
+}
@@ -0,0 +1,947 @@
+package hr.fer.zemris.java.webserver.websocket;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.webserver.buffer.BufferPool;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Razred koji predstavlja jednu vezu WebSocket (RFC 6455). Veza se stvara
+ * nakon uspješne nadogradnje veze HTTP/1.1 i predaje reaktoru
+ * {@link WebSocketReactor}, koji iz nje čita okvire samo kada klijent nešto
+ * pošalje, pa veze koje miruju ne zauzimaju niti jednu dretvu niti spremnik.
+ * <p>
+ * Primljeni okviri se raspakiravaju (maska), poruke rastavljene u više okvira
+ * se spajaju, na okvire PING odgovara se okvirom PONG, a okvir zatvaranja
+ * vraća se klijentu prije zatvaranja veze. Cijele poruke predaju se
+ * obrađivaču {@link IWebSocketHandler} redom kojim su stigle. Kršenje
+ * protokola zatvara vezu odgovarajućim kodom iz razreda
+ * {@link WebSocketCodec}.
+ * </p>
+ * Poruke se šalju metodama {@link #sendText(String)} i
+ * {@link #sendBinary(ByteBuffer)} iz bilo koje dretve. Okvir se odmah piše u
+ * vezu, a ono što veza ne primi čeka u redu dok klijent ne pročita prethodne
+ * podatke. Klijent koji ne čita poruke pa mu red naraste iznad
+ * {@value #MAX_QUEUED_BYTES} okteta se odspaja.
+ *
+ * @see WebSocketReactor
+ * @see IWebSocketHandler
+ *
+ * @author Davor Češljaš
+ */
+public class WebSocket {
+
+	/** Konstanta koja predstavlja najveću veličinu primljene poruke u oktetima */
+	public static final int MAX_MESSAGE_SIZE = 1 << 20;
+
+	/**
+	 * Konstanta koja predstavlja najveći broj okteta koji smije čekati na
+	 * slanje
+	 */
+	private static final int MAX_QUEUED_BYTES = 4 << 20;
+
+	/**
+	 * Konstanta koja predstavlja broj poruka koje smiju čekati obrađivača prije
+	 * nego što se čitanje iz veze privremeno zaustavi
+	 */
+	private static final int MAX_PENDING_MESSAGES = 64;
+
+	/**
+	 * Konstanta koja predstavlja vrijeme (u nanosekundama) čekanja na okvir
+	 * zatvaranja klijenta nakon što ga je poslao poslužitelj
+	 */
+	private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+	/** Članska varijabla koja predstavlja reaktor kojem veza pripada */
+	private final WebSocketReactor reactor;
+
+	/** Članska varijabla koja predstavlja kanal veze */
+	private final SocketChannel channel;
+
+	/** Članska varijabla koja predstavlja obrađivača veze */
+	private final IWebSocketHandler handler;
+
+	/** Članska varijabla koja predstavlja putanju zahtjeva za nadogradnjom */
+	private final String path;
+
+	/** Članska varijabla koja predstavlja parametre zahtjeva za nadogradnjom */
+	private final Map<String, String> parameters;
+
+	/** Članska varijabla koja predstavlja objekt koji je vezi pridružio obrađivač */
+	private volatile Object attachment;
+
+	/**
+	 * Članska varijabla koja predstavlja ključ veze u selektoru reaktora.
+	 * Koristi se isključivo u dretvi reaktora
+	 */
+	private SelectionKey key;
+
+	/**
+	 * Članska varijabla koja predstavlja spremnik s nepročitanim oktetima ili
+	 * <code>null</code> ukoliko su svi okteti obrađeni. Koristi se isključivo
+	 * u dretvi reaktora
+	 */
+	private ByteBuffer readBuffer;
+
+	/**
+	 * Članska varijabla koja predstavlja okvire poruke koja se prima u
+	 * dijelovima ili <code>null</code>. Koristi se isključivo u dretvi
+	 * reaktora
+	 */
+	private ByteBufferOutputStream message;
+
+	/**
+	 * Članska varijabla koja predstavlja vrstu poruke koja se prima u
+	 * dijelovima. Koristi se isključivo u dretvi reaktora
+	 */
+	private int messageOpcode;
+
+	/**
+	 * Članska varijabla koja predstavlja dekoder tekstualnih poruka ili
+	 * <code>null</code>. Koristi se isključivo u dretvi reaktora
+	 */
+	private CharsetDecoder decoder;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada
+	 * je klijent prekršio protokol (veza se zatvara, a okviri se više ne
+	 * čitaju). Koristi se isključivo u dretvi reaktora
+	 */
+	private boolean failed;
+
+	/**
+	 * Članska varijabla koja predstavlja okvire koji čekaju na slanje. Služi i
+	 * kao ključ za sve varijable vezane uz slanje
+	 */
+	private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+
+	/** Članska varijabla koja predstavlja broj okteta koji čekaju na slanje */
+	private long queuedBytes;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada
+	 * reaktor treba javiti da se u vezu ponovno može pisati
+	 */
+	private boolean writeInterest;
+
+	/** Članska varijabla koja predstavlja zastavicu poslanog okvira zatvaranja */
+	private boolean closeSent;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada se
+	 * veza zatvara čim se pošalju svi okviri iz reda
+	 */
+	private boolean closeAfterFlush;
+
+	/**
+	 * Članska varijabla koja predstavlja rok (prema {@link System#nanoTime()})
+	 * do kojeg klijent mora odgovoriti na okvir zatvaranja
+	 */
+	private volatile long closeDeadline;
+
+	/** Članska varijabla koja predstavlja zastavicu zatvorenog kanala */
+	private volatile boolean closed;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada je
+	 * obrađivač obaviješten o zatvaranju
+	 */
+	private final AtomicBoolean closeNotified = new AtomicBoolean();
+
+	/**
+	 * Članska varijabla koja predstavlja poslove obrađivača koji čekaju na
+	 * izvođenje. Služi i kao ključ za {@link #dispatching} i
+	 * {@link #readPaused}
+	 */
+	private final Queue<Runnable> inbox = new ArrayDeque<>();
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena dok
+	 * neka dretva reaktora izvodi poslove iz {@link #inbox}
+	 */
+	private boolean dispatching;
+
+	/**
+	 * Članska varijabla koja predstavlja zastavicu koja je postavljena kada
+	 * se čitanje iz veze privremeno zaustavi jer obrađivač ne stiže obraditi
+	 * poruke
+	 */
+	private boolean readPaused;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda
+	 *
+	 * @param reactor
+	 *            reaktor kojem veza pripada
+	 * @param channel
+	 *            kanal veze u neblokirajućem načinu rada
+	 * @param handler
+	 *            obrađivač veze
+	 * @param path
+	 *            putanja zahtjeva za nadogradnjom
+	 * @param parameters
+	 *            parametri zahtjeva za nadogradnjom
+	 * @param initial
+	 *            okteti koje je klijent poslao odmah iza zahtjeva ili
+	 *            <code>null</code>
+	 */
+	WebSocket(WebSocketReactor reactor, SocketChannel channel, IWebSocketHandler handler, String path,
+			Map<String, String> parameters, ByteBuffer initial) {
+		this.reactor = reactor;
+		this.channel = channel;
+		this.handler = handler;
+		this.path = path;
+		this.parameters = parameters;
+		this.messageOpcode = -1;
+
+		if (initial != null && initial.hasRemaining()) {
+			readBuffer = BufferPool.getInstance().acquire(initial.remaining());
+			readBuffer.put(initial);
+		}
+	}
+
+	/**
+	 * Metoda koja dohvaća putanju zahtjeva kojim je veza otvorena
+	 *
+	 * @return putanju zahtjeva
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Metoda koja dohvaća parametar <b>name</b> zahtjeva kojim je veza otvorena
+	 *
+	 * @param name
+	 *            naziv parametra
+	 * @return vrijednost parametra ili <code>null</code> ukoliko parametar ne
+	 *         postoji
+	 */
+	public String getParameter(String name) {
+		return parameters.get(name);
+	}
+
+	/**
+	 * Metoda koja dohvaća objekt koji je vezi pridružio obrađivač
+	 *
+	 * @return pridruženi objekt ili <code>null</code>
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	/**
+	 * Metoda koja vezi pridružuje objekt <b>attachment</b> (npr. stanje
+	 * obrađivača za ovu vezu)
+	 *
+	 * @param attachment
+	 *            objekt koji se pridružuje
+	 */
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+
+	/**
+	 * Metoda koja provjerava je li veza otvorena (nije započelo zatvaranje)
+	 *
+	 * @return <code>true</code> ukoliko je veza otvorena, <code>false</code>
+	 *         inače
+	 */
+	public boolean isOpen() {
+		synchronized (outbound) {
+			return !closed && !closeSent;
+		}
+	}
+
+	/**
+	 * Metoda koja klijentu šalje tekstualnu poruku <b>text</b>
+	 *
+	 * @param text
+	 *            poruka koja se šalje
+	 * @throws IOException
+	 *             ukoliko je veza zatvorena
+	 */
+	public void sendText(String text) throws IOException {
+		send(WebSocketCodec.TEXT, StandardCharsets.UTF_8.encode(text));
+	}
+
+	/**
+	 * Metoda koja klijentu šalje binarnu poruku s preostalim oktetima
+	 * spremnika <b>data</b>
+	 *
+	 * @param data
+	 *            okteti koji se šalju
+	 * @throws IOException
+	 *             ukoliko je veza zatvorena
+	 */
+	public void sendBinary(ByteBuffer data) throws IOException {
+		send(WebSocketCodec.BINARY, data);
+	}
+
+	/**
+	 * Metoda koja klijentu šalje okvir PING sa sadržajem <b>data</b> (klijent
+	 * odgovara okvirom PONG)
+	 *
+	 * @param data
+	 *            sadržaj okvira (najviše
+	 *            {@value WebSocketCodec#MAX_CONTROL_PAYLOAD} okteta)
+	 * @throws IOException
+	 *             ukoliko je veza zatvorena
+	 * @throws IllegalArgumentException
+	 *             ukoliko je sadržaj prevelik
+	 */
+	public void ping(byte[] data) throws IOException {
+		if (data.length > WebSocketCodec.MAX_CONTROL_PAYLOAD) {
+			throw new IllegalArgumentException(String.format("Sadržaj okvira PING smije imati najviše %d okteta",
+					WebSocketCodec.MAX_CONTROL_PAYLOAD));
+		}
+		send(WebSocketCodec.PING, ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Metoda koja započinje uredno zatvaranje veze kodom
+	 * {@value WebSocketCodec#NORMAL_CLOSURE}
+	 */
+	public void close() {
+		close(WebSocketCodec.NORMAL_CLOSURE, "");
+	}
+
+	/**
+	 * Metoda koja započinje zatvaranje veze: klijentu se šalje okvir
+	 * zatvaranja s kodom <b>code</b> i razlogom <b>reason</b>, a veza se
+	 * zatvara kada klijent odgovori svojim okvirom zatvaranja (ili nakon
+	 * isteka roka). Ukoliko je zatvaranje već započelo, metoda ne radi ništa
+	 *
+	 * @param code
+	 *            kod zatvaranja
+	 * @param reason
+	 *            razlog zatvaranja
+	 */
+	public void close(int code, String reason) {
+		synchronized (outbound) {
+			if (closed || closeSent) {
+				return;
+			}
+			closeSent = true;
+			closeDeadline = System.nanoTime() + CLOSE_TIMEOUT;
+			enqueue(WebSocketCodec.frame(WebSocketCodec.CLOSE, true, WebSocketCodec.closePayload(code, reason),
+					null));
+		}
+		reactor.closing(this);
+	}
+
+	/**
+	 * Metoda koja se poziva u dretvi reaktora nakon registracije veze u
+	 * selektoru. Obrađivaču se javlja otvaranje veze, a obrađuju se i okteti
+	 * koje je klijent poslao odmah iza zahtjeva
+	 *
+	 * @param key
+	 *            ključ veze u selektoru reaktora
+	 */
+	void opened(SelectionKey key) {
+		this.key = key;
+		dispatch(() -> handler.onOpen(this));
+		if (readBuffer != null) {
+			parseFrames();
+		}
+	}
+
+	/**
+	 * Metoda koja se poziva u dretvi reaktora kada se iz veze može čitati
+	 */
+	void onReadable() {
+		if (readBuffer == null) {
+			readBuffer = BufferPool.getInstance().acquire(BufferPool.MIN_CLASS_SIZE);
+		}
+
+		int read;
+		try {
+			read = channel.read(readBuffer);
+		} catch (IOException e) {
+			read = -1;
+		}
+		if (read == -1) {
+			abort();
+			return;
+		}
+
+		parseFrames();
+	}
+
+	/**
+	 * Metoda koja se poziva u dretvi reaktora kada se u vezu ponovno može
+	 * pisati. Šalju se okviri koji čekaju u redu
+	 */
+	void onWritable() {
+		synchronized (outbound) {
+			flush();
+			if (!outbound.isEmpty()) {
+				return;
+			}
+			writeInterest = false;
+		}
+		updateInterest();
+	}
+
+	/**
+	 * Metoda koja se poziva u dretvi reaktora i postavlja događaje koje
+	 * selektor prati za ovu vezu
+	 */
+	void updateInterest() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+
+		int ops;
+		synchronized (outbound) {
+			ops = writeInterest ? SelectionKey.OP_WRITE : 0;
+		}
+		synchronized (inbox) {
+			ops |= readPaused || failed ? 0 : SelectionKey.OP_READ;
+		}
+		key.interestOps(ops);
+	}
+
+	/**
+	 * Metoda koja zatvara vezu ukoliko klijent nije odgovorio na okvir
+	 * zatvaranja do roka
+	 *
+	 * @param now
+	 *            trenutak provjere (prema {@link System#nanoTime()})
+	 * @return <code>true</code> ukoliko je veza zatvorena (ovim ili nekim
+	 *         ranijim pozivom)
+	 */
+	boolean expireClose(long now) {
+		if (!closed && now - closeDeadline >= 0) {
+			abort();
+		}
+		return closed;
+	}
+
+	/**
+	 * Metoda koja se poziva u dretvi reaktora nakon zatvaranja veze i vraća
+	 * spremnike u bazen
+	 */
+	void releaseBuffers() {
+		BufferPool.getInstance().release(readBuffer);
+		readBuffer = null;
+		if (message != null) {
+			message.close();
+			message = null;
+		}
+	}
+
+	/**
+	 * Metoda koja prekida vezu bez okvira zatvaranja i obrađivaču javlja kod
+	 * {@value WebSocketCodec#ABNORMAL_CLOSURE}
+	 */
+	void abort() {
+		closeChannel();
+		notifyClose(WebSocketCodec.ABNORMAL_CLOSURE, "");
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje sve cijele okvire iz spremnika
+	 * {@link #readBuffer}. Nepotpun okvir ostaje na početku spremnika (koji se
+	 * po potrebi povećava), a spremnik bez nepročitanih okteta vraća se u
+	 * bazen
+	 */
+	private void parseFrames() {
+		ByteBuffer buffer = readBuffer;
+		((Buffer) buffer).flip();
+
+		int needed = 0;
+		while (!failed && !closed && buffer.remaining() >= 2) {
+			int start = buffer.position();
+			int b0 = buffer.get(start) & 0xFF;
+			int b1 = buffer.get(start + 1) & 0xFF;
+			if ((b1 & 0x80) == 0) {
+				fail(WebSocketCodec.PROTOCOL_ERROR, "Okvir klijenta nije maskiran");
+				break;
+			}
+
+			long length = b1 & 0x7F;
+			int headerSize = 2 + WebSocketCodec.MASK_SIZE;
+			if (length == 126) {
+				if (buffer.remaining() < 4) {
+					break;
+				}
+				length = buffer.getShort(start + 2) & 0xFFFF;
+				headerSize += 2;
+			} else if (length == 127) {
+				if (buffer.remaining() < 10) {
+					break;
+				}
+				length = buffer.getLong(start + 2);
+				headerSize += 8;
+			}
+
+			int opcode = b0 & 0x0F;
+			if (opcode >= WebSocketCodec.CLOSE
+					&& (length > WebSocketCodec.MAX_CONTROL_PAYLOAD || (b0 & WebSocketCodec.FIN) == 0)) {
+				fail(WebSocketCodec.PROTOCOL_ERROR, "Neispravan kontrolni okvir");
+				break;
+			}
+			if (length < 0 || length > MAX_MESSAGE_SIZE - (message == null ? 0 : message.size())) {
+				fail(WebSocketCodec.MESSAGE_TOO_BIG, "Poruka je prevelika");
+				break;
+			}
+
+			int frameSize = headerSize + (int) length;
+			if (buffer.remaining() < frameSize) {
+				needed = frameSize;
+				break;
+			}
+
+			int payloadStart = start + headerSize;
+			unmask(buffer, payloadStart - WebSocketCodec.MASK_SIZE, payloadStart, (int) length);
+			ByteBuffer payload = buffer.duplicate();
+			((Buffer) payload).limit(payloadStart + (int) length).position(payloadStart);
+			((Buffer) buffer).position(start + frameSize);
+
+			handleFrame(b0, payload);
+		}
+
+		if (failed || closed || !buffer.hasRemaining()) {
+			BufferPool.getInstance().release(buffer);
+			readBuffer = null;
+			return;
+		}
+
+		buffer.compact();
+		if (buffer.capacity() < needed) {
+			readBuffer = BufferPool.getInstance().grow(buffer, needed);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja s <b>length</b> okteta sadržaja od indeksa
+	 * <b>start</b> uklanja masku zapisanu na indeksu <b>maskStart</b>. Okteti
+	 * se obrađuju po četiri odjednom
+	 *
+	 * @param buffer
+	 *            spremnik s okvirom
+	 * @param maskStart
+	 *            indeks ključa maske
+	 * @param start
+	 *            indeks početka sadržaja
+	 * @param length
+	 *            duljina sadržaja
+	 */
+	private static void unmask(ByteBuffer buffer, int maskStart, int start, int length) {
+		int mask = buffer.getInt(maskStart);
+		int i = 0;
+		for (; i + 4 <= length; i += 4) {
+			buffer.putInt(start + i, buffer.getInt(start + i) ^ mask);
+		}
+		for (; i < length; i++) {
+			buffer.put(start + i, (byte) (buffer.get(start + i) ^ buffer.get(maskStart + (i & 3))));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje jedan okvir čiji je prvi oktet <b>b0</b>
+	 * (zastavice i vrsta), a raspakirani sadržaj <b>payload</b>
+	 *
+	 * @param b0
+	 *            prvi oktet okvira
+	 * @param payload
+	 *            sadržaj okvira
+	 */
+	private void handleFrame(int b0, ByteBuffer payload) {
+		if ((b0 & 0x70) != 0) {
+			fail(WebSocketCodec.PROTOCOL_ERROR, "Proširenja nisu dogovorena");
+			return;
+		}
+
+		boolean fin = (b0 & WebSocketCodec.FIN) != 0;
+		int opcode = b0 & 0x0F;
+		switch (opcode) {
+		case WebSocketCodec.CONTINUATION:
+			if (message == null) {
+				fail(WebSocketCodec.PROTOCOL_ERROR, "Nastavak poruke koja nije započela");
+				return;
+			}
+			message.write(payload);
+			if (fin) {
+				try {
+					deliver(messageOpcode, message.toByteBuffer());
+				} finally {
+					message.close();
+					message = null;
+					messageOpcode = -1;
+				}
+			}
+			break;
+		case WebSocketCodec.TEXT:
+		case WebSocketCodec.BINARY:
+			if (message != null) {
+				fail(WebSocketCodec.PROTOCOL_ERROR, "Nova poruka prije kraja prethodne");
+				return;
+			}
+			if (fin) {
+				deliver(opcode, payload);
+			} else {
+				message = new ByteBufferOutputStream();
+				message.write(payload);
+				messageOpcode = opcode;
+			}
+			break;
+		case WebSocketCodec.CLOSE:
+			handleClose(payload);
+			break;
+		case WebSocketCodec.PING:
+			synchronized (outbound) {
+				if (!closeSent && !closed) {
+					enqueue(WebSocketCodec.frame(WebSocketCodec.PONG, true, payload, null));
+				}
+			}
+			break;
+		case WebSocketCodec.PONG:
+			break;
+		default:
+			fail(WebSocketCodec.PROTOCOL_ERROR, "Nepoznata vrsta okvira " + opcode);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađuje okvir zatvaranja klijenta. Ukoliko
+	 * poslužitelj još nije poslao okvir zatvaranja, vraća se kod koji je
+	 * poslao klijent, a veza se zatvara nakon slanja
+	 *
+	 * @param payload
+	 *            sadržaj okvira zatvaranja
+	 */
+	private void handleClose(ByteBuffer payload) {
+		int code = WebSocketCodec.NO_STATUS;
+		String reason = "";
+		if (payload.remaining() == 1) {
+			fail(WebSocketCodec.PROTOCOL_ERROR, "Neispravan okvir zatvaranja");
+			return;
+		}
+		if (payload.remaining() >= 2) {
+			code = payload.getShort() & 0xFFFF;
+			if (!WebSocketCodec.isValidCloseCode(code)) {
+				fail(WebSocketCodec.PROTOCOL_ERROR, "Neispravan kod zatvaranja " + code);
+				return;
+			}
+			try {
+				reason = decode(payload);
+			} catch (CharacterCodingException e) {
+				fail(WebSocketCodec.INVALID_PAYLOAD, "Razlog zatvaranja nije ispravan UTF-8");
+				return;
+			}
+		}
+
+		synchronized (outbound) {
+			if (!closeSent && !closed) {
+				closeSent = true;
+				enqueue(WebSocketCodec.frame(WebSocketCodec.CLOSE, true, WebSocketCodec.closePayload(code, reason),
+						null));
+			}
+			closeAfterFlushing();
+		}
+		notifyClose(code, reason);
+	}
+
+	/**
+	 * Pomoćna metoda koja zatvara vezu zbog kršenja protokola: klijentu se
+	 * šalje okvir zatvaranja s kodom <b>code</b>, a veza se zatvara nakon
+	 * slanja
+	 *
+	 * @param code
+	 *            kod zatvaranja
+	 * @param reason
+	 *            razlog zatvaranja
+	 */
+	private void fail(int code, String reason) {
+		failed = true;
+		synchronized (outbound) {
+			if (!closeSent && !closed) {
+				closeSent = true;
+				enqueue(WebSocketCodec.frame(WebSocketCodec.CLOSE, true, WebSocketCodec.closePayload(code, reason),
+						null));
+			}
+			closeAfterFlushing();
+		}
+		updateInterest();
+		notifyClose(code, reason);
+	}
+
+	/**
+	 * Pomoćna metoda koja cijelu poruku vrste <b>opcode</b> predaje
+	 * obrađivaču. Tekstualne poruke moraju biti ispravan UTF-8
+	 *
+	 * @param opcode
+	 *            vrsta poruke
+	 * @param data
+	 *            okteti poruke
+	 */
+	private void deliver(int opcode, ByteBuffer data) {
+		if (opcode == WebSocketCodec.TEXT) {
+			String text;
+			try {
+				text = decode(data);
+			} catch (CharacterCodingException e) {
+				fail(WebSocketCodec.INVALID_PAYLOAD, "Poruka nije ispravan UTF-8");
+				return;
+			}
+			reactor.messageReceived();
+			dispatch(() -> handler.onText(this, text));
+		} else {
+			reactor.messageReceived();
+			ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+			copy.put(data);
+			((Buffer) copy).flip();
+			dispatch(() -> handler.onBinary(this, copy));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira tekst zapisan kao UTF-8 u spremniku
+	 * <b>data</b>
+	 *
+	 * @param data
+	 *            okteti teksta
+	 * @return dekodirani tekst
+	 * @throws CharacterCodingException
+	 *             ukoliko okteti nisu ispravan UTF-8
+	 */
+	private String decode(ByteBuffer data) throws CharacterCodingException {
+		if (decoder == null) {
+			decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+		}
+		return decoder.decode(data).toString();
+	}
+
+	/**
+	 * Pomoćna metoda koja klijentu šalje okvir vrste <b>opcode</b> sa
+	 * sadržajem <b>payload</b>
+	 *
+	 * @param opcode
+	 *            vrsta okvira
+	 * @param payload
+	 *            sadržaj okvira
+	 * @throws IOException
+	 *             ukoliko je veza zatvorena
+	 */
+	private void send(int opcode, ByteBuffer payload) throws IOException {
+		ByteBuffer frame = WebSocketCodec.frame(opcode, true, payload, null);
+		synchronized (outbound) {
+			if (closed || closeSent) {
+				throw new IOException("Veza WebSocket je zatvorena");
+			}
+			enqueue(frame);
+		}
+		if (opcode != WebSocketCodec.PING) {
+			reactor.messageSent();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja okvir <b>frame</b> piše u vezu ili, ukoliko ga veza
+	 * ne može odmah primiti, stavlja u red. Metoda se poziva uz ključ
+	 * {@link #outbound}
+	 *
+	 * @param frame
+	 *            okvir koji se šalje
+	 */
+	private void enqueue(ByteBuffer frame) {
+		if (outbound.isEmpty()) {
+			try {
+				channel.write(frame);
+			} catch (IOException e) {
+				reactor.execute(this::abort);
+				return;
+			}
+			if (!frame.hasRemaining()) {
+				return;
+			}
+		}
+
+		outbound.add(frame);
+		queuedBytes += frame.remaining();
+		if (queuedBytes > MAX_QUEUED_BYTES) {
+			// klijent ne čita poruke
+			reactor.execute(this::abort);
+			return;
+		}
+		if (!writeInterest) {
+			writeInterest = true;
+			reactor.execute(this::updateInterest);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja piše okvire iz reda dok ih veza prima. Metoda se
+	 * poziva uz ključ {@link #outbound}
+	 */
+	private void flush() {
+		ByteBuffer frame;
+		while ((frame = outbound.peek()) != null) {
+			int before = frame.remaining();
+			try {
+				channel.write(frame);
+			} catch (IOException e) {
+				reactor.execute(this::abort);
+				return;
+			}
+			queuedBytes -= before - frame.remaining();
+			if (frame.hasRemaining()) {
+				return;
+			}
+			outbound.poll();
+		}
+
+		if (closeAfterFlush) {
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja označava da se veza zatvara čim se pošalju svi
+	 * okviri iz reda. Metoda se poziva uz ključ {@link #outbound}
+	 */
+	private void closeAfterFlushing() {
+		closeAfterFlush = true;
+		if (outbound.isEmpty()) {
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja zatvara kanal veze i uklanja vezu iz reaktora
+	 */
+	private void closeChannel() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			channel.close();
+		} catch (IOException ignorable) {
+		}
+		reactor.closed(this);
+	}
+
+	/**
+	 * Pomoćna metoda koja obrađivaču (samo jednom) javlja zatvaranje veze
+	 *
+	 * @param code
+	 *            kod zatvaranja
+	 * @param reason
+	 *            razlog zatvaranja
+	 */
+	private void notifyClose(int code, String reason) {
+		if (closeNotified.compareAndSet(false, true)) {
+			dispatchLast(() -> handler.onClose(this, code, reason));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja posao obrađivača <b>task</b> stavlja u red veze.
+	 * Poslovi jedne veze izvode se jedan po jedan, redom kojim su stigli.
+	 * Poslovi koji stignu nakon zatvaranja veze se zanemaruju
+	 *
+	 * @param task
+	 *            posao obrađivača
+	 */
+	private void dispatch(HandlerTask task) {
+		if (closeNotified.get()) {
+			return;
+		}
+		dispatchLast(task);
+	}
+
+	/**
+	 * Pomoćna metoda koja posao obrađivača <b>task</b> bezuvjetno stavlja u
+	 * red veze i, ukoliko ga niti jedna dretva ne obrađuje, predaje red
+	 * dretvama reaktora. Kada u redu čeka previše poslova, čitanje iz veze se
+	 * privremeno zaustavlja
+	 *
+	 * @param task
+	 *            posao obrađivača
+	 */
+	private void dispatchLast(HandlerTask task) {
+		boolean start;
+		boolean pause = false;
+		synchronized (inbox) {
+			inbox.add(() -> {
+				try {
+					task.run();
+				} catch (Exception e) {
+					close(WebSocketCodec.INTERNAL_ERROR, "Pogreška obrađivača");
+				}
+			});
+			start = !dispatching;
+			dispatching = true;
+			if (!readPaused && inbox.size() >= MAX_PENDING_MESSAGES) {
+				readPaused = pause = true;
+			}
+		}
+
+		if (pause) {
+			reactor.execute(this::updateInterest);
+		}
+		if (start) {
+			reactor.dispatch(this::drainInbox);
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja u dretvi reaktora izvodi sve poslove iz reda veze
+	 */
+	private void drainInbox() {
+		while (true) {
+			Runnable task;
+			boolean resume = false;
+			synchronized (inbox) {
+				task = inbox.poll();
+				if (task == null) {
+					dispatching = false;
+					return;
+				}
+				if (readPaused && inbox.size() < MAX_PENDING_MESSAGES / 2) {
+					readPaused = false;
+					resume = true;
+				}
+			}
+
+			if (resume) {
+				reactor.execute(this::updateInterest);
+			}
+			task.run();
+		}
+	}
+
+	/**
+	 * Sučelje koje predstavlja poziv obrađivača koji smije baciti iznimku
+	 *
+	 * @author Davor Češljaš
+	 */
+	private interface HandlerTask {
+
+		/**
+		 * Metoda koja poziva obrađivača
+		 *
+		 * @throws Exception
+		 *             ukoliko obrada nije uspjela
+		 */
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,212 @@
+package hr.fer.zemris.java.webserver.websocket;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Razred koji sadrži konstante protokola WebSocket (vrste okvira i kodove
+ * zatvaranja) te metode koje stvaraju odgovor na zahtjev za nadogradnjom veze
+ * i okvire spremne za slanje. Svaki okvir počinje s dva okteta: zastavica FIN
+ * i vrsta okvira, te zastavica maske i duljina sadržaja (7 bita, a duljine 126
+ * i 127 najavljuju duljinu u idućih 2 odnosno 8 okteta). Okviri klijenta
+ * maskirani su ključem od {@value #MASK_SIZE} okteta, a okviri poslužitelja
+ * nisu.
+ *
+ * @see <a href = "https://tools.ietf.org/html/rfc6455#section-5.2">RFC 6455,
+ *      poglavlje 5.2</a>
+ *
+ * @author Davor Češljaš
+ */
+public final class WebSocketCodec {
+
+	/** Konstanta koja predstavlja jedinu podržanu inačicu protokola */
+	public static final String VERSION = "13";
+
+	/** Konstanta koja predstavlja okvir nastavka poruke */
+	public static final int CONTINUATION = 0x0;
+
+	/** Konstanta koja predstavlja tekstualni okvir */
+	public static final int TEXT = 0x1;
+
+	/** Konstanta koja predstavlja binarni okvir */
+	public static final int BINARY = 0x2;
+
+	/** Konstanta koja predstavlja okvir zatvaranja */
+	public static final int CLOSE = 0x8;
+
+	/** Konstanta koja predstavlja okvir PING */
+	public static final int PING = 0x9;
+
+	/** Konstanta koja predstavlja okvir PONG */
+	public static final int PONG = 0xA;
+
+	/** Konstanta koja predstavlja uredno zatvaranje */
+	public static final int NORMAL_CLOSURE = 1000;
+
+	/** Konstanta koja predstavlja odlazak poslužitelja ili klijenta */
+	public static final int GOING_AWAY = 1001;
+
+	/** Konstanta koja predstavlja pogrešku protokola */
+	public static final int PROTOCOL_ERROR = 1002;
+
+	/** Konstanta koja predstavlja zatvaranje bez koda */
+	public static final int NO_STATUS = 1005;
+
+	/** Konstanta koja predstavlja prekid veze bez okvira zatvaranja */
+	public static final int ABNORMAL_CLOSURE = 1006;
+
+	/** Konstanta koja predstavlja tekst koji nije ispravan UTF-8 */
+	public static final int INVALID_PAYLOAD = 1007;
+
+	/** Konstanta koja predstavlja prevelike poruke */
+	public static final int MESSAGE_TOO_BIG = 1009;
+
+	/** Konstanta koja predstavlja pogrešku poslužitelja */
+	public static final int INTERNAL_ERROR = 1011;
+
+	/** Konstanta koja predstavlja najveću duljinu sadržaja kontrolnog okvira */
+	public static final int MAX_CONTROL_PAYLOAD = 125;
+
+	/** Konstanta koja predstavlja veličinu ključa maske u oktetima */
+	public static final int MASK_SIZE = 4;
+
+	/** Konstanta koja predstavlja najveću veličinu zaglavlja okvira */
+	public static final int MAX_HEADER_SIZE = 2 + 8 + MASK_SIZE;
+
+	/** Konstanta koja predstavlja zastavicu posljednjeg okvira poruke */
+	public static final int FIN = 0x80;
+
+	/**
+	 * Konstanta koja predstavlja identifikator koji se dodaje ključu klijenta
+	 * (RFC 6455, poglavlje 1.3)
+	 */
+	private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	/**
+	 * Privatni konstruktor koji onemogućuje stvaranje primjeraka ovog razreda
+	 */
+	private WebSocketCodec() {
+	}
+
+	/**
+	 * Metoda koja stvara odgovor "101 Switching Protocols" na zahtjev za
+	 * nadogradnjom veze s ključem klijenta <b>key</b>
+	 *
+	 * @param key
+	 *            vrijednost zaglavlja "Sec-WebSocket-Key"
+	 * @return okteti odgovora
+	 */
+	public static byte[] handshakeResponse(String key) {
+		return ("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+				+ "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Metoda koja računa vrijednost zaglavlja "Sec-WebSocket-Accept" iz ključa
+	 * klijenta <b>key</b>
+	 *
+	 * @param key
+	 *            vrijednost zaglavlja "Sec-WebSocket-Key"
+	 * @return zapis Base64 sažetka SHA-1 ključa i identifikatora
+	 *         {@value #ACCEPT_GUID}
+	 */
+	public static String acceptKey(String key) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			byte[] digest = sha1.digest((key.trim() + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+			return Base64.getEncoder().encodeToString(digest);
+		} catch (NoSuchAlgorithmException e) {
+			// svaka implementacija Jave mora podržavati SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Metoda koja stvara okvir vrste <b>opcode</b> sa sadržajem <b>payload</b>
+	 * (svi preostali okteti spremnika). Ukoliko je predana maska <b>mask</b>,
+	 * sadržaj se maskira (okviri klijenta)
+	 *
+	 * @param opcode
+	 *            vrsta okvira
+	 * @param fin
+	 *            <code>true</code> ukoliko je okvir posljednji okvir poruke
+	 * @param payload
+	 *            sadržaj okvira
+	 * @param mask
+	 *            ključ maske od {@value #MASK_SIZE} okteta ili
+	 *            <code>null</code>
+	 * @return spremnik s okvirom spremnim za čitanje
+	 */
+	public static ByteBuffer frame(int opcode, boolean fin, ByteBuffer payload, byte[] mask) {
+		int length = payload.remaining();
+		ByteBuffer frame = ByteBuffer.allocate(MAX_HEADER_SIZE + length);
+		frame.put((byte) ((fin ? FIN : 0) | opcode));
+
+		int maskBit = mask == null ? 0 : 0x80;
+		if (length <= MAX_CONTROL_PAYLOAD) {
+			frame.put((byte) (maskBit | length));
+		} else if (length <= 0xFFFF) {
+			frame.put((byte) (maskBit | 126)).putShort((short) length);
+		} else {
+			frame.put((byte) (maskBit | 127)).putLong(length);
+		}
+
+		if (mask == null) {
+			frame.put(payload);
+		} else {
+			frame.put(mask);
+			for (int i = 0; payload.hasRemaining(); i++) {
+				frame.put((byte) (payload.get() ^ mask[i & 3]));
+			}
+		}
+
+		((Buffer) frame).flip();
+		return frame;
+	}
+
+	/**
+	 * Metoda koja stvara sadržaj okvira zatvaranja s kodom <b>code</b> i
+	 * razlogom <b>reason</b>
+	 *
+	 * @param code
+	 *            kod zatvaranja ili {@value #NO_STATUS} ukoliko se kod ne
+	 *            šalje
+	 * @param reason
+	 *            razlog zatvaranja (skraćuje se na granici znaka UTF-8 na
+	 *            najveću duljinu sadržaja kontrolnog okvira)
+	 * @return spremnik sa sadržajem okvira spremnim za čitanje
+	 */
+	public static ByteBuffer closePayload(int code, String reason) {
+		if (code == NO_STATUS) {
+			return ByteBuffer.allocate(0);
+		}
+
+		byte[] text = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(text.length, MAX_CONTROL_PAYLOAD - 2);
+		// razlog mora ostati ispravan UTF-8, pa se ne smije prekinuti usred znaka
+		while (length < text.length && (text[length] & 0xC0) == 0x80) {
+			length--;
+		}
+		ByteBuffer payload = ByteBuffer.allocate(2 + length);
+		payload.putShort((short) code).put(text, 0, length);
+		((Buffer) payload).flip();
+		return payload;
+	}
+
+	/**
+	 * Metoda koja provjerava smije li klijent poslati kod zatvaranja
+	 * <b>code</b> (RFC 6455, poglavlje 7.4)
+	 *
+	 * @param code
+	 *            kod zatvaranja
+	 * @return <code>true</code> ukoliko je kod dopušten, <code>false</code>
+	 *         inače
+	 */
+	public static boolean isValidCloseCode(int code) {
+		return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1011) || (code >= 3000 && code <= 4999);
+	}
+}
@@ -0,0 +1,310 @@
+package hr.fer.zemris.java.webserver.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.webserver.metrics.Counter;
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry;
+
+/**
+ * Razred koji poslužuje sve veze WebSocket poslužitelja. Jedna dretva
+ * selektorom čeka da klijent pošalje okvire (ili da se u vezu ponovno može
+ * pisati) i obrađuje ih, a obrađivači {@link IWebSocketHandler} izvode se u
+ * malom bazenu dretvi i to samo kada veza primi poruku. Veza koja miruje tako
+ * ne zauzima niti jednu dretvu, pa broj otvorenih veza nije ograničen brojem
+ * dretvi poslužitelja.
+ * <p>
+ * Ključevi selektora mijenjaju se isključivo u dretvi selektora, pa ostale
+ * dretve promjene predaju metodom {@link #execute(Runnable)} (što radi i na
+ * Javi 8, gdje promjena ključa čeka kraj odabira).
+ * </p>
+ *
+ * @see WebSocket
+ *
+ * @author Davor Češljaš
+ */
+public class WebSocketReactor {
+
+	/**
+	 * Konstanta koja predstavlja najdulje vrijeme (u milisekundama) čekanja
+	 * selektora, nakon kojeg se provjeravaju rokovi zatvaranja
+	 */
+	private static final long SELECT_TIMEOUT = 1000;
+
+	/** Članska varijabla koja predstavlja selektor svih veza */
+	private final Selector selector;
+
+	/** Članska varijabla koja predstavlja dretvu selektora */
+	private final Thread selectorThread;
+
+	/** Članska varijabla koja predstavlja bazen dretvi obrađivača */
+	private final ExecutorService handlerPool;
+
+	/**
+	 * Članska varijabla koja predstavlja poslove koji se moraju izvesti u
+	 * dretvi selektora
+	 */
+	private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+	/** Članska varijabla koja predstavlja sve otvorene veze */
+	private final Set<WebSocket> sockets = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Članska varijabla koja predstavlja veze koje čekaju okvir zatvaranja
+	 * klijenta
+	 */
+	private final Set<WebSocket> closing = ConcurrentHashMap.newKeySet();
+
+	/** Članska varijabla koja predstavlja brojač primljenih poruka */
+	private final Counter messagesIn;
+
+	/** Članska varijabla koja predstavlja brojač poslanih poruka */
+	private final Counter messagesOut;
+
+	/** Članska varijabla koja predstavlja zastavicu rada reaktora */
+	private volatile boolean running = true;
+
+	/**
+	 * Konstruktor koji inicijalizira primjerak ovog razreda i pokreće dretvu
+	 * selektora
+	 *
+	 * @param threads
+	 *            broj dretvi obrađivača
+	 * @param metrics
+	 *            registar u koji se upisuju metrike veza
+	 * @throws IOException
+	 *             ukoliko se selektor ne može otvoriti
+	 * @throws IllegalArgumentException
+	 *             ukoliko broj dretvi nije pozitivan
+	 */
+	public WebSocketReactor(int threads, MetricsRegistry metrics) throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+					String.format("Broj dretvi obrađivača WebSocket mora biti pozitivan, a predano je %d", threads));
+		}
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		this.handlerPool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "smarthttp-websocket-" + threadIndex.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		metrics.gauge("websocket_connections_open", "Broj otvorenih veza WebSocket", () -> sockets.size());
+		this.messagesIn = metrics.counter("websocket_messages_total", "direction=\"in\"",
+				"Broj poruka WebSocket po smjeru");
+		this.messagesOut = metrics.counter("websocket_messages_total", "direction=\"out\"",
+				"Broj poruka WebSocket po smjeru");
+
+		this.selector = Selector.open();
+		this.selectorThread = new Thread(this::select, "smarthttp-websocket");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Metoda koja reaktoru predaje nadograđenu vezu <b>channel</b>. Veza se
+	 * prebacuje u neblokirajući način rada, a obrađivaču <b>handler</b> se
+	 * javlja otvaranje veze
+	 *
+	 * @param channel
+	 *            kanal nadograđene veze
+	 * @param handler
+	 *            obrađivač veze
+	 * @param path
+	 *            putanja zahtjeva za nadogradnjom
+	 * @param parameters
+	 *            parametri zahtjeva za nadogradnjom
+	 * @param initial
+	 *            okteti koje je klijent poslao odmah iza zahtjeva ili
+	 *            <code>null</code>
+	 * @throws IOException
+	 *             ukoliko se način rada veze ne može promijeniti ili je
+	 *             reaktor zaustavljen
+	 */
+	public void register(SocketChannel channel, IWebSocketHandler handler, String path,
+			Map<String, String> parameters, ByteBuffer initial) throws IOException {
+		if (!running) {
+			throw new IOException("Reaktor WebSocket je zaustavljen");
+		}
+
+		channel.configureBlocking(false);
+		WebSocket socket = new WebSocket(this, channel, handler, path, parameters, initial);
+		sockets.add(socket);
+		execute(() -> {
+			try {
+				socket.opened(channel.register(selector, SelectionKey.OP_READ, socket));
+			} catch (IOException e) {
+				socket.abort();
+			}
+		});
+	}
+
+	/**
+	 * Metoda koja sve otvorene veze zatvara kodom
+	 * {@value WebSocketCodec#GOING_AWAY}. Veze se konačno zatvaraju kada
+	 * klijenti odgovore ili nakon isteka roka zatvaranja
+	 */
+	public void closeAll() {
+		for (WebSocket socket : sockets) {
+			socket.close(WebSocketCodec.GOING_AWAY, "Poslužitelj se zaustavlja");
+		}
+	}
+
+	/**
+	 * Metoda koja zaustavlja reaktor: prekida sve preostale veze te
+	 * zaustavlja dretvu selektora i dretve obrađivača
+	 */
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join(SELECT_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		handlerPool.shutdown();
+	}
+
+	/**
+	 * Metoda koja dohvaća broj otvorenih veza
+	 *
+	 * @return broj otvorenih veza
+	 */
+	public int size() {
+		return sockets.size();
+	}
+
+	/**
+	 * Metoda koja posao <b>task</b> predaje dretvi selektora
+	 *
+	 * @param task
+	 *            posao koji se izvodi u dretvi selektora
+	 */
+	void execute(Runnable task) {
+		pending.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Metoda koja posao <b>task</b> predaje bazenu dretvi obrađivača
+	 *
+	 * @param task
+	 *            posao obrađivača
+	 */
+	void dispatch(Runnable task) {
+		try {
+			handlerPool.execute(task);
+		} catch (RejectedExecutionException e) {
+			// reaktor je zaustavljen
+		}
+	}
+
+	/**
+	 * Metoda koja bilježi vezu <b>socket</b> koja je poslala okvir zatvaranja
+	 * i čeka odgovor klijenta
+	 *
+	 * @param socket
+	 *            veza koja se zatvara
+	 */
+	void closing(WebSocket socket) {
+		// veza koja je zatvorena prije nego što je zabilježena uklanja se pri
+		// idućoj provjeri rokova
+		closing.add(socket);
+	}
+
+	/**
+	 * Metoda koja uklanja zatvorenu vezu <b>socket</b>. Spremnici veze vraćaju
+	 * se u bazen tek nakon što dretva selektora završi s trenutnim ključem
+	 *
+	 * @param socket
+	 *            zatvorena veza
+	 */
+	void closed(WebSocket socket) {
+		sockets.remove(socket);
+		closing.remove(socket);
+		execute(socket::releaseBuffers);
+	}
+
+	/**
+	 * Metoda koja bilježi primljenu poruku
+	 */
+	void messageReceived() {
+		messagesIn.increment();
+	}
+
+	/**
+	 * Metoda koja bilježi poslanu poruku
+	 */
+	void messageSent() {
+		messagesOut.increment();
+	}
+
+	/**
+	 * Pomoćna metoda koju izvodi dretva selektora: čeka događaje veza, izvodi
+	 * predane poslove i zatvara veze kojima je istekao rok zatvaranja. Nakon
+	 * zaustavljanja reaktora prekidaju se sve preostale veze
+	 */
+	private void select() {
+		while (running) {
+			try {
+				selector.select(SELECT_TIMEOUT);
+			} catch (IOException e) {
+				System.out.println("Reaktor WebSocket ne može čekati događaje veza");
+				break;
+			}
+
+			runPending();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				WebSocket socket = (WebSocket) key.attachment();
+				if (key.isValid() && key.isWritable()) {
+					socket.onWritable();
+				}
+				if (key.isValid() && key.isReadable()) {
+					socket.onReadable();
+				}
+			}
+			runPending();
+
+			if (!closing.isEmpty()) {
+				long now = System.nanoTime();
+				closing.removeIf(socket -> socket.expireClose(now));
+			}
+		}
+
+		for (WebSocket socket : sockets) {
+			socket.abort();
+		}
+		runPending();
+		try {
+			selector.close();
+		} catch (IOException ignorable) {
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja izvodi sve poslove predane dretvi selektora
+	 */
+	private void runPending() {
+		Runnable task;
+		while ((task = pending.poll()) != null) {
+			task.run();
+		}
+	}
+}
@@ -3,13 +3,13 @@ package hr.fer.zemris.java.webserver.workers;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
 
 /**
  * Razred koji implementira sučelje {@link IWebWorker}. Primjerak razred generira sliku
@@ -76,12 +76,11 @@ public class CircleWorker implements IWebWorker {
 	 *            {@link RequestContext#write(byte[])}
 	 */
 	private void sendImage(BufferedImage bim, RequestContext context) {
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		try {
+		try (ByteBufferOutputStream bos = new ByteBufferOutputStream()) {
 			ImageIO.write(bim, IMAGE_EXTENSION, bos);
 
 			context.setMimeType(IMAGE_MIME_TYPE);
-			context.write(bos.toByteArray());
+			context.write(bos.toByteBuffer());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,57 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import hr.fer.zemris.java.webserver.EventStream;
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Razred koji implementira sučelje {@link IWebWorker}. Primjerak razreda
+ * klijentu otvara tok događaja {@link EventStream} i svake sekunde u njega
+ * šalje događaj "time" s trenutnim datumom i vremenom (onako kako ih ispisuje
+ * {@link HelloWorker}). Umjesto da klijent svake sekunde šalje novi zahtjev,
+ * jedna veza ostaje otvorena, a događaje šalje jedna zajednička dretva, pa
+ * otvoreni tokovi ne zauzimaju dretve poslužitelja.
+ *
+ * @see IWebWorker
+ * @see EventStream
+ *
+ * @author Davor Češljaš
+ */
+public class ClockWorker implements IWebWorker {
+
+	/** Konstanta koja predstavlja naziv događaja koji se šalje */
+	private static final String EVENT_NAME = "time";
+
+	/**
+	 * Konstanta koja predstavlja dretvu koja svim otvorenim tokovima šalje
+	 * događaje
+	 */
+	private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "clock-worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Override
+	public void processRequest(RequestContext context) throws IOException {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		EventStream events = context.startEventStream();
+
+		ScheduledFuture<?> tick = TICKER.scheduleAtFixedRate(() -> {
+			try {
+				events.send(EVENT_NAME, sdf.format(new Date()));
+			} catch (IOException e) {
+				// tok je zatvoren, a slušač zatvaranja zaustavlja slanje
+			}
+		}, 0, 1, TimeUnit.SECONDS);
+		events.onClose(() -> tick.cancel(false));
+	}
+}
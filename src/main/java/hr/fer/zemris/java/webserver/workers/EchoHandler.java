@@ -0,0 +1,39 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import hr.fer.zemris.java.webserver.websocket.IWebSocketHandler;
+import hr.fer.zemris.java.webserver.websocket.WebSocket;
+
+/**
+ * Razred koji implementira sučelje {@link IWebSocketHandler}. Primjerak
+ * razreda svaku primljenu poruku (tekstualnu ili binarnu) vraća klijentu
+ * nepromijenjenu. Koristi se za mjerenje kašnjenja i propusnosti veza
+ * WebSocket (vidi
+ * {@link hr.fer.zemris.java.webserver.loadgen.WebSocketEchoBenchmark})
+ *
+ * @see IWebSocketHandler
+ *
+ * @author Davor Češljaš
+ */
+public class EchoHandler implements IWebSocketHandler {
+
+	@Override
+	public void onOpen(WebSocket socket) {
+	}
+
+	@Override
+	public void onText(WebSocket socket, String message) throws IOException {
+		socket.sendText(message);
+	}
+
+	@Override
+	public void onBinary(WebSocket socket, ByteBuffer message) throws IOException {
+		socket.sendBinary(message);
+	}
+
+	@Override
+	public void onClose(WebSocket socket, int code, String reason) {
+	}
+}
@@ -0,0 +1,145 @@
+package hr.fer.zemris.java.custom.scripting.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+
+/**
+ * Testovi koji provjeravaju da interpreter, interpreter nad stablom koje je
+ * optimizirao {@link ScriptOptimizer} te skripta prevedena razredom
+ * {@link SmartScriptCompiler} (nad izvornim i nad optimiziranim stablom)
+ * daju jednak odgovor za sve skripte iz direktorija "webroot" i za skripte
+ * koje pokrivaju rubne slučajeve optimizacija.
+ *
+ * @author Davor Češljaš
+ */
+public class ScriptEquivalenceTest {
+
+	/** Konstanta koja predstavlja korijenski direktorij skripti */
+	private static final Path WEBROOT = Paths.get("webroot");
+
+	/** Konstanta koja predstavlja optimizator koji se testira */
+	private static final ScriptOptimizer OPTIMIZER = new ScriptOptimizer();
+
+	/** Konstanta koja predstavlja prevoditelj koji se testira */
+	private static final SmartScriptCompiler COMPILER = new SmartScriptCompiler();
+
+	/**
+	 * Test svih skripti iz direktorija "webroot"
+	 *
+	 * @throws IOException
+	 *             ukoliko se skripta ne može pročitati
+	 */
+	@Test
+	public void webrootScripts() throws IOException {
+		List<Path> scripts;
+		try (Stream<Path> paths = Files.walk(WEBROOT)) {
+			scripts = paths.filter(path -> path.toString().endsWith(".smscr")).sorted().collect(Collectors.toList());
+		}
+
+		for (Path script : scripts) {
+			assertEquivalent(script.toString(), new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Test petlje koja zasjenjuje varijablu vanjske petlje
+	 */
+	@Test
+	public void shadowingLoop() {
+		assertEquivalent("shadowing", "{$ FOR i 1 3 1 $}{$ FOR i 10 12 1 $}{$= i $} {$END$}{$= i $}|{$END$}");
+	}
+
+	/**
+	 * Test čitanja varijable petlje nakon njenog završetka
+	 */
+	@Test
+	public void readAfterLoop() {
+		assertEquivalent("read-after-loop", "{$ FOR i 1 5 2 $}{$= i $}{$END$}-{$= i $}");
+		assertEquivalent("read-after-empty-loop", "{$ FOR i 1 3 1 $}{$END$}{$ FOR i 5 1 1 $}x{$END$}{$= i $}");
+	}
+
+	/**
+	 * Test funkcije <code>@swap</code> nad konstantama i varijablama
+	 */
+	@Test
+	public void swap() {
+		assertEquivalent("swap-constants", "{$= 1 2 @swap \"a\" \"b\" @swap 3 @dup @swap $}");
+		assertEquivalent("swap-variable", "{$ FOR i 1 3 1 $}{$= i 10 @swap - \"x\" i @swap $}{$END$}");
+		assertEquivalent("swap-reused-slots", "{$ FOR i 1 3 1 $}{$= i @dup * @dup 2 @swap / i @swap $}{$END$}");
+	}
+
+	/**
+	 * Test funkcije <code>@decfmt</code> s konstantnim i s izračunatim
+	 * uzorkom
+	 */
+	@Test
+	public void decfmt() {
+		assertEquivalent("decfmt-constant", "{$= 3.14159 \"0.00\" @decfmt $}");
+		assertEquivalent("decfmt-variable", "{$ FOR i 1 3 1 $}{$= i 1.5 * \"0.000\" @decfmt $}{$END$}");
+		assertEquivalent("decfmt-parameter", "{$= 2.5 \"p\" \"#.##\" @tparamGet @decfmt \"p\" \"0.0\" @tparamGet $}");
+	}
+
+	/**
+	 * Pomoćna metoda koja skriptu <b>script</b> izvodi na sve načine i
+	 * provjerava da su svi odgovori jednaki odgovoru interpretera
+	 *
+	 * @param name
+	 *            naziv skripte (koristi se u porukama)
+	 * @param script
+	 *            tekst skripte
+	 */
+	private static void assertEquivalent(String name, String script) {
+		String expected = render(new SmartScriptParser(script).getDocumentNode(), false);
+		DocumentNode optimized = OPTIMIZER.optimize(new SmartScriptParser(script).getDocumentNode());
+
+		assertEquals(name + " (optimizator)", expected, render(optimized, false));
+		assertEquals(name + " (prevoditelj)", expected, render(new SmartScriptParser(script).getDocumentNode(), true));
+		assertEquals(name + " (optimizator i prevoditelj)", expected, render(optimized, true));
+	}
+
+	/**
+	 * Pomoćna metoda koja izvodi dokument <b>document</b> interpreterom ili
+	 * prevedenog te vraća cijeli odgovor
+	 *
+	 * @param document
+	 *            vršni čvor generativnog stabla skripte
+	 * @param compiled
+	 *            zastavica koja govori izvodi li se prevedena skripta
+	 * @return odgovor skripte
+	 */
+	private static String render(DocumentNode document, boolean compiled) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("a", "3");
+		parameters.put("b", "4");
+		List<RCCookie> cookies = new ArrayList<>();
+		RequestContext context = new RequestContext(os, parameters, new HashMap<>(), cookies);
+
+		if (compiled) {
+			COMPILER.compile(document).execute(context);
+		} else {
+			new SmartScriptEngine(document, context).execute();
+		}
+		return new String(os.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
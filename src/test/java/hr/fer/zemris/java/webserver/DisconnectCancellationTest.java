@@ -0,0 +1,159 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testovi otkazivanja zahtjeva HTTP/1 čiji klijent prekine vezu dok se
+ * skripta još izvodi. Poslužitelj se pokreće s konfiguracijom
+ * "config/server.properties" na slobodnim vratima i s vlastitim korijenskim
+ * direktorijem u kojem je skripta koja se izvodi dulje od trenutka prekida
+ * veze, a kraće od roka izvođenja skripti.
+ *
+ * @author Davor Češljaš
+ */
+public class DisconnectCancellationTest {
+
+	/** Konstanta koja predstavlja skriptu koja se izvodi nekoliko sekundi */
+	private static final String SPIN_SCRIPT = "{$ FOR i 1 100000000 1 $}{$= i \"x\" @tparamSet $}{$END$}";
+
+	/** Konstanta koja predstavlja najdulje vrijeme čekanja metrike u ms */
+	private static final long METRIC_TIMEOUT = 3000;
+
+	/** Članska varijabla koja predstavlja privremeni direktorij testa */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Članska varijabla koja predstavlja poslužitelj koji se testira */
+	private SmartHttpServer server;
+
+	/**
+	 * Metoda koja stvara korijenski direktorij sa skriptom i pokreće
+	 * poslužitelj
+	 *
+	 * @throws IOException
+	 *             ukoliko se konfiguracija ne može pročitati ili zapisati
+	 */
+	@Before
+	public void startServer() throws IOException {
+		File root = folder.newFolder("webroot");
+		Path scripts = Files.createDirectories(root.toPath().resolve("scripts"));
+		Files.write(scripts.resolve("spin.smscr"), SPIN_SCRIPT.getBytes(StandardCharsets.UTF_8));
+
+		Properties properties = new Properties();
+		properties.load(Files.newBufferedReader(new File("config/server.properties").toPath()));
+		properties.setProperty("server.port", Integer.toString(freePort()));
+		properties.setProperty("server.documentRoot", root.getAbsolutePath());
+		properties.setProperty("server.requestTimeout.script", "10");
+		File config = folder.newFile("server.properties");
+		try (Writer writer = Files.newBufferedWriter(config.toPath())) {
+			properties.store(writer, null);
+		}
+
+		server = new SmartHttpServer(config.getAbsolutePath());
+		server.start();
+	}
+
+	/**
+	 * Metoda koja zaustavlja poslužitelj
+	 *
+	 * @throws Exception
+	 *             ukoliko zaustavljanje nije uspjelo
+	 */
+	@After
+	public void stopServer() throws Exception {
+		server.drain(5, TimeUnit.SECONDS).get();
+	}
+
+	/**
+	 * Test klijenta koji zatvara vezu pola sekunde nakon slanja zahtjeva:
+	 * zahtjev se mora otkazati iz razloga "disconnect", a ne zbog isteka roka
+	 *
+	 * @throws Exception
+	 *             ukoliko se ne može spojiti na poslužitelj
+	 */
+	@Test
+	public void clientClosingMidScriptCancelsWithDisconnect() throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+			OutputStream os = socket.getOutputStream();
+			os.write("GET /scripts/spin.smscr HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n"
+					.getBytes(StandardCharsets.ISO_8859_1));
+			os.flush();
+			Thread.sleep(500);
+		}
+
+		assertEquals(1, awaitCancelled("disconnect", 1));
+		assertEquals(0, cancelled("deadline"));
+	}
+
+	/**
+	 * Pomoćna metoda koja čeka najdulje {@value #METRIC_TIMEOUT}ms da broj
+	 * zahtjeva otkazanih iz razloga <b>reason</b> dosegne <b>expected</b>
+	 *
+	 * @param reason
+	 *            razlog otkazivanja
+	 * @param expected
+	 *            očekivani broj otkazanih zahtjeva
+	 * @return broj otkazanih zahtjeva nakon čekanja
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta
+	 */
+	private long awaitCancelled(String reason, long expected) throws InterruptedException {
+		long end = System.currentTimeMillis() + METRIC_TIMEOUT;
+		long value;
+		while ((value = cancelled(reason)) < expected && System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+		return value;
+	}
+
+	/**
+	 * Pomoćna metoda koja iz metrika poslužitelja čita broj zahtjeva
+	 * otkazanih iz razloga <b>reason</b>
+	 *
+	 * @param reason
+	 *            razlog otkazivanja
+	 * @return broj otkazanih zahtjeva
+	 */
+	private long cancelled(String reason) {
+		StringBuilder sb = new StringBuilder();
+		server.getMetrics().writePrometheus(sb);
+		String prefix = "smarthttp_requests_cancelled_total{reason=\"" + reason + "\"} ";
+		for (String line : sb.toString().split("\n")) {
+			if (line.startsWith(prefix)) {
+				return Long.parseLong(line.substring(prefix.length()).trim());
+			}
+		}
+		throw new AssertionError("Metrika " + prefix + "ne postoji");
+	}
+
+	/**
+	 * Pomoćna metoda koja pronalazi slobodna vrata
+	 *
+	 * @return slobodna vrata
+	 * @throws IOException
+	 *             ukoliko se ne može otvoriti utičnica
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
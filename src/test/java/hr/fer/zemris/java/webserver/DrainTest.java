@@ -0,0 +1,157 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.webserver.buffer.BufferPool;
+
+/**
+ * Testovi zaustavljanja poslužitelja čiji rok istekne dok zahtjevi HTTP/1
+ * još čekaju u redu pregrade. Pregrada skripti ima jednu dretvu, pa prvi
+ * zahtjev zauzima dretvu, a ostali čekaju u redu.
+ *
+ * @author Davor Češljaš
+ */
+public class DrainTest {
+
+	/** Konstanta koja predstavlja skriptu koja se izvodi nekoliko sekundi */
+	private static final String SPIN_SCRIPT = "{$ FOR i 1 100000000 1 $}{$= i \"x\" @tparamSet $}{$END$}";
+
+	/** Konstanta koja predstavlja broj zahtjeva u redu pregrade */
+	private static final int QUEUED = 3;
+
+	/** Konstanta koja predstavlja najdulje vrijeme čekanja u ms */
+	private static final long TIMEOUT = 3000;
+
+	/** Članska varijabla koja predstavlja privremeni direktorij testa */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Članska varijabla koja predstavlja poslužitelj koji se testira */
+	private SmartHttpServer server;
+
+	/**
+	 * Metoda koja stvara korijenski direktorij sa skriptom i pokreće
+	 * poslužitelj
+	 *
+	 * @throws IOException
+	 *             ukoliko se konfiguracija ne može pročitati ili zapisati
+	 */
+	@Before
+	public void startServer() throws IOException {
+		File root = folder.newFolder("webroot");
+		Path scripts = Files.createDirectories(root.toPath().resolve("scripts"));
+		Files.write(scripts.resolve("spin.smscr"), SPIN_SCRIPT.getBytes(StandardCharsets.UTF_8));
+
+		Properties properties = new Properties();
+		properties.load(Files.newBufferedReader(new File("config/server.properties").toPath()));
+		properties.setProperty("server.port", Integer.toString(freePort()));
+		properties.setProperty("server.documentRoot", root.getAbsolutePath());
+		properties.setProperty("server.requestTimeout.script", "10");
+		properties.setProperty("server.bulkhead.script.threads", "1");
+		properties.setProperty("server.bulkhead.script.queue", Integer.toString(QUEUED));
+		File config = folder.newFile("server.properties");
+		try (Writer writer = Files.newBufferedWriter(config.toPath())) {
+			properties.store(writer, null);
+		}
+
+		server = new SmartHttpServer(config.getAbsolutePath());
+		server.start();
+	}
+
+	/**
+	 * Test zaustavljanja s istekom roka: zahtjevi iz reda pregrade moraju
+	 * dobiti odgovor 503, a spremnici svih veza moraju se vratiti u
+	 * {@link BufferPool}
+	 *
+	 * @throws Exception
+	 *             ukoliko se ne može spojiti na poslužitelj
+	 */
+	@Test
+	public void drainTimeoutAnswersQueuedRequestsAndReleasesBuffers() throws Exception {
+		long outstanding = BufferPool.getInstance().getOutstanding();
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			for (int i = 0; i <= QUEUED; i++) {
+				Socket socket = new Socket("127.0.0.1", server.getPort());
+				socket.setSoTimeout((int) TIMEOUT);
+				sockets.add(socket);
+				OutputStream os = socket.getOutputStream();
+				os.write("GET /scripts/spin.smscr HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n"
+						.getBytes(StandardCharsets.ISO_8859_1));
+				os.flush();
+				Thread.sleep(100);
+			}
+
+			assertFalse(server.drain(200, TimeUnit.MILLISECONDS).get());
+
+			for (Socket socket : sockets.subList(1, sockets.size())) {
+				assertTrue(readStatusLine(socket).contains(" 503 "));
+			}
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (BufferPool.getInstance().getOutstanding() > outstanding && System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+		assertEquals(outstanding, BufferPool.getInstance().getOutstanding());
+	}
+
+	/**
+	 * Pomoćna metoda koja iz veze <b>socket</b> čita prvi redak odgovora
+	 *
+	 * @param socket
+	 *            veza prema poslužitelju
+	 * @return prvi redak odgovora ili prazan niz ukoliko je veza zatvorena
+	 *         bez odgovora
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	private static String readStatusLine(Socket socket) throws IOException {
+		InputStream is = socket.getInputStream();
+		StringBuilder sb = new StringBuilder();
+		int b;
+		while ((b = is.read()) != -1 && b != '\n') {
+			sb.append((char) b);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Pomoćna metoda koja pronalazi slobodna vrata
+	 *
+	 * @return slobodna vrata
+	 * @throws IOException
+	 *             ukoliko se ne može otvoriti utičnica
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Testovi čitača okvira {@link FrameReader}. Kanal iz kojeg se čita predaje
+ * samo jedan oktet po čitanju, pa se svaki okvir sastavlja iz više čitanja.
+ *
+ * @author Davor Češljaš
+ */
+public class FrameReaderTest {
+
+	/**
+	 * Test uvoda veze (dijelom već pročitanog) i okvira koji slijede
+	 *
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	@Test
+	public void readsPrefaceAndFrames() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(FrameCodec.PREFACE, 5, FrameCodec.PREFACE.length - 5);
+		write(bytes, FrameCodec.settingsFrame());
+		write(bytes, FrameCodec.frameHeader(3, FrameCodec.HEADERS, FrameCodec.FLAG_END_HEADERS, 1));
+		bytes.write('a');
+		bytes.write('b');
+		bytes.write('c');
+		// rezervirani bit identifikatora toka se zanemaruje
+		write(bytes, FrameCodec.frameHeader(0, FrameCodec.DATA, FrameCodec.FLAG_END_STREAM, 0x80000003));
+
+		FrameReader reader = new FrameReader(new DribblingChannel(bytes.toByteArray()), FrameCodec.DEFAULT_MAX_FRAME_SIZE,
+				ByteBuffer.wrap(Arrays.copyOf(FrameCodec.PREFACE, 5)));
+		try {
+			assertTrue(reader.readPreface());
+
+			assertTrue(reader.readFrame());
+			assertEquals(FrameCodec.SETTINGS, reader.getType());
+			assertEquals(0, reader.getLength());
+			assertEquals(0, reader.getStreamId());
+
+			assertTrue(reader.readFrame());
+			assertEquals(FrameCodec.HEADERS, reader.getType());
+			assertEquals(1, reader.getStreamId());
+			assertTrue(reader.hasFlag(FrameCodec.FLAG_END_HEADERS));
+			assertFalse(reader.hasFlag(FrameCodec.FLAG_END_STREAM));
+			assertEquals(ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII)), reader.getPayload());
+
+			assertTrue(reader.readFrame());
+			assertEquals(FrameCodec.DATA, reader.getType());
+			assertEquals(3, reader.getStreamId());
+
+			assertFalse(reader.readFrame());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Test neispravnog uvoda veze
+	 *
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	@Test
+	public void rejectsInvalidPreface() throws IOException {
+		byte[] preface = "GET / HTTP/1.1\r\nHost: a\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+		FrameReader reader = new FrameReader(new DribblingChannel(preface), FrameCodec.DEFAULT_MAX_FRAME_SIZE, null);
+		try {
+			assertFalse(reader.readPreface());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Test okvira većeg od najveće dopuštene veličine
+	 *
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	@Test
+	public void rejectsOversizedFrame() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write(bytes, FrameCodec.frameHeader(17, FrameCodec.DATA, 0, 1));
+		bytes.write(new byte[17]);
+
+		FrameReader reader = new FrameReader(new DribblingChannel(bytes.toByteArray()), 16, null);
+		try {
+			reader.readFrame();
+			fail("Okvir veći od najveće veličine je trebao biti odbijen");
+		} catch (Http2Exception e) {
+			assertEquals(FrameCodec.FRAME_SIZE_ERROR, e.getErrorCode());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Test veze zatvorene usred zaglavlja ili sadržaja okvira
+	 *
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	@Test
+	public void rejectsTruncatedFrames() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write(bytes, FrameCodec.frameHeader(4, FrameCodec.DATA, 0, 1));
+		bytes.write(new byte[3]);
+		assertTruncated(bytes.toByteArray());
+		assertTruncated(Arrays.copyOf(bytes.toByteArray(), 5));
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da čitanje okvira iz <b>bytes</b>
+	 * završava iznimkom {@link EOFException}
+	 *
+	 * @param bytes
+	 *            okteti veze
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo iz drugog razloga
+	 */
+	private static void assertTruncated(byte[] bytes) throws IOException {
+		FrameReader reader = new FrameReader(new DribblingChannel(bytes), FrameCodec.DEFAULT_MAX_FRAME_SIZE, null);
+		try {
+			reader.readFrame();
+			fail("Nepotpun okvir je trebao biti odbijen");
+		} catch (EOFException e) {
+			// očekivano
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja sadržaj spremnika <b>buffer</b> zapisuje u
+	 * <b>out</b>
+	 *
+	 * @param out
+	 *            tok u koji se piše
+	 * @param buffer
+	 *            spremnik spreman za čitanje
+	 */
+	private static void write(ByteArrayOutputStream out, ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			out.write(buffer.get());
+		}
+	}
+
+	/**
+	 * Privatni razred koji predstavlja kanal koji pri svakom čitanju predaje
+	 * najviše jedan oktet
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class DribblingChannel implements ReadableByteChannel {
+
+		/** Članska varijabla koja predstavlja oktete kanala */
+		private final byte[] bytes;
+
+		/** Članska varijabla koja predstavlja broj predanih okteta */
+		private int position;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param bytes
+		 *            okteti kanala
+		 */
+		public DribblingChannel(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (position == bytes.length) {
+				return -1;
+			}
+			if (!dst.hasRemaining()) {
+				return 0;
+			}
+			dst.put(bytes[position++]);
+			return 1;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
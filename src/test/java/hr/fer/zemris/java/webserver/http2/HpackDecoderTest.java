@@ -0,0 +1,261 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Testovi dekodera {@link HpackDecoder}. Blokovi zaglavlja i očekivana
+ * zaglavlja preuzeti su iz primjera RFC 7541, dodatak C.
+ *
+ * @author Davor Češljaš
+ */
+public class HpackDecoderTest {
+
+	/** Konstanta koja predstavlja najveći zbroj veličina zaglavlja bloka */
+	private static final int MAX_HEADER_LIST_SIZE = 65536;
+
+	/**
+	 * Test cijelih brojeva s prefiksom (RFC 7541, C.1)
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko broj nije ispravno kodiran
+	 */
+	@Test
+	public void integerRepresentation() throws Http2Exception {
+		assertEquals(10, HpackDecoder.decodeInt(hex("0a"), 5));
+		assertEquals(1337, HpackDecoder.decodeInt(hex("1f9a0a"), 5));
+		assertEquals(42, HpackDecoder.decodeInt(hex("2a"), 8));
+	}
+
+	/**
+	 * Test cijelog broja koji ne stane u tip <code>int</code>
+	 */
+	@Test
+	public void oversizedInteger() {
+		assertError(FrameCodec.COMPRESSION_ERROR, new HpackDecoder(4096, MAX_HEADER_LIST_SIZE), "ffffffffff0f");
+		assertError(FrameCodec.COMPRESSION_ERROR, new HpackDecoder(4096, MAX_HEADER_LIST_SIZE), "7fffffffffffff7f");
+	}
+
+	/**
+	 * Test doslovnih i indeksiranih zaglavlja (RFC 7541, C.2)
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	@Test
+	public void headerFieldRepresentations() throws Http2Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, MAX_HEADER_LIST_SIZE);
+		assertFields(decode(decoder, "400a637573746f6d2d6b65790d637573746f6d2d686561646572"), "custom-key",
+				"custom-header");
+		assertFields(decode(decoder, "be"), "custom-key", "custom-header");
+
+		assertFields(decode(decoder, "040c2f73616d706c652f70617468"), ":path", "/sample/path");
+		assertFields(decode(decoder, "100870617373776f726406736563726574"), "password", "secret");
+		assertFields(decode(decoder, "82"), ":method", "GET");
+
+		// zaglavlja bez dodavanja u tablicu nisu promijenila indeks 62
+		assertFields(decode(decoder, "be"), "custom-key", "custom-header");
+		assertError(FrameCodec.COMPRESSION_ERROR, decoder, "bf");
+	}
+
+	/**
+	 * Test niza zahtjeva bez Huffmanovog kodiranja (RFC 7541, C.3)
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	@Test
+	public void requestsWithoutHuffman() throws Http2Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, MAX_HEADER_LIST_SIZE);
+		assertRequests(decoder, "828684410f7777772e6578616d706c652e636f6d", "828684be58086e6f2d6361636865",
+				"828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565");
+	}
+
+	/**
+	 * Test niza zahtjeva s Huffmanovim kodiranjem (RFC 7541, C.4)
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	@Test
+	public void requestsWithHuffman() throws Http2Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, MAX_HEADER_LIST_SIZE);
+		assertRequests(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff", "828684be5886a8eb10649cbf",
+				"828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf");
+	}
+
+	/**
+	 * Test niza odgovora s tablicom od 256 okteta iz koje se izbacuju
+	 * najstariji zapisi (RFC 7541, C.5)
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	@Test
+	public void responsesWithEviction() throws Http2Exception {
+		HpackDecoder decoder = new HpackDecoder(256, MAX_HEADER_LIST_SIZE);
+		assertFields(decode(decoder, "4803333032580770726976617465611d4d6f6e2c203231204f637420323031332032303a31"
+				+ "333a323120474d546e1768747470733a2f2f7777772e6578616d706c652e636f6d"), ":status", "302",
+				"cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location",
+				"https://www.example.com");
+		assertFields(decode(decoder, "4803333037c1c0bf"), ":status", "307", "cache-control", "private", "date",
+				"Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com");
+		assertFields(decode(decoder, "88c1611d4d6f6e2c203231204f637420323031332032303a31333a323220474d54c05a04677a"
+				+ "69707738666f6f3d4153444a4b48514b425a584f5157454f50495541585157454f49553b20"
+				+ "6d61782d6167653d333630303b2076657273696f6e3d31"),
+				":status", "200", "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:22 GMT", "location",
+				"https://www.example.com", "content-encoding", "gzip", "set-cookie",
+				"foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1");
+
+		// od zapisa prvog odgovora u tablici su ostala samo tri zapisa trećeg
+		assertFields(decode(decoder, "bebfc0"), "set-cookie",
+				"foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1", "content-encoding", "gzip", "date",
+				"Mon, 21 Oct 2013 20:13:22 GMT");
+		assertError(FrameCodec.COMPRESSION_ERROR, decoder, "c1");
+	}
+
+	/**
+	 * Test promjene veličine dinamičke tablice: smanjenje izbacuje zapise, a
+	 * promjena nakon zaglavlja ili iznad dopuštene veličine je pogreška
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	@Test
+	public void tableSizeUpdates() throws Http2Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, MAX_HEADER_LIST_SIZE);
+		decode(decoder, "400a637573746f6d2d6b65790d637573746f6d2d686561646572");
+
+		// veličina 0 prazni tablicu, a nova veličina vrijedi za sljedeće zapise
+		assertFields(decode(decoder, "203fe11f82"), ":method", "GET");
+		assertError(FrameCodec.COMPRESSION_ERROR, decoder, "be");
+		assertFields(decode(decoder, "400a637573746f6d2d6b65790d637573746f6d2d686561646572be"), "custom-key",
+				"custom-header", "custom-key", "custom-header");
+
+		assertError(FrameCodec.COMPRESSION_ERROR, decoder, "3fe21f");
+		assertError(FrameCodec.COMPRESSION_ERROR, decoder, "8220");
+	}
+
+	/**
+	 * Test bloka koji prekoračuje najveći zbroj veličina zaglavlja
+	 */
+	@Test
+	public void headerListTooLarge() {
+		assertError(FrameCodec.PROTOCOL_ERROR, new HpackDecoder(4096, 50),
+				"400a637573746f6d2d6b65790d637573746f6d2d686561646572");
+	}
+
+	/**
+	 * Test nepotpunog bloka zaglavlja
+	 */
+	@Test
+	public void truncatedBlock() {
+		assertError(FrameCodec.COMPRESSION_ERROR, new HpackDecoder(4096, MAX_HEADER_LIST_SIZE), "400a6375");
+		assertError(FrameCodec.COMPRESSION_ERROR, new HpackDecoder(4096, MAX_HEADER_LIST_SIZE), "1f");
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava tri zahtjeva iz primjera RFC 7541, C.3 i
+	 * C.4 te sadržaj dinamičke tablice nakon njih
+	 *
+	 * @param decoder
+	 *            dekoder koji se koristi za sve blokove
+	 * @param first
+	 *            prvi blok (heksadekadski)
+	 * @param second
+	 *            drugi blok (heksadekadski)
+	 * @param third
+	 *            treći blok (heksadekadski)
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	private static void assertRequests(HpackDecoder decoder, String first, String second, String third)
+			throws Http2Exception {
+		assertFields(decode(decoder, first), ":method", "GET", ":scheme", "http", ":path", "/", ":authority",
+				"www.example.com");
+		assertFields(decode(decoder, second), ":method", "GET", ":scheme", "http", ":path", "/", ":authority",
+				"www.example.com", "cache-control", "no-cache");
+		assertFields(decode(decoder, third), ":method", "GET", ":scheme", "https", ":path", "/index.html",
+				":authority", "www.example.com", "custom-key", "custom-value");
+
+		assertFields(decode(decoder, "bebfc0"), "custom-key", "custom-value", "cache-control", "no-cache",
+				":authority", "www.example.com");
+		assertError(FrameCodec.COMPRESSION_ERROR, decoder, "c1");
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira blok <b>block</b>
+	 *
+	 * @param decoder
+	 *            dekoder
+	 * @param block
+	 *            blok zaglavlja (heksadekadski)
+	 * @return dekodirana zaglavlja (naziv, vrijednost)
+	 * @throws Http2Exception
+	 *             ukoliko blok nije ispravno kodiran
+	 */
+	private static List<String[]> decode(HpackDecoder decoder, String block) throws Http2Exception {
+		List<String[]> fields = new ArrayList<>();
+		decoder.decode(hex(block), (name, value) -> fields.add(new String[] { name, value }));
+		return fields;
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da su zaglavlja <b>fields</b> jednaka
+	 * parovima (naziv, vrijednost) <b>expected</b>
+	 *
+	 * @param fields
+	 *            dekodirana zaglavlja
+	 * @param expected
+	 *            očekivani nazivi i vrijednosti
+	 */
+	private static void assertFields(List<String[]> fields, String... expected) {
+		List<String> actual = new ArrayList<>();
+		for (String[] field : fields) {
+			actual.addAll(Arrays.asList(field));
+		}
+		assertEquals(Arrays.asList(expected), actual);
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da dekodiranje bloka <b>block</b>
+	 * završava pogreškom s kodom <b>errorCode</b>
+	 *
+	 * @param errorCode
+	 *            očekivani kod pogreške
+	 * @param decoder
+	 *            dekoder
+	 * @param block
+	 *            blok zaglavlja (heksadekadski)
+	 */
+	private static void assertError(int errorCode, HpackDecoder decoder, String block) {
+		try {
+			decode(decoder, block);
+			fail("Blok " + block + " je trebao biti odbijen");
+		} catch (Http2Exception e) {
+			assertEquals(errorCode, e.getErrorCode());
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja heksadekadski zapis <b>hex</b> pretvara u spremnik
+	 *
+	 * @param hex
+	 *            okteti u heksadekadskom zapisu
+	 * @return spremnik spreman za čitanje
+	 */
+	static ByteBuffer hex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+}
@@ -0,0 +1,207 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Testovi veze {@link Http2Connection}: pretvaranje dekodiranih zaglavlja u
+ * retke zahtjeva te odbijanje okvira CONTINUATION koji ne nastavlja blok
+ * zaglavlja. Veza se poslužuje nad pravom vezom TCP, a okviri klijenta
+ * zapisuju se prije posluživanja.
+ *
+ * @author Davor Češljaš
+ */
+public class Http2ConnectionTest {
+
+	/**
+	 * Test ispravnog zahtjeva: pseudo-zaglavlja postaju početni redak i
+	 * zaglavlje "Host", a kolačići se spajaju u jedno zaglavlje
+	 */
+	@Test
+	public void requestLinesFromFields() {
+		List<String> lines = Http2Connection.toRequestLines(fields(":method", "GET", ":scheme", "https", ":path",
+				"/index.html?a=1", ":authority", "www.example.com", "cookie", "a=1", "accept", "text/html", "cookie",
+				"b=2"));
+
+		assertEquals(Arrays.asList("GET /index.html?a=1 HTTP/1.1", "Host: www.example.com", "Cookie: a=1; b=2",
+				"accept: text/html"), lines);
+	}
+
+	/**
+	 * Test zaglavlja "host" koje se koristi samo kada nema pseudo-zaglavlja
+	 * ":authority"
+	 */
+	@Test
+	public void hostHeaderFallback() {
+		assertEquals(Arrays.asList("GET / HTTP/1.1", "Host: a.example"),
+				Http2Connection.toRequestLines(fields(":method", "GET", ":scheme", "http", ":path", "/", "host",
+						"a.example")));
+		assertEquals(Arrays.asList("GET / HTTP/1.1", "Host: b.example"),
+				Http2Connection.toRequestLines(fields(":method", "GET", ":scheme", "http", ":path", "/", ":authority",
+						"b.example", "host", "a.example")));
+	}
+
+	/**
+	 * Test neispravnih zahtjeva (RFC 7540, poglavlje 8.1.2)
+	 */
+	@Test
+	public void malformedRequests() {
+		// pseudo-zaglavlje nakon običnog zaglavlja
+		assertNull(Http2Connection
+				.toRequestLines(fields(":method", "GET", "accept", "*/*", ":scheme", "http", ":path", "/")));
+		// pseudo-zaglavlje nakon kolačića
+		assertNull(Http2Connection
+				.toRequestLines(fields(":method", "GET", "cookie", "a=1", ":scheme", "http", ":path", "/")));
+		// nepoznato pseudo-zaglavlje
+		assertNull(Http2Connection
+				.toRequestLines(fields(":method", "GET", ":scheme", "http", ":path", "/", ":status", "200")));
+		// naziv zaglavlja s velikim slovima
+		assertNull(Http2Connection
+				.toRequestLines(fields(":method", "GET", ":scheme", "http", ":path", "/", "Accept", "*/*")));
+		// nedostaje obavezno pseudo-zaglavlje ili je putanja prazna
+		assertNull(Http2Connection.toRequestLines(fields(":method", "GET", ":scheme", "http")));
+		assertNull(Http2Connection.toRequestLines(fields(":method", "GET", ":path", "/")));
+		assertNull(Http2Connection.toRequestLines(fields(":scheme", "http", ":path", "/")));
+		assertNull(Http2Connection.toRequestLines(fields(":method", "GET", ":scheme", "http", ":path", "")));
+	}
+
+	/**
+	 * Test okvira CONTINUATION bez prethodnog okvira HEADERS
+	 *
+	 * @throws IOException
+	 *             ukoliko se ne može spojiti na vezu
+	 */
+	@Test
+	public void continuationWithoutHeaders() throws IOException {
+		assertGoAway(FrameCodec.PROTOCOL_ERROR,
+				FrameCodec.frameHeader(0, FrameCodec.CONTINUATION, FrameCodec.FLAG_END_HEADERS, 1));
+	}
+
+	/**
+	 * Test okvira CONTINUATION koji nastavlja blok zaglavlja drugog toka
+	 *
+	 * @throws IOException
+	 *             ukoliko se ne može spojiti na vezu
+	 */
+	@Test
+	public void continuationOnOtherStream() throws IOException {
+		assertGoAway(FrameCodec.PROTOCOL_ERROR, FrameCodec.frameHeader(1, FrameCodec.HEADERS, 0, 1),
+				ByteBuffer.wrap(new byte[] { (byte) 0x82 }),
+				FrameCodec.frameHeader(0, FrameCodec.CONTINUATION, FrameCodec.FLAG_END_HEADERS, 3));
+	}
+
+	/**
+	 * Test okvira koji nije CONTINUATION, a stiže usred bloka zaglavlja
+	 *
+	 * @throws IOException
+	 *             ukoliko se ne može spojiti na vezu
+	 */
+	@Test
+	public void interruptedHeaderBlock() throws IOException {
+		assertGoAway(FrameCodec.PROTOCOL_ERROR, FrameCodec.frameHeader(1, FrameCodec.HEADERS, 0, 1),
+				ByteBuffer.wrap(new byte[] { (byte) 0x82 }), FrameCodec.settingsFrame());
+	}
+
+	/**
+	 * Pomoćna metoda koja vezi šalje uvod, okvir SETTINGS i okvire
+	 * <b>frames</b> te provjerava da veza završava pogreškom s kodom
+	 * <b>errorCode</b> i da je klijent primio okvir GOAWAY s tim kodom
+	 *
+	 * @param errorCode
+	 *            očekivani kod pogreške
+	 * @param frames
+	 *            okviri klijenta nakon okvira SETTINGS
+	 * @throws IOException
+	 *             ukoliko se ne može spojiti na vezu
+	 */
+	private static void assertGoAway(int errorCode, ByteBuffer... frames) throws IOException {
+		try (ServerSocketChannel server = ServerSocketChannel.open();
+				SocketChannel client = SocketChannel.open()) {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			client.connect(server.getLocalAddress());
+
+			try (SocketChannel channel = server.accept()) {
+				client.write(ByteBuffer.wrap(FrameCodec.PREFACE));
+				client.write(FrameCodec.settingsFrame());
+				for (ByteBuffer frame : frames) {
+					client.write(frame);
+				}
+
+				Http2Connection connection = new Http2Connection(channel, channel, null, Runnable::run,
+						stream -> fail("Tok ne smije biti otvoren"), Http2Connection.DEFAULT_MAX_CONCURRENT_STREAMS);
+				try {
+					connection.serve();
+					fail("Veza je trebala završiti pogreškom");
+				} catch (Http2Exception e) {
+					assertEquals(errorCode, e.getErrorCode());
+				}
+			}
+
+			assertEquals(errorCode, readGoAway(client));
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja čita sve okvire poslužitelja do zatvaranja veze i
+	 * vraća kod pogreške okvira GOAWAY
+	 *
+	 * @param client
+	 *            klijentska strana veze
+	 * @return kod pogreške okvira GOAWAY
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	private static int readGoAway(SocketChannel client) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		while (client.read(buffer) >= 0) {
+			bytes.write(buffer.array(), 0, buffer.position());
+			((Buffer) buffer).clear();
+		}
+
+		ByteBuffer frames = ByteBuffer.wrap(bytes.toByteArray());
+		while (frames.remaining() >= FrameCodec.FRAME_HEADER_SIZE) {
+			int length = (frames.get() & 0xFF) << 16 | (frames.get() & 0xFF) << 8 | frames.get() & 0xFF;
+			int type = frames.get();
+			frames.get();
+			frames.getInt();
+			if (type == FrameCodec.GOAWAY) {
+				frames.getInt();
+				return frames.getInt();
+			}
+			((Buffer) frames).position(frames.position() + length);
+		}
+		throw new AssertionError("Poslužitelj nije poslao okvir GOAWAY");
+	}
+
+	/**
+	 * Pomoćna metoda koja parove (naziv, vrijednost) <b>namesAndValues</b>
+	 * pretvara u dekodirana zaglavlja
+	 *
+	 * @param namesAndValues
+	 *            nazivi i vrijednosti zaglavlja
+	 * @return dekodirana zaglavlja
+	 */
+	private static List<String[]> fields(String... namesAndValues) {
+		List<String[]> fields = new ArrayList<>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			fields.add(new String[] { namesAndValues[i], namesAndValues[i + 1] });
+		}
+		return fields;
+	}
+}
@@ -0,0 +1,154 @@
+package hr.fer.zemris.java.webserver.http2;
+
+import static hr.fer.zemris.java.webserver.http2.HpackDecoderTest.hex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.buffer.ByteBufferOutputStream;
+
+/**
+ * Testovi Huffmanovog kodiranja {@link Huffman} (RFC 7541, dodatak B).
+ * Kodirani nizovi preuzeti su iz primjera RFC 7541, dodatak C.4 i C.6.
+ *
+ * @author Davor Češljaš
+ */
+public class HuffmanTest {
+
+	/**
+	 * Test dekodiranja nizova iz primjera
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko niz nije ispravno kodiran
+	 */
+	@Test
+	public void decodesRfcExamples() throws Http2Exception {
+		assertEquals("www.example.com", decode("f1e3c2e5f23a6ba0ab90f4ff"));
+		assertEquals("no-cache", decode("a8eb10649cbf"));
+		assertEquals("custom-key", decode("25a849e95ba97d7f"));
+		assertEquals("custom-value", decode("25a849e95bb8e8b4bf"));
+		assertEquals("Mon, 21 Oct 2013 20:13:21 GMT", decode("d07abe941054d444a8200595040b8166e082a62d1bff"));
+	}
+
+	/**
+	 * Test kodiranja: kodirani niz jednak je nizu iz primjera i dekodira se u
+	 * izvorni niz
+	 *
+	 * @throws Http2Exception
+	 *             ukoliko niz nije ispravno kodiran
+	 */
+	@Test
+	public void encodesRfcExamples() throws Http2Exception {
+		assertEncoded("www.example.com", "f1e3c2e5f23a6ba0ab90f4ff");
+		assertEncoded("no-cache", "a8eb10649cbf");
+		assertEncoded("foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1",
+				"94e7821dd7f2e6c7b335dfdfcd5b3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007");
+
+		String all = allOctets();
+		ByteBufferOutputStream out = new ByteBufferOutputStream();
+		Huffman.encode(all, out);
+		assertEquals(Huffman.encodedLength(all), out.size());
+		assertEquals(all, decode(out.toByteBuffer(), out.size()));
+		out.close();
+	}
+
+	/**
+	 * Test niza koji sadrži simbol EOS
+	 */
+	@Test
+	public void rejectsEos() {
+		assertInvalid("fffffffc");
+	}
+
+	/**
+	 * Test dopune koja nije početak koda EOS ili je dulja od sedam bitova
+	 */
+	@Test
+	public void rejectsInvalidPadding() {
+		// '0' je kod 00000, a dopuna 000 nije početak koda EOS
+		assertInvalid("00");
+		// "www.example.com" s dodatnim oktetom jedinica
+		assertInvalid("f1e3c2e5f23a6ba0ab90f4ffff");
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira niz <b>hex</b>
+	 *
+	 * @param hex
+	 *            kodirani niz (heksadekadski)
+	 * @return dekodirani niz
+	 * @throws Http2Exception
+	 *             ukoliko niz nije ispravno kodiran
+	 */
+	private static String decode(String hex) throws Http2Exception {
+		ByteBuffer src = hex(hex);
+		return decode(src, src.remaining());
+	}
+
+	/**
+	 * Pomoćna metoda koja dekodira <b>length</b> okteta iz spremnika
+	 * <b>src</b>
+	 *
+	 * @param src
+	 *            spremnik s kodiranim nizom
+	 * @param length
+	 *            broj okteta kodiranog niza
+	 * @return dekodirani niz
+	 * @throws Http2Exception
+	 *             ukoliko niz nije ispravno kodiran
+	 */
+	private static String decode(ByteBuffer src, int length) throws Http2Exception {
+		StringBuilder sb = new StringBuilder();
+		Huffman.decode(src, length, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da se <b>text</b> kodira u <b>hex</b>
+	 *
+	 * @param text
+	 *            niz koji se kodira
+	 * @param hex
+	 *            očekivani kodirani niz (heksadekadski)
+	 */
+	private static void assertEncoded(String text, String hex) {
+		ByteBufferOutputStream out = new ByteBufferOutputStream();
+		Huffman.encode(text, out);
+		ByteBuffer encoded = out.toByteBuffer();
+		assertEquals(hex(hex), encoded);
+		assertEquals(hex.length() / 2, Huffman.encodedLength(text));
+		out.close();
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da se niz <b>hex</b> ne može dekodirati
+	 *
+	 * @param hex
+	 *            kodirani niz (heksadekadski)
+	 */
+	private static void assertInvalid(String hex) {
+		try {
+			decode(hex);
+			fail("Niz " + hex + " je trebao biti odbijen");
+		} catch (Http2Exception e) {
+			assertEquals(FrameCodec.COMPRESSION_ERROR, e.getErrorCode());
+		}
+	}
+
+	/**
+	 * Pomoćna metoda koja stvara niz sa svim oktetima (kao znakovima skupa
+	 * ISO-8859-1)
+	 *
+	 * @return niz sa svim oktetima
+	 */
+	private static String allOctets() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 256; i++) {
+			sb.append((char) i);
+		}
+		return sb.toString();
+	}
+}
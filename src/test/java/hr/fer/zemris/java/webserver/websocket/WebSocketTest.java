@@ -0,0 +1,498 @@
+package hr.fer.zemris.java.webserver.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.metrics.MetricsRegistry;
+
+/**
+ * Testovi parsiranja i obrade okvira veze {@link WebSocket}. Klijent je
+ * obična utičnica koja šalje okvire stvorene razredom {@link WebSocketCodec},
+ * a obrađivač bilježi sve događaje veze.
+ *
+ * @author Davor Češljaš
+ */
+public class WebSocketTest {
+
+	/** Konstanta koja predstavlja masku okvira klijenta */
+	private static final byte[] MASK = { 0x12, 0x34, 0x56, 0x78 };
+
+	/** Konstanta koja predstavlja najdulje vrijeme čekanja u ms */
+	private static final int TIMEOUT = 3000;
+
+	/** Članska varijabla koja predstavlja reaktor koji se testira */
+	private WebSocketReactor reactor;
+
+	/** Članska varijabla koja predstavlja poslužiteljsku utičnicu */
+	private ServerSocketChannel server;
+
+	/** Članska varijabla koja predstavlja klijentsku stranu veze */
+	private Socket client;
+
+	/** Članska varijabla koja predstavlja događaje obrađivača */
+	private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+	/**
+	 * Metoda koja pokreće reaktor i otvara vezu WebSocket
+	 *
+	 * @throws Exception
+	 *             ukoliko se veza ne može otvoriti
+	 */
+	@Before
+	public void connect() throws Exception {
+		reactor = new WebSocketReactor(1, new MetricsRegistry());
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+		client = new Socket();
+		client.connect(server.getLocalAddress());
+		client.setSoTimeout(TIMEOUT);
+		SocketChannel channel = server.accept();
+		reactor.register(channel, new RecordingHandler(), "/ws", Collections.emptyMap(), null);
+		assertEquals("open", nextEvent());
+	}
+
+	/**
+	 * Metoda koja zatvara vezu i zaustavlja reaktor
+	 *
+	 * @throws IOException
+	 *             ukoliko se utičnice ne mogu zatvoriti
+	 */
+	@After
+	public void disconnect() throws IOException {
+		client.close();
+		server.close();
+		reactor.shutdown();
+	}
+
+	/**
+	 * Test tekstualne poruke iz jednog okvira
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void singleFrameText() throws Exception {
+		send(WebSocketCodec.TEXT, true, utf8("Dobar dan"));
+		assertEquals("text:Dobar dan", nextEvent());
+	}
+
+	/**
+	 * Test okvira klijenta koji nije maskiran
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void unmaskedFrame() throws Exception {
+		write(WebSocketCodec.frame(WebSocketCodec.TEXT, true, utf8("x"), null));
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test poruke u više okvira između kojih stiže okvir PING. Znak UTF-8
+	 * rastavljen je na dva okvira
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void fragmentedMessage() throws Exception {
+		byte[] text = "Dobar dan, čovječe".getBytes(StandardCharsets.UTF_8);
+		int split = text.length - 5;
+		send(WebSocketCodec.TEXT, false, ByteBuffer.wrap(text, 0, 3));
+		send(WebSocketCodec.PING, true, utf8("ping"));
+		send(WebSocketCodec.CONTINUATION, false, ByteBuffer.wrap(text, 3, split - 3));
+		send(WebSocketCodec.CONTINUATION, true, ByteBuffer.wrap(text, split, text.length - split));
+
+		Frame pong = readFrame();
+		assertEquals(WebSocketCodec.PONG, pong.opcode);
+		assertEquals("ping", new String(pong.payload, StandardCharsets.UTF_8));
+		assertEquals("text:Dobar dan, čovječe", nextEvent());
+	}
+
+	/**
+	 * Test binarne poruke u više okvira
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void fragmentedBinaryMessage() throws Exception {
+		send(WebSocketCodec.BINARY, false, ByteBuffer.wrap(new byte[200]));
+		send(WebSocketCodec.CONTINUATION, true, ByteBuffer.wrap(new byte[70000]));
+		assertEquals("binary:70200", nextEvent());
+	}
+
+	/**
+	 * Test nove poruke koja počinje prije kraja prethodne
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void interleavedMessages() throws Exception {
+		send(WebSocketCodec.TEXT, false, utf8("prva"));
+		send(WebSocketCodec.TEXT, true, utf8("druga"));
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test nastavka poruke koja nije započela
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void continuationWithoutMessage() throws Exception {
+		send(WebSocketCodec.CONTINUATION, true, utf8("nastavak"));
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test kontrolnog okvira s predugim sadržajem
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void oversizedControlFrame() throws Exception {
+		send(WebSocketCodec.PING, true, ByteBuffer.wrap(new byte[WebSocketCodec.MAX_CONTROL_PAYLOAD + 1]));
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test kontrolnog okvira rastavljenog u više okvira
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void fragmentedControlFrame() throws Exception {
+		send(WebSocketCodec.PING, false, utf8("ping"));
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test okvira s postavljenim rezerviranim bitom
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void reservedBits() throws Exception {
+		ByteBuffer frame = WebSocketCodec.frame(WebSocketCodec.TEXT, true, utf8("x"), MASK);
+		frame.put(0, (byte) (frame.get(0) | 0x40));
+		write(frame);
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test urednog zatvaranja: poslužitelj vraća kod i razlog klijenta
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void closeHandshake() throws Exception {
+		send(WebSocketCodec.CLOSE, true, WebSocketCodec.closePayload(WebSocketCodec.NORMAL_CLOSURE, "doviđenja"));
+
+		Frame close = readFrame();
+		assertEquals(WebSocketCodec.CLOSE, close.opcode);
+		assertEquals(WebSocketCodec.NORMAL_CLOSURE, close.code());
+		assertEquals("doviđenja", close.reason());
+		assertEquals("close:1000:doviđenja", nextEvent());
+	}
+
+	/**
+	 * Test okvira zatvaranja bez koda
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void closeWithoutCode() throws Exception {
+		send(WebSocketCodec.CLOSE, true, ByteBuffer.allocate(0));
+
+		Frame close = readFrame();
+		assertEquals(WebSocketCodec.CLOSE, close.opcode);
+		assertEquals(0, close.payload.length);
+		assertEquals("close:" + WebSocketCodec.NO_STATUS + ":", nextEvent());
+	}
+
+	/**
+	 * Test kodova zatvaranja koje klijent ne smije poslati
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void invalidCloseCodes() throws Exception {
+		int[] codes = { 0, 999, 1004, WebSocketCodec.NO_STATUS, WebSocketCodec.ABNORMAL_CLOSURE, 1012, 2999, 5000 };
+		for (int code : codes) {
+			ByteBuffer payload = ByteBuffer.allocate(2);
+			payload.putShort(0, (short) code);
+			send(WebSocketCodec.CLOSE, true, payload);
+			assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+
+			disconnect();
+			events.clear();
+			connect();
+		}
+	}
+
+	/**
+	 * Test okvira zatvaranja sa samo jednim oktetom
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void truncatedCloseCode() throws Exception {
+		send(WebSocketCodec.CLOSE, true, ByteBuffer.wrap(new byte[] { 0x03 }));
+		assertFailed(WebSocketCodec.PROTOCOL_ERROR);
+	}
+
+	/**
+	 * Test tekstualne poruke koja nije ispravan UTF-8
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void invalidUtf8Text() throws Exception {
+		send(WebSocketCodec.TEXT, false, ByteBuffer.wrap(new byte[] { 'a', (byte) 0xC4 }));
+		send(WebSocketCodec.CONTINUATION, true, ByteBuffer.wrap(new byte[] { 'b' }));
+		assertFailed(WebSocketCodec.INVALID_PAYLOAD);
+	}
+
+	/**
+	 * Test razloga zatvaranja koji nije ispravan UTF-8
+	 *
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	@Test
+	public void invalidUtf8CloseReason() throws Exception {
+		ByteBuffer payload = ByteBuffer.allocate(4);
+		payload.putShort((short) WebSocketCodec.NORMAL_CLOSURE).put((byte) 0xED).put((byte) 0xA0);
+		payload.flip();
+		send(WebSocketCodec.CLOSE, true, payload);
+		assertFailed(WebSocketCodec.INVALID_PAYLOAD);
+	}
+
+	/**
+	 * Test skraćivanja predugog razloga zatvaranja: razlog se skraćuje na
+	 * granici znaka, pa ostaje ispravan UTF-8
+	 */
+	@Test
+	public void closeReasonTruncatedOnCharacterBoundary() {
+		StringBuilder reason = new StringBuilder("xx");
+		for (int i = 0; i < 100; i++) {
+			reason.append('č');
+		}
+
+		ByteBuffer payload = WebSocketCodec.closePayload(WebSocketCodec.GOING_AWAY, reason.toString());
+		assertEquals(2 + 2 + 2 * 60, payload.remaining());
+		assertEquals(WebSocketCodec.GOING_AWAY, payload.getShort() & 0xFFFF);
+		assertEquals(reason.substring(0, 62), StandardCharsets.UTF_8.decode(payload).toString());
+
+		StringBuilder ascii = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			ascii.append('a');
+		}
+		assertEquals(WebSocketCodec.MAX_CONTROL_PAYLOAD,
+				WebSocketCodec.closePayload(WebSocketCodec.GOING_AWAY, ascii.toString()).remaining());
+	}
+
+	/**
+	 * Pomoćna metoda koja provjerava da je poslužitelj zatvorio vezu kodom
+	 * <b>code</b>: klijent prima okvir zatvaranja s tim kodom, obrađivač
+	 * dobiva isti kod, a veza se zatvara
+	 *
+	 * @param code
+	 *            očekivani kod zatvaranja
+	 * @throws Exception
+	 *             ukoliko komunikacija nije uspjela
+	 */
+	private void assertFailed(int code) throws Exception {
+		Frame close = readFrame();
+		assertEquals(WebSocketCodec.CLOSE, close.opcode);
+		assertEquals(code, close.code());
+		assertTrue(nextEvent().startsWith("close:" + code + ":"));
+		assertEquals(-1, client.getInputStream().read());
+	}
+
+	/**
+	 * Pomoćna metoda koja šalje maskirani okvir
+	 *
+	 * @param opcode
+	 *            vrsta okvira
+	 * @param fin
+	 *            zastavica zadnjeg okvira poruke
+	 * @param payload
+	 *            sadržaj okvira
+	 * @throws IOException
+	 *             ukoliko pisanje nije uspjelo
+	 */
+	private void send(int opcode, boolean fin, ByteBuffer payload) throws IOException {
+		write(WebSocketCodec.frame(opcode, fin, payload, MASK));
+	}
+
+	/**
+	 * Pomoćna metoda koja okvir <b>frame</b> piše u vezu
+	 *
+	 * @param frame
+	 *            okvir spreman za čitanje
+	 * @throws IOException
+	 *             ukoliko pisanje nije uspjelo
+	 */
+	private void write(ByteBuffer frame) throws IOException {
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+		OutputStream os = client.getOutputStream();
+		os.write(bytes);
+		os.flush();
+	}
+
+	/**
+	 * Pomoćna metoda koja čita jedan okvir poslužitelja
+	 *
+	 * @return pročitani okvir
+	 * @throws IOException
+	 *             ukoliko čitanje nije uspjelo
+	 */
+	private Frame readFrame() throws IOException {
+		DataInputStream is = new DataInputStream(client.getInputStream());
+		int b0 = is.readUnsignedByte();
+		long length = is.readUnsignedByte() & 0x7F;
+		if (length == 126) {
+			length = is.readUnsignedShort();
+		} else if (length == 127) {
+			length = is.readLong();
+		}
+
+		byte[] payload = new byte[(int) length];
+		is.readFully(payload);
+		return new Frame(b0 & 0x0F, payload);
+	}
+
+	/**
+	 * Pomoćna metoda koja čeka sljedeći događaj obrađivača
+	 *
+	 * @return događaj obrađivača
+	 * @throws InterruptedException
+	 *             ukoliko je dretva prekinuta
+	 */
+	private String nextEvent() throws InterruptedException {
+		String event = events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		if (event == null) {
+			throw new AssertionError("Obrađivač nije dobio događaj");
+		}
+		return event;
+	}
+
+	/**
+	 * Pomoćna metoda koja niz <b>text</b> kodira kao UTF-8
+	 *
+	 * @param text
+	 *            niz znakova
+	 * @return spremnik s kodiranim nizom
+	 */
+	private static ByteBuffer utf8(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Privatni razred koji predstavlja okvir poslužitelja
+	 *
+	 * @author Davor Češljaš
+	 */
+	private static class Frame {
+
+		/** Članska varijabla koja predstavlja vrstu okvira */
+		private final int opcode;
+
+		/** Članska varijabla koja predstavlja sadržaj okvira */
+		private final byte[] payload;
+
+		/**
+		 * Konstruktor koji inicijalizira primjerak ovog razreda
+		 *
+		 * @param opcode
+		 *            vrsta okvira
+		 * @param payload
+		 *            sadržaj okvira
+		 */
+		public Frame(int opcode, byte[] payload) {
+			this.opcode = opcode;
+			this.payload = payload;
+		}
+
+		/**
+		 * Metoda koja dohvaća kod okvira zatvaranja
+		 *
+		 * @return kod zatvaranja
+		 */
+		public int code() {
+			return (payload[0] & 0xFF) << 8 | payload[1] & 0xFF;
+		}
+
+		/**
+		 * Metoda koja dohvaća razlog okvira zatvaranja
+		 *
+		 * @return razlog zatvaranja
+		 */
+		public String reason() {
+			return new String(payload, 2, payload.length - 2, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Privatni razred koji predstavlja obrađivača koji sve događaje veze
+	 * zapisuje u {@link WebSocketTest#events}
+	 *
+	 * @author Davor Češljaš
+	 */
+	private class RecordingHandler implements IWebSocketHandler {
+
+		@Override
+		public void onOpen(WebSocket socket) {
+			events.add("open");
+		}
+
+		@Override
+		public void onText(WebSocket socket, String message) {
+			events.add("text:" + message);
+		}
+
+		@Override
+		public void onBinary(WebSocket socket, ByteBuffer message) {
+			events.add("binary:" + message.remaining());
+		}
+
+		@Override
+		public void onClose(WebSocket socket, int code, String reason) {
+			events.add("close:" + code + ":" + reason);
+		}
+	}
+}